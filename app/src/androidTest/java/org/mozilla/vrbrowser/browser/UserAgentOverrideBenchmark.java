@@ -0,0 +1,151 @@
+package org.mozilla.vrbrowser.browser;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the user agent override lookup with the previous implementation, which hashed every
+ * domain suffix into a hex string and cached every host it ever saw.
+ */
+@RunWith(AndroidJUnit4.class)
+public class UserAgentOverrideBenchmark {
+    private static final String LOGTAG = SystemUtils.createLogtag(UserAgentOverrideBenchmark.class);
+    private static final int CORPUS_SIZE = 2000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    private static final String[] SITES = {
+            "google.com", "youtube.com", "facebook.com", "wikipedia.org", "amazon.com", "reddit.com",
+            "twitter.com", "instagram.com", "netflix.com", "twitch.tv", "github.com", "mozilla.org",
+            "bbc.co.uk", "nytimes.com", "oculus.com", "sketchfab.com", "vimeo.com", "imgur.com"
+    };
+    private static final String[] SUBDOMAINS = { "", "www.", "m.", "en.", "static.", "cdn.", "api.", "accounts." };
+
+    private static List<String> createCorpus() {
+        // Mostly revisited hosts with a long tail of unique ones, like a browsing session.
+        Random random = new Random(42);
+        List<String> corpus = new ArrayList<>(CORPUS_SIZE);
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            String site = SITES[random.nextInt(SITES.length)];
+            String subdomain = SUBDOMAINS[random.nextInt(SUBDOMAINS.length)];
+            if (random.nextInt(4) == 0) {
+                subdomain = "host" + i + "." + subdomain;
+            }
+            corpus.add("https://" + subdomain + site + "/path/" + i + "?q=" + random.nextInt(1000));
+        }
+        return corpus;
+    }
+
+    private static Map<String, String> loadLegacyTable(Context aContext) throws Exception {
+        String fileName = aContext.getString(R.string.user_agent_override_file);
+        try (InputStream is = aContext.getAssets().open(fileName)) {
+            byte[] buffer = new byte[is.available()];
+            is.read(buffer);
+            JSONObject json = new JSONObject(new String(buffer, StandardCharsets.UTF_8));
+            Map<String, String> table = new HashMap<>();
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                table.put(key, json.getString(key));
+            }
+            return table;
+        }
+    }
+
+    private static String legacyLookup(Map<String, String> aTable, Map<String, String> aCache, String aUri) throws Exception {
+        String fullDomain = new URI(aUri).getHost().toLowerCase();
+        String override = aCache.get(fullDomain);
+        if (override != null) {
+            return override.isEmpty() ? null : override;
+        }
+        List<String> domains = Arrays.asList(fullDomain.split("\\."));
+        String[] checked = new String[domains.size()];
+        for (int ix = 0; ix < domains.size(); ix++) {
+            String domain = TextUtils.join(".", domains.subList(ix, domains.size()));
+            checked[ix] = domain;
+            MessageDigest md = MessageDigest.getInstance("SHA-512");
+            StringBuilder sb = new StringBuilder();
+            for (int value : md.digest(domain.getBytes())) {
+                sb.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+            }
+            override = aTable.get(sb.toString());
+            if (override != null) {
+                break;
+            }
+        }
+        for (String domain : checked) {
+            if (domain != null) {
+                aCache.put(domain, override != null ? override : "");
+            }
+        }
+        return override;
+    }
+
+    @Test
+    public void lookupOverride() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        List<String> corpus = createCorpus();
+        Map<String, String> table = loadLegacyTable(context);
+        String fileName = context.getString(R.string.user_agent_override_file);
+
+        long legacyNs = Long.MAX_VALUE;
+        long currentNs = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            Map<String, String> legacyCache = new HashMap<>();
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (String uri : corpus) {
+                legacyLookup(table, legacyCache, uri);
+            }
+            long legacy = SystemClock.elapsedRealtimeNanos() - start;
+
+            UserAgentOverride current = new UserAgentOverride();
+            current.loadOverridesFromAssets(context, fileName);
+            start = SystemClock.elapsedRealtimeNanos();
+            for (String uri : corpus) {
+                current.lookupOverride(uri);
+            }
+            long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+
+            if (round >= WARMUP_ROUNDS) {
+                legacyNs = Math.min(legacyNs, legacy);
+                currentNs = Math.min(currentNs, elapsed);
+            }
+        }
+
+        // Both implementations must agree on every host.
+        UserAgentOverride current = new UserAgentOverride();
+        current.loadOverridesFromAssets(context, fileName);
+        Map<String, String> legacyCache = new HashMap<>();
+        for (String uri : corpus) {
+            assertEquals(uri, legacyLookup(table, legacyCache, uri), current.lookupOverride(uri));
+        }
+
+        Log.i(LOGTAG, "UA override lookup over " + CORPUS_SIZE + " URLs: legacy=" + (legacyNs / CORPUS_SIZE) +
+                "ns/op current=" + (currentNs / CORPUS_SIZE) + "ns/op");
+    }
+}
@@ -0,0 +1,190 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+import org.mozilla.vrbrowser.utils.UrlUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Compares the SessionStore lookups with the previous implementation, which scanned the session
+ * list on every lookup and copied and sorted it for the tab tray. The timings are only reported,
+ * the lookups of both implementations have to agree.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SessionIndexBenchmark {
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionIndexBenchmark.class);
+    private static final int SESSIONS = 256;
+    private static final int HOSTS = 40;
+    private static final int LOOKUPS = 5000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+
+    private static class FakeSession {
+        final String mId;
+        final GeckoSession mGeckoSession;
+        final boolean mPrivate;
+        String mUri;
+        long mLastUse;
+
+        FakeSession(int aIndex, String aUri, long aLastUse) {
+            mId = "session-" + aIndex;
+            // Every fourth session is suspended.
+            mGeckoSession = aIndex % 4 == 0 ? null : new GeckoSession();
+            mPrivate = aIndex % 5 == 0;
+            mUri = aUri;
+            mLastUse = aLastUse;
+        }
+    }
+
+    private static final SessionIndex.Accessor<FakeSession> ACCESSOR = new SessionIndex.Accessor<FakeSession>() {
+        @NonNull
+        @Override
+        public String getId(@NonNull FakeSession aSession) {
+            return aSession.mId;
+        }
+
+        @Nullable
+        @Override
+        public GeckoSession getGeckoSession(@NonNull FakeSession aSession) {
+            return aSession.mGeckoSession;
+        }
+
+        @NonNull
+        @Override
+        public String getCurrentUri(@NonNull FakeSession aSession) {
+            return aSession.mUri;
+        }
+
+        @Override
+        public long getLastUse(@NonNull FakeSession aSession) {
+            return aSession.mLastUse;
+        }
+
+        @Override
+        public boolean isPrivateMode(@NonNull FakeSession aSession) {
+            return aSession.mPrivate;
+        }
+    };
+
+    private static String createUri(Random aRandom) {
+        return "https://www.site" + aRandom.nextInt(HOSTS) + ".example.com/page/" + aRandom.nextInt(1000);
+    }
+
+    private static FakeSession legacyGetById(List<FakeSession> aSessions, String aId) {
+        return aSessions.stream().filter(session -> session.mId.equals(aId)).findFirst().orElse(null);
+    }
+
+    private static FakeSession legacyGetByGeckoSession(List<FakeSession> aSessions, GeckoSession aGeckoSession) {
+        return aSessions.stream().filter(session -> session.mGeckoSession == aGeckoSession).findFirst().orElse(null);
+    }
+
+    private static List<FakeSession> legacyGetByHost(List<FakeSession> aSessions, String aHost, boolean aIsPrivate) {
+        return aSessions.stream()
+                .filter(session -> session.mPrivate == aIsPrivate)
+                .filter(session -> UrlUtils.getHost(session.mUri).equals(aHost))
+                .collect(Collectors.toList());
+    }
+
+    private static ArrayList<FakeSession> legacyGetSorted(List<FakeSession> aSessions, boolean aIsPrivate) {
+        ArrayList<FakeSession> result = new ArrayList<>(aSessions);
+        result.removeIf(session -> session.mPrivate != aIsPrivate);
+        result.sort((o1, o2) -> {
+            if (o2.mLastUse < o1.mLastUse) {
+                return -1;
+            }
+            return o2.mLastUse == o1.mLastUse ? 0 : 1;
+        });
+        return result;
+    }
+
+    @Test
+    public void lookupSessions() {
+        Random random = new Random(42);
+        ArrayList<FakeSession> sessions = new ArrayList<>();
+        SessionIndex<FakeSession> index = new SessionIndex<>(ACCESSOR);
+        for (int i = 0; i < SESSIONS; i++) {
+            // Restored sessions share last use times, so ties have to be ordered like the list.
+            FakeSession session = new FakeSession(i, createUri(random), random.nextInt(SESSIONS / 2));
+            sessions.add(session);
+            index.add(session);
+        }
+
+        // Each lookup round mimics a navigation: one session changes its URL and last use.
+        int[] targets = new int[LOOKUPS];
+        String[] uris = new String[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            targets[i] = random.nextInt(SESSIONS);
+            uris[i] = createUri(random);
+        }
+
+        long legacyNs = Long.MAX_VALUE;
+        long currentNs = Long.MAX_VALUE;
+        int checksum = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < LOOKUPS; i++) {
+                FakeSession target = sessions.get(targets[i]);
+                target.mUri = uris[i];
+                target.mLastUse = SESSIONS + round * LOOKUPS + i;
+                checksum += legacyGetById(sessions, target.mId) == target ? 1 : 0;
+                checksum += legacyGetByGeckoSession(sessions, target.mGeckoSession) != null ? 1 : 0;
+                checksum += legacyGetByHost(sessions, UrlUtils.getHost(target.mUri), target.mPrivate).size();
+                if (i % 10 == 0) {
+                    checksum += legacyGetSorted(sessions, false).size();
+                }
+            }
+            long legacy = SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < LOOKUPS; i++) {
+                FakeSession target = sessions.get(targets[i]);
+                target.mUri = uris[i];
+                target.mLastUse = SESSIONS + round * LOOKUPS + i;
+                index.update(target);
+                checksum += index.getById(target.mId) == target ? 1 : 0;
+                checksum += target.mGeckoSession == null || index.getByGeckoSession(target.mGeckoSession) != null ? 1 : 0;
+                checksum += index.getByHost(UrlUtils.getHost(target.mUri), target.mPrivate).size();
+                if (i % 10 == 0) {
+                    checksum += index.getSortedByLastUse(false).size();
+                }
+            }
+            long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+
+            if (round >= WARMUP_ROUNDS) {
+                legacyNs = Math.min(legacyNs, legacy);
+                currentNs = Math.min(currentNs, elapsed);
+            }
+        }
+
+        // Both implementations must return the same sessions in the same order.
+        for (FakeSession session : sessions) {
+            assertSame(legacyGetById(sessions, session.mId), index.getById(session.mId));
+            if (session.mGeckoSession != null) {
+                assertSame(legacyGetByGeckoSession(sessions, session.mGeckoSession), index.getByGeckoSession(session.mGeckoSession));
+            }
+            String host = UrlUtils.getHost(session.mUri);
+            assertEquals(legacyGetByHost(sessions, host, session.mPrivate), index.getByHost(host, session.mPrivate));
+        }
+        assertEquals(legacyGetSorted(sessions, false), index.getSortedByLastUse(false));
+        assertEquals(legacyGetSorted(sessions, true), index.getSortedByLastUse(true));
+
+        Log.i(LOGTAG, "Session lookups over " + SESSIONS + " sessions: legacy=" + (legacyNs / LOOKUPS) +
+                "ns/op current=" + (currentNs / LOOKUPS) + "ns/op (checksum " + checksum + ")");
+    }
+}
@@ -0,0 +1,188 @@
+package org.mozilla.vrbrowser.input;
+
+import android.content.res.Configuration;
+import android.graphics.SurfaceTexture;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.Surface;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.ui.widgets.Widget;
+import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a controller trace through the MotionEventGenerator and reports the dispatched events
+ * per second. The pointer properties and coordinates have to be reused, they are only created
+ * once per device.
+ *
+ * The trace mimics a recorded session with two controllers: both hover over two widgets, one drags
+ * on its own and both press the same widget at once to pinch.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MotionEventGeneratorBenchmark {
+    private static final String LOGTAG = SystemUtils.createLogtag(MotionEventGeneratorBenchmark.class);
+    private static final int FRAMES = 20000;
+    private static final int DEVICES = 2;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+    // One PointerProperties and two PointerCoords, for the pointer and the hover exit position.
+    private static final int POINTER_OBJECTS_PER_DEVICE = 3;
+
+    private static class Trace {
+        final int size;
+        final int[] device;
+        final int[] widget;
+        final boolean[] pressed;
+        final float[] x;
+        final float[] y;
+
+        Trace(int aSize) {
+            size = aSize;
+            device = new int[aSize];
+            widget = new int[aSize];
+            pressed = new boolean[aSize];
+            x = new float[aSize];
+            y = new float[aSize];
+        }
+    }
+
+    private static class CountingWidget implements Widget {
+        private final boolean mMultiTouch;
+        int mTouchEvents;
+        int mHoverEvents;
+        int mMultiPointerEvents;
+
+        CountingWidget(boolean aMultiTouch) {
+            mMultiTouch = aMultiTouch;
+        }
+
+        @Override
+        public void handleTouchEvent(MotionEvent aEvent) {
+            mTouchEvents++;
+            if (aEvent.getPointerCount() > 1) {
+                mMultiPointerEvents++;
+            }
+        }
+
+        @Override
+        public void handleHoverEvent(MotionEvent aEvent) {
+            mHoverEvents++;
+        }
+
+        @Override
+        public boolean supportsMultiTouch() {
+            return mMultiTouch;
+        }
+
+        @Override public void onPause() {}
+        @Override public void onResume() {}
+        @Override public void onConfigurationChanged(Configuration newConfig) {}
+        @Override public void setSurfaceTexture(SurfaceTexture aTexture, int aWidth, int aHeight, Runnable aFirstDrawCallback) {}
+        @Override public void setSurface(Surface aSurface, int aWidth, int aHeight, Runnable aFirstDrawCallback) {}
+        @Override public void resizeSurface(int aWidth, int aHeight) {}
+        @Override public int getHandle() { return 0; }
+        @Override public WidgetPlacement getPlacement() { return null; }
+        @Override public void handleResizeEvent(float aWorldWidth, float aWorldHeight) {}
+        @Override public void handleMoveEvent(float aDeltaX, float aDeltaY, float aDeltaZ, float aRotation) {}
+        @Override public void releaseWidget() {}
+        @Override public void setFirstPaintReady(boolean aIsFirstDraw) {}
+        @Override public boolean isFirstPaintReady() { return true; }
+        @Override public boolean isVisible() { return true; }
+        @Override public boolean isDialog() { return false; }
+        @Override public void setVisible(boolean aVisible) {}
+        @Override public void resizeByMultiplier(float aspect, float multiplier) {}
+        @Override public int getBorderWidth() { return 0; }
+    }
+
+    private static Trace createTrace() {
+        Random random = new Random(42);
+        Trace trace = new Trace(FRAMES * DEVICES);
+        int sample = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // Every 240 frames: hover, a single controller drag, then a two controller pinch.
+            int phase = frame % 240;
+            for (int device = 0; device < DEVICES; device++) {
+                double angle = frame * 0.05 + device * Math.PI;
+                float jitter = random.nextFloat() * 0.5f;
+                trace.device[sample] = device;
+                trace.x[sample] = (float) (400 + 300 * Math.cos(angle)) + jitter;
+                trace.y[sample] = (float) (300 + 200 * Math.sin(angle)) + jitter;
+                if (phase < 120) {
+                    // Hovering, crossing between the widgets.
+                    trace.widget[sample] = (frame / 60 + device) % 3 == 2 ? -1 : (frame / 60 + device) % 2;
+                } else if (phase < 180) {
+                    trace.widget[sample] = 0;
+                    trace.pressed[sample] = device == 0 && phase > 125 && phase < 175;
+                } else {
+                    trace.widget[sample] = 0;
+                    trace.pressed[sample] = phase > 185 + device * 5 && phase < 235 - device * 5;
+                }
+                sample++;
+            }
+        }
+        return trace;
+    }
+
+    @After
+    public void tearDown() {
+        MotionEventGenerator.clearDevices();
+    }
+
+    @Test
+    public void replayControllerTrace() {
+        Trace trace = createTrace();
+        CountingWidget[] widgets = { new CountingWidget(true), new CountingWidget(false) };
+
+        long bestNs = Long.MAX_VALUE;
+        int events = 0;
+        int multiPointerEvents = 0;
+        long pointerAllocations = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; round++) {
+            MotionEventGenerator.clearDevices();
+            for (CountingWidget widget : widgets) {
+                widget.mTouchEvents = 0;
+                widget.mHoverEvents = 0;
+                widget.mMultiPointerEvents = 0;
+            }
+
+            long allocationsBefore = MotionEventGenerator.getPointerAllocations();
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < trace.size; i++) {
+                Widget widget = trace.widget[i] >= 0 ? widgets[trace.widget[i]] : null;
+                MotionEventGenerator.dispatch(widget, trace.device[i], true, trace.pressed[i], trace.x[i], trace.y[i]);
+            }
+            long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+            long allocations = MotionEventGenerator.getPointerAllocations() - allocationsBefore;
+
+            if (round >= WARMUP_ROUNDS) {
+                events = 0;
+                multiPointerEvents = 0;
+                for (CountingWidget widget : widgets) {
+                    events += widget.mTouchEvents + widget.mHoverEvents;
+                    multiPointerEvents += widget.mMultiPointerEvents;
+                }
+                bestNs = Math.min(bestNs, elapsed);
+                pointerAllocations = Math.max(pointerAllocations, allocations);
+            }
+        }
+
+        float eventsPerSecond = events / (bestNs / 1e9f);
+        Log.i(LOGTAG, "Replayed " + trace.size + " samples: " + events + " events, " + multiPointerEvents +
+                " multi-pointer, " + (int) eventsPerSecond + " events/s, " + pointerAllocations +
+                " pointer objects created (" + ((float) pointerAllocations / trace.size) + " per dispatch)");
+        assertTrue(multiPointerEvents > 0);
+        // Only the devices created after clearDevices() allocate, the dispatches reuse them.
+        assertEquals(DEVICES * POINTER_OBJECTS_PER_DEVICE, pointerAllocations);
+    }
+}
@@ -0,0 +1,117 @@
+package org.mozilla.vrbrowser.ui.viewmodel;
+
+import android.app.Application;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives navigation bursts through three window view models, one burst per frame, and reports how
+ * many LiveData updates each of them pushed. Every burst has to be coalesced into at most one
+ * dispatch per view model.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WindowViewModelBenchmark {
+    private static final String LOGTAG = SystemUtils.createLogtag(WindowViewModelBenchmark.class);
+    private static final int WINDOWS = 3;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int ROUNDS = 5;
+    private static final int BURSTS = 20;
+
+    private static void awaitFrame() throws InterruptedException {
+        CountDownLatch frame = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() ->
+                Choreographer.getInstance().postFrameCallback(frameTimeNanos -> frame.countDown()));
+        assertTrue(frame.await(5, TimeUnit.SECONDS));
+    }
+
+    // The updates a window gets while a page loads, several of them leave the value as it was.
+    private static void navigate(WindowViewModel aWindow, int aPage) {
+        aWindow.setIsLoading(true);
+        aWindow.setUrl("https://example" + aPage + ".com/path/" + aPage);
+        aWindow.setIsInsecure(false);
+        aWindow.setCanGoBack(aPage > 0);
+        aWindow.setCanGoForward(false);
+        aWindow.setIsBookmarked(aPage % 3 == 0);
+        aWindow.setIsPopUpAvailable(false);
+        aWindow.setIsTrackingEnabled(true);
+        aWindow.setIsLoading(false);
+    }
+
+    private static long runBursts(WindowViewModel[] aWindows) throws InterruptedException {
+        long start = System.nanoTime();
+        for (int burst = 0; burst < BURSTS; burst++) {
+            final int page = burst;
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+                for (WindowViewModel window : aWindows) {
+                    navigate(window, page);
+                }
+            });
+            awaitFrame();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @Test
+    public void navigationBursts() throws InterruptedException {
+        Application application = (Application) InstrumentationRegistry.getInstrumentation()
+                .getTargetContext().getApplicationContext();
+        WindowViewModel[] windows = new WindowViewModel[WINDOWS];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            for (int i = 0; i < WINDOWS; i++) {
+                windows[i] = new WindowViewModel(application);
+            }
+        });
+        // Let the initial dispatch of the derived fields happen.
+        awaitFrame();
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runBursts(windows);
+        }
+
+        long[] dispatches = new long[WINDOWS];
+        long[] fields = new long[WINDOWS];
+        long[] updates = new long[WINDOWS];
+        long[] unchanged = new long[WINDOWS];
+        for (int i = 0; i < WINDOWS; i++) {
+            dispatches[i] = windows[i].getTotalDispatches();
+            fields[i] = windows[i].getTotalFieldsDispatched();
+            updates[i] = windows[i].getTotalUpdates();
+            unchanged[i] = windows[i].getTotalUnchanged();
+        }
+
+        long elapsedNs = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            elapsedNs += runBursts(windows);
+        }
+
+        for (int i = 0; i < WINDOWS; i++) {
+            WindowViewModel window = windows[i];
+            long windowDispatches = window.getTotalDispatches() - dispatches[i];
+            long windowFields = window.getTotalFieldsDispatched() - fields[i];
+            long windowUpdates = window.getTotalUpdates() - updates[i];
+            long windowUnchanged = window.getTotalUnchanged() - unchanged[i];
+            Log.i(LOGTAG, "Window " + i + ": " + windowUpdates + " updates (" + windowUnchanged +
+                    " unchanged) in " + (ROUNDS * BURSTS) + " bursts, " + windowDispatches +
+                    " dispatches of " + windowFields + " fields, last dispatch " +
+                    window.getLastDispatchNanos() + "ns, max " + window.getMaxDispatchNanos() + "ns");
+
+            assertTrue(windowDispatches > 0);
+            assertTrue(windowDispatches <= ROUNDS * BURSTS);
+            assertTrue(windowFields > 0);
+            assertTrue(windowUnchanged > 0);
+        }
+        Log.i(LOGTAG, "Frame time per burst: " + (elapsedNs / (ROUNDS * BURSTS) / 1000) + "us");
+    }
+}
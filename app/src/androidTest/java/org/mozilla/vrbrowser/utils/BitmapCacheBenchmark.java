@@ -0,0 +1,105 @@
+package org.mozilla.vrbrowser.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Restores the thumbnails of many sessions at the same time from the disk tier and reports
+ * the load latency percentiles.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BitmapCacheBenchmark {
+    private static final String LOGTAG = SystemUtils.createLogtag(BitmapCacheBenchmark.class);
+    private static final int SESSIONS = 50;
+    private static final long TIMEOUT_MS = 30000;
+
+    private static void deleteRecursively(File aFile) {
+        File[] children = aFile.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        aFile.delete();
+    }
+
+    @Test
+    public void concurrentThumbnailRestore() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // Never touch the snapshots of the installed app.
+        File dir = new File(context.getCacheDir(), "snapshots-benchmark-" + SystemClock.elapsedRealtimeNanos());
+        ExecutorService writerIO = Executors.newSingleThreadExecutor();
+        ExecutorService io = Executors.newFixedThreadPool(3);
+
+        try {
+            BitmapCache writer = new BitmapCache(context, writerIO, Runnable::run, dir);
+            writer.onCreate();
+            for (int i = 0; i < SESSIONS; i++) {
+                Bitmap bitmap = Bitmap.createBitmap(BitmapCache.THUMBNAIL_MAX_SIZE, 281, Bitmap.Config.ARGB_8888);
+                bitmap.eraseColor(Color.rgb(i * 5, 255 - i * 5, 128));
+                writer.addBitmap("benchmark-" + i, bitmap);
+            }
+            long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MS;
+            while (writer.getStats().getEncodes() < SESSIONS && SystemClock.elapsedRealtime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(writer.getStats().getEncodes() >= SESSIONS);
+
+            // Only one DiskLruCache can use the journal at a time, so the writer has to be closed
+            // before the reader opens it. The close runs on the writer executor.
+            writer.onDestroy();
+            writerIO.shutdown();
+            assertTrue(writerIO.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+            // A new instance starts with an empty memory tier, so every lookup hits the disk.
+            BitmapCache reader = new BitmapCache(context, io, Runnable::run, dir);
+            reader.onCreate();
+            List<CompletableFuture<Long>> loads = new ArrayList<>();
+            for (int i = 0; i < SESSIONS; i++) {
+                final long start = SystemClock.elapsedRealtimeNanos();
+                loads.add(reader.getBitmap("benchmark-" + i).thenApply(bitmap -> {
+                    assertNotNull(bitmap);
+                    return SystemClock.elapsedRealtimeNanos() - start;
+                }));
+            }
+
+            long[] latencies = new long[SESSIONS];
+            for (int i = 0; i < SESSIONS; i++) {
+                latencies[i] = loads.get(i).get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            Arrays.sort(latencies);
+            float p50 = latencies[SESSIONS / 2] / 1e6f;
+            float p99 = latencies[(int)Math.ceil(SESSIONS * 0.99) - 1] / 1e6f;
+            Log.i(LOGTAG, "Restored " + SESSIONS + " thumbnails: p50=" + p50 + "ms p99=" + p99 + "ms " + reader.getStats());
+
+            reader.onDestroy();
+
+        } finally {
+            writerIO.shutdownNow();
+            io.shutdown();
+            io.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            deleteRecursively(dir);
+        }
+    }
+}
@@ -16,6 +16,8 @@ public class AppExecutors {
 
     private final Executor mNetworkIO;
 
+    private final Executor mBitmapIO;
+
     private final Executor mMainThread;
 
     private final HandlerThread mBackgroundThread;
@@ -23,9 +25,10 @@ public class AppExecutors {
 
     private final ScheduledExecutorService mScheduled;
 
-    private AppExecutors(Executor diskIO, Executor networkIO, Executor mainThread, ScheduledExecutorService scheduled) {
+    private AppExecutors(Executor diskIO, Executor networkIO, Executor bitmapIO, Executor mainThread, ScheduledExecutorService scheduled) {
         this.mDiskIO = diskIO;
         this.mNetworkIO = networkIO;
+        this.mBitmapIO = bitmapIO;
         this.mMainThread = mainThread;
         this.mScheduled = scheduled;
         mBackgroundThread = new HandlerThread("BackgroundThread");
@@ -33,6 +36,7 @@ public class AppExecutors {
 
     public AppExecutors() {
         this(Executors.newSingleThreadExecutor(),
+                Executors.newFixedThreadPool(3),
                 Executors.newFixedThreadPool(3),
                 new MainThreadExecutor(),
                 Executors.newSingleThreadScheduledExecutor());
@@ -46,6 +50,10 @@ public class AppExecutors {
         return mNetworkIO;
     }
 
+    public Executor bitmapIO() {
+        return mBitmapIO;
+    }
+
     public Executor mainThread() {
         return mMainThread;
     }
@@ -0,0 +1,308 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.Arrays;
+
+/**
+ * Queues the commands sent to the render thread as an opcode and payload in a preallocated ring.
+ * The ring is drained by a single runnable, so a burst of commands costs one render thread task
+ * instead of one per command. Collapsible commands replace any queued command with the same opcode,
+ * so only the latest state set before the render thread runs is applied.
+ *
+ * When the ring is full, commands are queued as separate runnables until the render thread drains it.
+ */
+public class RenderCommandQueue {
+    private static final String LOGTAG = SystemUtils.createLogtag(RenderCommandQueue.class);
+
+    private static final int CAPACITY = 128;
+    public static final int MAX_OPCODE = 62;
+    private static final int OPCODE_RUNNABLE = 63;
+    private static final int OPCODE_NONE = -1;
+
+    public interface Dispatcher {
+        void queueRunnable(@NonNull Runnable aRunnable);
+
+        /**
+         * Called on the render thread for every command. The command is reused once the call returns.
+         */
+        void dispatchCommand(@NonNull Command aCommand);
+    }
+
+    public static class Command {
+        public int opcode;
+        public int arg0;
+        public int arg1;
+        public long longArg;
+        public float x;
+        public float y;
+        public float z;
+        public float w;
+        public Object object;
+    }
+
+    private static class Commands {
+        final int[] opcode = new int[CAPACITY];
+        final int[] arg0 = new int[CAPACITY];
+        final int[] arg1 = new int[CAPACITY];
+        final long[] longArg = new long[CAPACITY];
+        final float[] x = new float[CAPACITY];
+        final float[] y = new float[CAPACITY];
+        final float[] z = new float[CAPACITY];
+        final float[] w = new float[CAPACITY];
+        final Object[] object = new Object[CAPACITY];
+
+        void copy(int aFrom, @NonNull Commands aTo, int aTarget) {
+            aTo.opcode[aTarget] = opcode[aFrom];
+            aTo.arg0[aTarget] = arg0[aFrom];
+            aTo.arg1[aTarget] = arg1[aFrom];
+            aTo.longArg[aTarget] = longArg[aFrom];
+            aTo.x[aTarget] = x[aFrom];
+            aTo.y[aTarget] = y[aFrom];
+            aTo.z[aTarget] = z[aFrom];
+            aTo.w[aTarget] = w[aFrom];
+            aTo.object[aTarget] = object[aFrom];
+            object[aFrom] = null;
+        }
+    }
+
+    private final Dispatcher mDispatcher;
+    // Guarded by this.
+    private final Commands mRing = new Commands();
+    private int mHead;
+    private int mCount;
+    // Ring index of the queued command of each collapsible opcode, -1 if there is none.
+    private final int[] mQueued = new int[MAX_OPCODE + 1];
+    private long mCollapsible;
+    private boolean mDrainScheduled;
+    private boolean mOverflowing;
+    private int mMaxDepth;
+    private int mLastDrainCount;
+    private long mLastDrainNanos;
+    private long mMaxDrainNanos;
+    private long mTotalCommands;
+    private long mTotalCollapsed;
+    private long mTotalOverflowed;
+    // Only used from the render thread.
+    private final Commands mBatch = new Commands();
+    private final Command mCommand = new Command();
+
+    public RenderCommandQueue(@NonNull Dispatcher aDispatcher) {
+        mDispatcher = aDispatcher;
+        Arrays.fill(mQueued, -1);
+    }
+
+    /**
+     * Marks the commands with this opcode as idempotent: queuing one drops the previous one
+     * still in the queue.
+     */
+    public synchronized void setCollapsible(int aOpcode) {
+        checkOpcode(aOpcode);
+        mCollapsible |= 1L << aOpcode;
+    }
+
+    public void post(@NonNull Runnable aRunnable) {
+        push(OPCODE_RUNNABLE, 0, 0, 0, 0.0f, 0.0f, 0.0f, 0.0f, aRunnable);
+    }
+
+    public void post(int aOpcode) {
+        post(aOpcode, 0, 0);
+    }
+
+    public void post(int aOpcode, int aArg0) {
+        post(aOpcode, aArg0, 0);
+    }
+
+    public void post(int aOpcode, int aArg0, int aArg1) {
+        checkOpcode(aOpcode);
+        push(aOpcode, aArg0, aArg1, 0, 0.0f, 0.0f, 0.0f, 0.0f, null);
+    }
+
+    public void post(int aOpcode, long aLongArg) {
+        checkOpcode(aOpcode);
+        push(aOpcode, 0, 0, aLongArg, 0.0f, 0.0f, 0.0f, 0.0f, null);
+    }
+
+    public void post(int aOpcode, float aX) {
+        checkOpcode(aOpcode);
+        push(aOpcode, 0, 0, 0, aX, 0.0f, 0.0f, 0.0f, null);
+    }
+
+    public void post(int aOpcode, int aArg0, float aX, float aY, float aZ, float aW) {
+        checkOpcode(aOpcode);
+        push(aOpcode, aArg0, 0, 0, aX, aY, aZ, aW, null);
+    }
+
+    private static void checkOpcode(int aOpcode) {
+        if (aOpcode < 0 || aOpcode > MAX_OPCODE) {
+            throw new IllegalArgumentException("Invalid opcode: " + aOpcode);
+        }
+    }
+
+    private synchronized void push(int aOpcode, int aArg0, int aArg1, long aLongArg, float aX, float aY, float aZ, float aW, @Nullable Object aObject) {
+        // Runnables are queued while holding the lock so concurrent producers can't reorder them.
+        mTotalCommands++;
+        boolean collapsible = aOpcode <= MAX_OPCODE && (mCollapsible & (1L << aOpcode)) != 0;
+        if (collapsible && mQueued[aOpcode] >= 0) {
+            // Dropped instead of updated in place so the command keeps its order relative to the
+            // commands queued after the previous one.
+            mRing.opcode[mQueued[aOpcode]] = OPCODE_NONE;
+            mQueued[aOpcode] = -1;
+            mTotalCollapsed++;
+        }
+
+        // Once the ring is full, later commands can't go back to it until it has been drained,
+        // otherwise they would run before the ones that overflowed.
+        if (mCount < CAPACITY && !mOverflowing) {
+            int index = (mHead + mCount) % CAPACITY;
+            mRing.opcode[index] = aOpcode;
+            mRing.arg0[index] = aArg0;
+            mRing.arg1[index] = aArg1;
+            mRing.longArg[index] = aLongArg;
+            mRing.x[index] = aX;
+            mRing.y[index] = aY;
+            mRing.z[index] = aZ;
+            mRing.w[index] = aW;
+            mRing.object[index] = aObject;
+            mCount++;
+            mMaxDepth = Math.max(mMaxDepth, mCount);
+            if (collapsible) {
+                mQueued[aOpcode] = index;
+            }
+            if (!mDrainScheduled) {
+                mDrainScheduled = true;
+                mDispatcher.queueRunnable(mDrainRunnable);
+            }
+            return;
+        }
+
+        mOverflowing = true;
+        mTotalOverflowed++;
+        Command command = new Command();
+        command.opcode = aOpcode;
+        command.arg0 = aArg0;
+        command.arg1 = aArg1;
+        command.longArg = aLongArg;
+        command.x = aX;
+        command.y = aY;
+        command.z = aZ;
+        command.w = aW;
+        command.object = aObject;
+        mDispatcher.queueRunnable(() -> dispatch(command));
+    }
+
+    private final Runnable mDrainRunnable = this::drain;
+
+    private void drain() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        int count;
+        long overflowed = 0;
+        synchronized (this) {
+            count = mCount;
+            for (int i = 0; i < count; i++) {
+                mRing.copy((mHead + i) % CAPACITY, mBatch, i);
+            }
+            mHead = (mHead + count) % CAPACITY;
+            mCount = 0;
+            Arrays.fill(mQueued, -1);
+            mDrainScheduled = false;
+            if (mOverflowing) {
+                overflowed = mTotalOverflowed;
+                mOverflowing = false;
+            }
+        }
+
+        if (overflowed > 0) {
+            Log.w(LOGTAG, "Render command queue full, queued " + overflowed + " commands as runnables so far");
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (mBatch.opcode[i] == OPCODE_NONE) {
+                mBatch.object[i] = null;
+                continue;
+            }
+            mCommand.opcode = mBatch.opcode[i];
+            mCommand.arg0 = mBatch.arg0[i];
+            mCommand.arg1 = mBatch.arg1[i];
+            mCommand.longArg = mBatch.longArg[i];
+            mCommand.x = mBatch.x[i];
+            mCommand.y = mBatch.y[i];
+            mCommand.z = mBatch.z[i];
+            mCommand.w = mBatch.w[i];
+            mCommand.object = mBatch.object[i];
+            mBatch.object[i] = null;
+            dispatch(mCommand);
+            mCommand.object = null;
+        }
+
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        synchronized (this) {
+            mLastDrainCount = count;
+            mLastDrainNanos = elapsed;
+            mMaxDrainNanos = Math.max(mMaxDrainNanos, elapsed);
+        }
+    }
+
+    private void dispatch(@NonNull Command aCommand) {
+        if (aCommand.opcode == OPCODE_RUNNABLE) {
+            ((Runnable) aCommand.object).run();
+        } else {
+            mDispatcher.dispatchCommand(aCommand);
+        }
+    }
+
+    /**
+     * @return Number of commands waiting for the render thread.
+     */
+    public synchronized int getDepth() {
+        return mCount;
+    }
+
+    public synchronized int getMaxDepth() {
+        return mMaxDepth;
+    }
+
+    /**
+     * @return Number of ring slots processed by the last drain, including collapsed commands.
+     */
+    public synchronized int getLastDrainCount() {
+        return mLastDrainCount;
+    }
+
+    public synchronized long getLastDrainNanos() {
+        return mLastDrainNanos;
+    }
+
+    public synchronized long getMaxDrainNanos() {
+        return mMaxDrainNanos;
+    }
+
+    public synchronized long getTotalCommands() {
+        return mTotalCommands;
+    }
+
+    /**
+     * @return Number of queued commands dropped because a newer one with the same opcode was queued.
+     */
+    public synchronized long getTotalCollapsed() {
+        return mTotalCollapsed;
+    }
+
+    /**
+     * @return Number of commands queued as separate runnables because the ring was full.
+     */
+    public synchronized long getTotalOverflowed() {
+        return mTotalOverflowed;
+    }
+}
@@ -56,6 +56,7 @@ import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.crashreporting.CrashReporterService;
 import org.mozilla.vrbrowser.crashreporting.GlobalExceptionHandler;
 import org.mozilla.vrbrowser.geolocation.GeolocationWrapper;
+import org.mozilla.vrbrowser.input.InputEventQueue;
 import org.mozilla.vrbrowser.input.MotionEventGenerator;
 import org.mozilla.vrbrowser.search.SearchEngineWrapper;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
@@ -72,6 +73,7 @@ import org.mozilla.vrbrowser.ui.widgets.WebXRInterstitialWidget;
 import org.mozilla.vrbrowser.ui.widgets.Widget;
 import org.mozilla.vrbrowser.ui.widgets.WidgetManagerDelegate;
 import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
+import org.mozilla.vrbrowser.ui.widgets.WidgetUpdateQueue;
 import org.mozilla.vrbrowser.ui.widgets.WindowWidget;
 import org.mozilla.vrbrowser.ui.widgets.Windows;
 import org.mozilla.vrbrowser.ui.widgets.dialogs.CrashDialogWidget;
@@ -155,6 +157,27 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     static final int SwipeDelay = 1000; // milliseconds
     static final long RESET_CRASH_COUNT_DELAY = 5000;
 
+    // Render thread commands
+    private static final int COMMAND_UPDATE_VISIBLE_WIDGETS = 0;
+    private static final int COMMAND_REMOVE_WIDGET = 1;
+    private static final int COMMAND_START_WIDGET_RESIZE = 2;
+    private static final int COMMAND_FINISH_WIDGET_RESIZE = 3;
+    private static final int COMMAND_START_WIDGET_MOVE = 4;
+    private static final int COMMAND_FINISH_WIDGET_MOVE = 5;
+    private static final int COMMAND_SET_WORLD_BRIGHTNESS = 6;
+    private static final int COMMAND_EXIT_IMMERSIVE = 7;
+    private static final int COMMAND_UPDATE_ENVIRONMENT = 8;
+    private static final int COMMAND_UPDATE_POINTER_COLOR = 9;
+    private static final int COMMAND_SHOW_VR_VIDEO = 10;
+    private static final int COMMAND_HIDE_VR_VIDEO = 11;
+    private static final int COMMAND_RECENTER_UI_YAW = 12;
+    private static final int COMMAND_SET_CONTROLLERS_VISIBLE = 13;
+    private static final int COMMAND_RUN_CALLBACK = 14;
+    private static final int COMMAND_SET_CYLINDER_DENSITY = 15;
+    private static final int COMMAND_SET_CPU_LEVEL = 16;
+    private static final int COMMAND_SET_WEBXR_INTERSTITIAL_STATE = 17;
+    private static final int COMMAND_SET_IS_SERVO = 18;
+
     static final String LOGTAG = SystemUtils.createLogtag(VRBrowserActivity.class);
     ConcurrentHashMap<Integer, Widget> mWidgets;
     private int mWidgetHandleIndex = 1;
@@ -192,6 +215,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     private Set<String> mPoorPerformanceAllowList;
     private float mCurrentCylinderDensity = 0;
     private boolean mHideWebXRIntersitial = false;
+    private InputEventQueue mInputEventQueue;
+    private WidgetUpdateQueue mWidgetUpdateQueue;
+    private RenderCommandQueue mCommandQueue;
 
     private boolean callOnAudioManager(Consumer<AudioManager> fn) {
         if (mAudioManager == null) {
@@ -257,6 +283,19 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         registerReceiver(mCrashReceiver, intentFilter, BuildConfig.APPLICATION_ID + "." + getString(R.string.app_permission_name), null);
 
         mLastGesture = NoGesture;
+        // Native input may arrive as soon as the platform activity is created.
+        mInputEventQueue = new InputEventQueue(mInputDispatcher);
+        mCommandQueue = new RenderCommandQueue(mCommandDispatcher);
+        // Only the latest value of these matters when several are queued before the render thread runs.
+        mCommandQueue.setCollapsible(COMMAND_UPDATE_VISIBLE_WIDGETS);
+        mCommandQueue.setCollapsible(COMMAND_SET_WORLD_BRIGHTNESS);
+        mCommandQueue.setCollapsible(COMMAND_UPDATE_ENVIRONMENT);
+        mCommandQueue.setCollapsible(COMMAND_UPDATE_POINTER_COLOR);
+        mCommandQueue.setCollapsible(COMMAND_SET_CONTROLLERS_VISIBLE);
+        mCommandQueue.setCollapsible(COMMAND_SET_CYLINDER_DENSITY);
+        mCommandQueue.setCollapsible(COMMAND_SET_CPU_LEVEL);
+        mCommandQueue.setCollapsible(COMMAND_SET_IS_SERVO);
+        mWidgetUpdateQueue = new WidgetUpdateQueue(mWidgetUpdateDispatcher);
         super.onCreate(savedInstanceState);
 
         mWidgetUpdateListeners = new LinkedList<>();
@@ -284,12 +323,12 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mSettings = SettingsStore.getInstance(this);
         mSettings.initModel(this);
 
-        queueRunnable(() -> {
+        mCommandQueue.post(() -> {
             createOffscreenDisplay();
             createCaptureSurface();
         });
         final String tempPath = getCacheDir().getAbsolutePath();
-        queueRunnable(() -> setTemporaryFilePath(tempPath));
+        mCommandQueue.post(() -> setTemporaryFilePath(tempPath));
 
         initializeWidgets();
 
@@ -362,7 +401,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                 @CPULevelFlags int cpuLevel = mWindows.isVideoAvailable() ? WidgetManagerDelegate.CPU_LEVEL_HIGH :
                         WidgetManagerDelegate.CPU_LEVEL_NORMAL;
 
-                queueRunnable(() -> setCPULevelNative(cpuLevel));
+                mCommandQueue.post(COMMAND_SET_CPU_LEVEL, cpuLevel);
             }
         });
 
@@ -521,6 +560,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mViewModelStore.clear();
         // Always exit to work around https://github.com/MozillaReality/FirefoxReality/issues/3363
         finish();
+        SettingsStore.getInstance(this).flush();
         System.exit(0);
     }
 
@@ -711,9 +751,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
             case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
             case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
-                // It looks like these come in all at the same time so just always suspend inactive Sessions.
+                // Shrink the live session budget, the coldest inactive Sessions are suspended first.
                 Log.d(LOGTAG, "Memory pressure, suspending inactive sessions.");
-                SessionStore.get().suspendAllInactiveSessions();
+                SessionStore.get().onTrimMemory(level);
                 break;
             default:
                 Log.e(LOGTAG, "onTrimMemory unknown level: " + level);
@@ -725,7 +765,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     @Override
     public void onBackPressed() {
         if (mIsPresentingImmersive) {
-            queueRunnable(this::exitImmersiveNative);
+            mCommandQueue.post(COMMAND_EXIT_IMMERSIVE);
             return;
         }
         if (mBackHandlers.size() > 0) {
@@ -801,7 +841,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     private void exitImmersiveSync() {
         synchronized (mWaitLock) {
-            queueRunnable(mExitImmersive);
+            mCommandQueue.post(mExitImmersive);
             try {
                 mWaitLock.wait();
             } catch (InterruptedException e) {
@@ -850,7 +890,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
             Runnable aFirstDrawCallback = () -> {
                 if (aNativeCallback != 0) {
-                    queueRunnable(() -> runCallbackNative(aNativeCallback));
+                    mCommandQueue.post(COMMAND_RUN_CALLBACK, aNativeCallback);
                 }
                 if (aSurface != null && !widget.isFirstPaintReady()) {
                     widget.setFirstPaintReady(true);
@@ -875,7 +915,102 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     @Keep
     @SuppressWarnings("unused")
     void handleMotionEvent(final int aHandle, final int aDevice, final boolean aFocused, final boolean aPressed, final float aX, final float aY) {
-        runOnUiThread(() -> {
+        mInputEventQueue.pushMotionEvent(aHandle, aDevice, aFocused, aPressed, aX, aY);
+    }
+
+    @Keep
+    @SuppressWarnings("unused")
+    void handleScrollEvent(final int aHandle, final int aDevice, final float aX, final float aY) {
+        mInputEventQueue.pushScrollEvent(aHandle, aDevice, aX, aY);
+    }
+
+    private RenderCommandQueue.Dispatcher mCommandDispatcher = new RenderCommandQueue.Dispatcher() {
+        @Override
+        public void queueRunnable(@NonNull Runnable aRunnable) {
+            VRBrowserActivity.this.queueRunnable(aRunnable);
+        }
+
+        @Override
+        public void dispatchCommand(@NonNull RenderCommandQueue.Command aCommand) {
+            switch (aCommand.opcode) {
+                case COMMAND_UPDATE_VISIBLE_WIDGETS:
+                    updateVisibleWidgetsNative();
+                    break;
+                case COMMAND_REMOVE_WIDGET:
+                    removeWidgetNative(aCommand.arg0);
+                    break;
+                case COMMAND_START_WIDGET_RESIZE:
+                    startWidgetResizeNative(aCommand.arg0, aCommand.x, aCommand.y, aCommand.z, aCommand.w);
+                    break;
+                case COMMAND_FINISH_WIDGET_RESIZE:
+                    finishWidgetResizeNative(aCommand.arg0);
+                    break;
+                case COMMAND_START_WIDGET_MOVE:
+                    startWidgetMoveNative(aCommand.arg0, aCommand.arg1);
+                    break;
+                case COMMAND_FINISH_WIDGET_MOVE:
+                    finishWidgetMoveNative();
+                    break;
+                case COMMAND_SET_WORLD_BRIGHTNESS:
+                    setWorldBrightnessNative(aCommand.x);
+                    break;
+                case COMMAND_EXIT_IMMERSIVE:
+                    exitImmersiveNative();
+                    break;
+                case COMMAND_UPDATE_ENVIRONMENT:
+                    updateEnvironmentNative();
+                    break;
+                case COMMAND_UPDATE_POINTER_COLOR:
+                    updatePointerColorNative();
+                    break;
+                case COMMAND_SHOW_VR_VIDEO:
+                    showVRVideoNative(aCommand.arg0, aCommand.arg1);
+                    break;
+                case COMMAND_HIDE_VR_VIDEO:
+                    hideVRVideoNative();
+                    break;
+                case COMMAND_RECENTER_UI_YAW:
+                    recenterUIYawNative(aCommand.arg0);
+                    break;
+                case COMMAND_SET_CONTROLLERS_VISIBLE:
+                    setControllersVisibleNative(aCommand.arg0 != 0);
+                    break;
+                case COMMAND_RUN_CALLBACK:
+                    runCallbackNative(aCommand.longArg);
+                    break;
+                case COMMAND_SET_CYLINDER_DENSITY:
+                    setCylinderDensityNative(aCommand.x);
+                    break;
+                case COMMAND_SET_CPU_LEVEL:
+                    setCPULevelNative(aCommand.arg0);
+                    break;
+                case COMMAND_SET_WEBXR_INTERSTITIAL_STATE:
+                    setWebXRIntersitialStateNative(aCommand.arg0);
+                    break;
+                case COMMAND_SET_IS_SERVO:
+                    setIsServo(aCommand.arg0 != 0);
+                    break;
+                default:
+                    Log.e(LOGTAG, "Unknown render command: " + aCommand.opcode);
+            }
+        }
+    };
+
+    private WidgetUpdateQueue.Dispatcher mWidgetUpdateDispatcher = new WidgetUpdateQueue.Dispatcher() {
+        @Override
+        public void queueRunnable(@NonNull Runnable aRunnable) {
+            mCommandQueue.post(aRunnable);
+        }
+
+        @Override
+        public void updateWidget(int aHandle, @NonNull WidgetPlacement aPlacement) {
+            updateWidgetNative(aHandle, aPlacement);
+        }
+    };
+
+    private InputEventQueue.Dispatcher mInputDispatcher = new InputEventQueue.Dispatcher() {
+        @Override
+        public void dispatchMotionEvent(int aHandle, int aDevice, boolean aFocused, boolean aPressed, float aX, float aY) {
             Widget widget = mWidgets.get(aHandle);
             if (!isWidgetInputEnabled(widget)) {
                 widget = null; // Fallback to mRootWidget in order to allow world clicks to dismiss UI.
@@ -895,13 +1030,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             } else {
                 MotionEventGenerator.dispatch(widget, aDevice, aFocused, aPressed, x, y);
             }
-        });
-    }
+        }
 
-    @Keep
-    @SuppressWarnings("unused")
-    void handleScrollEvent(final int aHandle, final int aDevice, final float aX, final float aY) {
-        runOnUiThread(() -> {
+        @Override
+        public void dispatchScrollEvent(int aHandle, int aDevice, float aX, float aY) {
             Widget widget = mWidgets.get(aHandle);
             if (!isWidgetInputEnabled(widget)) {
                 return;
@@ -912,8 +1044,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             } else {
                 Log.e(LOGTAG, "Failed to find widget for scroll event: " + aHandle);
             }
-        });
-    }
+        }
+    };
 
     @Keep
     @SuppressWarnings("unused")
@@ -1062,7 +1194,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                 Log.d(LOGTAG, "Compositor resume begin");
                 mWindows.resumeCompositor();
                 if (aCallback != 0) {
-                    queueRunnable(() -> runCallbackNative(aCallback));
+                    mCommandQueue.post(COMMAND_RUN_CALLBACK, aCallback);
                 }
                 Log.d(LOGTAG, "Compositor resume end");
             }
@@ -1114,7 +1246,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
                 ex.printStackTrace();
             }
             if (aNativeCallback != 0) {
-                queueRunnable(() -> runCallbackNative(aNativeCallback));
+                mCommandQueue.post(COMMAND_RUN_CALLBACK, aNativeCallback);
             }
         });
     }
@@ -1326,7 +1458,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         ((View)aWidget).setVisibility(aWidget.getPlacement().visible ? View.VISIBLE : View.GONE);
         final int handle = aWidget.getHandle();
         final WidgetPlacement clone = aWidget.getPlacement().clone();
-        queueRunnable(() -> addWidgetNative(handle, clone));
+        // Keep the native widgets updated in the same order they were requested.
+        mWidgetUpdateQueue.flush();
+        mCommandQueue.post(() -> addWidgetNative(handle, clone));
         updateActiveDialog(aWidget);
     }
 
@@ -1335,9 +1469,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         if (aWidget == null) {
             return;
         }
-        final int handle = aWidget.getHandle();
-        final WidgetPlacement clone = aWidget.getPlacement().clone();
-        queueRunnable(() -> updateWidgetNative(handle, clone));
+        mWidgetUpdateQueue.updateWidget(aWidget);
 
         final int textureWidth = aWidget.getPlacement().textureWidth();
         final int textureHeight = aWidget.getPlacement().textureHeight();
@@ -1383,7 +1515,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mWidgets.remove(aWidget.getHandle());
         mWidgetContainer.removeView((View) aWidget);
         aWidget.setFirstPaintReady(false);
-        queueRunnable(() -> removeWidgetNative(aWidget.getHandle()));
+        mWidgetUpdateQueue.removeWidget(aWidget.getHandle());
+        mCommandQueue.post(COMMAND_REMOVE_WIDGET, aWidget.getHandle());
         if (aWidget == mActiveDialog) {
             mActiveDialog = null;
         }
@@ -1391,7 +1524,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void updateVisibleWidgets() {
-        queueRunnable(this::updateVisibleWidgetsNative);
+        mWidgetUpdateQueue.flush();
+        mCommandQueue.post(COMMAND_UPDATE_VISIBLE_WIDGETS);
     }
 
     @Override
@@ -1400,7 +1534,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             return;
         }
         mWindows.enterResizeMode();
-        queueRunnable(() -> startWidgetResizeNative(aWidget.getHandle(), aMaxWidth, aMaxHeight, minWidth, minHeight));
+        mWidgetUpdateQueue.flush();
+        mCommandQueue.post(COMMAND_START_WIDGET_RESIZE, aWidget.getHandle(), aMaxWidth, aMaxHeight, minWidth, minHeight);
     }
 
     @Override
@@ -1409,7 +1544,8 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             return;
         }
         mWindows.exitResizeMode();
-        queueRunnable(() -> finishWidgetResizeNative(aWidget.getHandle()));
+        mWidgetUpdateQueue.flush();
+        mCommandQueue.post(COMMAND_FINISH_WIDGET_RESIZE, aWidget.getHandle());
     }
 
     @Override
@@ -1417,12 +1553,14 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         if (aWidget == null) {
             return;
         }
-        queueRunnable(() -> startWidgetMoveNative(aWidget.getHandle(), aMoveBehaviour));
+        mWidgetUpdateQueue.flush();
+        mCommandQueue.post(COMMAND_START_WIDGET_MOVE, aWidget.getHandle(), aMoveBehaviour);
     }
 
     @Override
     public void finishWidgetMove() {
-        queueRunnable(this::finishWidgetMoveNative);
+        mWidgetUpdateQueue.flush();
+        mCommandQueue.post(COMMAND_FINISH_WIDGET_MOVE);
     }
 
     @Override
@@ -1486,7 +1624,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void setWebXRIntersitialState(@WebXRInterstitialState int aState) {
-        queueRunnable(() -> setWebXRIntersitialStateNative(aState));
+        mCommandQueue.post(COMMAND_SET_WEBXR_INTERSTITIAL_STATE, aState);
     }
 
     @Override
@@ -1511,13 +1649,13 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void setIsServoSession(boolean aIsServo) {
-      queueRunnable(() -> setIsServo(aIsServo));
+      mCommandQueue.post(COMMAND_SET_IS_SERVO, aIsServo ? 1 : 0);
     }
 
     @Override
     public void pushWorldBrightness(Object aKey, float aBrightness) {
         if (mCurrentBrightness.second != aBrightness) {
-            queueRunnable(() -> setWorldBrightnessNative(aBrightness));
+            mCommandQueue.post(COMMAND_SET_WORLD_BRIGHTNESS, aBrightness);
         }
         mBrightnessQueue.add(mCurrentBrightness);
         mCurrentBrightness = Pair.create(aKey, aBrightness);
@@ -1528,7 +1666,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         if (mCurrentBrightness.first == aKey) {
             if (mCurrentBrightness.second != aBrightness) {
                 mCurrentBrightness = Pair.create(aKey, aBrightness);
-                queueRunnable(() -> setWorldBrightnessNative(aBrightness));
+                mCommandQueue.post(COMMAND_SET_WORLD_BRIGHTNESS, aBrightness);
             }
         } else {
             for (int i = mBrightnessQueue.size() - 1; i >= 0; --i) {
@@ -1549,7 +1687,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             float brightness = mCurrentBrightness.second;
             mCurrentBrightness = mBrightnessQueue.removeLast();
             if (mCurrentBrightness.second != brightness) {
-                queueRunnable(() -> setWorldBrightnessNative(mCurrentBrightness.second));
+                mCommandQueue.post(COMMAND_SET_WORLD_BRIGHTNESS, mCurrentBrightness.second);
             }
 
             return;
@@ -1564,7 +1702,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void setControllersVisible(final boolean aVisible) {
-        queueRunnable(() -> setControllersVisibleNative(aVisible));
+        mCommandQueue.post(COMMAND_SET_CONTROLLERS_VISIBLE, aVisible ? 1 : 0);
     }
 
     @Override
@@ -1579,12 +1717,12 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void updateEnvironment() {
-        queueRunnable(this::updateEnvironmentNative);
+        mCommandQueue.post(COMMAND_UPDATE_ENVIRONMENT);
     }
 
     @Override
     public void updatePointerColor() {
-        queueRunnable(this::updatePointerColorNative);
+        mCommandQueue.post(COMMAND_UPDATE_POINTER_COLOR);
     }
 
     @Override
@@ -1615,17 +1753,17 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void showVRVideo(final int aWindowHandle, final @VideoProjectionMenuWidget.VideoProjectionFlags int aVideoProjection) {
-        queueRunnable(() -> showVRVideoNative(aWindowHandle, aVideoProjection));
+        mCommandQueue.post(COMMAND_SHOW_VR_VIDEO, aWindowHandle, aVideoProjection);
     }
 
     @Override
     public void hideVRVideo() {
-        queueRunnable(this::hideVRVideoNative);
+        mCommandQueue.post(COMMAND_HIDE_VR_VIDEO);
     }
 
     @Override
     public void recenterUIYaw(@YawTarget int aTarget) {
-        queueRunnable(() -> recenterUIYawNative(aTarget));
+        mCommandQueue.post(COMMAND_RECENTER_UI_YAW, aTarget);
     }
 
     @Override
@@ -1634,7 +1772,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             return;
         }
         mCurrentCylinderDensity = aDensity;
-        queueRunnable(() -> setCylinderDensityNative(aDensity));
+        mCommandQueue.post(COMMAND_SET_CYLINDER_DENSITY, aDensity);
         if (mWindows != null) {
             mWindows.updateCurvedMode(false);
         }
@@ -1690,7 +1828,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     public void saveState() {
-        mWindows.saveState();
+        mWindows.flushState();
     }
 
     @Override
@@ -84,7 +84,7 @@ public class VRBrowserApplication extends Application implements AppServicesProv
         mDownloadsManager = new DownloadsManager(activityContext);
         mDownloadsManager.init();
         mSpeechRecognizer = new MozillaSpeechRecognizer(activityContext);
-        mBitmapCache = new BitmapCache(activityContext, mAppExecutors.diskIO(), mAppExecutors.mainThread());
+        mBitmapCache = new BitmapCache(activityContext, mAppExecutors.bitmapIO(), mAppExecutors.mainThread());
         mEnvironmentsManager = new EnvironmentsManager(activityContext);
         mEnvironmentsManager.init();
         mAddons = new Addons(activityContext, mSessionStore);
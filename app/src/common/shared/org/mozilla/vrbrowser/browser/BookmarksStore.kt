@@ -12,6 +12,9 @@ import android.os.Looper
 import androidx.lifecycle.ProcessLifecycleOwner
 import kotlinx.coroutines.GlobalScope
 import kotlinx.coroutines.future.future
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import mozilla.appservices.places.BookmarkRoot
 import mozilla.components.concept.storage.BookmarkNode
 import mozilla.components.concept.storage.BookmarkNodeType
@@ -20,6 +23,7 @@ import mozilla.components.support.base.log.logger.Logger
 import org.mozilla.vrbrowser.R
 import org.mozilla.vrbrowser.VRBrowserApplication
 import org.mozilla.vrbrowser.utils.SystemUtils
+import java.util.Locale
 import java.util.concurrent.CompletableFuture
 
 const val DESKTOP_ROOT = "fake_desktop_root"
@@ -42,6 +46,24 @@ class BookmarksStore constructor(val context: Context) {
             return coreRoots.contains(guid)
         }
 
+        /**
+         * Normalizes a URL the way Places stores it: lower case scheme and host and a "/" path
+         * when there is none.
+         */
+        private fun normalizeUrl(url: String): String {
+            val schemeEnd = url.indexOf("://")
+            if (schemeEnd < 0) {
+                return url
+            }
+            var hostEnd = url.indexOfAny(charArrayOf('/', '?', '#'), schemeEnd + 3)
+            if (hostEnd < 0) {
+                hostEnd = url.length
+            }
+            val origin = url.substring(0, hostEnd).toLowerCase(Locale.ROOT)
+            val rest = url.substring(hostEnd)
+            return if (rest.startsWith("/")) origin + rest else "$origin/$rest"
+        }
+
         /**
          * User-friendly titles for various internal bookmark folders.
          */
@@ -64,13 +86,23 @@ class BookmarksStore constructor(val context: Context) {
     private var titles = rootTitles(context)
     private val accountManager = (context.applicationContext as VRBrowserApplication).services.accountManager
 
+    // Number of bookmarks of every bookmarked URL, keyed by normalized URL, so the bookmarked state
+    // can be checked on the UI thread without querying Places. Changes made through this store and
+    // the index reloads are serialized by indexMutex, so a reload never misses them.
+    private val bookmarkedUrls = HashMap<String, Int>()
+    // Changes already applied to bookmarkedUrls whose Places write hasn't run yet, so a reload
+    // keeps them. Guarded by bookmarkedUrls.
+    private val pendingChanges = HashMap<String, Int>()
+    private val indexMutex = Mutex()
+    private var indexLoaded = false
+
     // Bookmarks might have changed during sync, so notify our listeners.
     private val syncStatusObserver = object : SyncStatusObserver {
         override fun onStarted() {}
 
         override fun onIdle() {
             Logger(LOGTAG).debug("Detected that sync is finished, notifying listeners")
-            notifyListeners()
+            reloadIndex()
         }
 
         override fun onError(error: Exception?) {}
@@ -80,6 +112,7 @@ class BookmarksStore constructor(val context: Context) {
         accountManager.registerForSyncEvents(
             syncStatusObserver, ProcessLifecycleOwner.get(), false
         )
+        reloadIndex()
     }
 
     // Update the folder strings after a language update
@@ -108,7 +141,7 @@ class BookmarksStore constructor(val context: Context) {
 
     internal fun updateStorage() {
         storage = (context.applicationContext as VRBrowserApplication).places.bookmarks
-        notifyListeners()
+        reloadIndex()
     }
 
     fun getBookmarks(guid: String): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
@@ -144,26 +177,153 @@ class BookmarksStore constructor(val context: Context) {
         }
     }
 
-    fun addBookmark(aURL: String, aTitle: String) = GlobalScope.future {
-        storage.addItem(BookmarkRoot.Mobile.id, aURL, aTitle, null)
-        notifyAddedListeners()
+    fun addBookmark(aURL: String, aTitle: String): CompletableFuture<Unit> {
+        // Marked right away, so a second click before the write runs sees the URL as bookmarked
+        // instead of adding it again.
+        val key = normalizeUrl(aURL)
+        synchronized(bookmarkedUrls) {
+            changeCount(key, 1)
+            pendingChanges[key] = (pendingChanges[key] ?: 0) + 1
+        }
+        return GlobalScope.future {
+            indexMutex.withLock {
+                try {
+                    storage.addItem(BookmarkRoot.Mobile.id, aURL, aTitle, null)
+                } catch (e: Exception) {
+                    synchronized(bookmarkedUrls) {
+                        changeCount(key, -1)
+                    }
+                    throw e
+                } finally {
+                    synchronized(bookmarkedUrls) {
+                        changePending(key, -1)
+                    }
+                }
+            }
+            notifyAddedListeners()
+        }
     }
 
-    fun deleteBookmarkByURL(aURL: String) = GlobalScope.future {
-        val bookmark = getBookmarkByUrl(aURL)
-        if (bookmark != null) {
-            storage.deleteNode(bookmark.guid)
+    fun deleteBookmarkByURL(aURL: String): CompletableFuture<Unit> {
+        val key = normalizeUrl(aURL)
+        val removed = synchronized(bookmarkedUrls) {
+            if (bookmarkedUrls.containsKey(key)) {
+                changeCount(key, -1)
+                pendingChanges[key] = (pendingChanges[key] ?: 0) - 1
+                true
+            } else {
+                false
+            }
+        }
+        return GlobalScope.future {
+            indexMutex.withLock {
+                try {
+                    getBookmarkByUrl(aURL)?.let { storage.deleteNode(it.guid) }
+                } catch (e: Exception) {
+                    if (removed) {
+                        synchronized(bookmarkedUrls) {
+                            changeCount(key, 1)
+                        }
+                    }
+                    throw e
+                } finally {
+                    if (removed) {
+                        synchronized(bookmarkedUrls) {
+                            changePending(key, 1)
+                        }
+                    }
+                }
+            }
+            notifyListeners()
         }
-        notifyListeners()
     }
 
     fun deleteBookmarkById(aId: String) = GlobalScope.future {
-        storage.deleteNode(aId)
+        indexMutex.withLock {
+            storage.deleteNode(aId)
+            // The node might be a folder, reload the index instead of working out what it contained.
+            loadIndex()
+        }
         notifyListeners()
     }
 
-    fun isBookmarked(aURL: String): CompletableFuture<Boolean> = GlobalScope.future {
-        getBookmarkByUrl(aURL) != null
+    /**
+     * Checks the in-memory index, so it can be called on the UI thread. Returns false until the
+     * index has been loaded, listeners are notified once it is.
+     */
+    fun isBookmarked(aURL: String): Boolean {
+        val key = normalizeUrl(aURL)
+        return synchronized(bookmarkedUrls) {
+            bookmarkedUrls.containsKey(key)
+        }
+    }
+
+    /**
+     * Bulk version of [isBookmarked] for lists that show the bookmarked state of many rows at once.
+     */
+    fun areBookmarked(aURLs: List<String>): BooleanArray {
+        val keys = aURLs.map { normalizeUrl(it) }
+        return synchronized(bookmarkedUrls) {
+            BooleanArray(keys.size) { bookmarkedUrls.containsKey(keys[it]) }
+        }
+    }
+
+    fun isIndexLoaded(): Boolean = synchronized(bookmarkedUrls) {
+        indexLoaded
+    }
+
+    private fun reloadIndex() {
+        GlobalScope.launch {
+            indexMutex.withLock {
+                loadIndex()
+            }
+            notifyListeners()
+        }
+    }
+
+    private suspend fun loadIndex() {
+        val urls = HashMap<String, Int>()
+        try {
+            storage.getTree(BookmarkRoot.Root.id, true)?.let { addToIndex(it, urls) }
+        } catch (e: Exception) {
+            Logger(LOGTAG).error("Error loading the bookmarked URLs", e)
+            return
+        }
+        synchronized(bookmarkedUrls) {
+            bookmarkedUrls.clear()
+            bookmarkedUrls.putAll(urls)
+            pendingChanges.forEach { (key, delta) -> changeCount(key, delta) }
+            indexLoaded = true
+        }
+        Logger(LOGTAG).debug("Loaded ${urls.size} bookmarked URLs")
+    }
+
+    private fun addToIndex(node: BookmarkNode, urls: HashMap<String, Int>) {
+        node.url?.let {
+            val key = normalizeUrl(it)
+            urls[key] = (urls[key] ?: 0) + 1
+        }
+        node.children?.forEach { addToIndex(it, urls) }
+    }
+
+    // Must be called holding the bookmarkedUrls lock.
+    private fun changeCount(key: String, delta: Int) {
+        val count = (bookmarkedUrls[key] ?: 0) + delta
+        if (count > 0) {
+            bookmarkedUrls[key] = count
+        } else {
+            bookmarkedUrls.remove(key)
+        }
+    }
+
+    // Must be called holding the bookmarkedUrls lock.
+    private fun changePending(key: String, delta: Int) {
+        val pending = (pendingChanges[key] ?: 0) + delta
+        if (pending != 0) {
+            pendingChanges[key] = pending
+        } else {
+            pendingChanges.remove(key)
+        }
     }
 
     fun getTree(guid: String, recursive: Boolean): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
@@ -181,8 +341,9 @@ class BookmarksStore constructor(val context: Context) {
             return null
         }
 
+        val key = normalizeUrl(aURL)
         for (bookmark in bookmarks) {
-            if (bookmark.url.equals(aURL)) {
+            if (bookmark.url?.let { normalizeUrl(it) } == key) {
                 return bookmark
             }
         }
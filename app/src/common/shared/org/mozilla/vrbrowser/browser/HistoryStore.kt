@@ -8,13 +8,20 @@ package org.mozilla.vrbrowser.browser
 import android.content.Context
 import android.os.Handler
 import android.os.Looper
+import android.os.SystemClock
 import androidx.lifecycle.ProcessLifecycleOwner
 import kotlinx.coroutines.GlobalScope
+import kotlinx.coroutines.delay
 import kotlinx.coroutines.future.future
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
 import mozilla.components.concept.storage.*
 import mozilla.components.service.fxa.sync.SyncStatusObserver
 import mozilla.components.support.base.log.logger.Logger
 import org.mozilla.vrbrowser.VRBrowserApplication
+import org.mozilla.vrbrowser.utils.BloomFilter
+import org.mozilla.vrbrowser.utils.PrefixMatcher
 import org.mozilla.vrbrowser.utils.SystemUtils
 import java.util.concurrent.CompletableFuture
 import java.util.stream.Collectors
@@ -27,13 +34,63 @@ class HistoryStore constructor(val context: Context) {
     private var listeners = ArrayList<HistoryListener>()
     private var storage = (context.applicationContext as VRBrowserApplication).places.history
 
+    // Visits and observations are queued and written in batches, so redirect chains and history
+    // churn don't launch a coroutine and post a listener notification per URL.
+    private sealed class PendingWrite(val url: String, val result: CompletableFuture<Unit>) {
+        // Used to match queued visits against time based deletes.
+        val queuedAt = System.currentTimeMillis()
+
+        class Visit(url: String, val visit: PageVisit, result: CompletableFuture<Unit>) : PendingWrite(url, result)
+        class Observation(url: String, val observation: PageObservation, result: CompletableFuture<Unit>) : PendingWrite(url, result)
+    }
+
+    private val pendingWrites = ArrayList<PendingWrite>()
+    private var flushScheduled = false
+    private val flushMutex = Mutex()
+
+    private var visitsWritten = 0L
+    private var observationsWritten = 0L
+    private var writesCoalesced = 0L
+    private var flushes = 0L
+    private var flushTimeMs = 0L
+
+    // Visited URLs, so getVisited only asks Places about the URLs that might have been visited.
+    // Entries can't be removed from a Bloom filter, so deleted URLs stay in it until the next
+    // rebuild. That is harmless because Places confirms every URL the filter matches.
+    // Null until it has been loaded, lookups go straight to Places meanwhile.
+    @Volatile
+    private var visitedFilter: BloomFilter? = null
+    private val visitedFilterMutex = Mutex()
+    // Guards the fields below.
+    private val visitedFilterLock = Any()
+    // URLs visited while the filter is being rebuilt, they might be missing from the loaded snapshot.
+    private var visitedDuringRebuild: HashSet<String>? = null
+    private var rebuildScheduled = false
+    private var visitedLookups = 0L
+    private var visitedSkipped = 0L
+    private var visitedFalsePositives = 0L
+
     companion object {
+        // Maximum time a write waits in the queue.
+        private const val FLUSH_INTERVAL_MS = 250L
+        // Queued writes that trigger an immediate flush.
+        private const val FLUSH_BATCH_SIZE = 32
+        // Minimum number of URLs the visited filter is sized for.
+        private const val VISITED_FILTER_MIN_SIZE = 10000
+        // Delay before rebuilding the visited filter, so a burst of deletes only rebuilds it once.
+        private const val VISITED_FILTER_REBUILD_DELAY_MS = 2000L
+
         @JvmStatic
-        val BLOCK_LIST: MutableList<String> = Stream.of(
+        val BLOCK_LIST: List<String> = Stream.of(
                 "https://accounts.firefox.com/authorization",
                 "https://accounts.firefox.com/oauth",
                 "moz-extension://"
         ).collect(Collectors.toList())
+
+        private val BLOCK_LIST_MATCHER = PrefixMatcher(BLOCK_LIST)
+
+        @JvmStatic
+        fun isBlocked(aURL: String?): Boolean = BLOCK_LIST_MATCHER.matches(aURL)
     }
 
     // Bookmarks might have changed during sync, so notify our listeners.
@@ -42,6 +99,8 @@ class HistoryStore constructor(val context: Context) {
 
         override fun onIdle() {
             Logger(LOGTAG).debug("Detected that sync is finished, notifying listeners")
+            // Synced visits aren't in the visited filter yet.
+            scheduleVisitedFilterRebuild(0)
             notifyListeners()
         }
 
@@ -52,6 +111,7 @@ class HistoryStore constructor(val context: Context) {
         (context.applicationContext as VRBrowserApplication).services.accountManager.registerForSyncEvents(
                 syncStatusObserver, ProcessLifecycleOwner.get(), false
         )
+        scheduleVisitedFilterRebuild(0)
     }
 
     interface HistoryListener {
@@ -74,6 +134,8 @@ class HistoryStore constructor(val context: Context) {
 
     internal fun updateStorage() {
         storage = (context.applicationContext as VRBrowserApplication).places.history
+        visitedFilter = null
+        scheduleVisitedFilterRebuild(0)
         notifyListeners()
     }
 
@@ -103,51 +165,272 @@ class HistoryStore constructor(val context: Context) {
                 VisitType.REDIRECT_PERMANENT))
     }
 
-    fun recordVisit(aURL: String, pageVisit: PageVisit) = GlobalScope.future {
-        if(BLOCK_LIST.stream().noneMatch {
-                    aURL.startsWith(it)
-                }) {
-            storage.recordVisit(aURL, pageVisit)
-            notifyListeners()
+    fun recordVisit(aURL: String, pageVisit: PageVisit): CompletableFuture<Unit> {
+        if (isBlocked(aURL)) {
+            return CompletableFuture.completedFuture(Unit)
         }
+        synchronized(visitedFilterLock) {
+            visitedFilter?.let {
+                it.add(aURL)
+                if (it.isSaturated) {
+                    scheduleVisitedFilterRebuild()
+                }
+            }
+            visitedDuringRebuild?.add(aURL)
+        }
+        val result = CompletableFuture<Unit>()
+        enqueue(PendingWrite.Visit(aURL, pageVisit, result))
+        return result
     }
 
-    fun recordObservation(aURL: String, observation: PageObservation) = GlobalScope.future {
-        if(BLOCK_LIST.stream().noneMatch {
-                    aURL.startsWith(it)
-                }) {
-            storage.recordObservation(aURL, observation)
-            notifyListeners()
+    fun recordObservation(aURL: String, observation: PageObservation): CompletableFuture<Unit> {
+        if (isBlocked(aURL)) {
+            return CompletableFuture.completedFuture(Unit)
         }
+        val result = CompletableFuture<Unit>()
+        enqueue(PendingWrite.Observation(aURL, observation, result))
+        return result
+    }
+
+    private fun enqueue(write: PendingWrite) {
+        var flushNow = false
+        var scheduleFlush = false
+        synchronized(pendingWrites) {
+            pendingWrites.add(write)
+            if (pendingWrites.size >= FLUSH_BATCH_SIZE) {
+                flushNow = true
+            } else if (!flushScheduled) {
+                flushScheduled = true
+                scheduleFlush = true
+            }
+        }
+        if (flushNow) {
+            GlobalScope.launch { flush() }
+        } else if (scheduleFlush) {
+            GlobalScope.launch {
+                delay(FLUSH_INTERVAL_MS)
+                flush()
+            }
+        }
+    }
+
+    private suspend fun flush() = flushMutex.withLock {
+        val batch: List<PendingWrite>
+        synchronized(pendingWrites) {
+            batch = ArrayList(pendingWrites)
+            pendingWrites.clear()
+            flushScheduled = false
+        }
+        if (batch.isEmpty()) {
+            return@withLock
+        }
+
+        val start = SystemClock.elapsedRealtime()
+        // Only the last observation queued for a URL needs to be written.
+        val observed = HashSet<String>()
+        val writes = batch.asReversed().filter {
+            it !is PendingWrite.Observation || observed.add(it.url)
+        }.asReversed()
+
+        var visits = 0
+        for (write in writes) {
+            try {
+                when (write) {
+                    is PendingWrite.Visit -> {
+                        storage.recordVisit(write.url, write.visit)
+                        visits++
+                    }
+                    is PendingWrite.Observation -> storage.recordObservation(write.url, write.observation)
+                }
+            } catch (e: Exception) {
+                Logger(LOGTAG).error("Error recording history for ${write.url}", e)
+            }
+        }
+        val elapsed = SystemClock.elapsedRealtime() - start
+
+        synchronized(this) {
+            visitsWritten += visits
+            observationsWritten += writes.size - visits
+            writesCoalesced += batch.size - writes.size
+            flushes++
+            flushTimeMs += elapsed
+        }
+        Logger(LOGTAG).debug("Flushed ${writes.size} history writes in ${elapsed}ms, ${getWriteStats()}")
+
+        notifyListeners()
+        batch.forEach { it.result.complete(Unit) }
+    }
+
+    /**
+     * @return Counters of the batched visit and observation writer. Visits per DB second is the
+     * write rate while flushing, not the rate at which visits are recorded.
+     */
+    @Synchronized
+    fun getWriteStats(): String {
+        val visitsPerDbSecond = if (flushTimeMs > 0) visitsWritten * 1000 / flushTimeMs else 0
+        return "visits=$visitsWritten observations=$observationsWritten coalesced=$writesCoalesced " +
+                "flushes=$flushes avgBatch=${if (flushes > 0) (visitsWritten + observationsWritten) / flushes else 0} " +
+                "avgFlushMs=${if (flushes > 0) flushTimeMs / flushes else 0} visitsPerDbSecond=$visitsPerDbSecond"
+    }
+
+    /**
+     * Drops the queued writes a delete covers, so they aren't written after it and bring the
+     * history back. Must be called holding the flush lock, so no batch is being written meanwhile.
+     */
+    private fun dropPendingWrites(predicate: (PendingWrite) -> Boolean) {
+        val dropped: List<PendingWrite>
+        synchronized(pendingWrites) {
+            dropped = pendingWrites.filter(predicate)
+            pendingWrites.removeAll(dropped)
+        }
+        dropped.forEach { it.result.complete(Unit) }
     }
 
     fun deleteHistory(aUrl: String, timestamp: Long) = GlobalScope.future {
-        storage.deleteVisit(aUrl, timestamp)
+        flushMutex.withLock {
+            dropPendingWrites { it is PendingWrite.Visit && it.url == aUrl && it.queuedAt <= timestamp }
+            storage.deleteVisit(aUrl, timestamp)
+        }
+        scheduleVisitedFilterRebuild()
         notifyListeners()
     }
 
     fun deleteVisitsFor(aUrl: String) = GlobalScope.future {
-        storage.deleteVisitsFor(aUrl)
+        flushMutex.withLock {
+            dropPendingWrites { it.url == aUrl }
+            storage.deleteVisitsFor(aUrl)
+        }
+        scheduleVisitedFilterRebuild()
         notifyListeners()
     }
 
     fun deleteEverything() = GlobalScope.future {
-        storage.deleteEverything()
+        // Holding the flush lock so no visit is written between the delete and the filter reset.
+        flushMutex.withLock {
+            dropPendingWrites { true }
+            storage.deleteEverything()
+            synchronized(visitedFilterLock) {
+                // A rebuild in progress would add the deleted URLs back otherwise.
+                visitedDuringRebuild?.clear()
+                visitedFilter = BloomFilter(VISITED_FILTER_MIN_SIZE)
+            }
+        }
         notifyListeners()
     }
 
     fun deleteVisitsSince(since: Long) = GlobalScope.future {
-        storage.deleteVisitsSince(since)
+        flushMutex.withLock {
+            dropPendingWrites { it is PendingWrite.Visit && it.queuedAt >= since }
+            storage.deleteVisitsSince(since)
+        }
+        scheduleVisitedFilterRebuild()
         notifyListeners()
     }
 
     fun deleteVisitsBetween(startTime: Long, endTime: Long) = GlobalScope.future {
-        storage.deleteVisitsBetween(startTime, endTime)
+        flushMutex.withLock {
+            dropPendingWrites { it is PendingWrite.Visit && it.queuedAt in startTime..endTime }
+            storage.deleteVisitsBetween(startTime, endTime)
+        }
+        scheduleVisitedFilterRebuild()
         notifyListeners()
     }
 
-    fun getVisited(uris: List<String>) = GlobalScope.future {
-        storage.getVisited(uris)
+    /**
+     * Looks up which of the URLs have been visited. Only the URLs that the visited filter matches
+     * are looked up in Places, so the result is completed right away when none of them match.
+     */
+    fun getVisited(uris: Array<String>): CompletableFuture<BooleanArray> {
+        val filter = visitedFilter ?: return GlobalScope.future {
+            storage.getVisited(uris.asList()).toBooleanArray()
+        }
+
+        val result = BooleanArray(uris.size)
+        val candidates = ArrayList<String>()
+        val indices = IntArray(uris.size)
+        for (i in uris.indices) {
+            if (filter.mightContain(uris[i])) {
+                indices[candidates.size] = i
+                candidates.add(uris[i])
+            }
+        }
+        synchronized(visitedFilterLock) {
+            visitedLookups += uris.size
+            visitedSkipped += uris.size - candidates.size
+        }
+        if (candidates.isEmpty()) {
+            return CompletableFuture.completedFuture(result)
+        }
+
+        return GlobalScope.future {
+            val visited = storage.getVisited(candidates)
+            var falsePositives = 0
+            for (i in candidates.indices) {
+                result[indices[i]] = i < visited.size && visited[i]
+                if (!result[indices[i]]) {
+                    falsePositives++
+                }
+            }
+            synchronized(visitedFilterLock) {
+                visitedFalsePositives += falsePositives
+            }
+            result
+        }
+    }
+
+    /**
+     * @return Counters of the visited filter. False positives include deleted URLs and visits
+     * that haven't been written yet.
+     */
+    fun getVisitedFilterStats(): String = synchronized(visitedFilterLock) {
+        "urls=${visitedFilter?.size() ?: 0} lookups=$visitedLookups skipped=$visitedSkipped " +
+                "falsePositives=$visitedFalsePositives"
+    }
+
+    private fun scheduleVisitedFilterRebuild(delayMs: Long = VISITED_FILTER_REBUILD_DELAY_MS) {
+        synchronized(visitedFilterLock) {
+            if (rebuildScheduled) {
+                return
+            }
+            rebuildScheduled = true
+        }
+        GlobalScope.launch {
+            delay(delayMs)
+            rebuildVisitedFilter()
+        }
+    }
+
+    private suspend fun rebuildVisitedFilter() = visitedFilterMutex.withLock {
+        synchronized(visitedFilterLock) {
+            rebuildScheduled = false
+            visitedDuringRebuild = HashSet()
+        }
+
+        val urls = ArrayList<String>()
+        try {
+            // Holding the flush lock so every visit is either already in Places or still queued.
+            flushMutex.withLock {
+                urls.addAll(storage.getVisited())
+                synchronized(pendingWrites) {
+                    pendingWrites.filterIsInstance<PendingWrite.Visit>().forEach { urls.add(it.url) }
+                }
+            }
+        } catch (e: Exception) {
+            Logger(LOGTAG).error("Error loading the visited URLs", e)
+            synchronized(visitedFilterLock) {
+                visitedDuringRebuild = null
+            }
+            return@withLock
+        }
+
+        val filter = BloomFilter(maxOf(urls.size * 2, VISITED_FILTER_MIN_SIZE))
+        urls.forEach { filter.add(it) }
+        synchronized(visitedFilterLock) {
+            visitedDuringRebuild?.forEach { filter.add(it) }
+            visitedDuringRebuild = null
+            visitedFilter = filter
+        }
+        Logger(LOGTAG).debug("Loaded ${urls.size} visited URLs, ${getVisitedFilterStats()}")
     }
 
     fun isInHistory(aURL: String): CompletableFuture<Boolean> = GlobalScope.future {
@@ -9,7 +9,6 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.lifecycle.Observer;
 
 import org.mozilla.geckoview.GeckoResult;
 import org.mozilla.geckoview.GeckoSession;
@@ -28,7 +27,6 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 public class PermissionDelegate implements GeckoSession.PermissionDelegate, WidgetManagerDelegate.PermissionListener {
 
@@ -41,7 +39,6 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
     private GeckoSession.PermissionDelegate.Callback mCallback;
     private PermissionWidget mPermissionWidget;
     private SitePermissionViewModel mSitePermissionModel;
-    private List<SitePermission> mSitePermissions;
 
     public PermissionDelegate(Context aContext, WidgetManagerDelegate aWidgetManager) {
         mContext = aContext;
@@ -49,7 +46,6 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         mWidgetManager.addPermissionListener(this);
         SessionStore.get().setPermissionDelegate(this);
         mSitePermissionModel = new SitePermissionViewModel((Application)aContext.getApplicationContext());
-        mSitePermissionModel.getAll().observeForever(mSitePermissionObserver);
     }
 
     public void setParentWidgetHandle(int aHandle) {
@@ -86,10 +82,6 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         mPermissionWidget.showPrompt(aUri, aType, aCallback);
     }
 
-    private Observer<List<SitePermission>> mSitePermissionObserver = sites -> {
-        mSitePermissions = sites;
-    };
-
     GeckoResult<Integer> handleWebXRPermission(GeckoSession aGeckoSession, ContentPermission perm) {
         Session session = SessionStore.get().getSession(aGeckoSession);
         if (session == null || !SettingsStore.getInstance(mContext).isWebXREnabled()) {
@@ -97,13 +89,7 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         }
         final String domain = UrlUtils.getHost(perm.uri);
 
-        @Nullable SitePermission site = null;
-        if (mSitePermissions != null) {
-            site = mSitePermissions.stream()
-                    .filter(sitePermission -> sitePermission.category == SitePermission.SITE_PERMISSION_WEBXR &&
-                            sitePermission.url.equalsIgnoreCase(domain))
-                    .findFirst().orElse(null);
-        }
+        @Nullable SitePermission site = mSitePermissionModel.findSite(domain, SitePermission.SITE_PERMISSION_WEBXR);
 
         if (site == null) {
             session.setWebXRState(SessionState.WEBXR_ALLOWED);
@@ -115,7 +101,6 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
     }
 
     public void release() {
-        mSitePermissionModel.getAll().removeObserver(mSitePermissionObserver);
         mWidgetManager.removePermissionListener(this);
         SessionStore.get().setPermissionDelegate(null);
         mCallback = null;
@@ -308,13 +293,9 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
         }
     }
     public void addPermissionException(@NonNull String uri, @SitePermission.Category int category) {
-        @Nullable SitePermission site = mSitePermissions.stream()
-                .filter((item) -> item.category == category && item.url.equals(uri))
-                .findFirst().orElse(null);
-
+        @Nullable SitePermission site = findException(uri, category);
         if (site == null) {
             site = new SitePermission(uri, "", category);
-            mSitePermissions.add(site);
         }
         mSitePermissionModel.insertSite(site);
 
@@ -328,12 +309,15 @@ public class PermissionDelegate implements GeckoSession.PermissionDelegate, Widg
 
     }
 
-    public void removePermissionException(String uri, @SitePermission.Category int category) {
-        @Nullable SitePermission site = mSitePermissions.stream()
-                .filter((item) -> item.category == category && item.url.equals(uri))
-                .findFirst().orElse(null);
+    @Nullable
+    private SitePermission findException(@NonNull String uri, @SitePermission.Category int category) {
+        // The index matches ignoring case, exceptions are added and removed by their exact URL.
+        @Nullable SitePermission site = mSitePermissionModel.findSite(uri, category);
+        return site != null && site.url.equals(uri) ? site : null;
+    }
 
-        mSitePermissions.removeIf(sitePermission -> sitePermission.url.equals(uri));
+    public void removePermissionException(String uri, @SitePermission.Category int category) {
+        @Nullable SitePermission site = findException(uri, category);
         if (site != null) {
             mSitePermissionModel.deleteSite(site);
         }
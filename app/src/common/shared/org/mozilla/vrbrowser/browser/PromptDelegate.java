@@ -5,7 +5,6 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.lifecycle.Observer;
 
 import org.mozilla.geckoview.AllowOrDeny;
 import org.mozilla.geckoview.Autocomplete;
@@ -36,7 +35,6 @@ import org.mozilla.vrbrowser.ui.widgets.settings.SettingsView;
 import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -53,8 +51,6 @@ public class PromptDelegate implements
     private ConfirmPromptWidget mSlowScriptPrompt;
     private Context mContext;
     private WindowWidget mAttachedWindow;
-    private List<SitePermission> mAllowedPopUpSites;
-    private List<SitePermission> mSavedLoginBlockedSites;
     private SitePermissionViewModel mViewModel;
     private WidgetManagerDelegate mWidgetManager;
     private SaveLoginPromptWidget mSaveLoginPrompt;
@@ -64,8 +60,6 @@ public class PromptDelegate implements
         mContext = context;
         mWidgetManager = (WidgetManagerDelegate) mContext;
         mViewModel = new SitePermissionViewModel(((Application)context.getApplicationContext()));
-        mAllowedPopUpSites = new ArrayList<>();
-        mSavedLoginBlockedSites = new ArrayList<>();
         mSaveLoginPrompt = null;
         mSelectLoginPrompt = null;
     }
@@ -78,8 +72,6 @@ public class PromptDelegate implements
 
         mAttachedWindow = window;
         mAttachedWindow.addWindowListener(this);
-        mViewModel.getAll(SitePermission.SITE_PERMISSION_POPUP).observeForever(mPopUpSiteObserver);
-        mViewModel.getAll(SitePermission.SITE_PERMISSION_AUTOFILL).observeForever(mSavedLoginExceptionsObserver);
 
         if (getSession() != null) {
             setUpSession(getSession());
@@ -95,8 +87,6 @@ public class PromptDelegate implements
             mAttachedWindow.removeWindowListener(this);
             mAttachedWindow = null;
         }
-        mViewModel.getAll(SitePermission.SITE_PERMISSION_POPUP).removeObserver(mPopUpSiteObserver);
-        mViewModel.getAll(SitePermission.SITE_PERMISSION_AUTOFILL).removeObserver(mSavedLoginExceptionsObserver);
     }
 
     private Session getSession() {
@@ -256,14 +246,6 @@ public class PromptDelegate implements
         return result;
     }
 
-    private Observer<List<SitePermission>> mPopUpSiteObserver = sites -> {
-        mAllowedPopUpSites = sites;
-    };
-
-    private Observer<List<SitePermission>> mSavedLoginExceptionsObserver = sites -> {
-        mSavedLoginBlockedSites = sites;
-    };
-
     @Nullable
     @Override
     public GeckoResult<PromptResponse> onPopupPrompt(@NonNull GeckoSession geckoSession, @NonNull PopupPrompt popupPrompt) {
@@ -276,7 +258,7 @@ public class PromptDelegate implements
             Session session = mAttachedWindow.getSession();
             if (session != null) {
                 final String uri = UrlUtils.getHost(session.getCurrentUri());
-                SitePermission site = mAllowedPopUpSites.stream().filter((item) -> UrlUtils.getHost(item.url).equals(uri)).findFirst().orElse(null);
+                SitePermission site = mViewModel.findSiteByHost(uri, SitePermission.SITE_PERMISSION_POPUP);
                 if (site != null) {
                     result.complete(popupPrompt.confirm(AllowOrDeny.ALLOW));
                     session.setPopUpState(SessionState.POPUP_ALLOWED);
@@ -301,7 +283,8 @@ public class PromptDelegate implements
         // We always get at least one item, at the moment only one item is support.
         if (autocompleteRequest.options.length > 0 && SettingsStore.getInstance(mContext).isLoginAutocompleteEnabled()) {
             Autocomplete.LoginSaveOption saveOption = autocompleteRequest.options[0];
-            boolean originHasException = mSavedLoginBlockedSites.stream().anyMatch(site -> site.url.equals(saveOption.value.origin));
+            SitePermission exception = mViewModel.findSite(saveOption.value.origin, SitePermission.SITE_PERMISSION_AUTOFILL);
+            boolean originHasException = exception != null && exception.url.equals(saveOption.value.origin);
             if (originHasException || !SettingsStore.getInstance(mContext).isLoginAutocompleteEnabled()) {
                 result.complete(autocompleteRequest.dismiss());
 
@@ -6,10 +6,12 @@ import android.graphics.Color;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import android.util.Log;
+import android.util.SparseArray;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.google.gson.Gson;
@@ -37,10 +39,13 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import mozilla.components.concept.fetch.Request;
 import mozilla.components.concept.fetch.Response;
@@ -130,11 +135,97 @@ public class SettingsStore {
         mDisableLayers = aDisableLayers;
     }
 
+    public interface OnSettingChangedListener {
+        void onSettingChanged(@NonNull String aKey);
+    }
+
+    private static final Type REMOTE_PROPERTIES_TYPE = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
+
+    // Resource ids of the preference keys resolved so far, so getters don't go through the resources every time.
+    private final SparseArray<String> mKeys = new SparseArray<>();
+    private final Map<String, List<OnSettingChangedListener>> mSettingListeners = new HashMap<>();
+    private final Gson mGson = new GsonBuilder().create();
+    private Map<String, RemoteProperties> mRemoteProperties;
+    private boolean mRemotePropertiesParsed;
+
     public SettingsStore(Context aContext) {
         mContext = aContext;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(aContext);
+        // SharedPreferences only keeps a weak reference to its listeners, so we keep this one in a field.
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
+    }
+
+    /**
+     * Setters only update the in-memory preferences and write them to disk asynchronously,
+     * coalescing consecutive writes. Blocks until every pending write is on disk, so call it before
+     * the process gets killed.
+     */
+    public void flush() {
+        mPrefs.edit().commit();
+    }
+
+    @NonNull
+    private String key(@StringRes int aResId) {
+        synchronized (mKeys) {
+            String key = mKeys.get(aResId);
+            if (key == null) {
+                key = mContext.getString(aResId);
+                mKeys.put(aResId, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Registers a listener for a single setting, so it's not called when any other setting changes.
+     * Listeners are called on the UI thread.
+     */
+    public void addOnSettingChangedListener(@StringRes int aKey, @NonNull OnSettingChangedListener aListener) {
+        String key = key(aKey);
+        synchronized (mSettingListeners) {
+            List<OnSettingChangedListener> listeners = mSettingListeners.get(key);
+            if (listeners == null) {
+                listeners = new CopyOnWriteArrayList<>();
+                mSettingListeners.put(key, listeners);
+            }
+            if (!listeners.contains(aListener)) {
+                listeners.add(aListener);
+            }
+        }
+    }
+
+    public void removeOnSettingChangedListener(@StringRes int aKey, @NonNull OnSettingChangedListener aListener) {
+        String key = key(aKey);
+        synchronized (mSettingListeners) {
+            List<OnSettingChangedListener> listeners = mSettingListeners.get(key);
+            if (listeners != null) {
+                listeners.remove(aListener);
+                if (listeners.isEmpty()) {
+                    mSettingListeners.remove(key);
+                }
+            }
+        }
     }
 
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener = (sharedPreferences, key) -> {
+        if (key == null) {
+            return;
+        }
+        if (key.equals(key(R.string.settings_key_remote_props))) {
+            invalidateRemoteProperties();
+        }
+
+        List<OnSettingChangedListener> listeners;
+        synchronized (mSettingListeners) {
+            listeners = mSettingListeners.get(key);
+        }
+        if (listeners != null) {
+            for (OnSettingChangedListener listener : listeners) {
+                listener.onSettingChanged(key);
+            }
+        }
+    };
+
     public void initModel(@NonNull Context context) {
         mSettingsViewModel = new ViewModelProvider(
                 (VRBrowserActivity)context,
@@ -142,7 +233,7 @@ public class SettingsStore {
                 .get(SettingsViewModel.class);
 
         // Setup the stored properties until we get updated ones
-        String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
+        String json = mPrefs.getString(key(R.string.settings_key_remote_props), null);
         mSettingsViewModel.setProps(json);
 
         mSettingsViewModel.refresh();
@@ -172,9 +263,7 @@ public class SettingsStore {
                 Response response = EngineProvider.INSTANCE.getDefaultClient(mContext).fetch(request);
                 if (response.getStatus() == 200) {
                     String json = response.getBody().string(StandardCharsets.UTF_8);
-                    SharedPreferences.Editor editor = mPrefs.edit();
-                    editor.putString(mContext.getString(R.string.settings_key_remote_props), json);
-                    editor.commit();
+                    setRemoteProperties(json);
 
                     mSettingsViewModel.setProps(json);
                 }
@@ -186,13 +275,13 @@ public class SettingsStore {
     }
 
     public boolean isCrashReportingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_crash), CRASH_REPORTING_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_crash), CRASH_REPORTING_DEFAULT);
     }
 
     public void setCrashReportingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_crash), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_crash), isEnabled);
+        editor.apply();
     }
 
     public boolean isTelemetryEnabled() {
@@ -200,7 +289,7 @@ public class SettingsStore {
         final StrictMode.ThreadPolicy threadPolicy = StrictMode.allowThreadDiskReads();
         try {
             return mPrefs.getBoolean(
-                    mContext.getString(R.string.settings_key_telemetry), TELEMETRY_DEFAULT);
+                    key(R.string.settings_key_telemetry), TELEMETRY_DEFAULT);
         } finally {
             StrictMode.setThreadPolicy(threadPolicy);
         }
@@ -208,8 +297,8 @@ public class SettingsStore {
 
     public void setTelemetryEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_telemetry), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_telemetry), isEnabled);
+        editor.apply();
 
         // We send after enabling in case of opting-in
         if (isEnabled) {
@@ -223,80 +312,80 @@ public class SettingsStore {
     }
 
     public boolean telemetryStatusSaved() {
-        return mPrefs.contains(mContext.getString(R.string.settings_key_telemetry));
+        return mPrefs.contains(key(R.string.settings_key_telemetry));
     }
 
     public boolean isTelemetryPingUpdateSent() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_telemetry_status_update_sent), TELEMETRY_STATUS_UPDATE_SENT_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_telemetry_status_update_sent), TELEMETRY_STATUS_UPDATE_SENT_DEFAULT);
     }
 
     public void setTelemetryPingUpdateSent(boolean isSent) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_telemetry_status_update_sent), isSent);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_telemetry_status_update_sent), isSent);
+        editor.apply();
     }
 
     public void setGeolocationData(String aGeolocationData) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_geolocation_data), aGeolocationData);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_geolocation_data), aGeolocationData);
+        editor.apply();
     }
 
     public String getGeolocationData() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_geolocation_data), "");
+        return mPrefs.getString(key(R.string.settings_key_geolocation_data), "");
     }
 
     public boolean isRemoteDebuggingEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_remote_debugging), REMOTE_DEBUGGING_DEFAULT);
+                key(R.string.settings_key_remote_debugging), REMOTE_DEBUGGING_DEFAULT);
     }
 
     public void setRemoteDebuggingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_remote_debugging), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_remote_debugging), isEnabled);
+        editor.apply();
     }
 
 
     public boolean isDrmContentPlaybackEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_drm_playback), DRM_PLAYBACK_DEFAULT);
+                key(R.string.settings_key_drm_playback), DRM_PLAYBACK_DEFAULT);
     }
 
     public boolean isDrmContentPlaybackSet() {
-        return mPrefs.contains(mContext.getString(R.string.settings_key_drm_playback));
+        return mPrefs.contains(key(R.string.settings_key_drm_playback));
     }
 
     public void setDrmContentPlaybackEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_drm_playback), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_drm_playback), isEnabled);
+        editor.apply();
 
         mSettingsViewModel.setIsDrmEnabled(isEnabled);
     }
 
     public int getTrackingProtectionLevel() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_tracking_protection_level), TRACKING_DEFAULT);
+                key(R.string.settings_key_tracking_protection_level), TRACKING_DEFAULT);
     }
 
     public void setTrackingProtectionLevel(int level) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_tracking_protection_level), level);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_tracking_protection_level), level);
+        editor.apply();
 
         mSettingsViewModel.setIsTrackingProtectionEnabled(level != ContentBlocking.EtpLevel.NONE);
     }
 
     public boolean isEnvironmentOverrideEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_environment_override), ENV_OVERRIDE_DEFAULT);
+                key(R.string.settings_key_environment_override), ENV_OVERRIDE_DEFAULT);
     }
 
     public void setEnvironmentOverrideEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_environment_override), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_environment_override), isEnabled);
+        editor.apply();
     }
 
     public boolean isUIHardwareAccelerationEnabled() {
@@ -305,39 +394,39 @@ public class SettingsStore {
             defaultValue = UI_HARDWARE_ACCELERATION_DEFAULT_WAVEVR;
         }
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_ui_hardware_acceleration), defaultValue);
+                key(R.string.settings_key_ui_hardware_acceleration), defaultValue);
     }
 
     public void setUIHardwareAccelerationEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_ui_hardware_acceleration), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_ui_hardware_acceleration), isEnabled);
+        editor.apply();
     }
 
     public boolean isPerformanceMonitorEnabled() {
         // Disabling Performance Monitor until it can properly handle multi-window
-        return false; // mPrefs.getBoolean(mContext.getString(R.string.settings_key_performance_monitor), PERFORMANCE_MONITOR_DEFAULT);
+        return false; // mPrefs.getBoolean(key(R.string.settings_key_performance_monitor), PERFORMANCE_MONITOR_DEFAULT);
     }
 
     public void setPerformanceMonitorEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_performance_monitor), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_performance_monitor), isEnabled);
+        editor.apply();
     }
 
     public boolean isServoEnabled() {
-        return isServoAvailable() && mPrefs.getBoolean(mContext.getString(R.string.settings_key_servo), SERVO_DEFAULT);
+        return isServoAvailable() && mPrefs.getBoolean(key(R.string.settings_key_servo), SERVO_DEFAULT);
     }
 
     public void setServoEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_servo), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_servo), isEnabled);
+        editor.apply();
     }
 
     public int getUaMode() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_user_agent_version), UA_MODE_DEFAULT);
+                key(R.string.settings_key_user_agent_version), UA_MODE_DEFAULT);
     }
 
     public void setUaMode(int mode) {
@@ -347,42 +436,42 @@ public class SettingsStore {
             checkedMode = UA_MODE_DEFAULT;
         }
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_user_agent_version), checkedMode);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_user_agent_version), checkedMode);
+        editor.apply();
     }
 
     public int getInputMode() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_input_mode), INPUT_MODE_DEFAULT);
+                key(R.string.settings_key_input_mode), INPUT_MODE_DEFAULT);
     }
 
     public void setInputMode(int aTouchMode) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_input_mode), aTouchMode);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_input_mode), aTouchMode);
+        editor.apply();
     }
 
     public String getHomepage() {
         return mPrefs.getString(
-                mContext.getString(R.string.settings_key_homepage),
+                key(R.string.settings_key_homepage),
                 mContext.getString(R.string.homepage_url));
     }
 
     public void setHomepage(String aHomepage) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_homepage), aHomepage);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_homepage), aHomepage);
+        editor.apply();
     }
 
     public float getDisplayDensity() {
         return mPrefs.getFloat(
-                mContext.getString(R.string.settings_key_display_density), DISPLAY_DENSITY_DEFAULT);
+                key(R.string.settings_key_display_density), DISPLAY_DENSITY_DEFAULT);
     }
 
     public void setDisplayDensity(float aDensity) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putFloat(mContext.getString(R.string.settings_key_display_density), aDensity);
-        editor.commit();
+        editor.putFloat(key(R.string.settings_key_display_density), aDensity);
+        editor.apply();
     }
 
     public int getWindowWidth() {
@@ -399,13 +488,13 @@ public class SettingsStore {
 
     public int getDisplayDpi() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_display_dpi), DISPLAY_DPI_DEFAULT);
+                key(R.string.settings_key_display_dpi), DISPLAY_DPI_DEFAULT);
     }
 
     public void setDisplayDpi(int aDpi) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_display_dpi), aDpi);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_display_dpi), aDpi);
+        editor.apply();
     }
 
     public int getMaxWindowWidth() {
@@ -417,29 +506,29 @@ public class SettingsStore {
     }
 
     public String getEnvironment() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_env), ENV_DEFAULT);
+        return mPrefs.getString(key(R.string.settings_key_env), ENV_DEFAULT);
     }
 
     public void setEnvironment(String aEnv) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_env), aEnv);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_env), aEnv);
+        editor.apply();
     }
 
     public int getPointerColor() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_pointer_color), POINTER_COLOR_DEFAULT_DEFAULT);
+                key(R.string.settings_key_pointer_color), POINTER_COLOR_DEFAULT_DEFAULT);
     }
 
     public void setPointerColor(int color) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_pointer_color), color);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_pointer_color), color);
+        editor.apply();
     }
 
     public int getScrollDirection() {
         if (mCachedScrollDirection < 0) {
-            mCachedScrollDirection = mPrefs.getInt(mContext.getString(R.string.settings_key_scroll_direction), SCROLL_DIRECTION_DEFAULT);
+            mCachedScrollDirection = mPrefs.getInt(key(R.string.settings_key_scroll_direction), SCROLL_DIRECTION_DEFAULT);
         }
         return mCachedScrollDirection;
     }
@@ -447,20 +536,20 @@ public class SettingsStore {
     public void setScrollDirection(int aScrollDirection) {
         mCachedScrollDirection = aScrollDirection;
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_scroll_direction), aScrollDirection);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_scroll_direction), aScrollDirection);
+        editor.apply();
     }
 
 
     public int getMSAALevel() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_msaa), MSAA_DEFAULT_LEVEL);
+                key(R.string.settings_key_msaa), MSAA_DEFAULT_LEVEL);
     }
 
     public void setMSAALevel(int level) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_msaa), level);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_msaa), level);
+        editor.apply();
     }
 
     public boolean getLayersEnabled() {
@@ -477,44 +566,44 @@ public class SettingsStore {
     }
 
     public boolean isAudioEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_audio), AUDIO_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_audio), AUDIO_ENABLED);
     }
 
     public void setAudioEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_audio), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_audio), isEnabled);
+        editor.apply();
     }
 
     public String getVoiceSearchLocale() {
         String language = mPrefs.getString(
-                mContext.getString(R.string.settings_key_voice_search_language), null);
+                key(R.string.settings_key_voice_search_language), null);
         return language;
     }
 
     public void setVoiceSearchLocale(String language) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_voice_search_language), language);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_voice_search_language), language);
+        editor.apply();
     }
 
     public String getDisplayLocale() {
         String language = mPrefs.getString(
-                mContext.getString(R.string.settings_key_display_language), null);
+                key(R.string.settings_key_display_language), null);
         return language;
     }
 
     public void setDisplayLocale(String language) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_display_language), language);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_display_language), language);
+        editor.apply();
     }
 
     public ArrayList<String> getContentLocales() {
         ArrayList<String> result = new ArrayList<>();
 
         String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_content_languages),
+                key(R.string.settings_key_content_languages),
                 null);
 
         try {
@@ -533,18 +622,18 @@ public class SettingsStore {
     public void setContentLocales(List<String> languages) {
         JSONArray json = new JSONArray(languages);
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_content_languages), json.toString());
-        editor.commit();
+        editor.putString(key(R.string.settings_key_content_languages), json.toString());
+        editor.apply();
     }
 
     public float getCylinderDensity() {
-        return mPrefs.getFloat(mContext.getString(R.string.settings_key_cylinder_density),  0);
+        return mPrefs.getFloat(key(R.string.settings_key_cylinder_density),  0);
     }
 
     public void setCylinderDensity(float aDensity) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putFloat(mContext.getString(R.string.settings_key_cylinder_density), aDensity);
-        editor.commit();
+        editor.putFloat(key(R.string.settings_key_cylinder_density), aDensity);
+        editor.apply();
     }
 
     public boolean isCurvedModeEnabled() {
@@ -553,12 +642,12 @@ public class SettingsStore {
 
     public void setSelectedKeyboard(Locale aLocale) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_keyboard_locale), aLocale.toLanguageTag());
-        editor.commit();
+        editor.putString(key(R.string.settings_key_keyboard_locale), aLocale.toLanguageTag());
+        editor.apply();
     }
 
     public Locale getKeyboardLocale() {
-        String value = mPrefs.getString(mContext.getString(R.string.settings_key_keyboard_locale), null);
+        String value = mPrefs.getString(key(R.string.settings_key_keyboard_locale), null);
         if (StringUtils.isEmpty(value)) {
             return null;
         }
@@ -566,14 +655,14 @@ public class SettingsStore {
     }
 
     public synchronized long getCrashRestartCount() {
-        long count = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        long count = mPrefs.getLong(key(R.string.settings_key_crash_restart_count), 0);
         if (count > 0) {
-            final long timestamp = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), -1);
+            final long timestamp = mPrefs.getLong(key(R.string.settings_key_crash_restart_count_timestamp), -1);
             if (System.currentTimeMillis() - timestamp > CRASH_RESTART_DELTA) {
                 count = 0;
                 SharedPreferences.Editor editor = mPrefs.edit();
-                editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
-                editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), -1);
+                editor.putLong(key(R.string.settings_key_crash_restart_count), count);
+                editor.putLong(key(R.string.settings_key_crash_restart_count_timestamp), -1);
                 editor.commit();
             }
         }
@@ -582,119 +671,119 @@ public class SettingsStore {
 
     public synchronized void incrementCrashRestartCount() {
         SharedPreferences.Editor editor = mPrefs.edit();
-        long count = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        long count = mPrefs.getLong(key(R.string.settings_key_crash_restart_count), 0);
         count++;
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), System.currentTimeMillis());
+        editor.putLong(key(R.string.settings_key_crash_restart_count), count);
+        editor.putLong(key(R.string.settings_key_crash_restart_count_timestamp), System.currentTimeMillis());
         editor.commit();
     }
 
     public synchronized void resetCrashRestartCount() {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        editor.putLong(key(R.string.settings_key_crash_restart_count), 0);
         editor.commit();
     }
 
     public boolean isSpeechDataCollectionEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_speech_data_collection), SPEECH_DATA_COLLECTION_DEFAULT);
+                key(R.string.settings_key_speech_data_collection), SPEECH_DATA_COLLECTION_DEFAULT);
     }
 
     public void setSpeechDataCollectionEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_speech_data_collection), isEnabled);
+        editor.apply();
     }
 
     public boolean isNotificationsEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_notifications), NOTIFICATIONS_DEFAULT);
+                key(R.string.settings_key_notifications), NOTIFICATIONS_DEFAULT);
     }
 
     public void setNotificationsEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_notifications), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_notifications), isEnabled);
+        editor.apply();
     }
 
     public boolean isSpeechDataCollectionReviewed() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_speech_data_collection_reviewed), SPEECH_DATA_COLLECTION_REVIEWED_DEFAULT);
+                key(R.string.settings_key_speech_data_collection_reviewed), SPEECH_DATA_COLLECTION_REVIEWED_DEFAULT);
     }
 
     public void setSpeechDataCollectionReviewed(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection_reviewed), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_speech_data_collection_reviewed), isEnabled);
+        editor.apply();
     }
 
     public boolean isDebugLoggingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_debug_logging), DEBUG_LOGGING_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_debug_logging), DEBUG_LOGGING_DEFAULT);
     }
 
     public void setDebugLoggingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_debug_logging), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_debug_logging), isEnabled);
+        editor.apply();
     }
 
     public boolean isAutoplayEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_autoplay), AUTOPLAY_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_autoplay), AUTOPLAY_ENABLED);
     }
 
     public void setAutoplayEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_autoplay), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_autoplay), isEnabled);
+        editor.apply();
     }
 
     public void setPid(int aPid) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_pid), aPid);
+        editor.putInt(key(R.string.settings_key_pid), aPid);
         editor.commit();
     }
 
     public int getPid() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_pid), 0);
+        return mPrefs.getInt(key(R.string.settings_key_pid), 0);
     }
 
     public boolean isPopUpsBlockingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_pop_up_blocking), POP_UPS_BLOCKING_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_pop_up_blocking), POP_UPS_BLOCKING_DEFAULT);
     }
 
     public void setPopUpsBlockingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_pop_up_blocking), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_pop_up_blocking), isEnabled);
+        editor.apply();
 
         mSettingsViewModel.setIsPopUpBlockingEnabled(isEnabled);
     }
 
     public boolean isWebXREnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_webxr), WEBXR_ENABLED_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_webxr), WEBXR_ENABLED_DEFAULT);
     }
 
     public void setWebXREnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_webxr), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_webxr), isEnabled);
+        editor.apply();
 
         mSettingsViewModel.setIsWebXREnabled(isEnabled);
     }
 
     public void setWhatsNewDisplayed(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_whats_new_displayed), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_whats_new_displayed), isEnabled);
+        editor.apply();
     }
 
     public boolean isWhatsNewDisplayed() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_whats_new_displayed), WHATS_NEW_DISPLAYED);
+        return mPrefs.getBoolean(key(R.string.settings_key_whats_new_displayed), WHATS_NEW_DISPLAYED);
     }
 
     public void setFxALastSync(@NonNull String email, long timestamp) {
         String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_fxa_last_sync),
+                key(R.string.settings_key_fxa_last_sync),
                 new JSONObject().toString());
 
         try {
@@ -702,8 +791,8 @@ public class SettingsStore {
             jsonObject.put(email, timestamp);
 
             SharedPreferences.Editor editor = mPrefs.edit();
-            editor.putString(mContext.getString(R.string.settings_key_fxa_last_sync), jsonObject.toString());
-            editor.commit();
+            editor.putString(key(R.string.settings_key_fxa_last_sync), jsonObject.toString());
+            editor.apply();
 
         } catch (Exception e) {
             Log.d(LOGTAG, e.getMessage());
@@ -712,7 +801,7 @@ public class SettingsStore {
 
     public long getFxALastSync(@NonNull String email) {
         String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_fxa_last_sync),
+                key(R.string.settings_key_fxa_last_sync),
                 null);
 
         try {
@@ -734,160 +823,173 @@ public class SettingsStore {
 
     public void setRestoreTabsEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_restore_tabs), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_restore_tabs), isEnabled);
+        editor.apply();
     }
 
     public boolean isRestoreTabsEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_restore_tabs), RESTORE_TABS_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_restore_tabs), RESTORE_TABS_ENABLED);
     }
 
     public void setBypassCacheOnReload(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_bypass_cache_on_reload), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_bypass_cache_on_reload), isEnabled);
+        editor.apply();
     }
 
     public boolean isBypassCacheOnReloadEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_bypass_cache_on_reload), BYPASS_CACHE_ON_RELOAD);
+        return mPrefs.getBoolean(key(R.string.settings_key_bypass_cache_on_reload), BYPASS_CACHE_ON_RELOAD);
     }
 
     public void setDownloadsStorage(@Storage int storage) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_downloads_external), storage);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_downloads_external), storage);
+        editor.apply();
     }
 
     public @Storage int getDownloadsStorage() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_downloads_external), DOWNLOADS_STORAGE_DEFAULT);
+        return mPrefs.getInt(key(R.string.settings_key_downloads_external), DOWNLOADS_STORAGE_DEFAULT);
     }
 
     public void setDownloadsSortingOrder(@SortingContextMenuWidget.Order int order) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_downloads_sorting_order), order);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_downloads_sorting_order), order);
+        editor.apply();
     }
 
     public @Storage int getDownloadsSortingOrder() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_downloads_sorting_order), DOWNLOADS_SORTING_ORDER_DEFAULT);
+        return mPrefs.getInt(key(R.string.settings_key_downloads_sorting_order), DOWNLOADS_SORTING_ORDER_DEFAULT);
     }
 
     public void setRemotePropsVersionName(String versionName) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_remote_props_version_name), versionName);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_remote_props_version_name), versionName);
+        editor.apply();
 
         mSettingsViewModel.setPropsVersionName(versionName);
     }
 
     public String getRemotePropsVersionName() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_remote_props_version_name), "0");
+        return mPrefs.getString(key(R.string.settings_key_remote_props_version_name), "0");
     }
 
     public void setAutocompleteEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_autocomplete), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_autocomplete), isEnabled);
+        editor.apply();
     }
 
     public boolean isAutocompleteEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_autocomplete), AUTOCOMPLETE_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_autocomplete), AUTOCOMPLETE_ENABLED);
     }
 
     public void setWebGLOutOfProcess(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_webgl_out_of_process), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_webgl_out_of_process), isEnabled);
+        editor.apply();
     }
 
     public boolean isWebGLOutOfProcess() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_webgl_out_of_process), WEBGL_OUT_OF_PROCESS);
+        return mPrefs.getBoolean(key(R.string.settings_key_webgl_out_of_process), WEBGL_OUT_OF_PROCESS);
     }
 
     public int getPrefsLastResetVersionCode() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_prefs_last_reset_version_code), PREFS_LAST_RESET_VERSION_CODE);
+        return mPrefs.getInt(key(R.string.settings_key_prefs_last_reset_version_code), PREFS_LAST_RESET_VERSION_CODE);
     }
 
     public void setPrefsLastResetVersionCode(int versionCode) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_prefs_last_reset_version_code), versionCode);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_prefs_last_reset_version_code), versionCode);
+        editor.apply();
     }
 
+    /**
+     * The remote properties are parsed the first time they are requested after they change.
+     * @return An unmodifiable map of the remote properties by version, or null if there are none.
+     */
     @Nullable
-    public Map<String, RemoteProperties> getRemoteProperties() {
-        String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
+    public synchronized Map<String, RemoteProperties> getRemoteProperties() {
+        if (!mRemotePropertiesParsed) {
+            String json = mPrefs.getString(key(R.string.settings_key_remote_props), null);
 
-        Gson gson = new GsonBuilder().create();
-        Type type = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
+            Map<String, RemoteProperties> propertiesMap = null;
+            try {
+                propertiesMap = mGson.fromJson(json, REMOTE_PROPERTIES_TYPE);
 
-        Map<String, RemoteProperties> propertiesMap = null;
-        try {
-            propertiesMap = gson.fromJson(json, type);
+            } catch (Exception ignored) { }
 
-        } catch (Exception ignored) { }
+            mRemoteProperties = propertiesMap != null ? Collections.unmodifiableMap(propertiesMap) : null;
+            mRemotePropertiesParsed = true;
+        }
+
+        return mRemoteProperties;
+    }
 
-        return propertiesMap;
+    private synchronized void invalidateRemoteProperties() {
+        mRemoteProperties = null;
+        mRemotePropertiesParsed = false;
     }
-    
+
     public void setRemoteProperties(@Nullable String json) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_remote_props), json);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_remote_props), json);
+        editor.apply();
+        // Change listeners are posted to the UI thread when written from other threads.
+        invalidateRemoteProperties();
     }
 
     public void recordPasswordsEncryptionKeyGenerated() {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_passwords_encryption_key_generated), true);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_passwords_encryption_key_generated), true);
+        editor.apply();
     }
 
     public boolean isPasswordsEncryptionKeyGenerated() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_passwords_encryption_key_generated), PASSWORDS_ENCRYPTION_KEY_GENERATED);
+        return mPrefs.getBoolean(key(R.string.settings_key_passwords_encryption_key_generated), PASSWORDS_ENCRYPTION_KEY_GENERATED);
     }
 
     public void setAutoFillEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_autofill_enabled), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_autofill_enabled), isEnabled);
+        editor.apply();
     }
 
     public boolean isAutoFillEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_autofill_enabled), AUTOFILL_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_autofill_enabled), AUTOFILL_ENABLED);
     }
 
     public void setLoginAutocompleteEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_login_autocomplete_enabled), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_login_autocomplete_enabled), isEnabled);
+        editor.apply();
     }
 
     public boolean isLoginAutocompleteEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_login_autocomplete_enabled), LOGIN_AUTOCOMPLETE_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_login_autocomplete_enabled), LOGIN_AUTOCOMPLETE_ENABLED);
     }
 
     public void setLoginSyncEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_login_sync_enabled), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_login_sync_enabled), isEnabled);
+        editor.apply();
     }
 
     public boolean isLoginSyncEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_login_sync_enabled), LOGIN_SYNC_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_login_sync_enabled), LOGIN_SYNC_DEFAULT);
     }
 
     public void setTabAfterRestore(@Nullable String uri) {
         SharedPreferences.Editor editor = mPrefs.edit();
         if (!StringUtils.isEmpty(uri)) {
-            editor.putString(mContext.getString(R.string.settings_key_tab_after_restore), uri);
+            editor.putString(key(R.string.settings_key_tab_after_restore), uri);
         } else {
-            editor.remove(mContext.getString(R.string.settings_key_tab_after_restore));
+            editor.remove(key(R.string.settings_key_tab_after_restore));
         }
-        editor.commit();
+        editor.apply();
     }
 
     public String getTabAfterRestore() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_tab_after_restore), null);
+        return mPrefs.getString(key(R.string.settings_key_tab_after_restore), null);
     }
 
 }
@@ -1,9 +1,12 @@
 package org.mozilla.vrbrowser.browser;
 
-import android.app.Activity;
-import android.text.TextUtils;
-import android.util.ArrayMap;
+import android.content.Context;
+import android.net.Uri;
 import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -11,27 +14,47 @@ import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
+/**
+ * Looks up the user agent override of a URL. The overrides file is keyed by the SHA-512 hex digest
+ * of a domain, so every domain suffix of the host is hashed and looked up until one matches.
+ *
+ * The digests are decoded once into a table sorted by their first 8 bytes, so a lookup compares
+ * the raw digest bytes without building hex strings. Results are kept in a bounded LRU by host.
+ */
 public class UserAgentOverride {
     private final static String LOGTAG = SystemUtils.createLogtag(UserAgentOverride.class);
     private static final String NO_OVERRIDE_FOUND = "NO OVERRIDE USER AGENT FOUND";
-    private ArrayMap<String, String> mOverrideMap;
-    private ArrayMap<String, String> mOverrideCache;
+    private static final int DIGEST_LENGTH = 64;
+    private static final int CACHE_SIZE = 256;
+
+    // Sorted by mPrefixes. mDigests and mOverrides are the matching full digests and overrides.
+    private long[] mPrefixes = new long[0];
+    private byte[][] mDigests = new byte[0][];
+    private String[] mOverrides = new String[0];
+    private LruCache<String, String> mOverrideCache = new LruCache<>(CACHE_SIZE);
+    private MessageDigest mMessageDigest;
+    private final byte[] mDigestBuffer = new byte[DIGEST_LENGTH];
+
     public UserAgentOverride() {
-        mOverrideMap = new ArrayMap<>();
-        mOverrideCache = new ArrayMap<>();
+        try {
+            mMessageDigest = MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(LOGTAG, "Error while trying to create the domain digest: " + e.getMessage());
+        }
     }
 
-    public void loadOverridesFromAssets(Activity aActivity, String aFileName) {
+    public void loadOverridesFromAssets(Context aContext, String aFileName) {
         String json = null;
-        try (InputStream is = aActivity.getAssets().open(aFileName)) {
+        try (InputStream is = aContext.getAssets().open(aFileName)) {
             int size = is.available();
             byte[] buffer = new byte[size];
             is.read(buffer);
@@ -43,91 +66,106 @@ public class UserAgentOverride {
         }
     }
 
-    public String lookupOverride(final String aUri) {
-        if (aUri == null) {
+    public synchronized String lookupOverride(final String aUri) {
+        if (aUri == null || mMessageDigest == null) {
             return null;
         }
-        Log.d(LOGTAG, "lookupOverride for: " + aUri);
-        URI uri;
-        try {
-            uri = new URI(aUri);
-        } catch (URISyntaxException e) {
-            Log.d(LOGTAG, "Error parsing URL: " + aUri + " " + e.getMessage());
-            return null;
-        }
-        String fullDomain = uri.getHost();
-        if (fullDomain == null) {
+        String host = Uri.parse(aUri).getHost();
+        if (host == null || host.isEmpty()) {
             return null;
         }
 
-        fullDomain = fullDomain.toLowerCase();
-
-        String override = mOverrideCache.get(fullDomain);
-
+        host = host.toLowerCase();
+        String override = mOverrideCache.get(host);
         if (override != null) {
-            Log.d(LOGTAG, "Found override: " + override);
             return override.equals(NO_OVERRIDE_FOUND) ? null : override;
         }
 
-        List<String> domains = Arrays.asList(fullDomain.split("\\."));
-        final int domainCount = domains.size();
-        String[] checkedDomains = new String[domainCount];
+        override = lookupHost(host);
+        mOverrideCache.put(host, override != null ? override : NO_OVERRIDE_FOUND);
+        return override;
+    }
 
-        for (int ix = 0; ix < domainCount; ix++) {
-            String domain = TextUtils.join(".", domains.subList(ix, domainCount));
-            checkedDomains[ix] = domain;
-            override = mOverrideCache.get(domain);
-            if (override != null) {
-                Log.d(LOGTAG, "found cached override: " + override);
-                addToCache(checkedDomains, override);
-                return override.equals(NO_OVERRIDE_FOUND) ? null : override;
-            }
-            String domainHash = hashDomain(domain);
-            if (domainHash == null) {
-                Log.d(LOGTAG, "Failed to hash domain: " + domain);
-                return null;
-            }
-            Log.d(LOGTAG, "hash: " + domainHash);
-            override = mOverrideMap.get(domainHash);
+    @Nullable
+    private String lookupHost(@NonNull String aHost) {
+        // Dots are single bytes in UTF-8, so the suffixes can be hashed straight from the host bytes.
+        byte[] host = aHost.getBytes(StandardCharsets.UTF_8);
+        int end = host.length;
+        while (end > 0 && host[end - 1] == '.') {
+            end--;
+        }
+
+        int start = 0;
+        while (start < end) {
+            String override = lookupDigest(host, start, end - start);
             if (override != null) {
-                Log.d(LOGTAG, "found override from hash: " + override);
-                addToCache(checkedDomains, override);
                 return override;
             }
+            while (start < end && host[start] != '.') {
+                start++;
+            }
+            start++;
         }
-        addToCache(checkedDomains, NO_OVERRIDE_FOUND);
+
         return null;
     }
 
-    private void addToCache(String[] aDomains, String aOverride) {
-        for (String domain: aDomains) {
-            if (domain == null) {
-                Log.d(LOGTAG, "Found null domain in checked list");
-                continue;
-            } else {
-                Log.d(LOGTAG, domain + " override: " + aOverride);
+    @Nullable
+    private String lookupDigest(@NonNull byte[] aData, int aOffset, int aLength) {
+        mMessageDigest.update(aData, aOffset, aLength);
+        try {
+            mMessageDigest.digest(mDigestBuffer, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            Log.e(LOGTAG, "Failed to hash domain: " + e.getMessage());
+            return null;
+        }
+
+        long prefix = prefixOf(mDigestBuffer);
+        int index = Arrays.binarySearch(mPrefixes, prefix);
+        if (index < 0) {
+            return null;
+        }
+        // Walk back to the first entry with the same prefix, then check the full digests.
+        while (index > 0 && mPrefixes[index - 1] == prefix) {
+            index--;
+        }
+        for (; index < mPrefixes.length && mPrefixes[index] == prefix; index++) {
+            if (Arrays.equals(mDigests[index], mDigestBuffer)) {
+                return mOverrides[index];
             }
-            mOverrideCache.put(domain, aOverride);
         }
+
+        return null;
     }
 
-    private String hashDomain(String aDomain) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-512");
-            byte[] digest = md.digest(aDomain.getBytes());
-            StringBuilder sb = new StringBuilder();
-            for (int value: digest) {
-                sb.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
-            }
+    private static long prefixOf(@NonNull byte[] aDigest) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (aDigest[i] & 0xff);
+        }
+        return prefix;
+    }
 
-            return sb.toString();
-        } catch (NoSuchAlgorithmException e) {
-            Log.e(LOGTAG, "Error while trying to hash domain: " + e.getMessage());
+    @Nullable
+    private static byte[] decodeDigest(@NonNull String aHex) {
+        if (aHex.length() != DIGEST_LENGTH * 2) {
+            return null;
         }
-        return null;
+        byte[] digest = new byte[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            int high = Character.digit(aHex.charAt(i * 2), 16);
+            int low = Character.digit(aHex.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            digest[i] = (byte) ((high << 4) | low);
+        }
+        return digest;
     }
 
     private void importJSONData(final String aData) {
+        List<byte[]> digests = new ArrayList<>();
+        List<String> overrides = new ArrayList<>();
         try {
             JSONObject json = new JSONObject(aData);
             Iterator<String> iter = json.keys();
@@ -135,8 +173,13 @@ public class UserAgentOverride {
                 String key = iter.next();
                 try {
                     String value = json.getString(key);
-                    Log.d(LOGTAG, "User agent override: " + key + " -> " + value);
-                    mOverrideMap.put(key, value);
+                    byte[] digest = decodeDigest(key.toLowerCase());
+                    if (digest == null) {
+                        Log.e(LOGTAG, "Invalid UA Override domain hash: " + key);
+                        continue;
+                    }
+                    digests.add(digest);
+                    overrides.add(value);
                 } catch (JSONException e) {
                     Log.e(LOGTAG, "Failed to find UA Override while parsing file for key: " + key);
                 }
@@ -145,5 +188,28 @@ public class UserAgentOverride {
         } catch (JSONException e) {
             Log.e(LOGTAG, "Failed to import user agent override JSON data: " + e.getMessage());
         }
+
+        Integer[] order = new Integer[digests.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(prefixOf(digests.get(a)), prefixOf(digests.get(b))));
+
+        long[] prefixes = new long[order.length];
+        byte[][] sortedDigests = new byte[order.length][];
+        String[] sortedOverrides = new String[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedDigests[i] = digests.get(order[i]);
+            sortedOverrides[i] = overrides.get(order[i]);
+            prefixes[i] = prefixOf(sortedDigests[i]);
+        }
+
+        synchronized (this) {
+            mPrefixes = prefixes;
+            mDigests = sortedDigests;
+            mOverrides = sortedOverrides;
+            mOverrideCache.evictAll();
+        }
+        Log.d(LOGTAG, "Loaded " + order.length + " user agent overrides");
     }
 }
@@ -54,7 +54,6 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
     private SitePermissionViewModel mViewModel;
     private List<TrackingProtectionListener> mListeners;
     private SharedPreferences mPrefs;
-    private List<SitePermission> mSitePermissions;
     private boolean mIsFirstUpdate;
 
     public TrackingProtectionStore(@NonNull Context context,
@@ -63,7 +62,6 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
         mRuntime = runtime;
         mContentBlockingController = mRuntime.getContentBlockingController();
         mListeners = new ArrayList<>();
-        mSitePermissions = new ArrayList<>();
         mIsFirstUpdate = true;
 
         mLifeCycle = ((VRBrowserActivity) context).getLifecycle();
@@ -99,8 +97,6 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
         @Override
         public void onChanged(List<SitePermission> sitePermissions) {
             if (sitePermissions != null) {
-                mSitePermissions = sitePermissions;
-
                 // Restore the site list on the permissions storage notification
                 if (mIsFirstUpdate) {
                     List<ContentBlockingException> exceptions = sitePermissions
@@ -178,7 +174,7 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
 
     public void removeAll() {
         // We can't use clearExceptionList as that clears also the private browsing exceptions
-        mSitePermissions.forEach(permission -> {
+        mViewModel.getSites(SITE_PERMISSION_TRACKING).forEach(permission -> {
             ContentBlockingException exception = toContentBlockingException(permission);
             if (exception != null) {
                 mContentBlockingController.removeException(exception);
@@ -193,15 +189,16 @@ public class TrackingProtectionStore implements DefaultLifecycleObserver,
 
     private void saveExceptions() {
         mRuntime.getContentBlockingController().saveExceptionList().accept(contentBlockingExceptions -> {
-            mViewModel.deleteAll(SITE_PERMISSION_TRACKING);
+            List<SitePermission> permissions = new ArrayList<>();
             if (contentBlockingExceptions != null) {
                 contentBlockingExceptions.forEach(exception -> {
                     SitePermission permission = toSitePermission(exception);
                     if (permission != null) {
-                        mViewModel.insertSite(permission);
+                        permissions.add(permission);
                     }
                 });
             }
+            mViewModel.replaceAll(SITE_PERMISSION_TRACKING, permissions);
         });
     }
 
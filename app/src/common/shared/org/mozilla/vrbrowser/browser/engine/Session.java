@@ -9,6 +9,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.view.Surface;
@@ -93,6 +94,9 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     private transient GeckoRuntime mRuntime;
     private transient byte[] mPrivatePage;
     private transient boolean mFirstContentfulPaint;
+    private transient long mRestoreStartTime;
+    private transient int mDisplayWidth;
+    private transient int mDisplayHeight;
     private transient long mKeepAlive;
     private transient Media mMedia;
 
@@ -484,14 +488,14 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
     private boolean shouldLoadDefaultPage(@NonNull SessionState aState) {
         // data:text URLs can not be restored.
-        if (mState.mSessionState != null && ((mState.mUri == null) || mState.mUri.startsWith("data:text"))) {
+        if (mState.hasGeckoSessionState() && ((mState.mUri == null) || mState.mUri.startsWith("data:text"))) {
             return true;
         }
 
         if (aState.mUri != null && aState.mUri.length() != 0 && !aState.mUri.equals(mContext.getString(R.string.about_blank))) {
             return false;
         }
-        if (aState.mSessionState != null && aState.mSessionState.size() != 0) {
+        if (aState.getGeckoSessionState() != null && aState.getGeckoSessionState().size() != 0) {
             return false;
         }
         return true;
@@ -523,8 +527,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
         if (shouldLoadDefaultPage(mState)) {
             loadDefaultPage();
-        } else if (mState.mSessionState != null) {
-            mState.mSession.restoreState(mState.mSessionState);
+        } else if (mState.getGeckoSessionState() != null) {
+            mState.mSession.restoreState(mState.getGeckoSessionState());
             if (mState.mUri != null && mState.mUri.contains(".youtube.com")) {
                 mState.mSession.load(new GeckoSession.Loader()
                     .uri(mState.mUri)
@@ -636,26 +640,26 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     }
 
     public void captureBitmap() {
-        if (mState.mDisplay == null || !mFirstContentfulPaint) {
+        if (mState.mDisplay == null || !mFirstContentfulPaint || mDisplayWidth <= 0 || mDisplayHeight <= 0) {
             return;
         }
+        BitmapCache cache = BitmapCache.getInstance(mContext);
+        int[] size = BitmapCache.getThumbnailSize(mDisplayWidth, mDisplayHeight);
+        Bitmap target = cache.acquireCaptureBitmap(size[0], size[1]);
         try {
-            mState.mDisplay.screenshot().aspectPreservingSize(500).capture().then(bitmap -> {
-                if (bitmap != null) {
-                    BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap);
-                    for (BitmapChangedListener listener: mBitmapChangedListeners) {
-                        listener.onBitmapChanged(Session.this, bitmap);
-                    }
-                }
+            mState.mDisplay.screenshot().size(size[0], size[1]).bitmap(target).capture().then(bitmap -> {
+                onBitmapCaptured(bitmap, target);
                 return null;
             }).exceptionally(throwable -> {
                 Log.e(LOGTAG, "Error capturing session bitmap");
                 throwable.printStackTrace();
+                cache.releaseCaptureBitmap(target);
                 return null;
             });
         } catch (Exception ex) {
             Log.e(LOGTAG, "Error capturing session bitmap");
             ex.printStackTrace();
+            cache.releaseCaptureBitmap(target);
         }
 
     }
@@ -664,7 +668,16 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         if (mState.mSession == null || !mFirstContentfulPaint) {
             return CompletableFuture.completedFuture(null);
         }
-        Surface captureSurface = BitmapCache.getInstance(mContext).acquireCaptureSurface(displayWidth, displayHeight);
+        // Background captures share a single capture surface, queue them instead of dropping them.
+        return BitmapCache.getInstance(mContext).scheduleCapture(() -> doCaptureBackgroundBitmap(displayWidth, displayHeight));
+    }
+
+    private CompletableFuture<Void> doCaptureBackgroundBitmap(int displayWidth, int displayHeight) {
+        if (mState.mSession == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        BitmapCache cache = BitmapCache.getInstance(mContext);
+        Surface captureSurface = cache.acquireCaptureSurface(displayWidth, displayHeight);
         if (captureSurface == null) {
             return CompletableFuture.completedFuture(null);
         }
@@ -673,28 +686,27 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         GeckoDisplay display = mState.mSession.acquireDisplay();
         display.surfaceChanged(captureSurface, displayWidth, displayHeight);
 
+        int[] size = BitmapCache.getThumbnailSize(displayWidth, displayHeight);
+        Bitmap target = cache.acquireCaptureBitmap(size[0], size[1]);
+
         Runnable cleanResources = () -> {
             display.surfaceDestroyed();
             if (mState.mSession != null) {
                 mState.mSession.releaseDisplay(display);
             }
-            BitmapCache.getInstance(mContext).releaseCaptureSurface();
+            cache.releaseCaptureSurface();
         };
 
         try {
-            display.screenshot().aspectPreservingSize(500).capture().then(bitmap -> {
-                if (bitmap != null) {
-                    BitmapCache.getInstance(mContext).addBitmap(getId(), bitmap);
-                    for (BitmapChangedListener listener : mBitmapChangedListeners) {
-                        listener.onBitmapChanged(Session.this, bitmap);
-                    }
-                }
+            display.screenshot().size(size[0], size[1]).bitmap(target).capture().then(bitmap -> {
+                onBitmapCaptured(bitmap, target);
                 cleanResources.run();
                 result.complete(null);
                 return null;
             }).exceptionally(throwable -> {
                 Log.e(LOGTAG, "Error capturing session background bitmap");
                 throwable.printStackTrace();
+                cache.releaseCaptureBitmap(target);
                 cleanResources.run();
                 result.complete(null);
                 return null;
@@ -703,12 +715,26 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         catch (Exception ex) {
             Log.e(LOGTAG, "Error capturing session background bitmap");
             ex.printStackTrace();
+            cache.releaseCaptureBitmap(target);
             cleanResources.run();
             result.complete(null);
         }
         return result;
     }
 
+    private void onBitmapCaptured(@Nullable Bitmap aBitmap, @NonNull Bitmap aTarget) {
+        BitmapCache cache = BitmapCache.getInstance(mContext);
+        if (aBitmap != aTarget) {
+            cache.releaseCaptureBitmap(aTarget);
+        }
+        if (aBitmap != null) {
+            cache.addBitmap(getId(), aBitmap);
+            for (BitmapChangedListener listener : mBitmapChangedListeners) {
+                listener.onBitmapChanged(Session.this, aBitmap);
+            }
+        }
+    }
+
     public boolean hasCapturedBitmap() {
         return BitmapCache.getInstance(mContext).hasBitmap(mState.mId);
     }
@@ -789,6 +815,10 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         return mMedia.isActive() ? mMedia : null;
     }
 
+    public boolean isMediaPlaying() {
+        return mMedia.isPlaying();
+    }
+
     public boolean isInputActive() {
         return mState.mIsInputActive;
     }
@@ -845,6 +875,11 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
             }
 
         } else if (aActive) {
+            // Only suspended sessions with saved state count as restored, not new background
+            // tabs or sessions recreated after a crash.
+            if (mState.getGeckoSessionState() != null) {
+                mRestoreStartTime = SystemClock.uptimeMillis();
+            }
             restore();
 
         } else {
@@ -1067,6 +1102,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
     public void updateLastUse() {
         mState.mLastUse = System.currentTimeMillis();
+        SessionStore.get().sessionIndexChanged(this);
     }
 
     public long getLastUse() {
@@ -1096,6 +1132,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
 
         mState.mPreviousUri = mState.mUri;
         mState.mUri = aUri;
+        SessionStore.get().sessionIndexChanged(this);
 
         boolean forceMobileViewport = FORCE_MOBILE_VIEWPORT.stream().anyMatch(aUri::contains);
         if (forceMobileViewport) {
@@ -1277,6 +1314,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
                                      @NonNull GeckoSession.SessionState aSessionState) {
         if (mState.mSession == aSession) {
             mState.mSessionState = aSessionState;
+            mState.mSessionStateData = null;
         }
     }
 
@@ -1356,6 +1394,10 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     @Override
     public void onFirstContentfulPaint(@NonNull GeckoSession aSession) {
         mFirstContentfulPaint = true;
+        if (mRestoreStartTime > 0) {
+            SessionStore.get().getSessionBudget().onSessionRestored(SystemClock.uptimeMillis() - mRestoreStartTime);
+            mRestoreStartTime = 0;
+        }
         if (mState.mSession == aSession) {
             for (GeckoSession.ContentDelegate listener : mContentListeners) {
                 listener.onFirstContentfulPaint(aSession);
@@ -1814,6 +1856,8 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         if (mState.mDisplay == null) {
             mState.mDisplay = mState.mSession.acquireDisplay();
         }
+        mDisplayWidth = width;
+        mDisplayHeight = height;
         mState.mDisplay.surfaceChanged(surface, left, top, width, height);
     }
 
@@ -0,0 +1,163 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the number of live GeckoSessions under a budget that adapts to the device memory and
+ * to memory pressure. When the budget is exceeded the coldest inactive sessions are suspended first.
+ */
+public class SessionBudget {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SessionBudget.class);
+
+    // One live session per window is always allowed.
+    static final int MIN_GECKO_SESSIONS = 3;
+    // Same cap SessionStore used before the budget existed. The budget only ever lowers it.
+    static final int MAX_GECKO_SESSIONS = 5;
+    // Rough memory cost of a live GeckoSession.
+    private static final long SESSION_MEMORY_ESTIMATE = 150L * 1024 * 1024;
+    // Time after the last memory pressure signal before going back to the default budget.
+    private static final long PRESSURE_RECOVERY_MS = 60 * 1000;
+
+    // Coldest sessions first: no media playing, no WebXR, least recently used.
+    private static final Comparator<Session> COLDEST_FIRST = Comparator
+            .comparing(Session::isMediaPlaying)
+            .thenComparing(session -> session.getWebXRState() != SessionState.WEBXR_UNUSED)
+            .thenComparingLong(Session::getLastUse);
+
+    private Context mContext;
+    private int mBaseBudget = MAX_GECKO_SESSIONS;
+    private int mBudget = MAX_GECKO_SESSIONS;
+    private long mPressureTime;
+    private int mLiveCount;
+    private int mSuspendedCount;
+    private long mSuspendedByBudget;
+    private long mRestoredCount;
+    private long mRestoreTotalMs;
+
+    public SessionBudget(@NonNull Context aContext) {
+        mContext = aContext;
+        updateBaseBudget();
+    }
+
+    private void updateBaseBudget() {
+        ActivityManager activityManager = (ActivityManager) mContext.getSystemService(Context.ACTIVITY_SERVICE);
+        if (activityManager == null) {
+            return;
+        }
+        ActivityManager.MemoryInfo info = new ActivityManager.MemoryInfo();
+        activityManager.getMemoryInfo(info);
+        int budget = (int) ((info.availMem - info.threshold) / SESSION_MEMORY_ESTIMATE);
+        mBaseBudget = Math.max(MIN_GECKO_SESSIONS, Math.min(budget, MAX_GECKO_SESSIONS));
+        mBudget = mBaseBudget;
+    }
+
+    /**
+     * @return The maximum number of GeckoSessions that should be alive at the same time.
+     */
+    public int getBudget() {
+        if (mPressureTime > 0 && SystemClock.uptimeMillis() - mPressureTime > PRESSURE_RECOVERY_MS) {
+            mPressureTime = 0;
+            updateBaseBudget();
+        }
+        return mBudget;
+    }
+
+    public void onTrimMemory(int aLevel) {
+        switch (aLevel) {
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+                mBudget = Math.max(MIN_GECKO_SESSIONS, Math.min(mBudget, mBaseBudget - 1));
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+                mBudget = Math.max(MIN_GECKO_SESSIONS, Math.min(mBudget, mBaseBudget / 2));
+                break;
+            case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+                mBudget = 0;
+                break;
+            default:
+                return;
+        }
+        mPressureTime = SystemClock.uptimeMillis();
+        Log.d(LOGTAG, "Memory pressure level " + aLevel + ", session budget: " + mBudget);
+    }
+
+    /**
+     * Suspends the coldest inactive sessions until the number of live sessions fits the budget.
+     * Sessions playing media are only suspended when the budget is exhausted by critical memory pressure.
+     */
+    public void enforce(@NonNull List<Session> aSessions) {
+        int budget = getBudget();
+        List<Session> candidates = new ArrayList<>();
+        int live = 0;
+        for (Session session: aSessions) {
+            if (session.getGeckoSession() == null) {
+                continue;
+            }
+            live++;
+            if (!session.isActive() && (budget == 0 || !session.isMediaPlaying())) {
+                candidates.add(session);
+            }
+        }
+
+        candidates.sort(COLDEST_FIRST);
+        for (Session session: candidates) {
+            if (live <= budget) {
+                break;
+            }
+            session.suspend();
+            if (session.getGeckoSession() == null) {
+                live--;
+                mSuspendedByBudget++;
+            }
+        }
+        updateCounts(aSessions);
+    }
+
+    void updateCounts(@NonNull List<Session> aSessions) {
+        int live = 0;
+        for (Session session: aSessions) {
+            if (session.getGeckoSession() != null) {
+                live++;
+            }
+        }
+        mLiveCount = live;
+        mSuspendedCount = aSessions.size() - live;
+    }
+
+    void onSessionRestored(long aLatencyMs) {
+        mRestoredCount++;
+        mRestoreTotalMs += aLatencyMs;
+    }
+
+    public int getLiveCount() {
+        return mLiveCount;
+    }
+
+    public int getSuspendedCount() {
+        return mSuspendedCount;
+    }
+
+    public long getSuspendedByBudgetCount() {
+        return mSuspendedByBudget;
+    }
+
+    public long getRestoredCount() {
+        return mRestoredCount;
+    }
+
+    public long getAverageRestoreLatencyMs() {
+        return mRestoredCount > 0 ? mRestoreTotalMs / mRestoredCount : 0;
+    }
+}
@@ -0,0 +1,210 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.vrbrowser.utils.UrlUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Indexes sessions by id, GeckoSession and host and keeps them ordered by last use, so lookups
+ * don't have to scan and sort the whole session list. The indexed values are read through the
+ * {@link Accessor} and only refreshed by {@link #update(Object)}, which has to be called whenever
+ * any of them might have changed.
+ *
+ * Lookups returning several sessions keep the order in which the sessions were added, the same
+ * order as the session list, and resolve ties in last use the same way.
+ */
+class SessionIndex<T> {
+
+    interface Accessor<T> {
+        @NonNull String getId(@NonNull T aSession);
+        @Nullable GeckoSession getGeckoSession(@NonNull T aSession);
+        @NonNull String getCurrentUri(@NonNull T aSession);
+        long getLastUse(@NonNull T aSession);
+        boolean isPrivateMode(@NonNull T aSession);
+    }
+
+    private static class Entry<T> {
+        final T mSession;
+        final long mOrder;
+        String mId;
+        GeckoSession mGeckoSession;
+        String mUri;
+        String mHost;
+        long mLastUse;
+
+        Entry(T aSession, long aOrder) {
+            mSession = aSession;
+            mOrder = aOrder;
+        }
+    }
+
+    private final Accessor<T> mAccessor;
+    private final IdentityHashMap<T, Entry<T>> mEntries = new IdentityHashMap<>();
+    private final HashMap<String, Entry<T>> mById = new HashMap<>();
+    private final IdentityHashMap<GeckoSession, Entry<T>> mByGeckoSession = new IdentityHashMap<>();
+    // Every list is ordered by Entry.mOrder.
+    private final HashMap<String, ArrayList<Entry<T>>> mByHost = new HashMap<>();
+    // Most recently used first, same as a stable sort of the session list.
+    private final TreeSet<Entry<T>> mByLastUse = new TreeSet<>((o1, o2) -> {
+        if (o1.mLastUse != o2.mLastUse) {
+            return o2.mLastUse < o1.mLastUse ? -1 : 1;
+        }
+        return Long.compare(o1.mOrder, o2.mOrder);
+    });
+    private long mNextOrder;
+
+    SessionIndex(@NonNull Accessor<T> aAccessor) {
+        mAccessor = aAccessor;
+    }
+
+    void add(@NonNull T aSession) {
+        if (mEntries.containsKey(aSession)) {
+            update(aSession);
+            return;
+        }
+        Entry<T> entry = new Entry<>(aSession, mNextOrder++);
+        mEntries.put(aSession, entry);
+        entry.mLastUse = mAccessor.getLastUse(aSession);
+        mByLastUse.add(entry);
+        update(aSession);
+    }
+
+    void remove(@NonNull T aSession) {
+        Entry<T> entry = mEntries.remove(aSession);
+        if (entry == null) {
+            return;
+        }
+        if (entry.mId != null && mById.get(entry.mId) == entry) {
+            mById.remove(entry.mId);
+        }
+        if (entry.mGeckoSession != null && mByGeckoSession.get(entry.mGeckoSession) == entry) {
+            mByGeckoSession.remove(entry.mGeckoSession);
+        }
+        removeFromHost(entry);
+        mByLastUse.remove(entry);
+    }
+
+    void update(@NonNull T aSession) {
+        Entry<T> entry = mEntries.get(aSession);
+        if (entry == null) {
+            return;
+        }
+
+        String id = mAccessor.getId(aSession);
+        if (!id.equals(entry.mId)) {
+            if (entry.mId != null && mById.get(entry.mId) == entry) {
+                mById.remove(entry.mId);
+            }
+            entry.mId = id;
+            mById.put(id, entry);
+        }
+
+        GeckoSession geckoSession = mAccessor.getGeckoSession(aSession);
+        if (geckoSession != entry.mGeckoSession) {
+            if (entry.mGeckoSession != null && mByGeckoSession.get(entry.mGeckoSession) == entry) {
+                mByGeckoSession.remove(entry.mGeckoSession);
+            }
+            entry.mGeckoSession = geckoSession;
+            if (geckoSession != null) {
+                mByGeckoSession.put(geckoSession, entry);
+            }
+        }
+
+        String uri = mAccessor.getCurrentUri(aSession);
+        if (!uri.equals(entry.mUri)) {
+            entry.mUri = uri;
+            String host = UrlUtils.getHost(uri);
+            if (!host.equals(entry.mHost)) {
+                removeFromHost(entry);
+                entry.mHost = host;
+                addToHost(entry);
+            }
+        }
+
+        long lastUse = mAccessor.getLastUse(aSession);
+        if (lastUse != entry.mLastUse) {
+            mByLastUse.remove(entry);
+            entry.mLastUse = lastUse;
+            mByLastUse.add(entry);
+        }
+    }
+
+    void clear() {
+        mEntries.clear();
+        mById.clear();
+        mByGeckoSession.clear();
+        mByHost.clear();
+        mByLastUse.clear();
+    }
+
+    @Nullable
+    T getById(@Nullable String aId) {
+        Entry<T> entry = mById.get(aId);
+        return entry != null ? entry.mSession : null;
+    }
+
+    @Nullable
+    T getByGeckoSession(@Nullable GeckoSession aGeckoSession) {
+        Entry<T> entry = mByGeckoSession.get(aGeckoSession);
+        return entry != null ? entry.mSession : null;
+    }
+
+    @NonNull
+    List<T> getByHost(@NonNull String aHost, boolean aIsPrivate) {
+        ArrayList<Entry<T>> entries = mByHost.get(aHost);
+        ArrayList<T> result = new ArrayList<>(entries != null ? entries.size() : 0);
+        if (entries != null) {
+            for (Entry<T> entry : entries) {
+                if (mAccessor.isPrivateMode(entry.mSession) == aIsPrivate) {
+                    result.add(entry.mSession);
+                }
+            }
+        }
+        return result;
+    }
+
+    @NonNull
+    ArrayList<T> getSortedByLastUse(boolean aIsPrivate) {
+        ArrayList<T> result = new ArrayList<>(mByLastUse.size());
+        for (Entry<T> entry : mByLastUse) {
+            if (mAccessor.isPrivateMode(entry.mSession) == aIsPrivate) {
+                result.add(entry.mSession);
+            }
+        }
+        return result;
+    }
+
+    private void addToHost(@NonNull Entry<T> aEntry) {
+        ArrayList<Entry<T>> entries = mByHost.get(aEntry.mHost);
+        if (entries == null) {
+            entries = new ArrayList<>(1);
+            mByHost.put(aEntry.mHost, entries);
+        }
+        int index = entries.size();
+        while (index > 0 && entries.get(index - 1).mOrder > aEntry.mOrder) {
+            index--;
+        }
+        entries.add(index, aEntry);
+    }
+
+    private void removeFromHost(@NonNull Entry<T> aEntry) {
+        if (aEntry.mHost == null) {
+            return;
+        }
+        ArrayList<Entry<T>> entries = mByHost.get(aEntry.mHost);
+        if (entries != null) {
+            entries.remove(aEntry);
+            if (entries.isEmpty()) {
+                mByHost.remove(aEntry.mHost);
+            }
+        }
+    }
+}
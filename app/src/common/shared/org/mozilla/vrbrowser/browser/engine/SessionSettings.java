@@ -9,6 +9,8 @@ import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.content.TrackingProtectionStore;
 import org.mozilla.vrbrowser.browser.content.TrackingProtectionPolicy;
 
+import java.util.Objects;
+
 class SessionSettings {
 
     private boolean isPrivateBrowsingEnabled;
@@ -29,6 +31,16 @@ class SessionSettings {
         this.userAgentOverride = builder.userAgentOverride;
     }
 
+    /* package */ SessionSettings(@NonNull SessionSettings aOther) {
+        this.isPrivateBrowsingEnabled = aOther.isPrivateBrowsingEnabled;
+        this.isTrackingProtectionEnabled = aOther.isTrackingProtectionEnabled;
+        this.isSuspendMediaWhenInactiveEnabled = aOther.isSuspendMediaWhenInactiveEnabled;
+        this.userAgentMode = aOther.userAgentMode;
+        this.viewportMode = aOther.viewportMode;
+        this.isServoEnabled = aOther.isServoEnabled;
+        this.userAgentOverride = aOther.userAgentOverride;
+    }
+
     public boolean isPrivateBrowsingEnabled() { return isPrivateBrowsingEnabled; }
     public void setPrivateBrowsingEnabled(boolean enabled) {
         isPrivateBrowsingEnabled = enabled;
@@ -74,6 +86,30 @@ class SessionSettings {
         isServoEnabled = enabled;
     }
 
+    @Override
+    public boolean equals(Object aOther) {
+        if (this == aOther) {
+            return true;
+        }
+        if (!(aOther instanceof SessionSettings)) {
+            return false;
+        }
+        SessionSettings other = (SessionSettings) aOther;
+        return isPrivateBrowsingEnabled == other.isPrivateBrowsingEnabled &&
+                isTrackingProtectionEnabled == other.isTrackingProtectionEnabled &&
+                isSuspendMediaWhenInactiveEnabled == other.isSuspendMediaWhenInactiveEnabled &&
+                userAgentMode == other.userAgentMode &&
+                viewportMode == other.viewportMode &&
+                isServoEnabled == other.isServoEnabled &&
+                Objects.equals(userAgentOverride, other.userAgentOverride);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(isPrivateBrowsingEnabled, isTrackingProtectionEnabled, isSuspendMediaWhenInactiveEnabled,
+                userAgentMode, viewportMode, isServoEnabled, userAgentOverride);
+    }
+
     public static class Builder {
 
         private boolean isPrivateBrowsingEnabled;
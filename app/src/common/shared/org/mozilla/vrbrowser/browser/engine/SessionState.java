@@ -1,6 +1,7 @@
 package org.mozilla.vrbrowser.browser.engine;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.NonNull;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonParser;
@@ -18,6 +19,7 @@ import org.mozilla.vrbrowser.browser.Media;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Objects;
 import java.util.UUID;
 
 @JsonAdapter(SessionState.SessionStateAdapterFactory.class)
@@ -59,6 +61,8 @@ public class SessionState {
     public transient @DrmState int mDrmState = DRM_UNUSED;
     @JsonAdapter(SessionState.GeckoSessionStateAdapter.class)
     public GeckoSession.SessionState mSessionState;
+    // Serialized GeckoSession.SessionState waiting to be parsed, see getGeckoSessionState().
+    public transient String mSessionStateData;
     public long mLastUse;
     public String mRegion;
     public String mId = UUID.randomUUID().toString();
@@ -72,6 +76,7 @@ public class SessionState {
         result.mTitle = mTitle;
         result.mSettings = mSettings;
         result.mSessionState = mSessionState;
+        result.mSessionStateData = mSessionStateData;
         result.mLastUse = mLastUse;
         result.mRegion = mRegion;
         result.mId = mId;
@@ -81,6 +86,72 @@ public class SessionState {
         return result;
     }
 
+    /**
+     * Copies the persisted fields so the state can be serialized off the UI thread. The settings
+     * are mutable, so they are copied too.
+     */
+    public SessionState snapshot() {
+        SessionState result = recreate();
+        result.mSettings = mSettings != null ? new SessionSettings(mSettings) : null;
+        result.mCanGoBack = mCanGoBack;
+        result.mCanGoForward = mCanGoForward;
+        result.mIsLoading = mIsLoading;
+        result.mIsInputActive = mIsInputActive;
+
+        return result;
+    }
+
+    /**
+     * Compares every persisted field, used to detect which sessions changed between saves.
+     * GeckoSession.SessionState instances are replaced, not mutated, so identity is enough for them.
+     */
+    public boolean hasSamePersistedState(@NonNull SessionState aOther) {
+        return mCanGoBack == aOther.mCanGoBack &&
+                mCanGoForward == aOther.mCanGoForward &&
+                mIsLoading == aOther.mIsLoading &&
+                mIsInputActive == aOther.mIsInputActive &&
+                mLastUse == aOther.mLastUse &&
+                Objects.equals(mUri, aOther.mUri) &&
+                Objects.equals(mPreviousUri, aOther.mPreviousUri) &&
+                Objects.equals(mTitle, aOther.mTitle) &&
+                Objects.equals(mRegion, aOther.mRegion) &&
+                Objects.equals(mId, aOther.mId) &&
+                Objects.equals(mParentId, aOther.mParentId) &&
+                Objects.equals(mSettings, aOther.mSettings) &&
+                mSessionState == aOther.mSessionState &&
+                mSessionStateData == aOther.mSessionStateData;
+    }
+
+    public boolean hasGeckoSessionState() {
+        return mSessionState != null || mSessionStateData != null;
+    }
+
+    /**
+     * Restored history is kept serialized until the session is actually restored, parsing it for
+     * every saved tab at startup is expensive.
+     */
+    public GeckoSession.SessionState getGeckoSessionState() {
+        if (mSessionState == null && mSessionStateData != null) {
+            try {
+                mSessionState = GeckoSession.SessionState.fromString(mSessionStateData);
+            } catch (Exception e) {
+                mSessionState = null;
+            }
+            mSessionStateData = null;
+        }
+        return mSessionState;
+    }
+
+    /**
+     * @return The serialized GeckoSession.SessionState, without parsing it if it has not been parsed yet.
+     */
+    public String getGeckoSessionStateData() {
+        if (mSessionStateData != null) {
+            return mSessionStateData;
+        }
+        return mSessionState != null ? mSessionState.toString() : null;
+    }
+
     public static class GeckoSessionStateAdapter extends TypeAdapter<GeckoSession.SessionState> {
         @Override
         public void write(JsonWriter out, GeckoSession.SessionState session) throws IOException {
@@ -114,7 +185,6 @@ public class SessionState {
     public class SessionStateAdapterFactory implements TypeAdapterFactory {
         public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
             final TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
-            final TypeAdapter<GeckoSession.SessionState> gsDelegate = new GeckoSessionStateAdapter();
 
             return new TypeAdapter<T>() {
                 public void write(JsonWriter out, T value) throws IOException {
@@ -139,12 +209,9 @@ public class SessionState {
                                     out.name("mSessionState").jsonValue(null);
 
                                 } else {
-                                    if (session.mSessionState != null) {
-                                        out.name("mSessionState").jsonValue(gsDelegate.toJson(session.mSessionState));
-
-                                    } else {
-                                        out.name("mSessionState").jsonValue(null);
-                                    }
+                                    // Same output as the GeckoSessionStateAdapter, but pending
+                                    // serialized states are written without being parsed.
+                                    out.name("mSessionState").jsonValue(session.getGeckoSessionStateData());
                                 }
                             }
                             if (session.mSettings != null) {
@@ -32,8 +32,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
-import java.util.stream.Collectors;
 
 import mozilla.components.browser.state.state.BrowserState;
 import mozilla.components.feature.accounts.FxaCapability;
@@ -48,7 +48,6 @@ public class SessionStore implements
         ComponentsAdapter.StoreUpdatesListener {
 
     private static final String LOGTAG = SystemUtils.createLogtag(SessionStore.class);
-    private static final int MAX_GECKO_SESSIONS = 5;
 
     private static final List<Pair<String, String>> BUILTIN_WEB_EXTENSIONS = Arrays.asList(
             new Pair<>("fxr-webcompat_youtube@mozilla.org", "resource://android/assets/extensions/fxr_youtube/"),
@@ -57,6 +56,13 @@ public class SessionStore implements
 
     private static SessionStore mInstance;
 
+    public interface SessionListListener {
+        /**
+         * Called when a session is added or removed, or the active session changes.
+         */
+        void onSessionListChanged();
+    }
+
     public static SessionStore get() {
         if (mInstance == null) {
             mInstance = new SessionStore();
@@ -68,16 +74,47 @@ public class SessionStore implements
     private Context mContext;
     private GeckoRuntime mRuntime;
     private ArrayList<Session> mSessions;
+    private final SessionIndex<Session> mSessionIndex = new SessionIndex<>(new SessionIndex.Accessor<Session>() {
+        @NonNull
+        @Override
+        public String getId(@NonNull Session aSession) {
+            return aSession.getId();
+        }
+
+        @Nullable
+        @Override
+        public GeckoSession getGeckoSession(@NonNull Session aSession) {
+            return aSession.getGeckoSession();
+        }
+
+        @NonNull
+        @Override
+        public String getCurrentUri(@NonNull Session aSession) {
+            return aSession.getCurrentUri();
+        }
+
+        @Override
+        public long getLastUse(@NonNull Session aSession) {
+            return aSession.getLastUse();
+        }
+
+        @Override
+        public boolean isPrivateMode(@NonNull Session aSession) {
+            return aSession.isPrivateMode();
+        }
+    });
     private Session mActiveSession;
     private PermissionDelegate mPermissionDelegate;
     private BookmarksStore mBookmarksStore;
     private HistoryStore mHistoryStore;
     private Services mServices;
     private boolean mSuspendPending;
+    private SessionBudget mSessionBudget;
     private TrackingProtectionStore mTrackingProtectionStore;
     private GeckoWebExtensionRuntime mWebExtensionRuntime;
     private FxaWebChannelFeature mWebChannelsFeature;
     private Store.Subscription mStoreSubscription;
+    private final CopyOnWriteArrayList<SessionListListener> mSessionListListeners = new CopyOnWriteArrayList<>();
 
     private SessionStore() {
         mSessions = new ArrayList<>();
@@ -86,6 +123,7 @@ public class SessionStore implements
     public void initialize(Context context) {
         mContext = context;
         mMainExecutor = ((VRBrowserApplication)context.getApplicationContext()).getExecutors().mainThread();
+        mSessionBudget = new SessionBudget(context);
 
         mRuntime = EngineProvider.INSTANCE.getOrCreateRuntime(context);
 
@@ -93,13 +131,8 @@ public class SessionStore implements
         mTrackingProtectionStore.addListener(new TrackingProtectionStore.TrackingProtectionListener() {
             @Override
             public void onExcludedTrackingProtectionChange(@NonNull String url, boolean excluded, boolean isPrivate) {
-                mSessions.forEach(existingSession -> {
-                    String currentSessionHost = UrlUtils.getHost(existingSession.getCurrentUri());
-                    String sessionHost = UrlUtils.getHost(url);
-                    if (currentSessionHost.equals(sessionHost) && existingSession.isPrivateMode() == isPrivate) {
-                        existingSession.reload(GeckoSession.LOAD_FLAGS_BYPASS_CACHE);
-                    }
-                });
+                getSessionsByHost(UrlUtils.getHost(url), isPrivate).forEach(existingSession ->
+                        existingSession.reload(GeckoSession.LOAD_FLAGS_BYPASS_CACHE));
             }
 
             @Override
@@ -172,7 +205,9 @@ public class SessionStore implements
         aSession.setPermissionDelegate(this);
         aSession.addNavigationListener(mServices);
         mSessions.add(aSession);
+        mSessionIndex.add(aSession);
         sessionActiveStateChanged();
+        notifySessionListChanged();
 
         if (BuildConfig.DEBUG) {
             mStoreSubscription.resume();
@@ -248,22 +283,31 @@ public class SessionStore implements
     public void destroySession(Session aSession) {
         mSessions.remove(aSession);
         if (aSession != null) {
+            mSessionIndex.remove(aSession);
             shutdownSession(aSession);
+            notifySessionListChanged();
         }
     }
 
     public void destroySession(@NonNull String sessionId) {
-        mSessions.stream().filter(session -> session.getId().equals(sessionId)).findFirst().ifPresent(this::destroySession);
+        Session session = getSession(sessionId);
+        if (session != null) {
+            destroySession(session);
+        }
     }
 
     public void destroyPrivateSessions() {
-        mSessions.removeIf(session -> {
+        boolean removed = mSessions.removeIf(session -> {
             if (!session.isPrivateMode()) {
                 return false;
             }
+            mSessionIndex.remove(session);
             shutdownSession(session);
             return true;
         });
+        if (removed) {
+            notifySessionListChanged();
+        }
     }
 
     public void suspendAllInactiveSessions() {
@@ -278,25 +322,50 @@ public class SessionStore implements
     }
 
     public @Nullable Session getSession(String aId) {
-        return mSessions.stream().filter(session -> session.getId().equals(aId)).findFirst().orElse(null);
+        return mSessionIndex.getById(aId);
     }
 
     public @Nullable Session getSession(GeckoSession aGeckoSession) {
-        return mSessions.stream().filter(session -> session.getGeckoSession() == aGeckoSession).findFirst().orElse(null);
+        if (aGeckoSession == null) {
+            // Suspended sessions aren't indexed, return the first one like the list scan did.
+            return mSessions.stream().filter(session -> session.getGeckoSession() == null).findFirst().orElse(null);
+        }
+        return mSessionIndex.getByGeckoSession(aGeckoSession);
     }
 
     public @NonNull List<Session> getSessionsByHost(@NonNull String aHost, boolean aIsPrivate) {
-        return mSessions.stream()
-                .filter(session -> session.isPrivateMode() == aIsPrivate)
-                .filter(session -> UrlUtils.getHost(session.getCurrentUri()).equals(aHost))
-                .collect(Collectors.toList());
+        return mSessionIndex.getByHost(aHost, aIsPrivate);
+    }
+
+    /**
+     * Called by the sessions when their id, GeckoSession, URI or last use time might have changed.
+     */
+    void sessionIndexChanged(@NonNull Session aSession) {
+        mSessionIndex.update(aSession);
     }
 
     public void setActiveSession(Session aSession) {
         if (aSession != null) {
             aSession.setActive(true);
         }
-        mActiveSession = aSession;
+        if (mActiveSession != aSession) {
+            mActiveSession = aSession;
+            notifySessionListChanged();
+        }
+    }
+
+    public void addSessionListListener(@NonNull SessionListListener aListener) {
+        mSessionListListeners.addIfAbsent(aListener);
+    }
+
+    public void removeSessionListListener(@NonNull SessionListListener aListener) {
+        mSessionListListeners.remove(aListener);
+    }
+
+    private void notifySessionListChanged() {
+        for (SessionListListener listener : mSessionListListeners) {
+            listener.onSessionListChanged();
+        }
     }
 
     public void setActiveSession(@NonNull String sessionId) {
@@ -308,8 +377,20 @@ public class SessionStore implements
 
     private void limitInactiveSessions() {
         Log.d(LOGTAG, "Limiting Inactive Sessions");
-        suspendAllInactiveSessions();
+        mSessionBudget.enforce(mSessions);
         mSuspendPending = false;
+        if (BuildConfig.DEBUG) {
+            mStoreSubscription.resume();
+        }
+    }
+
+    public void onTrimMemory(int aLevel) {
+        mSessionBudget.onTrimMemory(aLevel);
+        limitInactiveSessions();
+    }
+
+    public SessionBudget getSessionBudget() {
+        return mSessionBudget;
     }
 
     void sessionActiveStateChanged() {
@@ -332,7 +413,8 @@ public class SessionStore implements
                 suspendedCount++;
             }
         }
-        if (count > MAX_GECKO_SESSIONS) {
+        mSessionBudget.updateCounts(mSessions);
+        if (count > mSessionBudget.getBudget()) {
             Log.d(LOGTAG, "Too many GeckoSessions. Active: " + activeCount + " Inactive: " + inactiveCount + " Suspended: " + suspendedCount);
             mSuspendPending = true;
             mMainExecutor.execute(this::limitInactiveSessions);
@@ -344,15 +426,7 @@ public class SessionStore implements
     }
 
     public ArrayList<Session> getSortedSessions(boolean aPrivateMode) {
-        ArrayList<Session> result = new ArrayList<>(mSessions);
-        result.removeIf(session -> session.isPrivateMode() != aPrivateMode);
-        result.sort((o1, o2) -> {
-            if (o2.getLastUse() < o1.getLastUse()) {
-                return -1;
-            }
-            return o2.getLastUse() == o1.getLastUse() ? 0 : 1;
-        });
-        return result;
+        return mSessionIndex.getSortedByLastUse(aPrivateMode);
     }
 
     public void setPermissionDelegate(PermissionDelegate delegate) {
@@ -497,6 +571,7 @@ public class SessionStore implements
 
     @Override
     public void onSessionAdded(Session aSession) {
+        mSessionIndex.update(aSession);
         ComponentsAdapter.get().addSession(aSession);
     }
 
@@ -512,11 +587,16 @@ public class SessionStore implements
 
     @Override
     public void onSessionRemoved(String aId) {
+        Session session = getSession(aId);
+        if (session != null) {
+            mSessionIndex.update(session);
+        }
         ComponentsAdapter.get().removeSession(aId);
     }
 
     @Override
     public void onSessionStateChanged(Session aSession, boolean aActive) {
+        mSessionIndex.update(aSession);
         if (aActive) {
             ComponentsAdapter.get().selectSession(aSession);
         }
@@ -13,7 +13,7 @@ import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import org.mozilla.vrbrowser.AppExecutors;
 
-@Database(entities = {SitePermission.class}, version = 4)
+@Database(entities = {SitePermission.class}, version = 5)
 public abstract class AppDatabase extends RoomDatabase {
 
     private static final String DATABASE_NAME = "app";
@@ -38,7 +38,7 @@ public abstract class AppDatabase extends RoomDatabase {
     @NonNull
     private static AppDatabase buildDatabase(final @NonNull Context appContext, final @NonNull AppExecutors executors) {
         return Room.databaseBuilder(appContext, AppDatabase.class, DATABASE_NAME)
-                .addMigrations(MIGRATION_1_2, MIGRATION_2_4)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_4, MIGRATION_4_5)
                 .addCallback(new Callback() {
                     @Override
                     public void onCreate(@NonNull SupportSQLiteDatabase db) {
@@ -95,4 +95,11 @@ public abstract class AppDatabase extends RoomDatabase {
         }
     };
 
+    private static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS index_SitePermission_category_url ON SitePermission (category, url)");
+        }
+    };
+
 }
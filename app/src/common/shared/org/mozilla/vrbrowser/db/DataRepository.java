@@ -1,6 +1,7 @@
 package org.mozilla.vrbrowser.db;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.LifecycleRegistry;
@@ -9,8 +10,10 @@ import androidx.lifecycle.MediatorLiveData;
 
 import org.mozilla.vrbrowser.AppExecutors;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 public class DataRepository implements LifecycleOwner {
 
@@ -20,6 +23,15 @@ public class DataRepository implements LifecycleOwner {
     private final AppDatabase mDatabase;
     private final LifecycleRegistry mLifeCycle;
     private MediatorLiveData<List<SitePermission>> mObservablePopUps;
+    private final SitePermissionIndex mSitePermissionIndex;
+    // Writes are queued and run in a single transaction, so a burst of writes is one disk task and
+    // one LiveData update instead of one per write.
+    private final ArrayList<Consumer<SitePermissionDao>> mPendingWrites = new ArrayList<>();
+    private boolean mWritesScheduled;
+    private int mUnflushedWrites;
+    // Set when a list was skipped because of unflushed writes, the list is loaded again once they
+    // are flushed.
+    private boolean mReloadAfterFlush;
 
     private DataRepository(final @NonNull AppDatabase database, final @NonNull AppExecutors executors) {
         mDatabase = database;
@@ -27,8 +39,13 @@ public class DataRepository implements LifecycleOwner {
         mLifeCycle = new LifecycleRegistry(this);
         mLifeCycle.setCurrentState(Lifecycle.State.STARTED);
         mObservablePopUps = new MediatorLiveData<>();
+        mSitePermissionIndex = new SitePermissionIndex();
 
-        mObservablePopUps.addSource(mDatabase.sitePermissionDao().loadAll(),
+        LiveData<List<SitePermission>> sitePermissions = mDatabase.sitePermissionDao().loadAll();
+        // Observed with the repository lifecycle, so the index is kept current even if nobody
+        // observes the site permission list.
+        sitePermissions.observe(this, this::updateIndex);
+        mObservablePopUps.addSource(sitePermissions,
                 sites -> {
                     if (mDatabase.getDatabaseCreated().getValue() != null) {
                         mObservablePopUps.postValue(sites);
@@ -36,6 +53,18 @@ public class DataRepository implements LifecycleOwner {
                 });
     }
 
+    // Called on the UI thread. Lists loaded before the queued writes ran would drop them from the
+    // index, so they are skipped and the list is loaded again once the writes are flushed.
+    private void updateIndex(@Nullable List<SitePermission> aSites) {
+        synchronized (mPendingWrites) {
+            if (mUnflushedWrites > 0) {
+                mReloadAfterFlush = true;
+                return;
+            }
+            mSitePermissionIndex.update(aSites);
+        }
+    }
+
     public static DataRepository getInstance(final @NonNull AppDatabase database, final AppExecutors executors) {
         if (sInstance == null) {
             synchronized (DataRepository.class) {
@@ -60,24 +89,104 @@ public class DataRepository implements LifecycleOwner {
 
     public CompletableFuture<SitePermission> getSitePermission(String aURL, @SitePermission.Category int category) {
         CompletableFuture<SitePermission> future = new CompletableFuture<>();
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().findByUrl(aURL, category));
+        mExecutors.diskIO().execute(() -> future.complete(mDatabase.sitePermissionDao().findByUrl(aURL, category)));
         return future;
     }
 
+    /**
+     * Looks up the in-memory index, the URL is matched exactly or else ignoring case.
+     */
+    @Nullable
+    public SitePermission findSitePermission(@NonNull String aURL, @SitePermission.Category int category) {
+        return mSitePermissionIndex.findByUrl(aURL, category);
+    }
+
+    /**
+     * Looks up the in-memory index for a site whose URL host matches ignoring case.
+     */
+    @Nullable
+    public SitePermission findSitePermissionByHost(@NonNull String aHost, @SitePermission.Category int category) {
+        return mSitePermissionIndex.findByHost(aHost, category);
+    }
+
+    @NonNull
+    public List<SitePermission> getSitePermissions(@SitePermission.Category int category) {
+        return mSitePermissionIndex.getAll(category);
+    }
+
     public void insertSitePermission(final @NonNull SitePermission site) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().insert(site));
+        mSitePermissionIndex.add(site);
+        write(dao -> {
+            long id = dao.insert(site);
+            mExecutors.mainThread().execute(() -> mSitePermissionIndex.setId(site, id));
+        });
     }
 
     public void deleteSitePermission(final @NonNull SitePermission site) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().delete(site));
+        mSitePermissionIndex.remove(site);
+        write(dao -> dao.delete(site));
     }
 
     public void deleteSites(final @NonNull List<SitePermission> sites) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().delete(sites));
+        sites.forEach(mSitePermissionIndex::remove);
+        write(dao -> dao.delete(sites));
     }
 
     public void deleteAllSitePermission(@SitePermission.Category int category) {
-        mExecutors.diskIO().execute(() -> mDatabase.sitePermissionDao().deleteAll(category));
+        mSitePermissionIndex.removeAll(category);
+        write(dao -> dao.deleteAll(category));
+    }
+
+    public void replaceAllSitePermission(@SitePermission.Category int category, final @NonNull List<SitePermission> sites) {
+        mSitePermissionIndex.removeAll(category);
+        sites.forEach(mSitePermissionIndex::add);
+        write(dao -> {
+            dao.deleteAll(category);
+            long[] ids = dao.insert(sites);
+            mExecutors.mainThread().execute(() -> {
+                for (int i = 0; i < ids.length; i++) {
+                    mSitePermissionIndex.setId(sites.get(i), ids[i]);
+                }
+            });
+        });
+    }
+
+    private void write(@NonNull Consumer<SitePermissionDao> aWrite) {
+        synchronized (mPendingWrites) {
+            mPendingWrites.add(aWrite);
+            mUnflushedWrites++;
+            if (mWritesScheduled) {
+                return;
+            }
+            mWritesScheduled = true;
+        }
+        mExecutors.diskIO().execute(this::flushWrites);
+    }
+
+    private void flushWrites() {
+        ArrayList<Consumer<SitePermissionDao>> writes;
+        synchronized (mPendingWrites) {
+            writes = new ArrayList<>(mPendingWrites);
+            mPendingWrites.clear();
+            mWritesScheduled = false;
+        }
+        SitePermissionDao dao = mDatabase.sitePermissionDao();
+        boolean reload;
+        try {
+            mDatabase.runInTransaction(() -> writes.forEach(write -> write.accept(dao)));
+        } finally {
+            synchronized (mPendingWrites) {
+                mUnflushedWrites -= writes.size();
+                reload = mUnflushedWrites == 0 && mReloadAfterFlush;
+                if (reload) {
+                    mReloadAfterFlush = false;
+                }
+            }
+        }
+        if (reload) {
+            List<SitePermission> sites = dao.loadAllSync();
+            mExecutors.mainThread().execute(() -> updateIndex(sites));
+        }
     }
 
 }
@@ -14,11 +14,17 @@ public interface SitePermissionDao {
     @Query("SELECT * FROM SitePermission")
     LiveData<List<SitePermission>> loadAll();
 
-    @Query("SELECT * FROM SitePermission WHERE category = :category AND url LIKE :url LIMIT 1")
-    LiveData<SitePermission> findByUrl(String url, @SitePermission.Category int category);
+    @Query("SELECT * FROM SitePermission")
+    List<SitePermission> loadAllSync();
+
+    @Query("SELECT * FROM SitePermission WHERE category = :category AND url = :url COLLATE NOCASE LIMIT 1")
+    SitePermission findByUrl(String url, @SitePermission.Category int category);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    long insert(SitePermission site);
 
     @Insert(onConflict = OnConflictStrategy.REPLACE)
-    void insert(SitePermission site);
+    long[] insert(List<SitePermission> sites);
 
     @Delete
     void delete(SitePermission site);
@@ -0,0 +1,163 @@
+package org.mozilla.vrbrowser.db;
+
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+import org.mozilla.vrbrowser.utils.UrlUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * In-memory copy of the site permissions, partitioned by category and hashed by lower case URL and
+ * host, so permission checks on page load don't scan the permission list or touch the database.
+ * It is rebuilt from every list the database emits and updated right away on writes, so checks
+ * see the change before the write reaches the database.
+ */
+class SitePermissionIndex {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SitePermissionIndex.class);
+
+    private static class Category {
+        final ArrayList<SitePermission> mSites = new ArrayList<>();
+        // Every site is kept under its key, so sites differing only in case can all be found.
+        final HashMap<String, ArrayList<SitePermission>> mByUrl = new HashMap<>();
+        final HashMap<String, ArrayList<SitePermission>> mByHost = new HashMap<>();
+
+        void add(@NonNull SitePermission aSite) {
+            ArrayList<SitePermission> sameUrl = mByUrl.get(normalize(aSite.url));
+            if (sameUrl != null && sameUrl.contains(aSite)) {
+                // Saving a site again replaces its row, it isn't a new site.
+                return;
+            }
+            mSites.add(aSite);
+            mByUrl.computeIfAbsent(normalize(aSite.url), key -> new ArrayList<>(1)).add(aSite);
+            mByHost.computeIfAbsent(normalize(UrlUtils.getHost(aSite.url)), key -> new ArrayList<>(1)).add(aSite);
+        }
+
+        void remove(@NonNull SitePermission aSite) {
+            mSites.remove(aSite);
+            removeFromKey(mByUrl, normalize(aSite.url), aSite);
+            removeFromKey(mByHost, normalize(UrlUtils.getHost(aSite.url)), aSite);
+        }
+
+        private static void removeFromKey(@NonNull HashMap<String, ArrayList<SitePermission>> aMap,
+                                          @NonNull String aKey, @NonNull SitePermission aSite) {
+            ArrayList<SitePermission> sites = aMap.get(aKey);
+            if (sites != null) {
+                sites.remove(aSite);
+                if (sites.isEmpty()) {
+                    aMap.remove(aKey);
+                }
+            }
+        }
+    }
+
+    private final SparseArray<Category> mCategories = new SparseArray<>();
+
+    private static String normalize(@NonNull String aValue) {
+        return aValue.toLowerCase(Locale.ROOT);
+    }
+
+    @NonNull
+    private Category getCategory(@SitePermission.Category int aCategory) {
+        Category category = mCategories.get(aCategory);
+        if (category == null) {
+            category = new Category();
+            mCategories.put(aCategory, category);
+        }
+        return category;
+    }
+
+    synchronized void update(@Nullable List<SitePermission> aSites) {
+        mCategories.clear();
+        if (aSites != null) {
+            for (SitePermission site : aSites) {
+                getCategory(site.category).add(site);
+            }
+        }
+    }
+
+    synchronized void add(@NonNull SitePermission aSite) {
+        getCategory(aSite.category).add(aSite);
+    }
+
+    synchronized void remove(@NonNull SitePermission aSite) {
+        Category category = mCategories.get(aSite.category);
+        if (category == null) {
+            return;
+        }
+        // Sites that haven't been written to the database yet don't have an id.
+        ArrayList<SitePermission> removed = new ArrayList<>();
+        for (SitePermission site : category.mSites) {
+            if (site == aSite || (aSite.id != 0 && site.id == aSite.id)) {
+                removed.add(site);
+            }
+        }
+        removed.forEach(category::remove);
+    }
+
+    /**
+     * Sets the id the database assigned to a site, so it can be matched once the index holds
+     * the rows reloaded from the database. Must be called on the UI thread, where the sites are
+     * read.
+     */
+    synchronized void setId(@NonNull SitePermission aSite, long aId) {
+        if (aId <= 0 || aId > Integer.MAX_VALUE) {
+            Log.w(LOGTAG, "Ignoring site permission id out of range: " + aId);
+            return;
+        }
+        aSite.id = (int) aId;
+    }
+
+    synchronized void removeAll(@SitePermission.Category int aCategory) {
+        mCategories.remove(aCategory);
+    }
+
+    /**
+     * @return The site whose URL matches exactly or, if there is none, the first one whose URL
+     * matches ignoring case.
+     */
+    @Nullable
+    synchronized SitePermission findByUrl(@NonNull String aUrl, @SitePermission.Category int aCategory) {
+        Category category = mCategories.get(aCategory);
+        if (category == null) {
+            return null;
+        }
+        ArrayList<SitePermission> sites = category.mByUrl.get(normalize(aUrl));
+        if (sites == null) {
+            return null;
+        }
+        for (SitePermission site : sites) {
+            if (site.url.equals(aUrl)) {
+                return site;
+            }
+        }
+        return sites.get(0);
+    }
+
+    /**
+     * @return The first site whose URL host matches ignoring case.
+     */
+    @Nullable
+    synchronized SitePermission findByHost(@NonNull String aHost, @SitePermission.Category int aCategory) {
+        Category category = mCategories.get(aCategory);
+        if (category == null) {
+            return null;
+        }
+        ArrayList<SitePermission> sites = category.mByHost.get(normalize(aHost));
+        return sites != null ? sites.get(0) : null;
+    }
+
+    @NonNull
+    synchronized List<SitePermission> getAll(@SitePermission.Category int aCategory) {
+        Category category = mCategories.get(aCategory);
+        return category != null ? new ArrayList<>(category.mSites) : new ArrayList<>();
+    }
+}
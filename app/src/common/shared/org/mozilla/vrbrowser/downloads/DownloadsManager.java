@@ -14,6 +14,7 @@ import android.webkit.URLUtil;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.SettingsStore;
@@ -21,7 +22,13 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -30,10 +37,15 @@ public class DownloadsManager {
 
     private static final String LOGTAG = DownloadsManager.class.getSimpleName();
 
-    private static final int REFRESH_INTERVAL = 100;
+    // The polling interval doubles up to the max interval while the active downloads don't change.
+    private static final int MIN_REFRESH_INTERVAL = 100;
+    private static final int MAX_REFRESH_INTERVAL = 2000;
+    private static final int ACTIVE_STATUS = Download.RUNNING | Download.PAUSED | Download.PENDING;
 
     public interface DownloadsListener {
         default void onDownloadsUpdate(@NonNull List<Download> downloads) {}
+        default void onDownloadUpdated(@NonNull Download download) {}
+        default void onDownloadRemoved(long downloadId) {}
         default void onDownloadCompleted(@NonNull Download download) {}
         default void onDownloadError(@NonNull String error, @NonNull String file) {}
     }
@@ -44,6 +56,10 @@ public class DownloadsManager {
     private DownloadManager mDownloadManager;
     private ScheduledThreadPoolExecutor mExecutor;
     private ScheduledFuture<?> mFuture;
+    private int mRefreshInterval = MIN_REFRESH_INTERVAL;
+    // Last known state of the downloads. Only accessed from the executor thread.
+    private LinkedHashMap<Long, Download> mSnapshot = new LinkedHashMap<>();
+    private boolean mSnapshotValid;
 
     public DownloadsManager(@NonNull Context context) {
         mMainHandler = new Handler(Looper.getMainLooper());
@@ -71,7 +87,8 @@ public class DownloadsManager {
     public void addListener(@NonNull DownloadsListener listener) {
         mListeners.add(listener);
         if (mListeners.size() == 1) {
-            scheduleUpdates();
+            // Downloads may have changed while nobody was listening.
+            notifyDownloadsUpdate();
         }
     }
 
@@ -82,21 +99,35 @@ public class DownloadsManager {
         }
     }
 
-    private void scheduleUpdates() {
+    private synchronized void scheduleUpdates() {
         if (mFuture != null) {
             // Already scheduled
             return;
         }
-        mFuture = mExecutor.scheduleAtFixedRate(mDownloadUpdateTask, 0, REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+        mRefreshInterval = MIN_REFRESH_INTERVAL;
+        mFuture = mExecutor.schedule(mDownloadUpdateTask, 0, TimeUnit.MILLISECONDS);
     }
 
-    private void stopUpdates() {
+    private synchronized void stopUpdates() {
         if (mFuture != null) {
             mFuture.cancel(true);
             mFuture = null;
         }
     }
 
+    private synchronized void rescheduleUpdates(boolean aChanged, boolean aActiveDownloads) {
+        if (mFuture == null) {
+            // Stopped while the update was running
+            return;
+        }
+        if (!aActiveDownloads) {
+            mFuture = null;
+            return;
+        }
+        mRefreshInterval = aChanged ? MIN_REFRESH_INTERVAL : Math.min(mRefreshInterval * 2, MAX_REFRESH_INTERVAL);
+        mFuture = mExecutor.schedule(mDownloadUpdateTask, mRefreshInterval, TimeUnit.MILLISECONDS);
+    }
+
     public void startDownload(@NonNull DownloadJob job) {
         startDownload(job, SettingsStore.getInstance(mContext).getDownloadsStorage());
     }
@@ -138,7 +169,7 @@ public class DownloadsManager {
                 notifyDownloadError(mContext.getString(R.string.download_error_output), job.getFilename());
                 return;
             }
-            scheduleUpdates();
+            notifyDownloadsUpdate();
         }
     }
 
@@ -156,33 +187,48 @@ public class DownloadsManager {
     public void removeDownload(long downloadId, boolean deleteFiles) {
         Download download = getDownload(downloadId);
         if (download != null) {
-            if (!deleteFiles) {
+            removeDownloads(Collections.singletonList(download), deleteFiles);
+        }
+        notifyDownloadsUpdate();
+    }
+
+    /**
+     * Removes every download with a single DownloadManager call and a single refresh, so listeners
+     * get one batch of removals instead of a full refresh per download.
+     */
+    public void removeAllDownloads(boolean deleteFiles) {
+        mExecutor.execute(() -> {
+            removeDownloads(getDownloads(), deleteFiles);
+            mSnapshotValid = false;
+            refresh();
+        });
+    }
+
+    private void removeDownloads(@NonNull List<Download> downloads, boolean deleteFiles) {
+        if (mDownloadManager == null || downloads.isEmpty()) {
+            return;
+        }
+
+        // DownloadManager deletes the files of the removed downloads, so the ones to keep are
+        // moved out of the way while removing them.
+        List<File> keptFiles = new ArrayList<>();
+        if (!deleteFiles) {
+            for (Download download : downloads) {
                 File file = new File(UrlUtils.stripProtocol(download.getOutputFileUri()));
                 if (file.exists()) {
                     File newFile = new File(UrlUtils.stripProtocol(download.getOutputFileUri().concat(".bak")));
-                    file.renameTo(newFile);
-                    if (mDownloadManager != null) {
-                        mDownloadManager.remove(downloadId);
-                    }
-                    newFile.renameTo(file);
-
-                } else {
-                    if (mDownloadManager != null) {
-                        mDownloadManager.remove(downloadId);
+                    if (file.renameTo(newFile)) {
+                        keptFiles.add(file);
                     }
                 }
-
-            } else {
-                if (mDownloadManager != null) {
-                    mDownloadManager.remove(downloadId);
-                }
             }
         }
-        notifyDownloadsUpdate();
-    }
 
-    public void removeAllDownloads(boolean deleteFiles) {
-        getDownloads().forEach(download -> removeDownload(download.getId(), deleteFiles));
+        mDownloadManager.remove(downloads.stream().mapToLong(Download::getId).toArray());
+
+        for (File file : keptFiles) {
+            new File(file.getPath().concat(".bak")).renameTo(file);
+        }
     }
 
     @Nullable
@@ -204,6 +250,20 @@ public class DownloadsManager {
         return download;
     }
 
+    /**
+     * @return The current downloads, queried on the downloads thread. The listeners get the
+     * changes after that as {@link DownloadsListener#onDownloadUpdated(Download)} and
+     * {@link DownloadsListener#onDownloadRemoved(long)} calls.
+     */
+    public CompletableFuture<List<Download>> getDownloadsAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            if (!mSnapshotValid) {
+                refresh();
+            }
+            return new ArrayList<>(mSnapshot.values());
+        }, mExecutor);
+    }
+
     public List<Download> getDownloads() {
         List<Download> downloads = new ArrayList<>();
 
@@ -222,10 +282,19 @@ public class DownloadsManager {
     }
 
     public boolean isDownloading() {
-        return getDownloads().stream()
-                .filter(item ->
-                        item.getStatus() == DownloadManager.STATUS_RUNNING)
-                .findFirst().orElse(null) != null;
+        boolean downloading = false;
+
+        if (mDownloadManager != null) {
+            DownloadManager.Query query = new DownloadManager.Query();
+            query.setFilterByStatus(DownloadManager.STATUS_RUNNING);
+            Cursor c = mDownloadManager.query(query);
+            if (c != null) {
+                downloading = c.getCount() > 0;
+                c.close();
+            }
+        }
+
+        return downloading;
     }
 
     private BroadcastReceiver mDownloadReceiver = new BroadcastReceiver() {
@@ -249,14 +318,105 @@ public class DownloadsManager {
         }
     };
 
+    /**
+     * Refreshes the whole downloads snapshot. Used when downloads are added, removed or finished,
+     * the periodic updates only query the active downloads.
+     */
     private void notifyDownloadsUpdate() {
-        List<Download> downloads = getDownloads();
-        int filter = Download.RUNNING | Download.PAUSED | Download.PENDING;
-        boolean activeDownloads = downloads.stream().filter(d -> (d.getStatus() & filter) != 0).count()  > 0;
-        mListeners.forEach(listener -> listener.onDownloadsUpdate(downloads));
-        if (!activeDownloads) {
-            stopUpdates();
+        mExecutor.execute(() -> {
+            mSnapshotValid = false;
+            refresh();
+        });
+        scheduleUpdates();
+    }
+
+    /**
+     * Queries the downloads that may have changed since the last refresh and notifies the listeners
+     * about the ones that actually did.
+     *
+     * @return true if any download changed.
+     */
+    @WorkerThread
+    private boolean refresh() {
+        if (mDownloadManager == null) {
+            return false;
+        }
+
+        DownloadManager.Query query = new DownloadManager.Query();
+        boolean fullRefresh = !mSnapshotValid;
+        long[] activeIds = null;
+        if (!fullRefresh) {
+            activeIds = mSnapshot.values().stream()
+                    .filter(download -> (download.getStatus() & ACTIVE_STATUS) != 0)
+                    .mapToLong(Download::getId)
+                    .toArray();
+            if (activeIds.length == 0) {
+                return false;
+            }
+            query.setFilterById(activeIds);
+        }
+
+        List<Download> updated = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        Set<Long> queried = new HashSet<>();
+        LinkedHashMap<Long, Download> previous = mSnapshot;
+        LinkedHashMap<Long, Download> snapshot = fullRefresh ? new LinkedHashMap<>() : mSnapshot;
+        Cursor c = mDownloadManager.query(query);
+        if (c == null) {
+            return false;
         }
+        try {
+            while (c.moveToNext()) {
+                Download download = Download.from(c);
+                queried.add(download.getId());
+                Download old = previous.get(download.getId());
+                snapshot.put(download.getId(), download);
+                if (old == null || hasChanged(old, download)) {
+                    updated.add(download);
+                }
+            }
+        } finally {
+            c.close();
+        }
+
+        if (fullRefresh) {
+            previous.keySet().stream()
+                    .filter(id -> !snapshot.containsKey(id))
+                    .forEach(removed::add);
+            mSnapshot = snapshot;
+            mSnapshotValid = true;
+
+        } else {
+            // Active downloads removed outside of the app no longer have a row, stop polling them.
+            for (long id : activeIds) {
+                if (!queried.contains(id)) {
+                    mSnapshot.remove(id);
+                    removed.add(id);
+                }
+            }
+        }
+
+        if (updated.isEmpty() && removed.isEmpty()) {
+            return false;
+        }
+
+        List<Download> downloads = new ArrayList<>(mSnapshot.values());
+        mMainHandler.post(() -> {
+            removed.forEach(id -> mListeners.forEach(listener -> listener.onDownloadRemoved(id)));
+            updated.forEach(download -> mListeners.forEach(listener -> listener.onDownloadUpdated(download)));
+            mListeners.forEach(listener -> listener.onDownloadsUpdate(downloads));
+        });
+
+        return true;
+    }
+
+    private static boolean hasChanged(@NonNull Download aOld, @NonNull Download aNew) {
+        return aOld.getStatus() != aNew.getStatus() ||
+                aOld.getDownloadedBytes() != aNew.getDownloadedBytes() ||
+                aOld.getSizeBytes() != aNew.getSizeBytes() ||
+                aOld.getLastModified() != aNew.getLastModified() ||
+                !Objects.equals(aOld.getOutputFileUri(), aNew.getOutputFileUri()) ||
+                !Objects.equals(aOld.getTitle(), aNew.getTitle());
     }
 
     private void notifyDownloadCompleted(@NonNull Download download) {
@@ -268,7 +428,10 @@ public class DownloadsManager {
     }
 
     private Runnable mDownloadUpdateTask = () -> {
-        mMainHandler.post(this::notifyDownloadsUpdate);
+        boolean changed = refresh();
+        boolean activeDownloads = mSnapshot.values().stream()
+                .anyMatch(download -> (download.getStatus() & ACTIVE_STATUS) != 0);
+        rescheduleUpdates(changed, activeDownloads);
     };
 
 }
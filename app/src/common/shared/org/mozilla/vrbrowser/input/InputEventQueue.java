@@ -0,0 +1,225 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.input;
+
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.Arrays;
+
+/**
+ * Batches the controller samples sent from the render thread so the UI thread handles them once
+ * per frame instead of once per sample. Samples are stored in a preallocated ring and consecutive
+ * hover moves of the same device are collapsed into the latest one.
+ */
+public class InputEventQueue {
+    private static final String LOGTAG = SystemUtils.createLogtag(InputEventQueue.class);
+
+    private static final int CAPACITY = 256;
+    // Device ids above this value are queued but never coalesced.
+    private static final int MAX_COALESCED_DEVICES = 8;
+
+    private static final int TYPE_MOTION = 0;
+    private static final int TYPE_SCROLL = 1;
+
+    private static final int FLAG_FOCUSED = 1;
+    private static final int FLAG_PRESSED = 1 << 1;
+
+    public interface Dispatcher {
+        void dispatchMotionEvent(int aHandle, int aDevice, boolean aFocused, boolean aPressed, float aX, float aY);
+        void dispatchScrollEvent(int aHandle, int aDevice, float aX, float aY);
+    }
+
+    private static class Samples {
+        final int[] type = new int[CAPACITY];
+        final int[] handle = new int[CAPACITY];
+        final int[] device = new int[CAPACITY];
+        final int[] flags = new int[CAPACITY];
+        final float[] x = new float[CAPACITY];
+        final float[] y = new float[CAPACITY];
+    }
+
+    private final Dispatcher mDispatcher;
+    private final Choreographer mChoreographer;
+    // Written by the render thread, guarded by this.
+    private final Samples mRing = new Samples();
+    private int mHead;
+    private int mCount;
+    private int mLastIndex;
+    // Ring index of the last queued sample of each device that can absorb later hover moves,
+    // -1 if there is none or it has been drained.
+    private final int[] mLastSample = new int[MAX_COALESCED_DEVICES];
+    // Widget handle and flags of the last queued motion sample of each device, kept across frames.
+    private final int[] mDeviceHandle = new int[MAX_COALESCED_DEVICES];
+    private final int[] mDeviceFlags = new int[MAX_COALESCED_DEVICES];
+    private boolean mFrameScheduled;
+    private int mFrameCoalesced;
+    private int mFrameDropped;
+    // Only used from the UI thread.
+    private final Samples mBatch = new Samples();
+    private int mLastFrameEvents;
+    private int mLastFrameCoalesced;
+    private int mLastFrameDropped;
+    private long mTotalEvents;
+    private long mTotalCoalesced;
+    private long mTotalDropped;
+
+    @UiThread
+    public InputEventQueue(@NonNull Dispatcher aDispatcher) {
+        mDispatcher = aDispatcher;
+        mChoreographer = Choreographer.getInstance();
+        Arrays.fill(mLastSample, -1);
+        Arrays.fill(mDeviceHandle, -1);
+        Arrays.fill(mDeviceFlags, -1);
+    }
+
+    public void pushMotionEvent(int aHandle, int aDevice, boolean aFocused, boolean aPressed, float aX, float aY) {
+        int flags = (aFocused ? FLAG_FOCUSED : 0) | (aPressed ? FLAG_PRESSED : 0);
+        synchronized (this) {
+            if (aDevice < 0 || aDevice >= MAX_COALESCED_DEVICES) {
+                push(TYPE_MOTION, aHandle, aDevice, flags, aX, aY);
+                return;
+            }
+
+            // Only hover moves that don't change the widget or the focus/press state can be collapsed,
+            // so enter, exit, down and up transitions are always dispatched at their own position.
+            boolean hoverMove = !aPressed && mDeviceHandle[aDevice] == aHandle && mDeviceFlags[aDevice] == flags;
+            int last = mLastSample[aDevice];
+            if (hoverMove && last >= 0) {
+                mRing.x[last] = aX;
+                mRing.y[last] = aY;
+                mFrameCoalesced++;
+                return;
+            }
+            // The device state only follows the samples that will be dispatched. If a transition is
+            // dropped, the next sample is compared against the last delivered state and is
+            // dispatched as the transition instead of being collapsed.
+            if (push(TYPE_MOTION, aHandle, aDevice, flags, aX, aY)) {
+                mDeviceHandle[aDevice] = aHandle;
+                mDeviceFlags[aDevice] = flags;
+                mLastSample[aDevice] = hoverMove ? mLastIndex : -1;
+            }
+        }
+    }
+
+    public void pushScrollEvent(int aHandle, int aDevice, float aX, float aY) {
+        synchronized (this) {
+            if (push(TYPE_SCROLL, aHandle, aDevice, 0, aX, aY) && aDevice >= 0 && aDevice < MAX_COALESCED_DEVICES) {
+                mLastSample[aDevice] = -1;
+            }
+        }
+    }
+
+    private boolean push(int aType, int aHandle, int aDevice, int aFlags, float aX, float aY) {
+        if (mCount == CAPACITY) {
+            mFrameDropped++;
+            return false;
+        }
+        int index = (mHead + mCount) % CAPACITY;
+        mRing.type[index] = aType;
+        mRing.handle[index] = aHandle;
+        mRing.device[index] = aDevice;
+        mRing.flags[index] = aFlags;
+        mRing.x[index] = aX;
+        mRing.y[index] = aY;
+        mCount++;
+        mLastIndex = index;
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(mFrameCallback);
+        }
+        return true;
+    }
+
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> drain();
+
+    @UiThread
+    private void drain() {
+        int count;
+        synchronized (this) {
+            count = mCount;
+            for (int i = 0; i < count; i++) {
+                int index = (mHead + i) % CAPACITY;
+                mBatch.type[i] = mRing.type[index];
+                mBatch.handle[i] = mRing.handle[index];
+                mBatch.device[i] = mRing.device[index];
+                mBatch.flags[i] = mRing.flags[index];
+                mBatch.x[i] = mRing.x[index];
+                mBatch.y[i] = mRing.y[index];
+            }
+            mHead = (mHead + count) % CAPACITY;
+            mCount = 0;
+            Arrays.fill(mLastSample, -1);
+            mFrameScheduled = false;
+            mLastFrameEvents = count;
+            mLastFrameCoalesced = mFrameCoalesced;
+            mLastFrameDropped = mFrameDropped;
+            mFrameCoalesced = 0;
+            mFrameDropped = 0;
+        }
+
+        mTotalEvents += count;
+        mTotalCoalesced += mLastFrameCoalesced;
+        mTotalDropped += mLastFrameDropped;
+        if (mLastFrameDropped > 0) {
+            Log.w(LOGTAG, "Input queue full, dropped " + mLastFrameDropped + " events");
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (mBatch.type[i] == TYPE_SCROLL) {
+                mDispatcher.dispatchScrollEvent(mBatch.handle[i], mBatch.device[i], mBatch.x[i], mBatch.y[i]);
+            } else {
+                int flags = mBatch.flags[i];
+                mDispatcher.dispatchMotionEvent(mBatch.handle[i], mBatch.device[i],
+                        (flags & FLAG_FOCUSED) != 0, (flags & FLAG_PRESSED) != 0, mBatch.x[i], mBatch.y[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Number of events dispatched in the last drained frame.
+     */
+    @UiThread
+    public int getLastFrameEvents() {
+        return mLastFrameEvents;
+    }
+
+    /**
+     * @return Number of hover moves collapsed into a later sample in the last drained frame.
+     */
+    @UiThread
+    public int getLastFrameCoalesced() {
+        return mLastFrameCoalesced;
+    }
+
+    /**
+     * @return Number of events dropped because the queue was full in the last drained frame.
+     */
+    @UiThread
+    public int getLastFrameDropped() {
+        return mLastFrameDropped;
+    }
+
+    @UiThread
+    public long getTotalEvents() {
+        return mTotalEvents;
+    }
+
+    @UiThread
+    public long getTotalCoalesced() {
+        return mTotalCoalesced;
+    }
+
+    @UiThread
+    public long getTotalDropped() {
+        return mTotalDropped;
+    }
+}
@@ -14,16 +14,28 @@ import android.view.MotionEvent;
 import org.mozilla.vrbrowser.ui.widgets.Widget;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
-import java.util.Arrays;
-
+/**
+ * Turns the controller samples into the MotionEvents dispatched to the widgets. The state of each
+ * device, including its pointer properties and coordinates, is kept across events so generating an
+ * event doesn't allocate. Devices pressing the same widget that supports multi-touch are merged
+ * into a single gesture with one pointer per device.
+ *
+ * Hover moves are already coalesced per frame by {@link InputEventQueue}. Only used from the UI thread.
+ */
 public class MotionEventGenerator {
     static final String LOGTAG = SystemUtils.createLogtag(MotionEventGenerator.class);
+    // Devices with a lower id are kept in an array, the rest in a SparseArray.
+    private static final int MAX_INDEXED_DEVICES = 8;
+    private static final int MAX_POINTERS = MAX_INDEXED_DEVICES;
+
     static class Device {
         int mDevice;
         Widget mPreviousWidget = null;
         Widget mTouchStartWidget = null;
         Widget mHoverStartWidget = null;
         boolean mWasPressed;
+        // True if a down event was sent to mTouchStartWidget and it hasn't been released yet.
+        boolean mTouching;
         long mDownTime;
         MotionEvent.PointerProperties mProperties[];
         MotionEvent.PointerCoords mCoords[];
@@ -33,37 +45,72 @@ public class MotionEventGenerator {
             mDevice = aDevice;
             mProperties = new MotionEvent.PointerProperties[1];
             mProperties[0] = new MotionEvent.PointerProperties();
-            mProperties[0].id = 0;
+            sPointerAllocations++;
+            // Pointers of a multi-touch gesture need different ids.
+            mProperties[0].id = aDevice >= 0 && aDevice < MAX_INDEXED_DEVICES ? aDevice : 0;
             mProperties[0].toolType = MotionEvent.TOOL_TYPE_FINGER;
-            mCoords = new MotionEvent.PointerCoords[1];
-            mCoords[0] = new MotionEvent.PointerCoords();
-            mMouseOutCoords = new MotionEvent.PointerCoords[1];
-            for (MotionEvent.PointerCoords[] coords : Arrays.asList(mCoords, mMouseOutCoords)) {
-                coords[0] = new MotionEvent.PointerCoords();
-                coords[0].toolMajor = 2;
-                coords[0].toolMinor = 2;
-                coords[0].touchMajor = 2;
-                coords[0].touchMinor = 2;
-            }
+            mCoords = new MotionEvent.PointerCoords[] { createCoords() };
+            mMouseOutCoords = new MotionEvent.PointerCoords[] { createCoords() };
             mMouseOutCoords[0].x = -10;
             mMouseOutCoords[0].y = -10;
         }
+
+        private static MotionEvent.PointerCoords createCoords() {
+            MotionEvent.PointerCoords coords = new MotionEvent.PointerCoords();
+            sPointerAllocations++;
+            coords.toolMajor = 2;
+            coords.toolMinor = 2;
+            coords.touchMajor = 2;
+            coords.touchMinor = 2;
+            return coords;
+        }
     }
 
-    private static SparseArray<Device> devices = new SparseArray<>();
+    private static final Device[] sIndexedDevices = new Device[MAX_INDEXED_DEVICES];
+    private static final SparseArray<Device> sOtherDevices = new SparseArray<>();
+    // Number of devices with a touch in progress.
+    private static int sTouchingCount;
+    // Number of PointerProperties and PointerCoords created, they should only be created per device.
+    private static long sPointerAllocations;
+    // Pointers of the multi-touch event being generated.
+    private static final MotionEvent.PointerProperties[] sGestureProperties = new MotionEvent.PointerProperties[MAX_POINTERS];
+    private static final MotionEvent.PointerCoords[] sGestureCoords = new MotionEvent.PointerCoords[MAX_POINTERS];
 
+    private static Device getDevice(int aDevice) {
+        Device device;
+        if (aDevice >= 0 && aDevice < MAX_INDEXED_DEVICES) {
+            device = sIndexedDevices[aDevice];
+            if (device == null) {
+                device = new Device(aDevice);
+                sIndexedDevices[aDevice] = device;
+            }
+        } else {
+            device = sOtherDevices.get(aDevice);
+            if (device == null) {
+                device = new Device(aDevice);
+                sOtherDevices.put(aDevice, device);
+            }
+        }
+        return device;
+    }
 
     private static void generateEvent(Widget aWidget, Device aDevice, boolean aFocused, int aAction, boolean aGeneric) {
         generateEvent(aWidget, aDevice, aFocused, aAction, aGeneric, aDevice.mCoords);
     }
 
     private static void generateEvent(Widget aWidget, Device aDevice, boolean aFocused, int aAction, boolean aGeneric, MotionEvent.PointerCoords[] aCoords) {
+        generateEvent(aWidget, aDevice, aFocused, aAction, aGeneric, 1, aDevice.mProperties, aCoords);
+    }
+
+    private static void generateEvent(Widget aWidget, Device aDevice, boolean aFocused, int aAction, boolean aGeneric,
+                                      int aPointerCount, MotionEvent.PointerProperties[] aProperties, MotionEvent.PointerCoords[] aCoords) {
+        // Obtained events come from the MotionEvent pool, so recycling them avoids any allocation.
         MotionEvent event = MotionEvent.obtain(
                 /*mDownTime*/ aDevice.mDownTime,
                 /*eventTime*/ SystemClock.uptimeMillis(),
                 /*action*/ aAction,
-                /*pointerCount*/ 1,
-                /*pointerProperties*/ aDevice.mProperties,
+                /*pointerCount*/ aPointerCount,
+                /*pointerProperties*/ aProperties,
                 /*pointerCoords*/ aCoords,
                 /*metaState*/ 0,
                 /*buttonState*/ 0,
@@ -86,12 +133,53 @@ public class MotionEventGenerator {
         event.recycle();
     }
 
-    public static void dispatch(Widget aWidget, int aDevice, boolean aFocused, boolean aPressed, float aX, float aY) {
-        Device device = devices.get(aDevice);
-        if (device == null) {
-            device = new Device(aDevice);
-            devices.put(aDevice, device);
+    /**
+     * Sends a touch event with a pointer for every device touching the widget.
+     * @param aActionMasked Action of the event. For ACTION_POINTER_DOWN and ACTION_POINTER_UP the
+     *                      index of aDevice is added to it.
+     */
+    private static void generateGestureEvent(Widget aWidget, Device aDevice, boolean aFocused, int aActionMasked) {
+        int count = 0;
+        int deviceIndex = 0;
+        for (Device device : sIndexedDevices) {
+            if (device != null && device.mTouching && device.mTouchStartWidget == aWidget) {
+                if (device == aDevice) {
+                    deviceIndex = count;
+                }
+                sGestureProperties[count] = device.mProperties[0];
+                sGestureCoords[count] = device.mCoords[0];
+                count++;
+            }
+        }
+
+        int action = aActionMasked;
+        if (aActionMasked == MotionEvent.ACTION_POINTER_DOWN || aActionMasked == MotionEvent.ACTION_POINTER_UP) {
+            action |= deviceIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT;
+        }
+        generateEvent(aWidget, aDevice, aFocused, action, false, count, sGestureProperties, sGestureCoords);
+        for (int i = 0; i < count; i++) {
+            sGestureProperties[i] = null;
+            sGestureCoords[i] = null;
         }
+    }
+
+    /**
+     * @return True if any other device with the same pointer id space is touching the widget.
+     */
+    private static boolean isGestureInProgress(Widget aWidget, Device aDevice) {
+        if (!aWidget.supportsMultiTouch() || aDevice.mDevice < 0 || aDevice.mDevice >= MAX_INDEXED_DEVICES) {
+            return false;
+        }
+        for (Device device : sIndexedDevices) {
+            if (device != null && device != aDevice && device.mTouching && device.mTouchStartWidget == aWidget) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void dispatch(Widget aWidget, int aDevice, boolean aFocused, boolean aPressed, float aX, float aY) {
+        Device device = getDevice(aDevice);
         boolean moving = (device.mCoords[0].x != aX) || (device.mCoords[0].y != aY);
         if (aWidget != null) {
             device.mCoords[0].x = aX;
@@ -104,7 +192,9 @@ public class MotionEventGenerator {
         }
         if (!aPressed && (device.mPreviousWidget != null) && (device.mPreviousWidget != aWidget)) {
             if (device.mWasPressed) {
-                generateEvent(device.mPreviousWidget, device, aFocused, MotionEvent.ACTION_CANCEL, false);
+                if (device.mTouching) {
+                    endTouch(device.mPreviousWidget, device, aFocused, MotionEvent.ACTION_CANCEL);
+                }
                 device.mTouchStartWidget = null;
                 device.mWasPressed = false;
             }
@@ -122,29 +212,52 @@ public class MotionEventGenerator {
             device.mHoverStartWidget = aWidget;
         }
         if (aPressed && !device.mWasPressed) {
-            device.mDownTime = SystemClock.uptimeMillis();
             device.mWasPressed = true;
-            if (!isOtherDeviceDown(device.mDevice)) {
+            if (sTouchingCount == 0) {
+                device.mDownTime = SystemClock.uptimeMillis();
                 generateEvent(aWidget, device, aFocused, MotionEvent.ACTION_HOVER_EXIT, true);
+                startTouch(aWidget, device);
                 generateEvent(aWidget, device, aFocused, MotionEvent.ACTION_DOWN, false);
                 device.mHoverStartWidget = null;
+
+            } else if (isGestureInProgress(aWidget, device)) {
+                // Join the gesture of the devices already touching this widget.
+                device.mDownTime = findGestureDownTime(aWidget);
+                generateEvent(aWidget, device, aFocused, MotionEvent.ACTION_HOVER_EXIT, true);
+                startTouch(aWidget, device);
+                generateGestureEvent(aWidget, device, aFocused, MotionEvent.ACTION_POINTER_DOWN);
+                device.mHoverStartWidget = null;
+            }
+            // Otherwise another device is touching a different widget. Android throws away all
+            // the previous state when a new touch gesture starts, so this press is ignored.
+            for (Device other : sIndexedDevices) {
+                if (other != null && other != device && other.mHoverStartWidget != null) {
+                    generateEvent(other.mHoverStartWidget, other, aFocused, MotionEvent.ACTION_HOVER_EXIT, true);
+                }
             }
-            for (int i=0; i<devices.size(); i++) {
-                if (devices.get(i) != null && devices.get(i) != device && devices.get(i).mHoverStartWidget != null) {
-                    generateEvent(devices.get(i).mHoverStartWidget, devices.get(i), aFocused, MotionEvent.ACTION_HOVER_EXIT, true);
+            for (int i = 0; i < sOtherDevices.size(); i++) {
+                Device other = sOtherDevices.valueAt(i);
+                if (other != device && other.mHoverStartWidget != null) {
+                    generateEvent(other.mHoverStartWidget, other, aFocused, MotionEvent.ACTION_HOVER_EXIT, true);
                 }
             }
             device.mTouchStartWidget = aWidget;
         } else if (!aPressed && device.mWasPressed) {
             device.mWasPressed = false;
-            if (!isOtherDeviceDown(device.mDevice)) {
-                generateEvent(device.mTouchStartWidget, device, aFocused, MotionEvent.ACTION_UP, false);
+            if (device.mTouching) {
+                endTouch(device.mTouchStartWidget, device, aFocused, MotionEvent.ACTION_UP);
+            }
+            if (sTouchingCount == 0) {
                 generateEvent(aWidget, device, aFocused, MotionEvent.ACTION_HOVER_ENTER, true);
                 device.mHoverStartWidget = aWidget;
             }
             device.mTouchStartWidget = null;
         } else if (moving && aPressed) {
-            generateEvent(aWidget, device, aFocused, MotionEvent.ACTION_MOVE, false);
+            if (device.mTouching && device.mTouchStartWidget == aWidget) {
+                generateGestureEvent(aWidget, device, aFocused, MotionEvent.ACTION_MOVE);
+            } else {
+                generateEvent(aWidget, device, aFocused, MotionEvent.ACTION_MOVE, false);
+            }
         } else if (moving) {
             generateEvent(aWidget, device, aFocused, MotionEvent.ACTION_HOVER_MOVE, true);
         } else {
@@ -154,34 +267,38 @@ public class MotionEventGenerator {
         device.mPreviousWidget = aWidget;
     }
 
+    private static void startTouch(Widget aWidget, Device aDevice) {
+        aDevice.mTouchStartWidget = aWidget;
+        aDevice.mTouching = true;
+        sTouchingCount++;
+    }
+
     /**
-     * Checks if any other device has an ongoing touch down event.
-     * Android throw away all previous state when starting a new touch gesture
-     * and this seem to make the previous touch to be sent up the view hierarchy.
-     * To avoid this we check if any other device has a button down before sending
-     * touch down/up event.
-     * @param deviceId Device Id to filter
-     * @return true if any other device has a button down, false otherwise
+     * Releases the touch of a device. If other devices are still touching the widget only its
+     * pointer is removed from the gesture, otherwise the gesture ends with the given action.
      */
-    private static boolean isOtherDeviceDown(int deviceId) {
-        boolean result = false;
-        for (int i=0; i<devices.size(); i++) {
-            if (i != deviceId) {
-                if (devices.get(i) != null) {
-                    result |= devices.get(i).mTouchStartWidget != null;
-                }
-            }
+    private static void endTouch(Widget aWidget, Device aDevice, boolean aFocused, int aAction) {
+        if (isGestureInProgress(aWidget, aDevice)) {
+            generateGestureEvent(aWidget, aDevice, aFocused, MotionEvent.ACTION_POINTER_UP);
+        } else {
+            generateEvent(aWidget, aDevice, aFocused, aAction, false);
         }
+        aDevice.mTouching = false;
+        sTouchingCount--;
+    }
 
-        return result;
+    private static long findGestureDownTime(Widget aWidget) {
+        long downTime = SystemClock.uptimeMillis();
+        for (Device device : sIndexedDevices) {
+            if (device != null && device.mTouching && device.mTouchStartWidget == aWidget) {
+                downTime = Math.min(downTime, device.mDownTime);
+            }
+        }
+        return downTime;
     }
 
     public static void dispatchScroll(Widget aWidget, int aDevice, boolean aFocused, float aX, float aY) {
-        Device device = devices.get(aDevice);
-        if (device == null) {
-            device = new Device(aDevice);
-            devices.put(aDevice, device);
-        }
+        Device device = getDevice(aDevice);
         device.mPreviousWidget = aWidget;
         device.mCoords[0].setAxisValue(MotionEvent.AXIS_VSCROLL, aY);
         device.mCoords[0].setAxisValue(MotionEvent.AXIS_HSCROLL, aX);
@@ -190,7 +307,15 @@ public class MotionEventGenerator {
         device.mCoords[0].setAxisValue(MotionEvent.AXIS_HSCROLL, 0.0f);
     }
 
+    static long getPointerAllocations() {
+        return sPointerAllocations;
+    }
+
     public static void clearDevices() {
-        devices.clear();
+        for (int i = 0; i < MAX_INDEXED_DEVICES; i++) {
+            sIndexedDevices[i] = null;
+        }
+        sOtherDevices.clear();
+        sTouchingCount = 0;
     }
 }
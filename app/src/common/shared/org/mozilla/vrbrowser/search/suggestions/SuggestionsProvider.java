@@ -4,8 +4,11 @@ import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.mozilla.vrbrowser.VRBrowserApplication;
+import org.mozilla.vrbrowser.browser.BookmarksStore;
+import org.mozilla.vrbrowser.browser.HistoryStore;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.search.SearchEngineWrapper;
 import org.mozilla.vrbrowser.ui.widgets.SuggestionsWidget.SuggestionItem;
@@ -14,14 +17,24 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
-import java.util.function.Supplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import mozilla.components.concept.storage.BookmarkNode;
+import mozilla.components.concept.storage.SearchResult;
 
 public class SuggestionsProvider {
 
     private static final String LOGTAG = SuggestionsProvider.class.getSimpleName();
+    private static final int MAX_RESULTS = 100;
+    private static final int CACHE_SIZE = 32;
 
     public static class DefaultSuggestionsComparator implements Comparator<SuggestionItem> {
 
@@ -49,6 +62,10 @@ public class SuggestionsProvider {
     private String mFilterText;
     private Comparator<SuggestionItem> mComparator;
     private Executor mUIThreadExecutor;
+    private CompletableFuture<List<SuggestionItem>> mCurrentQuery;
+    private PrefixCache mBookmarksCache = new PrefixCache();
+    private PrefixCache mHistoryCache = new PrefixCache();
+    private boolean mListenersAdded;
 
     public SuggestionsProvider(Context context) {
         mSearchEngineWrapper = SearchEngineWrapper.get(context);
@@ -77,114 +94,295 @@ public class SuggestionsProvider {
         mComparator = comparator;
     }
 
-    private CompletableFuture<List<SuggestionItem>> getBookmarkSuggestions(@NonNull List<SuggestionItem> items) {
-        CompletableFuture<List<SuggestionItem>> future = new CompletableFuture<>();
-        SessionStore.get().getBookmarkStore().searchBookmarks(mFilterText, 100).thenAcceptAsync((bookmarks) -> {
-            bookmarks.stream()
-                    .filter((b) -> b.getUrl() != null && !b.getUrl().startsWith("place:") &&
-                            !b.getUrl().startsWith("about:reader"))
-                    .forEach(b -> items.add(SuggestionItem.create(
-                            b.getTitle(),
-                            b.getUrl(),
-                            null,
-                            Type.BOOKMARK,
-                            0
-                    )));
-            if (mComparator != null) {
-                items.sort(mComparator);
+    /**
+     * Bookmark and history results by the filter text that produced them. When the filter text
+     * extends a cached prefix whose results were not truncated, the cached results are filtered
+     * locally instead of querying Places again. Only accessed from the UI thread.
+     */
+    private static class PrefixCache {
+        private LinkedHashMap<String, List<SuggestionItem>> mEntries = new LinkedHashMap<String, List<SuggestionItem>>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<SuggestionItem>> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+        // Keys, tokens and the matched fields all go through here so cache hits don't depend on case.
+        @NonNull
+        private static String normalize(@Nullable String aText) {
+            return aText != null ? aText.toLowerCase(Locale.ROOT) : "";
+        }
+
+        @Nullable
+        List<SuggestionItem> get(@NonNull String aText) {
+            String text = normalize(aText);
+            List<SuggestionItem> items = mEntries.get(text);
+            if (items != null) {
+                return items;
+            }
+
+            for (int length = text.length() - 1; length > 0; length--) {
+                List<SuggestionItem> prefixItems = mEntries.get(text.substring(0, length));
+                if (prefixItems == null) {
+                    continue;
+                }
+                if (prefixItems.size() >= MAX_RESULTS) {
+                    // Truncated results may be missing matches for the longer text.
+                    return null;
+                }
+                items = prefixItems.stream()
+                        .filter(item -> matches(item, text))
+                        .collect(Collectors.toList());
+                mEntries.put(text, items);
+                return items;
             }
-            future.complete(items);
 
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting bookmarks suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
             return null;
-        });
+        }
+
+        void put(@NonNull String aText, @NonNull List<SuggestionItem> aItems) {
+            mEntries.put(normalize(aText), aItems);
+        }
+
+        void clear() {
+            mEntries.clear();
+        }
 
-        return future;
+        private static boolean matches(@NonNull SuggestionItem aItem, @NonNull String aText) {
+            String title = normalize(aItem.title);
+            String url = normalize(aItem.url);
+            for (String token : aText.trim().split("\\s+")) {
+                if (!title.contains(token) && !url.contains(token)) {
+                    return false;
+                }
+            }
+            return true;
+        }
     }
 
-    private CompletableFuture<List<SuggestionItem>> getHistorySuggestions(@NonNull final List<SuggestionItem> items) {
-        CompletableFuture<List<SuggestionItem>> future = new CompletableFuture<>();
-        SessionStore.get().getHistoryStore().getSuggestions(mFilterText, 100).thenAcceptAsync((history) -> {
-            history.forEach(h -> items.add(SuggestionItem.create(
-                            h.getTitle(),
-                            h.getUrl(),
+    /**
+     * A single suggestions request. The sources are queried concurrently and the results are merged
+     * on the UI thread as they arrive.
+     */
+    private class Query {
+        final CompletableFuture<List<SuggestionItem>> mResult = new CompletableFuture<>();
+        private final String mQueryText;
+        private final String mQueryFilterText;
+        private final Consumer<List<SuggestionItem>> mPartialListener;
+        private final List<CompletableFuture<?>> mSources = new ArrayList<>();
+        private List<SuggestionItem> mSearchItems = new ArrayList<>();
+        private List<SuggestionItem> mEngineItems;
+        private List<SuggestionItem> mBookmarkItems;
+        private List<SuggestionItem> mHistoryItems;
+
+        Query(String aText, String aFilterText, @Nullable Consumer<List<SuggestionItem>> aPartialListener) {
+            mQueryText = aText;
+            mQueryFilterText = aFilterText;
+            mPartialListener = aPartialListener;
+        }
+
+        void start() {
+            addLocalSuggestions();
+            mBookmarkItems = mBookmarksCache.get(mQueryFilterText);
+            mHistoryItems = mHistoryCache.get(mQueryFilterText);
+
+            CompletableFuture<List<String>> engineSource = mSearchEngineWrapper.getSuggestions(mQueryFilterText);
+            mSources.add(engineSource);
+            engineSource.whenCompleteAsync((suggestions, throwable) -> {
+                List<SuggestionItem> items = new ArrayList<>();
+                if (suggestions != null) {
+                    suggestions.forEach(s -> items.add(SuggestionItem.create(
+                            s,
+                            mSearchEngineWrapper.getSearchURL(s),
                             null,
-                            Type.HISTORY,
-                            h.getScore()
+                            Type.SUGGESTION,
+                            0
                     )));
-            if (mComparator != null) {
-                items.sort(mComparator);
+                } else {
+                    logError("search engine", throwable);
+                }
+                mEngineItems = items;
+                merge();
+            }, mUIThreadExecutor);
+
+            if (mBookmarkItems == null) {
+                CompletableFuture<List<BookmarkNode>> bookmarksSource = SessionStore.get().getBookmarkStore().searchBookmarks(mQueryFilterText, MAX_RESULTS);
+                mSources.add(bookmarksSource);
+                bookmarksSource.whenCompleteAsync((bookmarks, throwable) -> {
+                    List<SuggestionItem> items = new ArrayList<>();
+                    if (bookmarks != null) {
+                        bookmarks.stream()
+                                .filter((b) -> b.getUrl() != null && !b.getUrl().startsWith("place:") &&
+                                        !b.getUrl().startsWith("about:reader"))
+                                .forEach(b -> items.add(SuggestionItem.create(
+                                        b.getTitle(),
+                                        b.getUrl(),
+                                        null,
+                                        Type.BOOKMARK,
+                                        0
+                                )));
+                        if (!mResult.isDone() && bookmarks.size() < MAX_RESULTS) {
+                            mBookmarksCache.put(mQueryFilterText, items);
+                        }
+                    } else {
+                        logError("bookmarks", throwable);
+                    }
+                    mBookmarkItems = items;
+                    merge();
+                }, mUIThreadExecutor);
             }
-            future.complete(items);
 
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting history suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
-        });
+            if (mHistoryItems == null) {
+                CompletableFuture<List<SearchResult>> historySource = SessionStore.get().getHistoryStore().getSuggestions(mQueryFilterText, MAX_RESULTS);
+                mSources.add(historySource);
+                historySource.whenCompleteAsync((history, throwable) -> {
+                    List<SuggestionItem> items = new ArrayList<>();
+                    if (history != null) {
+                        history.forEach(h -> items.add(SuggestionItem.create(
+                                h.getTitle(),
+                                h.getUrl(),
+                                null,
+                                Type.HISTORY,
+                                h.getScore()
+                        )));
+                        if (!mResult.isDone()) {
+                            mHistoryCache.put(mQueryFilterText, items);
+                        }
+                    } else {
+                        logError("history", throwable);
+                    }
+                    mHistoryItems = items;
+                    merge();
+                }, mUIThreadExecutor);
+            }
 
-        return future;
-    }
+            // Stop the pending lookups when the query is superseded. These are the futures returned by
+            // the stores, cancelling them cancels the Places coroutines backing them.
+            mResult.whenComplete((items, throwable) -> {
+                if (mResult.isCancelled()) {
+                    mSources.forEach(source -> source.cancel(true));
+                }
+            });
 
-    private CompletableFuture<List<SuggestionItem>> getSearchEngineSuggestions(@NonNull final List<SuggestionItem> items) {
-        CompletableFuture<List<SuggestionItem>> future = new CompletableFuture<>();
+            merge();
+        }
+
+        private void addLocalSuggestions() {
+            // Completion from browser-domains
+            if (!mQueryText.equals(mQueryFilterText) && UrlUtils.isDomain(mQueryText)) {
+                mSearchItems.add(SuggestionItem.create(
+                        mQueryText,
+                        getSearchURLOrDomain(mQueryText),
+                        null,
+                        Type.COMPLETION,
+                        0
+                ));
+            }
 
-        // Completion from browser-domains
-        if (!mText.equals(mFilterText) && UrlUtils.isDomain(mText)) {
-            items.add(SuggestionItem.create(
-                    mText,
-                    getSearchURLOrDomain(mText),
+            // Original text
+            mSearchItems.add(SuggestionItem.create(
+                    mQueryFilterText,
+                    getSearchURLOrDomain(mQueryFilterText),
                     null,
-                    Type.COMPLETION,
+                    Type.SUGGESTION,
                     0
             ));
         }
 
-        // Original text
-        items.add(SuggestionItem.create(
-                mFilterText,
-                getSearchURLOrDomain(mFilterText),
-                null,
-                Type.SUGGESTION,
-                0
-        ));
-
-        // Suggestions
-        mSearchEngineWrapper.getSuggestions(mFilterText).thenAcceptAsync((suggestions) -> {
-            suggestions.forEach(s -> {
-                String url = mSearchEngineWrapper.getSearchURL(s);
-                items.add(SuggestionItem.create(
-                        s,
-                        url,
-                        null,
-                        Type.SUGGESTION,
-                        0
-                ));
-            });
+        private void merge() {
+            if (mResult.isDone()) {
+                return;
+            }
+
+            List<SuggestionItem> items = new ArrayList<>(mSearchItems);
+            addAll(items, mEngineItems);
+            addAll(items, mBookmarkItems);
+            addAll(items, mHistoryItems);
             if (mComparator != null) {
                 items.sort(mComparator);
             }
-            future.complete(items);
 
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting search engine suggestions: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            future.complete(items);
-            return null;
-        });
+            if (mEngineItems != null && mBookmarkItems != null && mHistoryItems != null) {
+                mResult.complete(items);
+            } else if (mPartialListener != null) {
+                mPartialListener.accept(items);
+            }
+        }
 
-        return future;
+        private void addAll(@NonNull List<SuggestionItem> aItems, @Nullable List<SuggestionItem> aSource) {
+            if (aSource != null) {
+                aItems.addAll(aSource);
+            }
+        }
+
+        private void logError(@NonNull String aSource, @Nullable Throwable aThrowable) {
+            if (aThrowable != null && !(aThrowable instanceof CancellationException)) {
+                Log.d(LOGTAG, "Error getting " + aSource + " suggestions: " + aThrowable.getLocalizedMessage());
+                aThrowable.printStackTrace();
+            }
+        }
+    }
+
+    private void addStoreListeners() {
+        if (mListenersAdded) {
+            return;
+        }
+        SessionStore.get().getBookmarkStore().addListener(mBookmarkListener);
+        SessionStore.get().getHistoryStore().addListener(mHistoryListener);
+        mListenersAdded = true;
     }
 
     public CompletableFuture<List<SuggestionItem>> getSuggestions() {
-        return CompletableFuture.supplyAsync((Supplier<ArrayList<SuggestionItem>>) ArrayList::new)
-                .thenComposeAsync(this::getSearchEngineSuggestions)
-                .thenComposeAsync(this::getBookmarkSuggestions)
-                .thenComposeAsync(this::getHistorySuggestions);
+        return getSuggestions(null);
+    }
+
+    /**
+     * Queries the search engine, bookmarks and history concurrently. Any query still in flight is
+     * cancelled. Must be called from the UI thread.
+     *
+     * @param aPartialListener Called on the UI thread with the merged results every time a source
+     *                         other than the last one completes.
+     * @return A future completed with the results of all the sources.
+     */
+    public CompletableFuture<List<SuggestionItem>> getSuggestions(@Nullable Consumer<List<SuggestionItem>> aPartialListener) {
+        if (mCurrentQuery != null) {
+            mCurrentQuery.cancel(false);
+        }
+        addStoreListeners();
+
+        Query query = new Query(mText, mFilterText, aPartialListener);
+        mCurrentQuery = query.mResult;
+        query.start();
+
+        return query.mResult;
     }
 
+    public void release() {
+        if (mCurrentQuery != null) {
+            mCurrentQuery.cancel(false);
+            mCurrentQuery = null;
+        }
+        if (mListenersAdded) {
+            SessionStore.get().getBookmarkStore().removeListener(mBookmarkListener);
+            SessionStore.get().getHistoryStore().removeListener(mHistoryListener);
+            mListenersAdded = false;
+        }
+        mBookmarksCache.clear();
+        mHistoryCache.clear();
+    }
+
+    private BookmarksStore.BookmarkListener mBookmarkListener = new BookmarksStore.BookmarkListener() {
+        @Override
+        public void onBookmarksUpdated() {
+            mBookmarksCache.clear();
+        }
+
+        @Override
+        public void onBookmarkAdded() {
+            mBookmarksCache.clear();
+        }
+    };
+
+    private HistoryStore.HistoryListener mHistoryListener = () -> mHistoryCache.clear();
+
 }
@@ -1,9 +1,11 @@
 package org.mozilla.vrbrowser.telemetry;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
 import androidx.annotation.VisibleForTesting;
 
@@ -14,21 +16,16 @@ import org.mozilla.vrbrowser.utils.DeviceType;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Hashtable;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import mozilla.components.concept.fetch.Client;
 import mozilla.components.service.glean.Glean;
 import mozilla.components.service.glean.config.Configuration;
 import mozilla.components.service.glean.net.ConceptFetchHttpUploader;
-import mozilla.telemetry.glean.GleanTimerId;
-
-import static org.mozilla.vrbrowser.ui.widgets.Windows.MAX_WINDOWS;
-import static org.mozilla.vrbrowser.ui.widgets.Windows.WindowPlacement;
 
 
 public class GleanMetricsService {
@@ -37,13 +34,92 @@ public class GleanMetricsService {
     private final static String LOGTAG = SystemUtils.createLogtag(GleanMetricsService.class);
     private static boolean initialized = false;
     private static Context context = null;
-    private static HashSet<String> domainMap = new HashSet<String>();
-    private static Map<String, GleanTimerId> loadingTimerId = new Hashtable<>();
-    private static GleanTimerId immersiveTimerId;
-    private static Map<Integer, GleanTimerId> windowLifeTimerId = new Hashtable<>();
-    private static GleanTimerId activeWindowTimerId[] = new GleanTimerId[MAX_WINDOWS];
-    private static GleanTimerId openWindowTimerId[] = new GleanTimerId[MAX_WINDOWS];
-    private static GleanTimerId openPrivateWindowTimerId[] = new GleanTimerId[MAX_WINDOWS];
+
+    private final static int MAX_PAGE_LOAD_TIMERS = 64;
+    private final static int MAX_WINDOW_TIMERS = 32;
+    private final static int SAMPLE_RING_CAPACITY = 1024;
+    private final static int DRAIN_BATCH_SIZE = 128;
+    private final static long DRAIN_DELAY_MS = 1000;
+    private final static int DOMAIN_COUNTER_PRECISION = 12;
+
+    // Recording only touches these, the samples are aggregated on the metrics executor.
+    private static final MetricTimers<String> pageLoadTimers = new MetricTimers<>(MAX_PAGE_LOAD_TIMERS);
+    private static final MetricTimers<Integer> windowLifeTimers = new MetricTimers<>(MAX_WINDOW_TIMERS);
+    private static final AtomicLong immersiveStart = new AtomicLong();
+    // Only exist while telemetry is enabled. Set under the class lock, batcher is read without it.
+    private static ScheduledThreadPoolExecutor executor;
+    private static SessionMetrics sessionMetrics;
+    private static volatile SampleBatcher<Sample> batcher;
+
+    private static class Sample {
+        static final int PAGE_LOAD = 0;
+        static final int IMMERSIVE = 1;
+        static final int WINDOW_LIFETIME = 2;
+
+        final int type;
+        final long durationMs;
+        final String uri;
+
+        Sample(int aType, long aDurationNanos, @Nullable String aUri) {
+            type = aType;
+            durationMs = TimeUnit.NANOSECONDS.toMillis(aDurationNanos);
+            uri = aUri;
+        }
+    }
+
+    /**
+     * Per session aggregates of the drained samples. Only accessed from the metrics executor.
+     * app/metrics.yaml doesn't define any Glean metric to record them into, so they are only
+     * logged when the session or the recording stops.
+     */
+    private static class SessionMetrics implements SampleBatcher.Sink<Sample> {
+        final HyperLogLog domains = new HyperLogLog(DOMAIN_COUNTER_PRECISION);
+        long pageLoads;
+        long pageLoadMs;
+        long immersiveMs;
+        long windowsClosed;
+        long windowLifetimeMs;
+
+        @Override
+        public void onBatch(@NonNull List<Sample> aBatch) {
+            for (Sample sample : aBatch) {
+                switch (sample.type) {
+                    case Sample.PAGE_LOAD:
+                        pageLoads++;
+                        pageLoadMs += sample.durationMs;
+                        String domain = UrlUtils.stripCommonSubdomains(UrlUtils.getHost(sample.uri));
+                        if (domain != null && !domain.isEmpty()) {
+                            domains.add(domain);
+                        }
+                        break;
+                    case Sample.IMMERSIVE:
+                        immersiveMs += sample.durationMs;
+                        break;
+                    case Sample.WINDOW_LIFETIME:
+                        windowsClosed++;
+                        windowLifetimeMs += sample.durationMs;
+                        break;
+                }
+            }
+        }
+
+        void report(long aDroppedSamples) {
+            Log.d(LOGTAG, "Session metrics: pageLoads=" + pageLoads +
+                    " avgPageLoadMs=" + (pageLoads > 0 ? pageLoadMs / pageLoads : 0) +
+                    " domains=" + domains.estimate() +
+                    " immersiveMs=" + immersiveMs +
+                    " windowsClosed=" + windowsClosed +
+                    " avgWindowLifetimeMs=" + (windowsClosed > 0 ? windowLifetimeMs / windowsClosed : 0) +
+                    " droppedTimers=" + (pageLoadTimers.getDropped() + windowLifeTimers.getDropped()) +
+                    " droppedSamples=" + aDroppedSamples);
+            domains.clear();
+            pageLoads = 0;
+            pageLoadMs = 0;
+            immersiveMs = 0;
+            windowsClosed = 0;
+            windowLifetimeMs = 0;
+        }
+    }
 
     // We should call this at the application initial stage.
     public static void init(@NonNull Context aContext, @NonNull Client client) {
@@ -60,26 +136,95 @@ public class GleanMetricsService {
                 BuildConfig.BUILD_TYPE);
 
         Glean.INSTANCE.initialize(aContext, telemetryEnabled, config);
+
+        if (telemetryEnabled) {
+            startRecording();
+        }
     }
 
     // It would be called when users turn on/off the setting of telemetry.
     // e.g., SettingsStore.getInstance(context).setTelemetryEnabled();
     public static void start() {
         Glean.INSTANCE.setUploadEnabled(true);
+        startRecording();
     }
 
     // It would be called when users turn on/off the setting of telemetry.
     // e.g., SettingsStore.getInstance(context).setTelemetryEnabled();
     public static void stop() {
         Glean.INSTANCE.setUploadEnabled(false);
+        stopRecording();
+    }
+
+    private static synchronized void startRecording() {
+        if (!initialized || executor != null) {
+            return;
+        }
+        ScheduledThreadPoolExecutor metricsExecutor = new ScheduledThreadPoolExecutor(1);
+        // The drains still waiting when the recording stops are dropped, stopRecording() runs a
+        // last one right away.
+        metricsExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        executor = metricsExecutor;
+        sessionMetrics = new SessionMetrics();
+        // Delaying the drains batches the samples recorded meanwhile.
+        batcher = new SampleBatcher<>(SAMPLE_RING_CAPACITY, DRAIN_BATCH_SIZE, command -> {
+            try {
+                metricsExecutor.schedule(command, DRAIN_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // The recording stopped and its last drain already ran.
+            }
+        }, sessionMetrics);
+    }
+
+    private static synchronized void stopRecording() {
+        if (executor == null) {
+            return;
+        }
+        reportLocked();
+        batcher = null;
+        sessionMetrics = null;
+        executor.shutdown();
+        executor = null;
+        pageLoadTimers.clear();
+        windowLifeTimers.clear();
+        immersiveStart.set(0);
+    }
+
+    // Must be called holding the class lock while recording.
+    private static void reportLocked() {
+        SampleBatcher<Sample> drained = batcher;
+        SessionMetrics metrics = sessionMetrics;
+        executor.execute(() -> {
+            drained.drain();
+            metrics.report(drained.getDropped());
+        });
+    }
+
+    private static boolean isRecording() {
+        return batcher != null;
+    }
+
+    private static void record(int aType, long aDurationNanos, @Nullable String aUri) {
+        SampleBatcher<Sample> current = batcher;
+        if (current != null) {
+            current.record(new Sample(aType, aDurationNanos, aUri));
+        }
     }
 
     public static void startPageLoadTime(String aUrl) {
-        /* intentionally left empty */
+        if (isRecording() && aUrl != null) {
+            pageLoadTimers.start(aUrl, SystemClock.elapsedRealtimeNanos());
+        }
     }
 
     public static void stopPageLoadTimeWithURI(String uri) {
-        /* intentionally left empty */
+        if (uri == null) {
+            return;
+        }
+        long elapsed = pageLoadTimers.stop(uri, SystemClock.elapsedRealtimeNanos());
+        if (elapsed >= 0) {
+            record(Sample.PAGE_LOAD, elapsed, uri);
+        }
     }
 
     public static void windowsResizeEvent() {
@@ -102,15 +247,13 @@ public class GleanMetricsService {
         /* intentionally left empty */
     }
 
-    public static void sessionStop() {
-        domainMap.clear();
-        loadingTimerId.clear();
-        windowLifeTimerId.clear();
-        activeWindowTimerId = new GleanTimerId[MAX_WINDOWS];
-        openWindowTimerId = new GleanTimerId[MAX_WINDOWS];
-        openPrivateWindowTimerId = new GleanTimerId[MAX_WINDOWS];
-
-        /* intentionally left empty */
+    public static synchronized void sessionStop() {
+        if (executor == null) {
+            return;
+        }
+        pageLoadTimers.clear();
+        windowLifeTimers.clear();
+        reportLocked();
     }
 
     @UiThread
@@ -124,19 +267,29 @@ public class GleanMetricsService {
     }
 
     public static void startImmersive() {
-        /* intentionally left empty */
+        if (isRecording()) {
+            immersiveStart.set(SystemClock.elapsedRealtimeNanos());
+        }
     }
 
     public static void stopImmersive() {
-        /* intentionally left empty */
+        long start = immersiveStart.getAndSet(0);
+        if (start != 0) {
+            record(Sample.IMMERSIVE, SystemClock.elapsedRealtimeNanos() - start, null);
+        }
     }
 
     public static void openWindowEvent(int windowId) {
-        /* intentionally left empty */
+        if (isRecording()) {
+            windowLifeTimers.start(windowId, SystemClock.elapsedRealtimeNanos());
+        }
     }
 
     public static void closeWindowEvent(int windowId) {
-        /* intentionally left empty */
+        long elapsed = windowLifeTimers.stop(windowId, SystemClock.elapsedRealtimeNanos());
+        if (elapsed >= 0) {
+            record(Sample.WINDOW_LIFETIME, elapsed, null);
+        }
     }
 
     private static String getDefaultSearchEngineIdentifierForTelemetry() {
@@ -0,0 +1,77 @@
+package org.mozilla.vrbrowser.telemetry;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Start times of the running timers, safe to use from any thread without locking. The number of
+ * running timers is bounded, so timers that are never stopped can't make it grow with the number
+ * of pages visited. Timers started while it's full are dropped and counted.
+ */
+class MetricTimers<K> {
+
+    private final ConcurrentHashMap<K, Long> mStarts = new ConcurrentHashMap<>();
+    // Reserved before a timer is added, so concurrent starts can't go over the capacity.
+    private final AtomicInteger mSize = new AtomicInteger();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final int mCapacity;
+
+    MetricTimers(int aCapacity) {
+        mCapacity = aCapacity;
+    }
+
+    /**
+     * Starts a timer, or restarts it if it's already running.
+     *
+     * @return false if the timer was dropped because too many are running.
+     */
+    boolean start(@NonNull K aKey, long aNowNanos) {
+        if (mStarts.replace(aKey, aNowNanos) != null) {
+            return true;
+        }
+        int size;
+        do {
+            size = mSize.get();
+            if (size >= mCapacity) {
+                mDropped.incrementAndGet();
+                return false;
+            }
+        } while (!mSize.compareAndSet(size, size + 1));
+        if (mStarts.put(aKey, aNowNanos) != null) {
+            // Started concurrently, it already had a slot.
+            mSize.decrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * @return The elapsed nanoseconds, or -1 if the timer wasn't running.
+     */
+    long stop(@NonNull K aKey, long aNowNanos) {
+        Long start = mStarts.remove(aKey);
+        if (start == null) {
+            return -1;
+        }
+        mSize.decrementAndGet();
+        return aNowNanos - start;
+    }
+
+    void clear() {
+        for (K key : mStarts.keySet()) {
+            if (mStarts.remove(key) != null) {
+                mSize.decrementAndGet();
+            }
+        }
+    }
+
+    int size() {
+        return mSize.get();
+    }
+
+    long getDropped() {
+        return mDropped.get();
+    }
+}
@@ -0,0 +1,75 @@
+package org.mozilla.vrbrowser.telemetry;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Records samples into a {@link SampleRing} and hands them to the sink in batches on the executor.
+ * Recording never blocks: it's a slot claim plus, for the first sample after a drain, scheduling
+ * the next drain. The executor can delay the drain, so the samples of that time go in the batches
+ * of a single task.
+ */
+class SampleBatcher<T> {
+
+    interface Sink<T> {
+        /**
+         * Called on the executor. The list is reused after the call returns.
+         */
+        void onBatch(@NonNull List<T> aBatch);
+    }
+
+    private final SampleRing<T> mRing;
+    private final int mBatchSize;
+    private final Executor mExecutor;
+    private final Sink<T> mSink;
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean();
+    private final Runnable mDrainTask = this::drain;
+
+    /**
+     * @param aExecutor Must run the tasks one at a time, the ring only supports a single consumer.
+     */
+    SampleBatcher(int aCapacity, int aBatchSize, @NonNull Executor aExecutor, @NonNull Sink<T> aSink) {
+        mRing = new SampleRing<>(aCapacity);
+        mBatchSize = aBatchSize;
+        mExecutor = aExecutor;
+        mSink = aSink;
+    }
+
+    /**
+     * @return false if the ring is full and the sample was dropped.
+     */
+    boolean record(@NonNull T aSample) {
+        if (!mRing.offer(aSample)) {
+            return false;
+        }
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(mDrainTask);
+        }
+        return true;
+    }
+
+    /**
+     * Hands every recorded sample to the sink. Must be called on the executor.
+     */
+    void drain() {
+        ArrayList<T> batch = new ArrayList<>(mBatchSize);
+        while (mRing.drainTo(batch, mBatchSize) > 0) {
+            mSink.onBatch(batch);
+            batch.clear();
+        }
+        mDrainScheduled.set(false);
+        // Samples recorded while draining didn't schedule a drain, and a slot claimed but not
+        // written yet stops the drain, so schedule another one rather than wait for it.
+        if (!mRing.isEmpty() && mDrainScheduled.compareAndSet(false, true)) {
+            mExecutor.execute(mDrainTask);
+        }
+    }
+
+    long getDropped() {
+        return mRing.getDropped();
+    }
+}
@@ -0,0 +1,85 @@
+package org.mozilla.vrbrowser.telemetry;
+
+import androidx.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue of samples with many producers and a single consumer. Producers claim a
+ * slot with a compare-and-set and never wait, samples offered while it's full are dropped and
+ * counted. Only one thread at a time may drain it.
+ */
+class SampleRing<T> {
+
+    private final AtomicReferenceArray<T> mSlots;
+    private final int mMask;
+    // Next slot to claim, written by the producers.
+    private final AtomicLong mTail = new AtomicLong();
+    // Next slot to drain, only written by the consumer.
+    private volatile long mHead;
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * @param aCapacity Rounded up to a power of two.
+     */
+    SampleRing(int aCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(aCapacity, 2) - 1) << 1;
+        mSlots = new AtomicReferenceArray<>(capacity);
+        mMask = capacity - 1;
+    }
+
+    int capacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @return false if the ring is full and the sample was dropped.
+     */
+    boolean offer(@NonNull T aSample) {
+        long tail;
+        do {
+            tail = mTail.get();
+            // The consumer clears a slot before moving the head past it.
+            if (tail - mHead > mMask) {
+                mDropped.incrementAndGet();
+                return false;
+            }
+        } while (!mTail.compareAndSet(tail, tail + 1));
+        mSlots.lazySet((int) (tail & mMask), aSample);
+        return true;
+    }
+
+    /**
+     * Moves up to aMax samples to the list, in the order they were offered. Stops early at a slot
+     * that has been claimed but not written yet, it will be drained next time.
+     *
+     * @return The number of samples moved.
+     */
+    int drainTo(@NonNull List<T> aBatch, int aMax) {
+        long head = mHead;
+        int count = 0;
+        while (count < aMax) {
+            int index = (int) (head & mMask);
+            T sample = mSlots.get(index);
+            if (sample == null) {
+                break;
+            }
+            mSlots.lazySet(index, null);
+            head++;
+            mHead = head;
+            aBatch.add(sample);
+            count++;
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return mHead == mTail.get();
+    }
+
+    long getDropped() {
+        return mDropped.get();
+    }
+}
@@ -22,6 +22,9 @@ import org.mozilla.vrbrowser.ui.widgets.WidgetPlacement;
 import org.mozilla.vrbrowser.utils.AnimationHelper;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 
@@ -95,6 +98,51 @@ public class DownloadsAdapter extends RecyclerView.Adapter<RecyclerView.ViewHold
         }
     }
 
+    /**
+     * Adds or updates a single download, keeping the list sorted by the comparator.
+     */
+    public void updateItem(@NonNull Download downloadItem, @NonNull Comparator<Download> comparator) {
+        if (mDownloadsList == null) {
+            mDownloadsList = new ArrayList<>();
+        }
+        int position = findItemPosition(downloadItem.getId());
+        if (position >= 0) {
+            mDownloadsList.remove(position);
+        }
+        int index = Collections.binarySearch(mDownloadsList, downloadItem, comparator);
+        int newPosition = index >= 0 ? index : -index - 1;
+        mDownloadsList.add(newPosition, downloadItem);
+
+        if (position < 0) {
+            notifyItemInserted(newPosition);
+
+        } else {
+            if (position != newPosition) {
+                notifyItemMoved(position, newPosition);
+            }
+            notifyItemChanged(newPosition);
+        }
+    }
+
+    public void removeItem(long id) {
+        int position = findItemPosition(id);
+        if (position >= 0) {
+            mDownloadsList.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+
+    private int findItemPosition(long id) {
+        if (mDownloadsList != null) {
+            for (int position = 0; position < mDownloadsList.size(); position++) {
+                if (mDownloadsList.get(position).getId() == id) {
+                    return position;
+                }
+            }
+        }
+        return -1;
+    }
+
     public void removeItem(Download downloadItem) {
         int position = mDownloadsList.indexOf(downloadItem);
         if (position >= 0) {
@@ -23,7 +23,6 @@ import org.mozilla.vrbrowser.utils.AnimationHelper;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
 import java.util.List;
-import java.util.Objects;
 
 import mozilla.components.concept.storage.VisitInfo;
 import mozilla.components.concept.storage.VisitType;
@@ -64,48 +63,32 @@ public class HistoryAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder
         }
     }
 
-    public void setHistoryList(final List<? extends VisitInfo> historyList) {
+    /**
+     * Replaces the history list. The diff from the current list must be computed beforehand,
+     * usually off the UI thread. If it's null the whole list is considered changed.
+     */
+    public void setHistoryList(@NonNull final List<? extends VisitInfo> historyList, @Nullable DiffUtil.DiffResult diff) {
         if (mHistoryList == null) {
             mHistoryList = historyList;
             notifyItemRangeInserted(0, historyList.size());
 
-        } else {
-            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
-                @Override
-                public int getOldListSize() {
-                    return mHistoryList.size();
-                }
-
-                @Override
-                public int getNewListSize() {
-                    return historyList.size();
-                }
-
-                @Override
-                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                    return mHistoryList.get(oldItemPosition).getVisitTime() == historyList.get(newItemPosition).getVisitTime();
-                }
-
-                @Override
-                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                    VisitInfo newHistoryItem = historyList.get(newItemPosition);
-                    VisitInfo oldHistoryItem = mHistoryList.get(oldItemPosition);
-                    return newHistoryItem.getVisitTime() == oldHistoryItem.getVisitTime()
-                            && Objects.equals(newHistoryItem.getTitle(), oldHistoryItem.getTitle())
-                            && Objects.equals(newHistoryItem.getUrl(), oldHistoryItem.getUrl());
-                }
-            });
+        } else if (diff == null) {
+            mHistoryList = historyList;
+            notifyDataSetChanged();
 
+        } else {
             mHistoryList = historyList;
-            result.dispatchUpdatesTo(this);
+            diff.dispatchUpdatesTo(this);
         }
     }
 
-    public void removeItem(VisitInfo historyItem) {
-        int position = mHistoryList.indexOf(historyItem);
-        if (position >= 0) {
-            mHistoryList.remove(position);
-            notifyItemRemoved(position);
+    /**
+     * Sets a history list that only has new items appended at the given range.
+     */
+    public void appendHistoryList(@NonNull final List<? extends VisitInfo> historyList, int start, int count) {
+        mHistoryList = historyList;
+        if (count > 0) {
+            notifyItemRangeInserted(start, count);
         }
     }
 
@@ -0,0 +1,101 @@
+package org.mozilla.vrbrowser.ui.keyboards;
+
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+import org.mozilla.vrbrowser.ui.keyboards.KeyboardInterface.CandidatesResult;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Looks up keyboard candidates off the UI thread for the keyboards that support it.
+ * Only the latest request is delivered: lookups still queued when a newer one arrives are skipped.
+ * Results are kept in an LRU cache shared by all the keyboards, so retyping or deleting back to a
+ * previous composing text doesn't hit the keyboard databases again.
+ */
+public class CandidatesEngine {
+    private static final String LOGTAG = SystemUtils.createLogtag(CandidatesEngine.class);
+
+    private static final int CACHE_SIZE = 256;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Executor mUIThreadExecutor;
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // Only accessed from the UI thread.
+    private final LruCache<String, CandidatesResult> mCache = new LruCache<>(CACHE_SIZE);
+
+    public CandidatesEngine(@NonNull Executor aUIThreadExecutor) {
+        mUIThreadExecutor = aUIThreadExecutor;
+    }
+
+    private static String cacheKey(@NonNull KeyboardInterface aKeyboard, @NonNull String aText) {
+        return aKeyboard.getClass().getSimpleName() + '\u0000' + aText;
+    }
+
+    /**
+     * Warms up the keyboard lookup tables in the background.
+     */
+    public void preload(@NonNull KeyboardInterface aKeyboard) {
+        if (aKeyboard.supportsAsyncCandidates()) {
+            mExecutor.execute(aKeyboard::preloadCandidates);
+        }
+    }
+
+    /**
+     * Looks up the candidates of the composing text. The callback is invoked on the UI thread,
+     * right away when the result is cached, and never if a newer lookup is requested first.
+     */
+    @UiThread
+    public void getCandidates(@NonNull KeyboardInterface aKeyboard, @NonNull String aText, @NonNull Consumer<CandidatesResult> aCallback) {
+        final int generation = mGeneration.incrementAndGet();
+        final String key = cacheKey(aKeyboard, aText);
+        CandidatesResult cached = mCache.get(key);
+        if (cached != null) {
+            aCallback.accept(cached);
+            return;
+        }
+
+        mExecutor.execute(() -> {
+            if (mGeneration.get() != generation) {
+                // Superseded before it started
+                return;
+            }
+            CandidatesResult result = null;
+            try {
+                result = aKeyboard.getCandidates(aText);
+            } catch (Exception e) {
+                Log.e(LOGTAG, "Error getting candidates: " + e.getLocalizedMessage());
+            }
+            final CandidatesResult candidates = result;
+            mUIThreadExecutor.execute(() -> {
+                if (candidates != null) {
+                    mCache.put(key, candidates);
+                }
+                if (mGeneration.get() == generation) {
+                    aCallback.accept(candidates);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops any pending lookup so its result is not delivered.
+     */
+    public void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    public void release() {
+        cancel();
+        mExecutor.shutdown();
+        mCache.evictAll();
+    }
+}
@@ -18,6 +18,7 @@ import org.mozilla.vrbrowser.utils.SystemUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.regex.Pattern;
@@ -35,6 +36,10 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
     private DBHelper mDB;
     private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
     private HashMap<String, KeyMap> mExtraKeymaps = new HashMap<>();
+    // Keys already looked up in the database, including the ones without results.
+    private HashSet<String> mLoadedKeys = new HashSet<>();
+    // Keys up to this length are loaded in bulk when the keyboard is preloaded.
+    private static final int PRELOAD_KEY_LENGTH = 2;
 
     public ChinesePinyinKeyboard(Context aContext) {
         super(aContext);
@@ -257,6 +262,45 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         return true;
     }
 
+    @Override
+    public boolean supportsAsyncCandidates() {
+        return true;
+    }
+
+    @Override
+    public void preloadCandidates() {
+        if (mDB == null || !mLoadedKeys.isEmpty()) {
+            return;
+        }
+
+        SQLiteDatabase reader = mDB.getReadableDatabase();
+        sqliteArgs[0] = "" + PRELOAD_KEY_LENGTH;
+        try (Cursor cursor = reader.rawQuery("SELECT keymap, display, candidates FROM keymaps where length(keymap) <= ? ORDER BY _id ASC", sqliteArgs)) {
+            while (cursor.moveToNext()) {
+                String key = getString(cursor, 0);
+                addToKeyMap(key, key, getString(cursor, 1), getString(cursor, 2));
+            }
+        }
+        try (Cursor cursor = reader.rawQuery("SELECT inputcode, displaycode, display FROM autocorrect where length(inputcode) <= ? ORDER BY _id ASC", sqliteArgs)) {
+            while (cursor.moveToNext()) {
+                addToKeyMap(getString(cursor, 0), getString(cursor, 1), getString(cursor, 2));
+            }
+        }
+
+        for (char first = 'a'; first <= 'z'; first++) {
+            markPreloaded("" + first);
+            for (char second = 'a'; second <= 'z'; second++) {
+                markPreloaded("" + first + second);
+            }
+        }
+        Log.d(LOGTAG, "Preloaded " + mKeymaps.size() + " pinyin keymaps");
+    }
+
+    private void markPreloaded(String aKey) {
+        mLoadedKeys.add(aKey);
+        addExtraKeyMapTo(aKey);
+    }
+
     @Override
     public boolean usesComposingText() {
         return true;
@@ -341,11 +385,15 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
     }
 
     private void loadKeymapIfNotLoaded(String aKey) {
-        if (mKeymaps.containsKey(aKey)) {
+        if (!mLoadedKeys.add(aKey)) {
             return;
         }
         loadKeymapTable(aKey);
         loadAutoCorrectTable(aKey);
+        addExtraKeyMapTo(aKey);
+    }
+
+    private void addExtraKeyMapTo(String aKey) {
         KeyMap extra = mExtraKeymaps.get(aKey);
         if (extra != null) {
             KeyMap map = mKeymaps.get(aKey);
@@ -19,6 +19,7 @@ import org.mozilla.vrbrowser.utils.SystemUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -39,6 +40,8 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
     private DBPhraseHelper mPhraseDB;
     private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
     private HashMap<String, Words> mKeyCodes = new HashMap<>();
+    // Codes already looked up in the database, including the ones without results.
+    private HashSet<String> mLoadedKeys = new HashSet<>();
     private final String[] sqliteArgs = new String[2];
     private final String[] roughSqliteArgs = new String[3];
 
@@ -187,6 +190,27 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
         return true;
     }
 
+    @Override
+    public boolean supportsAsyncCandidates() {
+        return true;
+    }
+
+    @Override
+    public void preloadCandidates() {
+        if (mWordDB == null || !mLoadedKeys.isEmpty()) {
+            return;
+        }
+
+        // Load the single symbol codes, tones are never looked up on their own.
+        final char firstKeyCodeInTones = '4';
+        for (Words keyCode : mKeyCodes.values()) {
+            if (keyCode.code.charAt(0) != firstKeyCodeInTones) {
+                loadKeymapIfNotLoaded(keyCode.code);
+            }
+        }
+        Log.d(LOGTAG, "Preloaded " + mKeymaps.size() + " zhuyin keymaps");
+    }
+
     @Override
     public boolean usesComposingText() {
         return true;
@@ -329,7 +353,7 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
     }
 
     private void loadKeymapIfNotLoaded(String aKey) {
-        if (mKeymaps.containsKey(aKey)) {
+        if (!mLoadedKeys.add(aKey)) {
             return;
         }
         loadKeymapTable(aKey);
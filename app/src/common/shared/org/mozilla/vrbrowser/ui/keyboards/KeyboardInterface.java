@@ -37,6 +37,9 @@ public interface KeyboardInterface {
     default @Nullable CustomKeyboard getAlphabeticCapKeyboard() { return null; }
     default @Nullable CustomKeyboard getSymbolsKeyboard() { return null; }
     default @Nullable CandidatesResult getCandidates(String aComposingText) { return null; }
+    // Keyboards whose candidates only depend on the composing text can be queried off the UI thread.
+    default boolean supportsAsyncCandidates() { return false; }
+    default void preloadCandidates() {}
     default @Nullable String overrideAddText(String aTextBeforeCursor, String aNextText) { return null; }
     default @Nullable String overrideBackspace(String aTextBeforeCursor) { return null; }
     default @Nullable CandidatesResult getEmojiCandidates(String aComposingText) { return null; }
@@ -4,6 +4,7 @@ import android.app.Application;
 import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MediatorLiveData;
@@ -51,6 +52,21 @@ public class SitePermissionViewModel extends AndroidViewModel {
         return result;
     }
 
+    @Nullable
+    public SitePermission findSite(@NonNull String url, @SitePermission.Category int category) {
+        return mRepository.findSitePermission(url, category);
+    }
+
+    @Nullable
+    public SitePermission findSiteByHost(@NonNull String host, @SitePermission.Category int category) {
+        return mRepository.findSitePermissionByHost(host, category);
+    }
+
+    @NonNull
+    public List<SitePermission> getSites(@SitePermission.Category int category) {
+        return mRepository.getSitePermissions(category);
+    }
+
     public void insertSite(@NonNull SitePermission site) {
         mRepository.insertSitePermission(site);
     }
@@ -66,4 +82,8 @@ public class SitePermissionViewModel extends AndroidViewModel {
     public void deleteAll(@SitePermission.Category int category) {
         mRepository.deleteAllSitePermission(category);
     }
+
+    public void replaceAll(@SitePermission.Category int category, @NonNull List<SitePermission> sites) {
+        mRepository.replaceAllSitePermission(category, sites);
+    }
 }
@@ -1,11 +1,10 @@
 package org.mozilla.vrbrowser.ui.viewmodel;
 
 import android.app.Application;
-import android.content.res.Resources;
+import android.os.SystemClock;
 import android.text.Spannable;
 import android.text.SpannableString;
-import android.text.style.ForegroundColorSpan;
-import android.util.TypedValue;
+import android.view.Choreographer;
 import android.webkit.URLUtil;
 
 import androidx.annotation.NonNull;
@@ -15,7 +14,6 @@ import androidx.databinding.ObservableInt;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
-import androidx.lifecycle.Observer;
 
 import org.mozilla.geckoview.ContentBlocking;
 import org.mozilla.vrbrowser.R;
@@ -24,13 +22,84 @@ import org.mozilla.vrbrowser.ui.widgets.Windows;
 import org.mozilla.vrbrowser.utils.ServoUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
+import java.util.Objects;
 
+/**
+ * Window state exposed to the window, navigation, title and top bars.
+ *
+ * The setters only update the state and flag the fields that changed. The changed fields, and the
+ * derived fields whose inputs changed, are pushed to their LiveData once per frame, so a burst of
+ * updates during a navigation results in a single rebind of each field that actually changed.
+ */
 public class WindowViewModel extends AndroidViewModel {
 
-    private int mURLProtocolColor;
-    private int mURLWebsiteColor;
+    // Boolean fields, their values are the bits of mFlags.
+    private static final int WINDOW_VISIBLE = 0;
+    private static final int ONLY_WINDOW = 1;
+    private static final int FULLSCREEN = 2;
+    private static final int TOP_BAR_VISIBLE = 3;
+    private static final int RESIZE_MODE = 4;
+    private static final int PRIVATE_SESSION = 5;
+    private static final int SHOW_CLEAR_BUTTON = 6;
+    private static final int INSECURE = 7;
+    private static final int ACTIVE_WINDOW = 8;
+    private static final int TITLE_BAR_VISIBLE = 9;
+    private static final int LIBRARY_VISIBLE = 10;
+    private static final int LOADING = 11;
+    private static final int MICROPHONE_ENABLED = 12;
+    private static final int BOOKMARKED = 13;
+    private static final int FOCUSED = 14;
+    private static final int URL_EMPTY = 15;
+    private static final int POPUP_AVAILABLE = 16;
+    private static final int POPUP_BLOCKED = 17;
+    private static final int CAN_GO_FORWARD = 18;
+    private static final int CAN_GO_BACK = 19;
+    private static final int IN_VR_VIDEO = 20;
+    private static final int AUTO_ENTERED_VR_VIDEO = 21;
+    private static final int SERVO_AVAILABLE = 22;
+    private static final int INSECURE_VISIBLE = 23;
+    private static final int MEDIA_AVAILABLE = 24;
+    private static final int MEDIA_PLAYING = 25;
+    private static final int WEBXR_USED = 26;
+    private static final int WEBXR_BLOCKED = 27;
+    private static final int TRACKING_ENABLED = 28;
+    private static final int DRM_USED = 29;
+    private static final int URL_BAR_BUTTONS_VISIBLE = 30;
+    private static final int URL_BAR_ICONS_VISIBLE = 31;
+    private static final int BOOLEAN_COUNT = 32;
+    // Other fields.
+    private static final int URL = 32;
+    private static final int HINT = 33;
+    private static final int PLACEMENT = 34;
+    private static final int TITLE_BAR_URL = 35;
+    private static final int NAVIGATION_BAR_URL = 36;
+    private static final int FIELD_COUNT = 37;
+
+    private static final long ALL_FIELDS = (1L << FIELD_COUNT) - 1;
+
+    private static final long BAR_INPUTS = bit(ONLY_WINDOW) | bit(FULLSCREEN) | bit(RESIZE_MODE) |
+            bit(PRIVATE_SESSION) | bit(WINDOW_VISIBLE) | bit(ACTIVE_WINDOW);
+    private static final long URL_INPUTS = bit(URL) | bit(LIBRARY_VISIBLE) | bit(PRIVATE_SESSION);
+    private static final long URL_BAR_BUTTONS_INPUTS = bit(URL) | bit(TRACKING_ENABLED) | bit(DRM_USED) |
+            bit(POPUP_AVAILABLE) | bit(WEBXR_USED) | bit(LIBRARY_VISIBLE) | bit(FOCUSED);
+
+    private static long bit(int aField) {
+        return 1L << aField;
+    }
+
+    // URL checks shared by the derived fields, computed once per URL.
+    private static class UrlInfo {
+        String url;
+        boolean isPrivateAboutPage;
+        boolean isDataUri;
+        boolean isHomeUri;
+        boolean isWebExtensionUrl;
+        boolean isBlankUri;
+        boolean isFileUri;
+        boolean isContentFeed;
+        boolean isHttpUrl;
+        boolean isServoAllowListed;
+    }
 
     private MutableLiveData<Spannable> url;
     private MutableLiveData<String> hint;
@@ -72,293 +141,402 @@ public class WindowViewModel extends AndroidViewModel {
     private MutableLiveData<ObservableInt> mWidth;
     private MutableLiveData<ObservableInt> mHeight;
 
+    private final MutableLiveData<ObservableBoolean>[] mBooleanData;
+    private final Choreographer mChoreographer;
+
+    // Guarded by this.
+    private long mFlags;
+    private long mDirty;
+    private boolean mForceDispatch;
+    private boolean mDispatchScheduled;
+    private Spannable mUrl;
+    private String mHint;
+    private Windows.WindowPlacement mPlacement;
+    private String mTitleBarUrl;
+    private String mNavigationBarUrl;
+    private UrlInfo mUrlInfo;
+    private long mTotalUpdates;
+    private long mTotalUnchanged;
+    // Only written from the UI thread, volatile so the getters can be called from any thread.
+    private volatile long mTotalDispatches;
+    private volatile long mTotalFieldsDispatched;
+    private volatile long mLastDispatchNanos;
+    private volatile long mMaxDispatchNanos;
+
+    @SuppressWarnings("unchecked")
     public WindowViewModel(Application application) {
         super(application);
 
-        TypedValue typedValue = new TypedValue();
-        Resources.Theme theme = application.getTheme();
-        theme.resolveAttribute(R.attr.urlProtocolColor, typedValue, true);
-        mURLProtocolColor = typedValue.data;
-        theme.resolveAttribute(R.attr.urlWebsiteColor, typedValue, true);
-        mURLWebsiteColor = typedValue.data;
-
-        url = new MutableLiveData<>(new SpannableString(""));
-        hint = new MutableLiveData<>("");
-        isWindowVisible = new MutableLiveData<>(new ObservableBoolean(true));
-        placement = new MutableLiveData<>(Windows.WindowPlacement.FRONT);
-        isOnlyWindow = new MutableLiveData<>(new ObservableBoolean(false));
-        isFullscreen = new MutableLiveData<>(new ObservableBoolean(false));
-        isResizeMode = new MutableLiveData<>(new ObservableBoolean(false));
-        isPrivateSession = new MutableLiveData<>(new ObservableBoolean(false));
-
-        isTopBarVisible = new MediatorLiveData<>();
-        isTopBarVisible.addSource(isOnlyWindow, mIsTopBarVisibleObserver);
-        isTopBarVisible.addSource(isFullscreen, mIsTopBarVisibleObserver);
-        isTopBarVisible.addSource(isResizeMode, mIsTopBarVisibleObserver);
-        isTopBarVisible.addSource(isPrivateSession, mIsTopBarVisibleObserver);
-        isTopBarVisible.addSource(isWindowVisible, mIsTopBarVisibleObserver);
-        isTopBarVisible.setValue(new ObservableBoolean(true));
-
-        showClearButton = new MediatorLiveData<>();
-        showClearButton.addSource(isOnlyWindow, mShowClearButtonObserver);
-        showClearButton.addSource(isPrivateSession, mShowClearButtonObserver);
-        showClearButton.addSource(isResizeMode, mShowClearButtonObserver);
-        showClearButton.addSource(isFullscreen, mShowClearButtonObserver);
-        showClearButton.addSource(isWindowVisible, mShowClearButtonObserver);
-        showClearButton.setValue(new ObservableBoolean(false));
-
-        isInsecure = new MutableLiveData<>(new ObservableBoolean(false));
-        isActiveWindow = new MutableLiveData<>(new ObservableBoolean(false));
-
-        isTitleBarVisible = new MediatorLiveData<>();
-        isTitleBarVisible.addSource(isFullscreen, mIsTitleBarVisibleObserver);
-        isTitleBarVisible.addSource(isResizeMode, mIsTitleBarVisibleObserver);
-        isTitleBarVisible.addSource(isActiveWindow, mIsTitleBarVisibleObserver);
-        isTitleBarVisible.addSource(isWindowVisible, mIsTitleBarVisibleObserver);
-        isTitleBarVisible.addSource(isOnlyWindow, mIsTitleBarVisibleObserver);
-        isTitleBarVisible.setValue(new ObservableBoolean(true));
-
-        isLibraryVisible = new MutableLiveData<>(new ObservableBoolean(false));
-
-        isLoading = new MutableLiveData<>(new ObservableBoolean(false));
-        isMicrophoneEnabled = new MutableLiveData<>(new ObservableBoolean(true));
-        isBookmarked = new MutableLiveData<>(new ObservableBoolean(false));
-        isFocused = new MutableLiveData<>(new ObservableBoolean(false));
-        isUrlEmpty = new MutableLiveData<>(new ObservableBoolean(true));
-        isPopUpAvailable = new MutableLiveData<>(new ObservableBoolean(false));
-        isPopUpBlocked = new MutableLiveData<>(new ObservableBoolean(false));
-        canGoForward = new MutableLiveData<>(new ObservableBoolean(false));
-        canGoBack = new MutableLiveData<>(new ObservableBoolean(false));
-        isInVRVideo = new MutableLiveData<>(new ObservableBoolean(false));
-        autoEnteredVRVideo = new MutableLiveData<>(new ObservableBoolean(false));
-
-        isServoAvailable = new MediatorLiveData<>();
-        isServoAvailable.addSource(url, mIsServoAvailableObserver);
-        isServoAvailable.setValue(new ObservableBoolean(false));
-
-        titleBarUrl = new MediatorLiveData<>();
-        titleBarUrl.addSource(url, mTitleBarUrlObserver);
-        titleBarUrl.setValue("");
+        mChoreographer = Choreographer.getInstance();
 
-        isInsecureVisible = new MediatorLiveData<>();
-        isInsecureVisible.addSource(isInsecure, mIsInsecureVisibleObserver);
-        isInsecureVisible.addSource(isPrivateSession, mIsInsecureVisibleObserver);
-        isInsecureVisible.addSource(isLibraryVisible, mIsInsecureVisibleObserver);
-        isInsecureVisible.setValue(new ObservableBoolean(false));
-
-        isMediaAvailable = new MutableLiveData<>(new ObservableBoolean(false));
-        isMediaPlaying = new MutableLiveData<>(new ObservableBoolean(false));
+        mFlags = bit(WINDOW_VISIBLE) | bit(TOP_BAR_VISIBLE) | bit(TITLE_BAR_VISIBLE) |
+                bit(MICROPHONE_ENABLED) | bit(URL_EMPTY) | bit(TRACKING_ENABLED);
+        mUrl = new SpannableString("");
+        mHint = "";
+        mPlacement = Windows.WindowPlacement.FRONT;
+        mTitleBarUrl = "";
+        mNavigationBarUrl = "";
 
+        url = new MutableLiveData<>(mUrl);
+        hint = new MutableLiveData<>(mHint);
+        placement = new MutableLiveData<>(mPlacement);
+        titleBarUrl = new MediatorLiveData<>();
+        titleBarUrl.setValue(mTitleBarUrl);
         navigationBarUrl = new MediatorLiveData<>();
-        navigationBarUrl.addSource(url, mNavigationBarUrlObserver);
-        navigationBarUrl.setValue("");
+        navigationBarUrl.setValue(mNavigationBarUrl);
+
+        mBooleanData = new MutableLiveData[BOOLEAN_COUNT];
+        isWindowVisible = createBoolean(WINDOW_VISIBLE);
+        isOnlyWindow = createBoolean(ONLY_WINDOW);
+        isFullscreen = createBoolean(FULLSCREEN);
+        isTopBarVisible = createDerivedBoolean(TOP_BAR_VISIBLE);
+        isResizeMode = createBoolean(RESIZE_MODE);
+        isPrivateSession = createBoolean(PRIVATE_SESSION);
+        showClearButton = createDerivedBoolean(SHOW_CLEAR_BUTTON);
+        isInsecure = createBoolean(INSECURE);
+        isActiveWindow = createBoolean(ACTIVE_WINDOW);
+        isTitleBarVisible = createDerivedBoolean(TITLE_BAR_VISIBLE);
+        isLibraryVisible = createBoolean(LIBRARY_VISIBLE);
+        isLoading = createBoolean(LOADING);
+        isMicrophoneEnabled = createBoolean(MICROPHONE_ENABLED);
+        isBookmarked = createBoolean(BOOKMARKED);
+        isFocused = createBoolean(FOCUSED);
+        isUrlEmpty = createBoolean(URL_EMPTY);
+        isPopUpAvailable = createBoolean(POPUP_AVAILABLE);
+        isPopUpBlocked = createBoolean(POPUP_BLOCKED);
+        canGoForward = createBoolean(CAN_GO_FORWARD);
+        canGoBack = createBoolean(CAN_GO_BACK);
+        isInVRVideo = createBoolean(IN_VR_VIDEO);
+        autoEnteredVRVideo = createBoolean(AUTO_ENTERED_VR_VIDEO);
+        isServoAvailable = createDerivedBoolean(SERVO_AVAILABLE);
+        isInsecureVisible = createDerivedBoolean(INSECURE_VISIBLE);
+        isMediaAvailable = createBoolean(MEDIA_AVAILABLE);
+        isMediaPlaying = createBoolean(MEDIA_PLAYING);
+        isWebXRUsed = createBoolean(WEBXR_USED);
+        isWebXRBlocked = createBoolean(WEBXR_BLOCKED);
+        isTrackingEnabled = createBoolean(TRACKING_ENABLED);
+        isDrmUsed = createBoolean(DRM_USED);
+        isUrlBarButtonsVisible = createDerivedBoolean(URL_BAR_BUTTONS_VISIBLE);
+        isUrlBarIconsVisible = createDerivedBoolean(URL_BAR_ICONS_VISIBLE);
 
-        isWebXRUsed = new MutableLiveData<>(new ObservableBoolean(false));
-        isWebXRBlocked = new MutableLiveData<>(new ObservableBoolean(false));
+        mWidth = new MutableLiveData<>(new ObservableInt());
+        mHeight = new MutableLiveData<>(new ObservableInt());
 
-        isTrackingEnabled = new MutableLiveData<>(new ObservableBoolean(true));
-        isDrmUsed = new MutableLiveData<>(new ObservableBoolean(false));
+        // Compute the derived fields on the first frame.
+        mDirty = ALL_FIELDS;
+        scheduleDispatch();
+    }
 
-        isUrlBarButtonsVisible = new MediatorLiveData<>();
-        isUrlBarButtonsVisible.addSource(isTrackingEnabled, mIsUrlBarButtonsVisibleObserver);
-        isUrlBarButtonsVisible.addSource(isDrmUsed, mIsUrlBarButtonsVisibleObserver);
-        isUrlBarButtonsVisible.addSource(isPopUpAvailable, mIsUrlBarButtonsVisibleObserver);
-        isUrlBarButtonsVisible.addSource(isWebXRUsed, mIsUrlBarButtonsVisibleObserver);
-        isUrlBarButtonsVisible.addSource(isLibraryVisible, mIsUrlBarButtonsVisibleObserver);
-        isUrlBarButtonsVisible.addSource(isFocused, mIsUrlBarButtonsVisibleObserver);
-        isUrlBarButtonsVisible.setValue(new ObservableBoolean(false));
+    private MutableLiveData<ObservableBoolean> createBoolean(int aField) {
+        MutableLiveData<ObservableBoolean> data = new MutableLiveData<>(new ObservableBoolean(getFlag(aField)));
+        mBooleanData[aField] = data;
+        return data;
+    }
 
-        isUrlBarIconsVisible = new MediatorLiveData<>();
-        isUrlBarIconsVisible.addSource(isLoading, mIsUrlBarIconsVisibleObserver);
-        isUrlBarIconsVisible.addSource(isInsecureVisible, mIsUrlBarIconsVisibleObserver);
-        isUrlBarIconsVisible.setValue(new ObservableBoolean(false));
+    private MediatorLiveData<ObservableBoolean> createDerivedBoolean(int aField) {
+        MediatorLiveData<ObservableBoolean> data = new MediatorLiveData<>();
+        data.setValue(new ObservableBoolean(getFlag(aField)));
+        mBooleanData[aField] = data;
+        return data;
+    }
 
-        mWidth = new MutableLiveData<>(new ObservableInt());
-        mHeight = new MutableLiveData<>(new ObservableInt());
+    private synchronized boolean getFlag(int aField) {
+        return (mFlags & bit(aField)) != 0;
     }
 
-    private Observer<ObservableBoolean> mIsTopBarVisibleObserver = new Observer<ObservableBoolean>() {
-        @Override
-        public void onChanged(ObservableBoolean o) {
-            if (isFullscreen.getValue().get() || isResizeMode.getValue().get() || !isWindowVisible.getValue().get()) {
-                isTopBarVisible.postValue(new ObservableBoolean(false));
+    private void setFlag(int aField, boolean aValue) {
+        synchronized (this) {
+            mTotalUpdates++;
+            if (!putFlag(aField, aValue)) {
+                mTotalUnchanged++;
+                return;
+            }
+        }
+        scheduleDispatch();
+    }
 
-            } else {
-                if (isOnlyWindow.getValue().get()) {
-                    isTopBarVisible.postValue(new ObservableBoolean(isPrivateSession.getValue().get()));
+    // Must be called holding the lock. Returns true if the value changed.
+    private boolean putFlag(int aField, boolean aValue) {
+        if (((mFlags & bit(aField)) != 0) == aValue) {
+            return false;
+        }
+        mFlags ^= bit(aField);
+        mDirty |= bit(aField);
+        return true;
+    }
+
+    // Must be called holding the lock.
+    private void putString(int aField, @NonNull String aValue) {
+        switch (aField) {
+            case HINT:
+                if (!aValue.equals(mHint)) {
+                    mHint = aValue;
+                    mDirty |= bit(HINT);
+                }
+                break;
+            case TITLE_BAR_URL:
+                if (!aValue.equals(mTitleBarUrl)) {
+                    mTitleBarUrl = aValue;
+                    mDirty |= bit(TITLE_BAR_URL);
+                }
+                break;
+            case NAVIGATION_BAR_URL:
+                if (!aValue.equals(mNavigationBarUrl)) {
+                    mNavigationBarUrl = aValue;
+                    mDirty |= bit(NAVIGATION_BAR_URL);
+                }
+                break;
+        }
+    }
+
+    private void scheduleDispatch() {
+        synchronized (this) {
+            if (mDispatchScheduled) {
+                return;
+            }
+            mDispatchScheduled = true;
+        }
+        mChoreographer.postFrameCallback(mDispatchCallback);
+    }
+
+    private final Choreographer.FrameCallback mDispatchCallback = frameTimeNanos -> dispatch();
+
+    private void dispatch() {
+        long start = SystemClock.elapsedRealtimeNanos();
+        long dirty;
+        long flags;
+        Spannable urlValue;
+        String hintValue;
+        Windows.WindowPlacement placementValue;
+        String titleBarUrlValue;
+        String navigationBarUrlValue;
+        synchronized (this) {
+            mDispatchScheduled = false;
+            updateDerivedFields();
+            dirty = mForceDispatch ? ALL_FIELDS : mDirty;
+            mDirty = 0;
+            mForceDispatch = false;
+            flags = mFlags;
+            urlValue = mUrl;
+            hintValue = mHint;
+            placementValue = mPlacement;
+            titleBarUrlValue = mTitleBarUrl;
+            navigationBarUrlValue = mNavigationBarUrl;
+        }
+        if (dirty == 0) {
+            return;
+        }
 
-                } else {
-                    isTopBarVisible.postValue(new ObservableBoolean(true));
+        int dispatched = 0;
+        for (int field = 0; field < BOOLEAN_COUNT; field++) {
+            if ((dirty & bit(field)) != 0) {
+                MutableLiveData<ObservableBoolean> data = mBooleanData[field];
+                boolean value = (flags & bit(field)) != 0;
+                // Fields set synchronously already hold the value.
+                if (data.getValue() == null || data.getValue().get() != value || dirty == ALL_FIELDS) {
+                    data.setValue(new ObservableBoolean(value));
+                    dispatched++;
                 }
             }
         }
-    };
-
-    private Observer<ObservableBoolean> mShowClearButtonObserver = new Observer<ObservableBoolean>() {
-        @Override
-        public void onChanged(ObservableBoolean o) {
-            showClearButton.postValue(new ObservableBoolean(isWindowVisible.getValue().get() &&
-                    isPrivateSession.getValue().get() && isOnlyWindow.getValue().get() &&
-                    !isResizeMode.getValue().get() && !isFullscreen.getValue().get()));
+        if ((dirty & bit(URL)) != 0) {
+            url.setValue(urlValue);
+            dispatched++;
+        }
+        if ((dirty & bit(HINT)) != 0) {
+            hint.setValue(hintValue);
+            dispatched++;
+        }
+        if ((dirty & bit(PLACEMENT)) != 0) {
+            placement.setValue(placementValue);
+            dispatched++;
         }
-    };
+        if ((dirty & bit(TITLE_BAR_URL)) != 0) {
+            titleBarUrl.setValue(titleBarUrlValue);
+            dispatched++;
+        }
+        if ((dirty & bit(NAVIGATION_BAR_URL)) != 0) {
+            navigationBarUrl.setValue(navigationBarUrlValue);
+            dispatched++;
+        }
+
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+        mTotalDispatches++;
+        mTotalFieldsDispatched += dispatched;
+        mLastDispatchNanos = elapsed;
+        mMaxDispatchNanos = Math.max(mMaxDispatchNanos, elapsed);
+    }
+
+    // Must be called holding the lock. Recomputes the derived fields whose inputs are dirty.
+    private void updateDerivedFields() {
+        long dirty = mForceDispatch ? ALL_FIELDS : mDirty;
+        boolean fullscreen = getFlagLocked(FULLSCREEN);
+        boolean resizeMode = getFlagLocked(RESIZE_MODE);
+        boolean windowVisible = getFlagLocked(WINDOW_VISIBLE);
+        boolean onlyWindow = getFlagLocked(ONLY_WINDOW);
+        boolean privateSession = getFlagLocked(PRIVATE_SESSION);
+        boolean libraryVisible = getFlagLocked(LIBRARY_VISIBLE);
+
+        if ((dirty & BAR_INPUTS) != 0) {
+            if (fullscreen || resizeMode || !windowVisible) {
+                putFlag(TOP_BAR_VISIBLE, false);
+            } else {
+                putFlag(TOP_BAR_VISIBLE, !onlyWindow || privateSession);
+            }
 
-    private Observer<ObservableBoolean> mIsTitleBarVisibleObserver = new Observer<ObservableBoolean>() {
-        @Override
-        public void onChanged(ObservableBoolean o) {
-            if (isFullscreen.getValue().get() || isResizeMode.getValue().get() || isActiveWindow.getValue().get()) {
-                isTitleBarVisible.postValue(new ObservableBoolean(false));
+            putFlag(SHOW_CLEAR_BUTTON, windowVisible && privateSession && onlyWindow && !resizeMode && !fullscreen);
 
+            if (fullscreen || resizeMode || getFlagLocked(ACTIVE_WINDOW)) {
+                putFlag(TITLE_BAR_VISIBLE, false);
             } else {
-                isTitleBarVisible.postValue(new ObservableBoolean(isWindowVisible.getValue().get() && !isOnlyWindow.getValue().get()));
+                putFlag(TITLE_BAR_VISIBLE, windowVisible && !onlyWindow);
             }
         }
-    };
 
-    private Observer<Spannable> mIsServoAvailableObserver = new Observer<Spannable>() {
-        @Override
-        public void onChanged(Spannable url) {
+        UrlInfo info = getUrlInfo();
+        if ((dirty & bit(URL)) != 0) {
             boolean isPrefEnabled = SettingsStore.getInstance(getApplication()).isServoEnabled();
-            boolean isUrlAllowListed = ServoUtils.isUrlInServoAllowList(getApplication(), url.toString());
-            isServoAvailable.postValue(new ObservableBoolean(isPrefEnabled && isUrlAllowListed));
+            putFlag(SERVO_AVAILABLE, isPrefEnabled && info.isServoAllowListed);
         }
-    };
 
-    private Observer<Spannable> mTitleBarUrlObserver = new Observer<Spannable>() {
-        @Override
-        public void onChanged(Spannable aUrl) {
-            String url = aUrl.toString();
-            if (isLibraryVisible.getValue().get()) {
+        if ((dirty & URL_INPUTS) != 0) {
+            String url = info.url;
+            if (libraryVisible) {
                 url = getApplication().getString(R.string.url_library_title);
 
-            } else {
-                if (UrlUtils.isPrivateAboutPage(getApplication(), url) ||
-                        (UrlUtils.isDataUri(url) && isPrivateSession.getValue().get())) {
-                    url = getApplication().getString(R.string.private_browsing_title);
+            } else if (info.isPrivateAboutPage || (info.isDataUri && privateSession)) {
+                url = getApplication().getString(R.string.private_browsing_title);
 
-                } else if (UrlUtils.isHomeUri(getApplication(), aUrl.toString())) {
-                    url = getApplication().getString(R.string.url_home_title, getApplication().getString(R.string.app_name));
+            } else if (info.isHomeUri) {
+                url = getApplication().getString(R.string.url_home_title, getApplication().getString(R.string.app_name));
 
-                } else if (UrlUtils.isWebExtensionUrl(aUrl.toString())) {
-                    url = getApplication().getString(R.string.web_extensions_title);
+            } else if (info.isWebExtensionUrl) {
+                url = getApplication().getString(R.string.web_extensions_title);
 
-                } else if (UrlUtils.isBlankUri(getApplication(), aUrl.toString())) {
-                    url = "";
-                }
+            } else if (info.isBlankUri) {
+                url = "";
             }
+            putString(TITLE_BAR_URL, UrlUtils.titleBarUrl(url));
 
-            titleBarUrl.postValue(UrlUtils.titleBarUrl(url));
-        }
-    };
-
-    private Observer<ObservableBoolean> mIsInsecureVisibleObserver = new Observer<ObservableBoolean>() {
-        @Override
-        public void onChanged(ObservableBoolean o) {
-            String aUrl = url.getValue().toString();
-            if (isInsecure.getValue().get()) {
-                if (UrlUtils.isPrivateAboutPage(getApplication(), aUrl) ||
-                        (UrlUtils.isDataUri(aUrl) && isPrivateSession.getValue().get()) ||
-                        UrlUtils.isFileUri(aUrl) ||
-                        UrlUtils.isHomeUri(getApplication(), aUrl) ||
-                        isLibraryVisible.getValue().get() ||
-                        UrlUtils.isBlankUri(getApplication(), aUrl)) {
-                    isInsecureVisible.postValue(new ObservableBoolean(false));
-
-                } else {
-                    isInsecureVisible.postValue(new ObservableBoolean(true));
-                }
+            if (info.isPrivateAboutPage || (info.isDataUri && privateSession) || info.isHomeUri ||
+                    libraryVisible || info.isBlankUri) {
+                putString(NAVIGATION_BAR_URL, "");
 
             } else {
-                isInsecureVisible.postValue(new ObservableBoolean(false));
+                putString(NAVIGATION_BAR_URL, info.url);
             }
         }
-    };
-
-    private Observer<Spannable> mNavigationBarUrlObserver = new Observer<Spannable>() {
-        @Override
-        public void onChanged(Spannable aUrl) {
-            String url = aUrl.toString();
-            if (UrlUtils.isPrivateAboutPage(getApplication(), url) ||
-                    (UrlUtils.isDataUri(url) && isPrivateSession.getValue().get()) ||
-                    UrlUtils.isHomeUri(getApplication(), aUrl.toString()) ||
-                    isLibraryVisible.getValue().get() ||
-                    UrlUtils.isBlankUri(getApplication(), aUrl.toString())) {
-                navigationBarUrl.postValue("");
+
+        if ((dirty & (URL_INPUTS | bit(INSECURE))) != 0) {
+            if (getFlagLocked(INSECURE)) {
+                putFlag(INSECURE_VISIBLE, !(info.isPrivateAboutPage ||
+                        (info.isDataUri && privateSession) ||
+                        info.isFileUri ||
+                        info.isHomeUri ||
+                        libraryVisible ||
+                        info.isBlankUri));
 
             } else {
-                navigationBarUrl.postValue(url);
+                putFlag(INSECURE_VISIBLE, false);
             }
         }
-    };
-
-    private Observer<ObservableBoolean> mIsUrlBarButtonsVisibleObserver = new Observer<ObservableBoolean>() {
-        @Override
-        public void onChanged(ObservableBoolean o) {
-            String aUrl = url.getValue().toString();
-            isUrlBarButtonsVisible.postValue(new ObservableBoolean(
-                    !isFocused.getValue().get() &&
-                            !isLibraryVisible.getValue().get() &&
-                            !UrlUtils.isContentFeed(getApplication(), aUrl) &&
-                            !UrlUtils.isPrivateAboutPage(getApplication(), aUrl) &&
-                            (URLUtil.isHttpUrl(aUrl) || URLUtil.isHttpsUrl(aUrl)) &&
+
+        if ((dirty & URL_BAR_BUTTONS_INPUTS) != 0) {
+            putFlag(URL_BAR_BUTTONS_VISIBLE,
+                    !getFlagLocked(FOCUSED) &&
+                            !libraryVisible &&
+                            !info.isContentFeed &&
+                            !info.isPrivateAboutPage &&
+                            info.isHttpUrl &&
                             (
                                     (SettingsStore.getInstance(getApplication()).getTrackingProtectionLevel() != ContentBlocking.EtpLevel.NONE) ||
-                                    isPopUpAvailable.getValue().get() ||
-                                    isDrmUsed.getValue().get() ||
-                                    isWebXRUsed.getValue().get()
-                            )
-            ));
-            hint.postValue(getHintValue());
+                                    getFlagLocked(POPUP_AVAILABLE) ||
+                                    getFlagLocked(DRM_USED) ||
+                                    getFlagLocked(WEBXR_USED)
+                            ));
+            putString(HINT, getHintValue());
         }
-    };
-
-    private Observer<ObservableBoolean> mIsUrlBarIconsVisibleObserver = new Observer<ObservableBoolean>() {
-        @Override
-        public void onChanged(ObservableBoolean o) {
-            isUrlBarIconsVisible.postValue(new ObservableBoolean(
-                    !isLibraryVisible.getValue().get() &&
-                            (isLoading.getValue().get() ||
-                                    isInsecureVisible.getValue().get())
-            ));
+
+        // Depends on INSECURE_VISIBLE, so mDirty is read again.
+        dirty = mForceDispatch ? ALL_FIELDS : mDirty;
+        if ((dirty & (bit(LOADING) | bit(INSECURE_VISIBLE) | bit(LIBRARY_VISIBLE))) != 0) {
+            putFlag(URL_BAR_ICONS_VISIBLE, !libraryVisible &&
+                    (getFlagLocked(LOADING) || getFlagLocked(INSECURE_VISIBLE)));
         }
-    };
+    }
+
+    private boolean getFlagLocked(int aField) {
+        return (mFlags & bit(aField)) != 0;
+    }
 
+    // Must be called holding the lock.
+    @NonNull
+    private UrlInfo getUrlInfo() {
+        String url = mUrl.toString();
+        if (mUrlInfo != null && mUrlInfo.url.equals(url)) {
+            return mUrlInfo;
+        }
+        UrlInfo info = new UrlInfo();
+        info.url = url;
+        info.isPrivateAboutPage = UrlUtils.isPrivateAboutPage(getApplication(), url);
+        info.isDataUri = UrlUtils.isDataUri(url);
+        info.isHomeUri = UrlUtils.isHomeUri(getApplication(), url);
+        info.isWebExtensionUrl = UrlUtils.isWebExtensionUrl(url);
+        info.isBlankUri = UrlUtils.isBlankUri(getApplication(), url);
+        info.isFileUri = UrlUtils.isFileUri(url);
+        info.isContentFeed = UrlUtils.isContentFeed(getApplication(), url);
+        info.isHttpUrl = URLUtil.isHttpUrl(url) || URLUtil.isHttpsUrl(url);
+        info.isServoAllowListed = ServoUtils.isUrlInServoAllowList(getApplication(), url);
+        mUrlInfo = info;
+        return info;
+    }
+
+    /**
+     * Pushes every field to its LiveData again, recomputing the derived fields. Used when the
+     * resources they are computed from might have changed.
+     */
     public void refresh() {
-        url.postValue(url.getValue());
-        hint.postValue(getHintValue());
-        isWindowVisible.postValue(isWindowVisible.getValue());
-        placement.postValue(placement.getValue());
-        isOnlyWindow.postValue(isOnlyWindow.getValue());
-        isResizeMode.postValue(isResizeMode.getValue());
-        isPrivateSession.postValue(isPrivateSession.getValue());
-        isInsecure.postValue(isInsecure.getValue());
-        isLoading.postValue(isLoading.getValue());
-        isMicrophoneEnabled.postValue(isMicrophoneEnabled.getValue());
-        isBookmarked.postValue(isBookmarked.getValue());
-        isFocused.postValue(isFocused.getValue());
-        isUrlEmpty.postValue(isUrlEmpty.getValue());
-        isPopUpAvailable.postValue(isPopUpAvailable.getValue());
-        isPopUpBlocked.postValue(isPopUpBlocked.getValue());
-        canGoForward.postValue(canGoForward.getValue());
-        canGoBack.postValue(canGoBack.getValue());
-        isInVRVideo.postValue(isInVRVideo.getValue());
-        autoEnteredVRVideo.postValue(autoEnteredVRVideo.getValue());
-        titleBarUrl.setValue(titleBarUrl.getValue());
-        isMediaAvailable.postValue(isMediaAvailable.getValue());
-        isMediaPlaying.postValue(isMediaPlaying.getValue());
-        isWebXRUsed.postValue(isWebXRUsed.getValue());
-        isWebXRBlocked.postValue(isWebXRBlocked.getValue());
-        isTrackingEnabled.postValue(isTrackingEnabled.getValue());
-        isDrmUsed.postValue(isDrmUsed.getValue());
+        synchronized (this) {
+            mUrlInfo = null;
+            mForceDispatch = true;
+        }
+        scheduleDispatch();
         mWidth.postValue(mWidth.getValue());
         mHeight.postValue(mHeight.getValue());
     }
 
+    /**
+     * @return Number of frames in which at least one field was pushed to its LiveData.
+     */
+    public long getTotalDispatches() {
+        return mTotalDispatches;
+    }
+
+    public long getTotalFieldsDispatched() {
+        return mTotalFieldsDispatched;
+    }
+
+    public long getLastDispatchNanos() {
+        return mLastDispatchNanos;
+    }
+
+    public long getMaxDispatchNanos() {
+        return mMaxDispatchNanos;
+    }
+
+    public synchronized long getTotalUpdates() {
+        return mTotalUpdates;
+    }
+
+    /**
+     * @return Number of updates dropped because they didn't change the value.
+     */
+    public synchronized long getTotalUnchanged() {
+        return mTotalUnchanged;
+    }
+
     @NonNull
     public MutableLiveData<Spannable> getUrl() {
-        if (url == null) {
-            url = new MutableLiveData<>(new SpannableString(""));
-        }
         return url;
     }
 
@@ -370,54 +548,20 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setUrl(@Nullable Spannable url) {
-        if (url == null) {
+        if (url == null || url.toString().startsWith("jar:")) {
             return;
         }
 
-        String aURL = url.toString();
-
-        int index = -1;
-        try {
-            aURL = URLDecoder.decode(aURL, "UTF-8");
-
-        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
-            e.printStackTrace();
-            aURL = "";
-        }
-        if (aURL.startsWith("jar:")) {
-            return;
-
-        } else if (aURL.startsWith("resource:") || UrlUtils.isHomeUri(getApplication().getBaseContext(), aURL)) {
-            aURL = "";
-
-        } else if (aURL.startsWith("data:") && isPrivateSession.getValue().get()) {
-            aURL = "";
-
-        } else if (aURL.startsWith(getApplication().getBaseContext().getString(R.string.about_blank))) {
-            aURL = "";
-
-        } else {
-            index = aURL.indexOf("://");
-        }
-
-        // Update the URL bar only if the URL is different than the current one and
-        // the URL bar is not focused to avoid override user input
-        if (!getUrl().getValue().toString().equalsIgnoreCase(aURL) && !getIsFocused().getValue().get()) {
-            this.url.postValue(new SpannableString(aURL));
-            if (index > 0) {
-                SpannableString spannable = new SpannableString(aURL);
-                ForegroundColorSpan color1 = new ForegroundColorSpan(mURLProtocolColor);
-                ForegroundColorSpan color2 = new ForegroundColorSpan(mURLWebsiteColor);
-                spannable.setSpan(color1, 0, index + 3, 0);
-                spannable.setSpan(color2, index + 3, aURL.length(), 0);
-                this.url.postValue(url);
-
-            } else {
-                this.url.postValue(url);
+        synchronized (this) {
+            mTotalUpdates++;
+            if (mUrl.toString().equals(url.toString())) {
+                mTotalUnchanged++;
+                return;
             }
+            mUrl = url;
+            mDirty |= bit(URL);
         }
-
-        this.url.postValue(url);
+        scheduleDispatch();
     }
 
     @NonNull
@@ -426,7 +570,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     private String getHintValue() {
-        if (isLibraryVisible.getValue().get()) {
+        if (getFlagLocked(LIBRARY_VISIBLE)) {
             return getApplication().getString(R.string.url_library_title);
 
         } else {
@@ -440,7 +584,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsWindowVisible(boolean isWindowVisible) {
-        this.isWindowVisible.postValue(new ObservableBoolean(isWindowVisible));
+        setFlag(WINDOW_VISIBLE, isWindowVisible);
     }
 
     @NonNull
@@ -449,7 +593,16 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setPlacement(Windows.WindowPlacement placement) {
-        this.placement.postValue(placement);
+        synchronized (this) {
+            mTotalUpdates++;
+            if (Objects.equals(mPlacement, placement)) {
+                mTotalUnchanged++;
+                return;
+            }
+            mPlacement = placement;
+            mDirty |= bit(PLACEMENT);
+        }
+        scheduleDispatch();
     }
 
     @NonNull
@@ -458,7 +611,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsOnlyWindow(boolean isOnlyWindow) {
-        this.isOnlyWindow.postValue(new ObservableBoolean(isOnlyWindow));
+        setFlag(ONLY_WINDOW, isOnlyWindow);
     }
 
     @NonNull
@@ -467,7 +620,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsFullscreen(boolean isFullscreen) {
-        this.isFullscreen.postValue(new ObservableBoolean(isFullscreen));
+        setFlag(FULLSCREEN, isFullscreen);
     }
 
     @NonNull
@@ -476,7 +629,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsTopBarVisible(boolean isTopBarVisible) {
-        this.isTopBarVisible.postValue(new ObservableBoolean(isTopBarVisible));
+        setFlag(TOP_BAR_VISIBLE, isTopBarVisible);
     }
 
     @NonNull
@@ -485,7 +638,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsResizeMode(boolean isResizeMode) {
-        this.isResizeMode.postValue(new ObservableBoolean(isResizeMode));
+        setFlag(RESIZE_MODE, isResizeMode);
     }
 
     @NonNull
@@ -494,7 +647,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsPrivateSession(boolean isPrivateSession) {
-        this.isPrivateSession.postValue(new ObservableBoolean(isPrivateSession));
+        setFlag(PRIVATE_SESSION, isPrivateSession);
     }
 
     @NonNull
@@ -508,7 +661,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsInsecure(boolean isInsecure) {
-        this.isInsecure.postValue(new ObservableBoolean(isInsecure));
+        setFlag(INSECURE, isInsecure);
     }
 
     @NonNull
@@ -517,7 +670,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsTitleBarVisible(boolean isTitleBarVisible) {
-        this.isTitleBarVisible.postValue(new ObservableBoolean(isTitleBarVisible));
+        setFlag(TITLE_BAR_VISIBLE, isTitleBarVisible);
     }
 
     @NonNull
@@ -526,12 +679,13 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsActiveWindow(boolean isActiveWindow) {
+        // Applied right away, callers rely on it when switching the focused window.
         this.isActiveWindow.setValue(new ObservableBoolean(isActiveWindow));
+        setFlag(ACTIVE_WINDOW, isActiveWindow);
     }
 
     public void setIsLibraryVisible(boolean isLibraryVisible) {
-        this.isLibraryVisible.postValue(new ObservableBoolean(isLibraryVisible));
-        this.url.postValue(this.getUrl().getValue());
+        setFlag(LIBRARY_VISIBLE, isLibraryVisible);
     }
 
     public void setIsPanelVisible(boolean isVisible) {
@@ -549,7 +703,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsLoading(boolean isLoading) {
-        this.isLoading.postValue(new ObservableBoolean(isLoading));
+        setFlag(LOADING, isLoading);
     }
 
     @NonNull
@@ -558,7 +712,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsMicrophoneEnabled(boolean isMicrophoneEnabled) {
-        this.isMicrophoneEnabled.postValue(new ObservableBoolean(isMicrophoneEnabled));
+        setFlag(MICROPHONE_ENABLED, isMicrophoneEnabled);
     }
 
     @NonNull
@@ -567,7 +721,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsBookmarked(boolean isBookmarked) {
-        this.isBookmarked.postValue(new ObservableBoolean(isBookmarked));
+        setFlag(BOOKMARKED, isBookmarked);
     }
 
     @NonNull
@@ -576,7 +730,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsFocused(boolean isFocused) {
-        this.isFocused.postValue(new ObservableBoolean(isFocused));
+        setFlag(FOCUSED, isFocused);
     }
 
     @NonNull
@@ -585,7 +739,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsUrlEmpty(boolean isUrlEmpty) {
-        this.isUrlEmpty.postValue(new ObservableBoolean(isUrlEmpty));
+        setFlag(URL_EMPTY, isUrlEmpty);
     }
 
     @NonNull
@@ -594,7 +748,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsWebXRUsed(boolean used) {
-        this.isWebXRUsed.postValue(new ObservableBoolean(used));
+        setFlag(WEBXR_USED, used);
     }
 
     @NonNull
@@ -603,7 +757,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsWebXRBlocked(boolean blocked) {
-        this.isWebXRBlocked.postValue(new ObservableBoolean(blocked));
+        setFlag(WEBXR_BLOCKED, blocked);
     }
 
     @NonNull
@@ -612,7 +766,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setCanGoForward(boolean canGoForward) {
-        this.canGoForward.postValue(new ObservableBoolean(canGoForward));
+        setFlag(CAN_GO_FORWARD, canGoForward);
     }
 
     @NonNull
@@ -621,7 +775,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setCanGoBack(boolean canGoBack) {
-        this.canGoBack.postValue(new ObservableBoolean(canGoBack));
+        setFlag(CAN_GO_BACK, canGoBack);
     }
 
     @NonNull
@@ -630,7 +784,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsInVRVideo(boolean isInVRVideo) {
-        this.isInVRVideo.postValue(new ObservableBoolean(isInVRVideo));
+        setFlag(IN_VR_VIDEO, isInVRVideo);
     }
 
     @NonNull
@@ -639,7 +793,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setAutoEnteredVRVideo(boolean autoEnteredVRVideo) {
-        this.autoEnteredVRVideo.postValue(new ObservableBoolean(autoEnteredVRVideo));
+        setFlag(AUTO_ENTERED_VR_VIDEO, autoEnteredVRVideo);
     }
 
     @NonNull
@@ -663,7 +817,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsMediaAvailable(boolean isMediaAvailable) {
-        this.isMediaAvailable.postValue(new ObservableBoolean(isMediaAvailable));
+        setFlag(MEDIA_AVAILABLE, isMediaAvailable);
     }
 
     @NonNull
@@ -672,7 +826,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsMediaPlaying(boolean isMediaPlaying) {
-        this.isMediaPlaying.postValue(new ObservableBoolean(isMediaPlaying));
+        setFlag(MEDIA_PLAYING, isMediaPlaying);
     }
 
     @NonNull
@@ -686,7 +840,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsPopUpAvailable(boolean isPopUpAvailable) {
-        this.isPopUpAvailable.postValue(new ObservableBoolean(isPopUpAvailable));
+        setFlag(POPUP_AVAILABLE, isPopUpAvailable);
     }
 
     @NonNull
@@ -695,7 +849,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsPopUpBlocked(boolean isPopUpBlocked) {
-        this.isPopUpBlocked.postValue(new ObservableBoolean(isPopUpBlocked));
+        setFlag(POPUP_BLOCKED, isPopUpBlocked);
     }
 
     @NonNull
@@ -704,7 +858,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsTrackingEnabled(boolean isTrackingEnabled) {
-        this.isTrackingEnabled.postValue(new ObservableBoolean(isTrackingEnabled));
+        setFlag(TRACKING_ENABLED, isTrackingEnabled);
     }
 
     @NonNull
@@ -713,7 +867,7 @@ public class WindowViewModel extends AndroidViewModel {
     }
 
     public void setIsDrmUsed(boolean isEnabled) {
-        this.isDrmUsed.postValue(new ObservableBoolean(isEnabled));
+        setFlag(DRM_USED, isEnabled);
     }
 
     @NonNull
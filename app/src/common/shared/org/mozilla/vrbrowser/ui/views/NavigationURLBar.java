@@ -12,7 +12,6 @@ import android.content.Context;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.GestureDetector;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -31,7 +30,6 @@ import androidx.lifecycle.ViewModelProvider;
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserActivity;
-import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.audio.AudioEngine;
 import org.mozilla.vrbrowser.browser.BookmarksStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
@@ -50,7 +48,6 @@ import org.mozilla.vrbrowser.utils.ViewUtils;
 
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.concurrent.Executor;
 
 import kotlin.Unit;
 import mozilla.components.browser.domains.autocomplete.DomainAutocompleteResult;
@@ -68,7 +65,6 @@ public class NavigationURLBar extends FrameLayout {
     private NavigationURLBarDelegate mDelegate;
     private ShippedDomainsProvider mAutocompleteProvider;
     private AudioEngine mAudio;
-    private Executor mUIThreadExecutor;
     private Session mSession;
     private SelectionActionWidget mSelectionMenu;
     private boolean mWasFocusedWhenTouchBegan = false;
@@ -115,8 +111,6 @@ public class NavigationURLBar extends FrameLayout {
 
         mAudio = AudioEngine.fromContext(aContext);
 
-        mUIThreadExecutor = ((VRBrowserApplication)getContext().getApplicationContext()).getExecutors().mainThread();
-
         mSession = SessionStore.get().getActiveSession();
 
         mLoadingAnimation = AnimationUtils.loadAnimation(getContext(), R.anim.loading);
@@ -289,21 +283,15 @@ public class NavigationURLBar extends FrameLayout {
             return;
         }
         BookmarksStore bookmarkStore = SessionStore.get().getBookmarkStore();
-        bookmarkStore.isBookmarked(url).thenAcceptAsync(bookmarked -> {
-            if (!bookmarked) {
-                bookmarkStore.addBookmark(url, mSession.getCurrentTitle());
-                mViewModel.setIsBookmarked(true);
+        if (!bookmarkStore.isBookmarked(url)) {
+            bookmarkStore.addBookmark(url, mSession.getCurrentTitle());
+            mViewModel.setIsBookmarked(true);
 
-            } else {
-                // Delete
-                bookmarkStore.deleteBookmarkByURL(url);
-                mViewModel.setIsBookmarked(false);
-            }
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error checking bookmark: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            return null;
-        });
+        } else {
+            // Delete
+            bookmarkStore.deleteBookmarkByURL(url);
+            mViewModel.setIsBookmarked(false);
+        }
 
     }
 
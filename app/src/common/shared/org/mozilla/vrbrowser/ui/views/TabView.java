@@ -53,6 +53,7 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
     protected CompletableFuture<Bitmap> mBitmapFuture;
     protected boolean mUsingPlaceholder;
     private boolean mSendTabEnabled;
+    private int mThumbnailHeight;
     private static final int ICON_ANIMATION_DURATION = 100;
 
     public interface Delegate {
@@ -117,6 +118,7 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
 
         mMinIconPadding = WidgetPlacement.pixelDimension(getContext(), R.dimen.tabs_icon_padding_min);
         mMaxIconPadding = WidgetPlacement.pixelDimension(getContext(), R.dimen.tabs_icon_padding_max);
+        mThumbnailHeight = WidgetPlacement.pixelDimension(getContext(), R.dimen.tab_view_height);
 
         this.setOnClickListener(mCardClickListener);
     }
@@ -135,35 +137,37 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
     };
 
     public void attachToSession(@Nullable Session aSession, @NonNull BitmapCache aBitmapCache) {
-        if (mSession != null) {
-            mSession.removeContentListener(this);
-            mSession.removeBitmapChangedListener(this);
-        }
-        if (mBitmapFuture != null) {
-            mBitmapFuture.cancel(false);
-            mBitmapFuture = null;
-        }
         setAddTabMode(false);
-        mSession = aSession;
-        mSession.addContentListener(this);
-        mSession.addBitmapChangedListener(this);
         mShowAddTab = false;
-        mBitmapFuture = aBitmapCache.getBitmap(mSession.getId());
-        mPreview.setImageResource(R.drawable.ic_icon_tabs_placeholder);
-        mUsingPlaceholder = true;
-        mBitmapFuture.thenAccept(bitmap -> {
-            mBitmapFuture = null;
-            if (bitmap != null) {
-                mPreview.setImageBitmap(bitmap);
-                mUsingPlaceholder = false;
-                updateState();
-            }
+        if (mSession != aSession) {
+            detachFromSession();
+            mSession = aSession;
+            mSession.addContentListener(this);
+            mSession.addBitmapChangedListener(this);
+            // Snapshots are decoded at the size they are displayed at, onBitmapChanged keeps them up to date.
+            CompletableFuture<Bitmap> future = aBitmapCache.getBitmap(mSession.getId(), 0, mThumbnailHeight);
+            mBitmapFuture = future;
+            mPreview.setImageResource(R.drawable.ic_icon_tabs_placeholder);
+            mUsingPlaceholder = true;
+            future.thenAccept(bitmap -> {
+                if (mBitmapFuture != future) {
+                    return;
+                }
+                mBitmapFuture = null;
+                if (bitmap != null) {
+                    mPreview.setImageBitmap(bitmap);
+                    mUsingPlaceholder = false;
+                    updateState();
+                }
 
-        }).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting the bitmap: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            return null;
-        });
+            }).exceptionally(throwable -> {
+                if (!future.isCancelled()) {
+                    Log.d(LOGTAG, "Error getting the bitmap: " + throwable.getLocalizedMessage());
+                    throwable.printStackTrace();
+                }
+                return null;
+            });
+        }
 
         mURL.setText(UrlUtils.stripProtocol(aSession.getCurrentUri()));
         if (!mShowAddTab) {
@@ -176,6 +180,21 @@ public class TabView extends RelativeLayout implements GeckoSession.ContentDeleg
         updateState();
     }
 
+    /**
+     * Stops listening to the attached session and cancels its pending snapshot request.
+     */
+    public void detachFromSession() {
+        if (mSession != null) {
+            mSession.removeContentListener(this);
+            mSession.removeBitmapChangedListener(this);
+            mSession = null;
+        }
+        if (mBitmapFuture != null) {
+            mBitmapFuture.cancel(false);
+            mBitmapFuture = null;
+        }
+    }
+
     public Session getSession() {
         return mSession;
     }
@@ -21,6 +21,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserActivity;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.SessionStore;
 import org.mozilla.vrbrowser.databinding.DownloadsBinding;
@@ -41,8 +42,11 @@ import org.mozilla.vrbrowser.ui.widgets.menus.library.LibraryContextMenuWidget;
 import org.mozilla.vrbrowser.ui.widgets.menus.library.SortingContextMenuWidget;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 public class DownloadsView extends LibraryView implements DownloadsManager.DownloadsListener {
@@ -54,6 +58,9 @@ public class DownloadsView extends LibraryView implements DownloadsManager.Downl
     private DownloadsManager mDownloadsManager;
     private Comparator<Download> mSortingComparator;
     private DownloadsViewModel mViewModel;
+    private Executor mUIThreadExecutor;
+    // Downloads shown in the list by id, kept up to date with the download updates.
+    private LinkedHashMap<Long, Download> mDownloads = new LinkedHashMap<>();
 
     public DownloadsView(Context aContext, @NonNull LibraryPanel delegate) {
         super(aContext, delegate);
@@ -65,6 +72,7 @@ public class DownloadsView extends LibraryView implements DownloadsManager.Downl
         super.initialize();
 
         mDownloadsManager = ((VRBrowserActivity) getContext()).getServicesProvider().getDownloadsManager();
+        mUIThreadExecutor = ((VRBrowserApplication) getContext().getApplicationContext()).getExecutors().mainThread();
         mViewModel = new ViewModelProvider(
                 (VRBrowserActivity) getContext(),
                 ViewModelProvider.AndroidViewModelFactory.getInstance(((VRBrowserActivity) getContext()).getApplication()))
@@ -102,7 +110,7 @@ public class DownloadsView extends LibraryView implements DownloadsManager.Downl
         mViewModel.setIsLoading(true);
         mViewModel.setIsNarrow(false);
 
-        onDownloadsUpdate(mDownloadsManager.getDownloads());
+        loadDownloads();
 
         setOnTouchListener((v, event) -> {
             v.requestFocusFromTouch();
@@ -118,7 +126,7 @@ public class DownloadsView extends LibraryView implements DownloadsManager.Downl
     @Override
     public void onShow() {
         mDownloadsManager.addListener(this);
-        onDownloadsUpdate(mDownloadsManager.getDownloads());
+        loadDownloads();
         updateLayout();
         if (mRootPanel != null) {
             mRootPanel.onViewUpdated(getContext().getString(R.string.downloads_title));
@@ -311,7 +319,7 @@ public class DownloadsView extends LibraryView implements DownloadsManager.Downl
         SortingContextMenuWidget menu = new SortingContextMenuWidget(getContext());
         menu.setItemDelegate(item -> {
             mSortingComparator = getSorting(item);
-            onDownloadsUpdate(mDownloadsManager.getDownloads());
+            setDownloads(new ArrayList<>(mDownloads.values()));
             mBinding.downloadsList.scrollToPosition(0);
         });
         menu.getPlacement().parentHandle = window.getHandle();
@@ -387,22 +395,41 @@ public class DownloadsView extends LibraryView implements DownloadsManager.Downl
         }
     };
 
-    @Override
-    public void onDownloadsUpdate(@NonNull List<Download> downloads) {
-        if (downloads.size() == 0) {
-            mViewModel.setIsEmpty(true);
-            mViewModel.setIsLoading(false);
+    private void loadDownloads() {
+        // Queried on the downloads thread, later changes arrive as single download updates.
+        mDownloadsManager.getDownloadsAsync().thenAcceptAsync(this::setDownloads, mUIThreadExecutor);
+    }
 
-        } else {
-            mViewModel.setIsEmpty(false);
-            mViewModel.setIsLoading(false);
-            List<Download> sorted = downloads.stream().sorted(mSortingComparator).collect(Collectors.toList());
-            mDownloadsAdapter.setDownloadsList(sorted);
-        }
+    private void setDownloads(@NonNull List<Download> downloads) {
+        mDownloads.clear();
+        downloads.forEach(download -> mDownloads.put(download.getId(), download));
 
+        List<Download> sorted = downloads.stream().sorted(mSortingComparator).collect(Collectors.toList());
+        mDownloadsAdapter.setDownloadsList(sorted);
+        updateEmptyState();
+    }
+
+    private void updateEmptyState() {
+        mViewModel.setIsEmpty(mDownloads.isEmpty());
+        mViewModel.setIsLoading(false);
         mBinding.executePendingBindings();
     }
 
+    @Override
+    public void onDownloadUpdated(@NonNull Download download) {
+        mDownloads.put(download.getId(), download);
+        mDownloadsAdapter.updateItem(download, mSortingComparator);
+        updateEmptyState();
+    }
+
+    @Override
+    public void onDownloadRemoved(long downloadId) {
+        if (mDownloads.remove(downloadId) != null) {
+            mDownloadsAdapter.removeItem(downloadId);
+            updateEmptyState();
+        }
+    }
+
     @Override
     public void onDownloadError(@NonNull String error, @NonNull String filename) {
         Log.e(LOGTAG, error);
@@ -0,0 +1,396 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.ui.views.library;
+
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.recyclerview.widget.DiffUtil;
+
+import org.mozilla.vrbrowser.browser.HistoryStore;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import mozilla.components.concept.storage.VisitInfo;
+import mozilla.components.concept.storage.VisitType;
+
+/**
+ * Loads the history list one page of visits at a time, newest first. Every URL is only listed once,
+ * at its latest visit, and a section header is inserted before the first item of every day range.
+ *
+ * Pages are merged and diffed on a background executor. When the history changes only the first
+ * page is fetched again and the new visits on it are put in front of the ones already loaded.
+ * If the loaded visits changed in any other way the list starts again from the first page, the
+ * rest are loaded when the list is scrolled to them.
+ */
+class HistoryPager {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(HistoryPager.class);
+
+    static final int PAGE_SIZE = 100;
+
+    interface Listener {
+        /**
+         * Called when a page has been appended to the list.
+         */
+        void onPageLoaded(@NonNull List<VisitInfo> aItems, int aInsertedStart, int aInsertedCount);
+
+        /**
+         * Called when the loaded pages have been reloaded. The diff is null the first time the list is loaded.
+         */
+        void onHistoryReloaded(@NonNull List<VisitInfo> aItems, @Nullable DiffUtil.DiffResult aDiff);
+
+        void onHistoryError(@NonNull Throwable aThrowable);
+    }
+
+    /**
+     * Immutable state of the loaded pages. Each load builds a new one from the previous one, so the
+     * adapter can keep using its item list while the next one is built.
+     */
+    private static class Snapshot {
+        final List<VisitInfo> items;
+        final Set<String> urls;
+        // Every visit loaded so far, its size is the offset of the next page.
+        final List<VisitInfo> visits;
+        final long[] limits;
+        final int section;
+        final boolean hasMore;
+
+        Snapshot(List<VisitInfo> aItems, Set<String> aUrls, List<VisitInfo> aVisits, long[] aLimits, int aSection, boolean aHasMore) {
+            items = aItems;
+            urls = aUrls;
+            visits = aVisits;
+            limits = aLimits;
+            section = aSection;
+            hasMore = aHasMore;
+        }
+    }
+
+    private final HistoryStore mHistoryStore;
+    private final String[] mSectionTitles;
+    private final Executor mBackgroundExecutor;
+    private final Executor mUIThreadExecutor;
+    private final Listener mListener;
+    // Only accessed from the UI thread
+    private Snapshot mSnapshot;
+    private boolean mLoading;
+    private boolean mReloadPending;
+    private int mGeneration;
+
+    /**
+     * @param aSectionTitles Titles of the today, yesterday, last week and older sections.
+     */
+    HistoryPager(@NonNull HistoryStore aHistoryStore, @NonNull String[] aSectionTitles,
+                 @NonNull Executor aBackgroundExecutor, @NonNull Executor aUIThreadExecutor, @NonNull Listener aListener) {
+        mHistoryStore = aHistoryStore;
+        mSectionTitles = aSectionTitles;
+        mBackgroundExecutor = aBackgroundExecutor;
+        mUIThreadExecutor = aUIThreadExecutor;
+        mListener = aListener;
+    }
+
+    /**
+     * Appends the next page of visits, unless it's already loading or there are no more visits.
+     */
+    @UiThread
+    void loadNextPage() {
+        if (mSnapshot == null) {
+            reload();
+            return;
+        }
+        if (mLoading || !mSnapshot.hasMore) {
+            return;
+        }
+
+        final Snapshot base = mSnapshot;
+        final int generation = mGeneration;
+        mLoading = true;
+        mHistoryStore.getVisitsPaginated(base.visits.size(), PAGE_SIZE)
+                .thenApplyAsync(visits -> append(base, visits, isFullPage(visits)), mBackgroundExecutor)
+                .whenCompleteAsync((snapshot, throwable) -> {
+                    if (generation != mGeneration) {
+                        // A reload was started in the meantime, it already includes this page.
+                        return;
+                    }
+                    mLoading = false;
+                    if (throwable != null) {
+                        onError(throwable);
+                        return;
+                    }
+                    mSnapshot = snapshot;
+                    mListener.onPageLoaded(snapshot.items, base.items.size(), snapshot.items.size() - base.items.size());
+                    runPendingReload();
+                }, mUIThreadExecutor);
+    }
+
+    /**
+     * Loads the first page again, dropping the rest of the pages loaded so far.
+     * The day sections are computed again too, so a list left open across midnight gets updated.
+     */
+    @UiThread
+    void reload() {
+        // Supersedes any load in progress.
+        final Snapshot previous = mSnapshot;
+        final int generation = startReload();
+        mHistoryStore.getVisitsPaginated(0, PAGE_SIZE)
+                .thenApplyAsync(visits -> rebuild(previous, visits != null ? visits : Collections.emptyList(),
+                        isFullPage(visits)), mBackgroundExecutor)
+                .whenCompleteAsync((result, throwable) -> onReloaded(generation, result, throwable), mUIThreadExecutor);
+    }
+
+    /**
+     * Fetches the first page and puts the visits that are new on it in front of the loaded ones,
+     * so the pages loaded so far aren't fetched again. Falls back to {@link #reload()} if the
+     * first page doesn't continue with the loaded visits.
+     */
+    @UiThread
+    private void refresh() {
+        final Snapshot previous = mSnapshot;
+        if (previous == null) {
+            reload();
+            return;
+        }
+        final int generation = startReload();
+        mHistoryStore.getVisitsPaginated(0, PAGE_SIZE)
+                .thenApplyAsync(visits -> {
+                    List<VisitInfo> firstPage = visits != null ? visits : Collections.emptyList();
+                    List<VisitInfo> merged = mergeFirstPage(previous, firstPage);
+                    if (merged == null) {
+                        return rebuild(previous, firstPage, isFullPage(visits));
+                    }
+                    return rebuild(previous, merged, previous.hasMore || isFullPage(visits));
+                }, mBackgroundExecutor)
+                .whenCompleteAsync((result, throwable) -> onReloaded(generation, result, throwable), mUIThreadExecutor);
+    }
+
+    /**
+     * Updates the history once the load in progress completes, so bursts of history updates
+     * result in a single refresh.
+     */
+    @UiThread
+    void invalidate() {
+        if (mLoading) {
+            mReloadPending = true;
+        } else {
+            refresh();
+        }
+    }
+
+    /**
+     * Removes the visits of a URL from the loaded pages without fetching them again, for deletes
+     * made from the list.
+     */
+    @UiThread
+    void removeUrl(@NonNull String aUrl) {
+        final Snapshot previous = mSnapshot;
+        if (previous == null || !previous.urls.contains(aUrl)) {
+            return;
+        }
+        // The load in progress is superseded, refresh once this one completes instead.
+        final boolean wasLoading = mLoading;
+        final int generation = startReload();
+        mReloadPending = wasLoading;
+        CompletableFuture.supplyAsync(() -> {
+            List<VisitInfo> visits = new ArrayList<>(previous.visits.size());
+            for (VisitInfo visit : previous.visits) {
+                if (!aUrl.equals(visit.getUrl())) {
+                    visits.add(visit);
+                }
+            }
+            return rebuild(previous, visits, previous.hasMore);
+        }, mBackgroundExecutor).whenCompleteAsync((result, throwable) -> onReloaded(generation, result, throwable), mUIThreadExecutor);
+    }
+
+    /**
+     * Drops any load in progress.
+     */
+    @UiThread
+    void cancel() {
+        mGeneration++;
+        mLoading = false;
+        mReloadPending = false;
+    }
+
+    private int startReload() {
+        mLoading = true;
+        mReloadPending = false;
+        return ++mGeneration;
+    }
+
+    private void onReloaded(int aGeneration, Pair<Snapshot, DiffUtil.DiffResult> aResult, @Nullable Throwable aThrowable) {
+        if (aGeneration != mGeneration) {
+            return;
+        }
+        mLoading = false;
+        if (aThrowable != null) {
+            onError(aThrowable);
+            return;
+        }
+        mSnapshot = aResult.first;
+        mListener.onHistoryReloaded(mSnapshot.items, aResult.second);
+        runPendingReload();
+    }
+
+    private void runPendingReload() {
+        if (mReloadPending) {
+            mReloadPending = false;
+            refresh();
+        }
+    }
+
+    private void onError(@NonNull Throwable aThrowable) {
+        Log.d(LOGTAG, "Error getting history: " + aThrowable.getLocalizedMessage());
+        aThrowable.printStackTrace();
+        mListener.onHistoryError(aThrowable);
+    }
+
+    private static boolean isFullPage(@Nullable List<VisitInfo> aVisits) {
+        return aVisits != null && aVisits.size() >= PAGE_SIZE;
+    }
+
+    private static boolean isSameVisit(@NonNull VisitInfo aVisit, @NonNull VisitInfo aOther) {
+        return aVisit.getVisitTime() == aOther.getVisitTime() && Objects.equals(aVisit.getUrl(), aOther.getUrl());
+    }
+
+    /**
+     * @return The first page followed by the loaded visits it doesn't include, or null if the
+     * first page isn't new visits followed by the first loaded ones.
+     */
+    @Nullable
+    private static List<VisitInfo> mergeFirstPage(@NonNull Snapshot aPrevious, @NonNull List<VisitInfo> aFirstPage) {
+        List<VisitInfo> loaded = aPrevious.visits;
+        int added = aFirstPage.size();
+        if (!loaded.isEmpty()) {
+            added = -1;
+            for (int i = 0; i < aFirstPage.size(); i++) {
+                if (isSameVisit(aFirstPage.get(i), loaded.get(0))) {
+                    added = i;
+                    break;
+                }
+            }
+            if (added < 0) {
+                return null;
+            }
+        }
+        int overlap = aFirstPage.size() - added;
+        if (overlap > loaded.size() || (!isFullPage(aFirstPage) && overlap != loaded.size())) {
+            // Visits were added after the loaded ones or some of the loaded ones were deleted.
+            return null;
+        }
+        for (int i = 1; i < overlap; i++) {
+            if (!isSameVisit(aFirstPage.get(added + i), loaded.get(i))) {
+                return null;
+            }
+        }
+        List<VisitInfo> merged = new ArrayList<>(added + loaded.size());
+        // The fetched visits come first, so title changes on the first page are picked up.
+        merged.addAll(aFirstPage);
+        merged.addAll(loaded.subList(overlap, loaded.size()));
+        return merged;
+    }
+
+    @NonNull
+    private Pair<Snapshot, DiffUtil.DiffResult> rebuild(@Nullable Snapshot aPrevious, @NonNull List<VisitInfo> aVisits, boolean aHasMore) {
+        Snapshot snapshot = append(new Snapshot(Collections.emptyList(), Collections.emptySet(), Collections.emptyList(),
+                sectionLimits(), -1, true), aVisits, aHasMore);
+        DiffUtil.DiffResult diff = aPrevious != null ? diff(aPrevious.items, snapshot.items) : null;
+        return new Pair<>(snapshot, diff);
+    }
+
+    @NonNull
+    private static long[] sectionLimits() {
+        Calendar date = new GregorianCalendar();
+        date.set(Calendar.HOUR_OF_DAY, 0);
+        date.set(Calendar.MINUTE, 0);
+        date.set(Calendar.SECOND, 0);
+        date.set(Calendar.MILLISECOND, 0);
+
+        long todayLimit = date.getTimeInMillis();
+        long yesterdayLimit = todayLimit - SystemUtils.ONE_DAY_MILLIS;
+        long oneWeekLimit = todayLimit - SystemUtils.ONE_WEEK_MILLIS;
+
+        // The header of each section uses its upper limit as visit time, which is also its item id.
+        return new long[] { Long.MAX_VALUE, todayLimit, yesterdayLimit, oneWeekLimit, 0 };
+    }
+
+    @NonNull
+    private Snapshot append(@NonNull Snapshot aBase, @Nullable List<VisitInfo> aVisits, boolean aHasMore) {
+        int fetched = aVisits != null ? aVisits.size() : 0;
+        List<VisitInfo> items = new ArrayList<>(aBase.items.size() + fetched);
+        items.addAll(aBase.items);
+        List<VisitInfo> visits = new ArrayList<>(aBase.visits.size() + fetched);
+        visits.addAll(aBase.visits);
+        Set<String> urls = new HashSet<>(aBase.urls);
+        int section = aBase.section;
+        long[] limits = aBase.limits;
+
+        if (aVisits != null) {
+            visits.addAll(aVisits);
+            for (VisitInfo visit : aVisits) {
+                // Visits come newest first, so the first one of each URL is its latest visit.
+                if (!urls.add(visit.getUrl())) {
+                    continue;
+                }
+                long time = visit.getVisitTime();
+                int visitSection = Math.max(section, 0);
+                while (visitSection < mSectionTitles.length - 1 && time <= limits[visitSection + 1]) {
+                    visitSection++;
+                }
+                if (visitSection != section) {
+                    section = visitSection;
+                    String title = mSectionTitles[section];
+                    items.add(new VisitInfo(title, title, limits[section], VisitType.NOT_A_VISIT));
+                }
+                items.add(visit);
+            }
+        }
+
+        return new Snapshot(Collections.unmodifiableList(items), urls, Collections.unmodifiableList(visits),
+                limits, section, aHasMore);
+    }
+
+    @NonNull
+    private static DiffUtil.DiffResult diff(@NonNull List<VisitInfo> aOld, @NonNull List<VisitInfo> aNew) {
+        return DiffUtil.calculateDiff(new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return aOld.size();
+            }
+
+            @Override
+            public int getNewListSize() {
+                return aNew.size();
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return aOld.get(oldItemPosition).getVisitTime() == aNew.get(newItemPosition).getVisitTime();
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                VisitInfo newHistoryItem = aNew.get(newItemPosition);
+                VisitInfo oldHistoryItem = aOld.get(oldItemPosition);
+                return newHistoryItem.getVisitTime() == oldHistoryItem.getVisitTime()
+                        && Objects.equals(newHistoryItem.getTitle(), oldHistoryItem.getTitle())
+                        && Objects.equals(newHistoryItem.getUrl(), oldHistoryItem.getUrl());
+            }
+        });
+    }
+}
@@ -15,6 +15,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.databinding.DataBindingUtil;
 import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -41,19 +42,10 @@ import org.mozilla.vrbrowser.ui.widgets.menus.library.HistoryContextMenuWidget;
 import org.mozilla.vrbrowser.ui.widgets.menus.library.LibraryContextMenuWidget;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 
-import java.util.Calendar;
-import java.util.Comparator;
-import java.util.GregorianCalendar;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 import mozilla.components.concept.storage.VisitInfo;
-import mozilla.components.concept.storage.VisitType;
 import mozilla.components.concept.sync.AccountObserver;
 import mozilla.components.concept.sync.AuthFlowError;
 import mozilla.components.concept.sync.AuthType;
@@ -70,12 +62,15 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
     private static final String LOGTAG = SystemUtils.createLogtag(HistoryView.class);
 
     private static final boolean ACCOUNTS_UI_ENABLED = false;
+    // Number of items left below the visible ones when the next page starts loading.
+    private static final int PREFETCH_DISTANCE = 20;
 
     private HistoryBinding mBinding;
     private Accounts mAccounts;
     private HistoryAdapter mHistoryAdapter;
     private ClearHistoryDialogWidget mClearHistoryDialog;
     private HistoryViewModel mViewModel;
+    private HistoryPager mHistoryPager;
 
     public HistoryView(Context aContext, @NonNull LibraryPanel delegate) {
         super(aContext, delegate);
@@ -119,6 +114,7 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
             return false;
         });
         mBinding.historyList.addOnScrollListener(mScrollListener);
+        mBinding.historyList.addOnScrollListener(mPagingScrollListener);
         mBinding.historyList.setHasFixedSize(true);
         mBinding.historyList.setItemViewCacheSize(20);
         mBinding.historyList.setDrawingCacheEnabled(true);
@@ -150,6 +146,10 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
         SessionStore.get().getHistoryStore().removeListener(this);
 
         mBinding.historyList.removeOnScrollListener(mScrollListener);
+        mBinding.historyList.removeOnScrollListener(mPagingScrollListener);
+        if (mHistoryPager != null) {
+            mHistoryPager.cancel();
+        }
 
         if (ACCOUNTS_UI_ENABLED) {
             mAccounts.removeAccountListener(mAccountListener);
@@ -183,6 +183,9 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
             mBinding.historyList.requestFocusFromTouch();
 
             SessionStore.get().getHistoryStore().deleteVisitsFor(item.getUrl());
+            if (mHistoryPager != null) {
+                mHistoryPager.removeUrl(item.getUrl());
+            }
         }
 
         @Override
@@ -268,23 +271,16 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
 
         @Override
         public void onShowContextMenu(@NonNull View view, @NonNull VisitInfo item, boolean isLastVisibleItem) {
-            SessionStore.get().getBookmarkStore().isBookmarked(item.getUrl()).thenAcceptAsync((isBookmarked -> {
-                showContextMenu(
-                        view,
-                        new HistoryContextMenuWidget(getContext(),
-                                new HistoryContextMenuWidget.LibraryContextMenuItem(
-                                        item.getUrl(),
-                                        item.getTitle()),
-                                mWidgetManager.canOpenNewWindow(),
-                                isBookmarked),
-                        mCallback,
-                        isLastVisibleItem);
-
-            }), mUIThreadExecutor).exceptionally(throwable -> {
-                Log.d(LOGTAG, "Error getting the bookmarked status: " + throwable.getLocalizedMessage());
-                throwable.printStackTrace();
-                return null;
-            });
+            showContextMenu(
+                    view,
+                    new HistoryContextMenuWidget(getContext(),
+                            new HistoryContextMenuWidget.LibraryContextMenuItem(
+                                    item.getUrl(),
+                                    item.getTitle()),
+                            mWidgetManager.canOpenNewWindow(),
+                            SessionStore.get().getBookmarkStore().isBookmarked(item.getUrl())),
+                    mCallback,
+                    isLastVisibleItem);
         }
 
         @Override
@@ -353,71 +349,68 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
         }
     };
 
-    @NonNull
-    public static <T> Predicate<T> distinctByUrl(Function<? super T, ?> keyExtractor) {
-        Set<Object> seen = ConcurrentHashMap.newKeySet();
-        return t -> seen.add(keyExtractor.apply(t));
-    }
-
     private void updateHistory() {
-        Calendar date = new GregorianCalendar();
-        date.set(Calendar.HOUR_OF_DAY, 0);
-        date.set(Calendar.MINUTE, 0);
-        date.set(Calendar.SECOND, 0);
-        date.set(Calendar.MILLISECOND, 0);
-
-        long todayLimit = date.getTimeInMillis();
-        long yesterdayLimit = todayLimit - SystemUtils.ONE_DAY_MILLIS;
-        long oneWeekLimit = todayLimit - SystemUtils.ONE_WEEK_MILLIS;
-
-        SessionStore.get().getHistoryStore().getDetailedHistory().thenAcceptAsync((items) -> {
-            List<VisitInfo> orderedItems = items.stream()
-                    .sorted(Comparator.comparing(VisitInfo::getVisitTime)
-                            .reversed())
-                    .filter(distinctByUrl(VisitInfo::getUrl))
-                    .collect(Collectors.toList());
-
-            addSection(orderedItems, getResources().getString(R.string.history_section_today), Long.MAX_VALUE, todayLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_yesterday), todayLimit, yesterdayLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_last_week), yesterdayLimit, oneWeekLimit);
-            addSection(orderedItems, getResources().getString(R.string.history_section_older), oneWeekLimit, 0);
-
-            showHistory(orderedItems);
-
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error getting history: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            return null;
-        });
+        if (mHistoryPager != null) {
+            mHistoryPager.cancel();
+        }
+        String[] sections = new String[] {
+                getResources().getString(R.string.history_section_today),
+                getResources().getString(R.string.history_section_yesterday),
+                getResources().getString(R.string.history_section_last_week),
+                getResources().getString(R.string.history_section_older)
+        };
+        mHistoryPager = new HistoryPager(
+                SessionStore.get().getHistoryStore(),
+                sections,
+                ((VRBrowserApplication) getContext().getApplicationContext()).getExecutors().diskIO(),
+                mUIThreadExecutor,
+                mPagerListener);
+        mHistoryPager.reload();
     }
 
-    private void addSection(final @NonNull List<VisitInfo> items, @NonNull String section, long rangeStart, long rangeEnd) {
-        for (int i = 0; i < items.size(); i++) {
-            if (items.get(i).getVisitTime() == rangeStart && items.get(i).getVisitType() == VisitType.NOT_A_VISIT)
-                break;
-
-            if (items.get(i).getVisitTime() < rangeStart && items.get(i).getVisitTime() > rangeEnd) {
-                items.add(i, new VisitInfo(
-                        section,
-                        section,
-                        rangeStart,
-                        VisitType.NOT_A_VISIT
-                ));
-                break;
+    private HistoryPager.Listener mPagerListener = new HistoryPager.Listener() {
+        @Override
+        public void onPageLoaded(@NonNull List<VisitInfo> aItems, int aInsertedStart, int aInsertedCount) {
+            mHistoryAdapter.appendHistoryList(aItems, aInsertedStart, aInsertedCount);
+        }
+
+        @Override
+        public void onHistoryReloaded(@NonNull List<VisitInfo> aItems, @Nullable DiffUtil.DiffResult aDiff) {
+            showHistory(aItems, aDiff);
+        }
+
+        @Override
+        public void onHistoryError(@NonNull Throwable aThrowable) {
+            mViewModel.setIsLoading(false);
+            mBinding.executePendingBindings();
+        }
+    };
+
+    private RecyclerView.OnScrollListener mPagingScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            // Also called with no delta when the visible range changes after a layout, so a first
+            // page that doesn't fill the list still loads the next one.
+            if (mHistoryPager != null && recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                int lastItem = layoutManager.findLastVisibleItemPosition();
+                if (lastItem >= mHistoryAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    mHistoryPager.loadNextPage();
+                }
             }
         }
-    }
+    };
 
-    private void showHistory(List<VisitInfo> historyItems) {
-        if (historyItems == null || historyItems.size() == 0) {
+    private void showHistory(@NonNull List<VisitInfo> historyItems, @Nullable DiffUtil.DiffResult diff) {
+        if (historyItems.size() == 0) {
             mViewModel.setIsEmpty(true);
             mViewModel.setIsLoading(false);
 
         } else {
             mViewModel.setIsEmpty(false);
             mViewModel.setIsLoading(false);
-            mHistoryAdapter.setHistoryList(historyItems);
         }
+        mHistoryAdapter.setHistoryList(historyItems, diff);
 
         mBinding.executePendingBindings();
     }
@@ -480,6 +473,8 @@ public class HistoryView extends LibraryView implements HistoryStore.HistoryList
 
     @Override
     public void onHistoryUpdated() {
-        updateHistory();
+        if (mHistoryPager != null) {
+            mHistoryPager.invalidate();
+        }
     }
 }
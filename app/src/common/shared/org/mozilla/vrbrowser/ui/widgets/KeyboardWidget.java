@@ -36,10 +36,12 @@ import androidx.annotation.Nullable;
 
 import org.mozilla.geckoview.GeckoSession;
 import org.mozilla.vrbrowser.R;
+import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.SettingsStore;
 import org.mozilla.vrbrowser.browser.engine.Session;
 import org.mozilla.vrbrowser.input.CustomKeyboard;
 import org.mozilla.vrbrowser.telemetry.GleanMetricsService;
+import org.mozilla.vrbrowser.ui.keyboards.CandidatesEngine;
 import org.mozilla.vrbrowser.ui.keyboards.ChinesePinyinKeyboard;
 import org.mozilla.vrbrowser.ui.keyboards.ChineseZhuyinKeyboard;
 import org.mozilla.vrbrowser.ui.keyboards.DanishKeyboard;
@@ -109,6 +111,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     private ImageView mPopupKeyboardLayer;
     private boolean mIsInVoiceInput = false;
     private String mComposingText = "";
+    private CandidatesEngine mCandidatesEngine;
     private String mComposingDisplayText = "";
     private boolean mInternalDeleteHint = false;
     private Session mSession;
@@ -277,6 +280,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         mDomainSelectorView = findViewById(R.id.domainSelectorView);
         mDomainSelectorView.setDelegate(this::handleDomainChange);
 
+        mCandidatesEngine = new CandidatesEngine(((VRBrowserApplication)aContext.getApplicationContext()).getExecutors().mainThread());
         mKeyboards = new ArrayList<>();
         mKeyboards.add(new EnglishKeyboard(aContext));
         mKeyboards.add(new ChinesePinyinKeyboard(aContext));
@@ -371,6 +375,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         mWidgetManager.removeFocusChangeListener(this);
         mAutoCompletionView.setDelegate(null);
         mAttachedWindow = null;
+        mCandidatesEngine.release();
         super.releaseWidget();
     }
 
@@ -915,6 +920,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
 
         SettingsStore.getInstance(getContext()).setSelectedKeyboard(aKeyboard.getLocale());
         mKeyboardView.setKeyboard(mCurrentKeyboard.getAlphabeticKeyboard());
+        mCandidatesEngine.preload(mCurrentKeyboard);
         updateSpaceBarLanguageLabel();
         disableShift(getSymbolsKeyboard());
         mIsCapsLock = false;
@@ -1127,22 +1133,20 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             return;
         }
 
-        if (mCurrentKeyboard.usesComposingText()) {
-            final KeyboardInterface.CandidatesResult candidates = mCurrentKeyboard.getCandidates(mComposingText);
-            setAutoCompletionVisible(candidates != null && candidates.words.size() > 0);
-            mAutoCompletionView.setItems(candidates != null ? candidates.words : null);
-            if (candidates != null && candidates.action == KeyboardInterface.CandidatesResult.Action.AUTO_COMPOSE) {
-                setAutoCompletionVisible(false);
-                onAutoCompletionItemClick(candidates.words.get(0));
-            } else if (candidates != null) {
-                postInputCommand(() -> displayComposingText(candidates.composing, ComposingAction.DO_NOT_FINISH));
-            } else {
-                mComposingText = "";
-
-                postInputCommand(() -> {
-                    displayComposingText("", ComposingAction.FINISH);
-                });
-            }
+        if (mCurrentKeyboard.usesComposingText() && mCurrentKeyboard.supportsAsyncCandidates()) {
+            final KeyboardInterface keyboard = mCurrentKeyboard;
+            final String composingText = mComposingText;
+            mCandidatesEngine.getCandidates(keyboard, composingText, candidates -> {
+                if (mInputConnection == null || keyboard != mCurrentKeyboard || !composingText.equals(mComposingText)) {
+                    // The composing text changed while looking up the candidates.
+                    return;
+                }
+                setComposingCandidates(candidates);
+                updateSpecialKeyLabels();
+            });
+        } else if (mCurrentKeyboard.usesComposingText()) {
+            mCandidatesEngine.cancel();
+            setComposingCandidates(mCurrentKeyboard.getCandidates(mComposingText));
         } else {
             String fullText = mInputConnection.getExtractedText(new ExtractedTextRequest(),0).text.toString();
             String beforeText = mInputConnection.getTextBeforeCursor(fullText.length(),0).toString();
@@ -1154,6 +1158,23 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         updateSpecialKeyLabels();
     }
 
+    private void setComposingCandidates(@Nullable final KeyboardInterface.CandidatesResult candidates) {
+        setAutoCompletionVisible(candidates != null && candidates.words.size() > 0);
+        mAutoCompletionView.setItems(candidates != null ? candidates.words : null);
+        if (candidates != null && candidates.action == KeyboardInterface.CandidatesResult.Action.AUTO_COMPOSE) {
+            setAutoCompletionVisible(false);
+            onAutoCompletionItemClick(candidates.words.get(0));
+        } else if (candidates != null) {
+            postInputCommand(() -> displayComposingText(candidates.composing, ComposingAction.DO_NOT_FINISH));
+        } else {
+            mComposingText = "";
+
+            postInputCommand(() -> {
+                displayComposingText("", ComposingAction.FINISH);
+            });
+        }
+    }
+
     private void updateSpecialKeyLabels() {
         String enterText = mCurrentKeyboard.getEnterKeyText(mEditorInfo.imeOptions, mComposingText);
         String modeChangeText = mCurrentKeyboard.getModeChangeKeyText();
@@ -6,11 +6,9 @@
 package org.mozilla.vrbrowser.ui.widgets;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Rect;
-import android.preference.PreferenceManager;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.Pair;
@@ -63,6 +61,8 @@ import org.mozilla.vrbrowser.utils.RemoteProperties;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -75,7 +75,7 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         GeckoSession.ContentDelegate, WidgetManagerDelegate.WorldClickListener,
         WidgetManagerDelegate.UpdateListener, SessionChangeListener,
         NavigationURLBar.NavigationURLBarDelegate, VoiceSearchWidget.VoiceSearchDelegate,
-        SharedPreferences.OnSharedPreferenceChangeListener, SuggestionsWidget.URLBarPopupDelegate,
+        SettingsStore.OnSettingChangedListener, SuggestionsWidget.URLBarPopupDelegate,
         TrayListener, WindowWidget.WindowListener {
 
     private static final int TAB_ADDED_NOTIFICATION_ID = 0;
@@ -102,7 +102,6 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
     private Runnable mVRVideoBackHandler;
     private VoiceSearchWidget mVoiceSearchWidget;
     private Context mAppContext;
-    private SharedPreferences mPrefs;
     private SuggestionsWidget mAwesomeBar;
     private SuggestionsProvider mSuggestionsProvider;
     private VideoProjectionMenuWidget mProjectionMenu;
@@ -179,8 +178,7 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
 
         mTrackingDelegate = SessionStore.get().getTrackingProtectionStore();
 
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(mAppContext);
-        mPrefs.registerOnSharedPreferenceChangeListener(this);
+        SettingsStore.getInstance(mAppContext).addOnSettingChangedListener(R.string.settings_key_user_agent_version, this);
     }
 
     private void updateUI() {
@@ -449,7 +447,7 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         mWidgetManager.removeUpdateListener(this);
         mWidgetManager.removeWorldClickListener(this);
         mWidgetManager.getServicesProvider().getConnectivityReceiver().removeListener(mConnectivityDelegate);
-        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        SettingsStore.getInstance(mAppContext).removeOnSettingChangedListener(R.string.settings_key_user_agent_version, this);
         
         if (mAttachedWindow != null && mAttachedWindow.isFullScreen()) {
             // Workaround for https://issuetracker.google.com/issues/37123764
@@ -470,6 +468,8 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         }
         mSendTabDialog = null;
 
+        mSuggestionsProvider.release();
+
         super.releaseWidget();
     }
 
@@ -992,25 +992,33 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
 
         mSuggestionsProvider.setText(text);
         mSuggestionsProvider.setFilterText(originalText);
-        mSuggestionsProvider.getSuggestions()
+        mSuggestionsProvider.getSuggestions(this::showSuggestions)
                 .whenCompleteAsync((items, ex) -> {
-                    if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
-                        mAwesomeBar.updateItems(items);
-                        mAwesomeBar.setHighlightedText(mBinding.navigationBarNavigation.urlBar.getOriginalText().trim());
-
-                        if (!mAwesomeBar.isVisible()) {
-                            mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
-                            mAwesomeBar.show(CLEAR_FOCUS);
-                        }
+                    if (items != null) {
+                        showSuggestions(items);
                     }
 
                 }, mUIThreadExecutor).exceptionally(throwable -> {
-                    Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
-                    throwable.printStackTrace();
+                    if (!(throwable instanceof CancellationException) && !(throwable.getCause() instanceof CancellationException)) {
+                        Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
+                        throwable.printStackTrace();
+                    }
                     return null;
         });
     }
 
+    private void showSuggestions(@NonNull List<SuggestionsWidget.SuggestionItem> items) {
+        if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
+            mAwesomeBar.updateItems(items);
+            mAwesomeBar.setHighlightedText(mBinding.navigationBarNavigation.urlBar.getOriginalText().trim());
+
+            if (!mAwesomeBar.isVisible()) {
+                mAwesomeBar.updatePlacement((int) WidgetPlacement.convertPixelsToDp(getContext(), mBinding.navigationBarNavigation.urlBar.getWidth()));
+                mAwesomeBar.show(CLEAR_FOCUS);
+            }
+        }
+    }
+
     @Override
     public void onHideAwesomeBar() {
         if (mAwesomeBar != null) {
@@ -1071,11 +1079,10 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
     }
 
     @Override
-    public void onSharedPreferenceChanged(@NonNull SharedPreferences sharedPreferences, String key) {
-        if (key.equals(mAppContext.getString(R.string.settings_key_user_agent_version))) {
-            if (mHamburgerMenu != null) {
-                mHamburgerMenu.setUAMode(SettingsStore.getInstance(getContext()).getUaMode());
-            }
+    public void onSettingChanged(@NonNull String aKey) {
+        // Only registered for the user agent mode setting
+        if (mHamburgerMenu != null) {
+            mHamburgerMenu.setUAMode(SettingsStore.getInstance(getContext()).getUaMode());
         }
     }
 
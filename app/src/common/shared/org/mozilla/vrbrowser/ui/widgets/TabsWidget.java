@@ -10,7 +10,11 @@ import android.webkit.URLUtil;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import org.mozilla.vrbrowser.R;
@@ -25,9 +29,20 @@ import org.mozilla.vrbrowser.utils.BitmapCache;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 
 public class TabsWidget extends UIDialog {
+    private static final int COLUMNS = 4;
+    // Rows that fit in the tabs grid, used until the list has been laid out.
+    private static final int DEFAULT_VISIBLE_ROWS = 3;
+    // Rows above and below the visible ones whose thumbnails are loaded ahead of time.
+    private static final int PREFETCH_ROWS = 2;
+    // Rebinds only the selection state of a tab.
+    private static final Object PAYLOAD_SELECTION = new Object();
+
     protected BitmapCache mBitmapCache;
     protected RecyclerView mTabsList;
     protected GridLayoutManager mLayoutManager;
@@ -47,6 +62,10 @@ public class TabsWidget extends UIDialog {
 
     protected boolean mSelecting;
     protected ArrayList<Session> mSelectedTabs = new ArrayList<>();
+    private int mThumbnailHeight;
+    private int mPrefetchFirst = RecyclerView.NO_POSITION;
+    private int mPrefetchLast = RecyclerView.NO_POSITION;
+    private boolean mRefreshPending;
 
     public interface TabDelegate {
         void onTabSelect(Session aTab);
@@ -57,6 +76,7 @@ public class TabsWidget extends UIDialog {
     public TabsWidget(Context aContext) {
         super(aContext);
         mBitmapCache = BitmapCache.getInstance(aContext);
+        mThumbnailHeight = WidgetPlacement.pixelDimension(aContext, R.dimen.tab_view_height);
         initialize();
     }
 
@@ -86,10 +106,10 @@ public class TabsWidget extends UIDialog {
 
         mTabsList = findViewById(R.id.tabsRecyclerView);
         mTabsList.setHasFixedSize(true);
-        final int columns = 4;
-        mLayoutManager = new GridLayoutManager(getContext(), columns);
+        mLayoutManager = new GridLayoutManager(getContext(), COLUMNS);
         mTabsList.setLayoutManager(mLayoutManager);
-        mTabsList.addItemDecoration(new GridSpacingItemDecoration(getContext(), columns));
+        mTabsList.addItemDecoration(new GridSpacingItemDecoration(getContext(), COLUMNS));
+        mTabsList.addOnScrollListener(mPrefetchScrollListener);
 
         mTabsAvailableCounter = findViewById(R.id.tabsAvailableCounter);
         mSelectedTabsCounter = findViewById(R.id.tabsSelectedCounter);
@@ -135,14 +155,14 @@ public class TabsWidget extends UIDialog {
         mSelectAllButton = findViewById(R.id.tabsSelectAllButton);
         mSelectAllButton.setOnClickListener(v -> {
             mSelectedTabs = new ArrayList<>(mAdapter.mTabs);
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifySelectionChanged();
             updateSelectionMode();
         });
 
         mUnselectTabs = findViewById(R.id.tabsUnselectButton);
         mUnselectTabs.setOnClickListener(v -> {
             mSelectedTabs.clear();
-            mAdapter.notifyDataSetChanged();
+            mAdapter.notifySelectionChanged();
             updateSelectionMode();
         });
     }
@@ -161,6 +181,7 @@ public class TabsWidget extends UIDialog {
 
     @Override
     public void releaseWidget() {
+        SessionStore.get().removeSessionListListener(mSessionListListener);
         if (mSendTabDialog != null && !mSendTabDialog.isReleased()) {
             mSendTabDialog.releaseWidget();
         }
@@ -171,6 +192,7 @@ public class TabsWidget extends UIDialog {
     @Override
     public void show(int aShowFlags) {
         super.show(aShowFlags);
+        SessionStore.get().addSessionListListener(mSessionListListener);
         refreshTabs();
         invalidate();
         mTabsList.requestFocusFromTouch();
@@ -179,6 +201,11 @@ public class TabsWidget extends UIDialog {
     @Override
     public void hide(@HideFlags int aHideFlags) {
         super.hide(aHideFlags);
+        SessionStore.get().removeSessionListListener(mSessionListListener);
+        // Drop the thumbnails prefetches that haven't started yet
+        mBitmapCache.prefetch(Collections.emptyList(), 0, 0);
+        mPrefetchFirst = RecyclerView.NO_POSITION;
+        mPrefetchLast = RecyclerView.NO_POSITION;
         if (mRenderer != null) {
             mRenderer.clearSurface();
         }
@@ -189,11 +216,97 @@ public class TabsWidget extends UIDialog {
     }
 
     public void refreshTabs() {
-        mAdapter.updateTabs(SessionStore.get().getSortedSessions(mPrivateMode));
+        ArrayList<Session> tabs = SessionStore.get().getSortedSessions(mPrivateMode);
+        mBitmapCache.updateMemoryBudget(tabs.size(), getVisibleTabCount());
+        mAdapter.updateTabs(tabs);
+        mPrefetchFirst = RecyclerView.NO_POSITION;
+        mPrefetchLast = RecyclerView.NO_POSITION;
+        prefetchThumbnails();
+    }
+
+    private SessionStore.SessionListListener mSessionListListener = () -> {
+        // Several sessions may change in a row (e.g. closing a selection), refresh once for all of them.
+        if (!mRefreshPending) {
+            mRefreshPending = true;
+            post(() -> {
+                mRefreshPending = false;
+                if (isVisible()) {
+                    refreshTabs();
+                }
+            });
+        }
+    };
+
+    private RecyclerView.OnScrollListener mPrefetchScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            prefetchThumbnails();
+        }
+    };
+
+    /**
+     * Loads the thumbnails of the visible tabs and a few rows around them. Requests for the tabs
+     * that scrolled out of that range are dropped if they haven't started yet.
+     */
+    private void prefetchThumbnails() {
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            first = 0;
+            last = COLUMNS * DEFAULT_VISIBLE_ROWS - 1;
+        }
+        if (first == mPrefetchFirst && last == mPrefetchLast) {
+            return;
+        }
+        mPrefetchFirst = first;
+        mPrefetchLast = last;
+
+        // The first item is the add tab button, tabs start at position 1.
+        int margin = COLUMNS * PREFETCH_ROWS;
+        int start = Math.max(first - margin, 1);
+        int end = Math.min(last + margin, mAdapter.mTabs.size());
+        ArrayList<String> keys = new ArrayList<>(Math.max(end - start + 1, 0));
+        for (int position = start; position <= end; position++) {
+            keys.add(mAdapter.mTabs.get(position - 1).getId());
+        }
+        mBitmapCache.prefetch(keys, 0, mThumbnailHeight);
+    }
+
+    private int getVisibleTabCount() {
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        int last = mLayoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return COLUMNS * DEFAULT_VISIBLE_ROWS;
+        }
+        return Math.max(last - first + 1, COLUMNS * DEFAULT_VISIBLE_ROWS);
+    }
+
+    /**
+     * State of a tab when it was last bound, used to only rebind the tabs that changed.
+     */
+    private static class TabState {
+        final String uri;
+        final String title;
+        final boolean active;
+
+        TabState(@NonNull Session aSession) {
+            uri = aSession.getCurrentUri();
+            title = aSession.getCurrentTitle();
+            active = SessionStore.get().getActiveSession() == aSession;
+        }
+
+        boolean sameAs(@NonNull TabState aOther) {
+            return active == aOther.active && Objects.equals(uri, aOther.uri) && Objects.equals(title, aOther.title);
+        }
     }
 
     public class TabAdapter extends RecyclerView.Adapter<TabAdapter.MyViewHolder> {
+        private static final long ADD_TAB_ID = 0;
+
         private ArrayList<Session> mTabs = new ArrayList<>();
+        private ArrayList<TabState> mTabStates = new ArrayList<>();
+        private HashMap<String, Long> mItemIds = new HashMap<>();
+        private long mNextItemId = ADD_TAB_ID + 1;
 
         class MyViewHolder extends RecyclerView.ViewHolder {
             // each data item is just a string in this case
@@ -205,14 +318,77 @@ public class TabsWidget extends UIDialog {
 
         }
 
-        TabAdapter() {}
+        // The add tab button is the first item, so every tab is offset by one.
+        private final ListUpdateCallback mUpdateCallback = new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position + 1, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position + 1, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition + 1, toPosition + 1);
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                notifyItemRangeChanged(position + 1, count, payload);
+            }
+        };
+
+        TabAdapter() {
+            setHasStableIds(true);
+        }
 
         void updateTabs(ArrayList<Session> aTabs) {
+            final ArrayList<Session> oldTabs = mTabs;
+            final ArrayList<TabState> oldStates = mTabStates;
+            final ArrayList<TabState> newStates = new ArrayList<>(aTabs.size());
+            HashMap<String, Long> itemIds = new HashMap<>();
+            for (Session tab : aTabs) {
+                newStates.add(new TabState(tab));
+                Long id = mItemIds.get(tab.getId());
+                itemIds.put(tab.getId(), id != null ? id : mNextItemId++);
+            }
+
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return oldTabs.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return aTabs.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return oldTabs.get(oldItemPosition) == aTabs.get(newItemPosition);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    return oldStates.get(oldItemPosition).sameAs(newStates.get(newItemPosition));
+                }
+            });
+
             mTabs = aTabs;
-            notifyDataSetChanged();
+            mTabStates = newStates;
+            mItemIds = itemIds;
+            diff.dispatchUpdatesTo(mUpdateCallback);
             updateTabCounter();
         }
 
+        void notifySelectionChanged() {
+            notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
+        }
+
         void updateTabCounter() {
             if (mTabs.size() > 1) {
                 mTabsAvailableCounter.setText(getContext().getString(R.string.tabs_counter_plural, String.valueOf(mTabs.size())));
@@ -226,28 +402,8 @@ public class TabsWidget extends UIDialog {
             TabView view = (TabView)LayoutInflater.from(parent.getContext()).inflate(R.layout.tab_view, parent, false);
             parent.setClipToPadding(false);
             parent.setClipChildren(false);
-            return new MyViewHolder(view);
-        }
-
-        @Override
-        public void onBindViewHolder(MyViewHolder holder, int position) {
-            if (position > 0) {
-                Session session = mTabs.get(position - 1);
-                holder.tabView.attachToSession(session, mBitmapCache);
-            } else {
-                holder.tabView.setAddTabMode(true);
-            }
-
-            holder.tabView.setSelecting(mSelecting);
-            holder.tabView.setSelected(mSelectedTabs.contains(holder.tabView.getSession()));
-            holder.tabView.setActive(SessionStore.get().getActiveSession() == holder.tabView.getSession());
-            if (holder.tabView.getSession() != null) {
-                String uri = holder.tabView.getSession().getCurrentUri();
-                holder.tabView.setSendTabEnabled(URLUtil.isHttpUrl(uri) || URLUtil.isHttpsUrl(uri));
-            } else {
-                holder.tabView.setSendTabEnabled(false);
-            }
-            holder.tabView.setDelegate(new TabView.Delegate() {
+            MyViewHolder holder = new MyViewHolder(view);
+            view.setDelegate(new TabView.Delegate() {
                 @Override
                 public void onClose(TabView aSender) {
                     if (aSender.getSession() != null) {
@@ -260,14 +416,8 @@ public class TabsWidget extends UIDialog {
                         mTabDelegate.onTabsClose(closed);
                     }
                     if (mTabs.size() > 1) {
-                        ArrayList<Session> latestTabs = SessionStore.get().getSortedSessions(mPrivateMode);
-                        if (latestTabs.size() != (mTabs.size() - 1) && latestTabs.size() > 0) {
-                            aSender.attachToSession(latestTabs.get(0), mBitmapCache);
-                            return;
-                        }
-                        mTabs.remove(holder.getAdapterPosition() - 1);
-                        mAdapter.notifyItemRemoved(holder.getAdapterPosition());
-                        updateTabCounter();
+                        // Closing a tab may also open or reorder others, let the diff sort it out.
+                        refreshTabs();
 
                     } else {
                         onDismiss();
@@ -312,12 +462,66 @@ public class TabsWidget extends UIDialog {
                     holder.tabView.reset();
                 }
             });
+            return holder;
+        }
+
+        @Override
+        public void onBindViewHolder(MyViewHolder holder, int position, List<Object> payloads) {
+            boolean selectionOnly = !payloads.isEmpty();
+            for (Object payload : payloads) {
+                selectionOnly &= payload == PAYLOAD_SELECTION;
+            }
+            if (selectionOnly) {
+                bindSelection(holder);
+            } else {
+                onBindViewHolder(holder, position);
+            }
+        }
+
+        @Override
+        public void onBindViewHolder(MyViewHolder holder, int position) {
+            if (position > 0) {
+                Session session = mTabs.get(position - 1);
+                holder.tabView.attachToSession(session, mBitmapCache);
+            } else {
+                holder.tabView.detachFromSession();
+                holder.tabView.setAddTabMode(true);
+            }
+
+            bindSelection(holder);
+            holder.tabView.setActive(SessionStore.get().getActiveSession() == holder.tabView.getSession());
+            if (holder.tabView.getSession() != null) {
+                String uri = holder.tabView.getSession().getCurrentUri();
+                holder.tabView.setSendTabEnabled(URLUtil.isHttpUrl(uri) || URLUtil.isHttpsUrl(uri));
+            } else {
+                holder.tabView.setSendTabEnabled(false);
+            }
+        }
+
+        private void bindSelection(MyViewHolder holder) {
+            holder.tabView.setSelecting(mSelecting);
+            holder.tabView.setSelected(mSelectedTabs.contains(holder.tabView.getSession()));
+        }
+
+        @Override
+        public void onViewRecycled(@NonNull MyViewHolder holder) {
+            // Cancels the thumbnail request of tabs scrolled out of view
+            holder.tabView.detachFromSession();
         }
 
         @Override
         public int getItemCount() {
             return mTabs.size() + 1;
         }
+
+        @Override
+        public long getItemId(int position) {
+            if (position == 0) {
+                return ADD_TAB_ID;
+            }
+            Long id = mItemIds.get(mTabs.get(position - 1).getId());
+            return id != null ? id : RecyclerView.NO_ID;
+        }
     }
 
     private Runnable mSelectModeBackHandler = this::exitSelectMode;
@@ -332,7 +536,7 @@ public class TabsWidget extends UIDialog {
         updateSelectionMode();
         mWidgetManager.pushBackHandler(mSelectModeBackHandler);
 
-        post(() -> mAdapter.notifyDataSetChanged());
+        post(() -> mAdapter.notifySelectionChanged());
     }
 
     private void exitSelectMode() {
@@ -346,7 +550,7 @@ public class TabsWidget extends UIDialog {
         updateSelectionMode();
         mWidgetManager.popBackHandler(mSelectModeBackHandler);
 
-        post(() -> mAdapter.notifyDataSetChanged());
+        post(() -> mAdapter.notifySelectionChanged());
     }
 
     private void updateSelectionMode() {
@@ -9,9 +9,11 @@ package org.mozilla.vrbrowser.ui.widgets;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.PorterDuff;
+import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.view.Surface;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 public class UISurfaceTextureRenderer {
@@ -21,6 +23,10 @@ public class UISurfaceTextureRenderer {
     private Surface mSurface;
     private Canvas mSurfaceCanvas;
     private boolean mIsHardwareAccelerationEnabled;
+    // Region of the surface locked by the last drawBegin call.
+    private final Rect mLockedRect = new Rect();
+    // The surface content can't be kept until it has been fully drawn once.
+    private boolean mFullRedraw = true;
     private static boolean sUseHardwareAcceleration;
     private static boolean sRenderActive = true;
 
@@ -54,6 +60,7 @@ public class UISurfaceTextureRenderer {
         }
         mTextureWidth = aWidth;
         mTextureHeight = aHeight;
+        mFullRedraw = true;
         if (mSurfaceTexture != null) {
             mSurfaceTexture.setDefaultBufferSize(aWidth, aHeight);
         }
@@ -75,7 +82,20 @@ public class UISurfaceTextureRenderer {
 
     @Nullable
     Canvas drawBegin() {
+        return drawBegin(null);
+    }
+
+    /**
+     * Locks the surface for drawing and clears the locked region. With the software canvas only the
+     * dirty rect is locked and the rest of the surface keeps the previous frame. The hardware canvas
+     * can't be locked partially, so the whole surface is always redrawn.
+     * @param aDirty Dirty rect in surface coordinates, or null to redraw the whole surface.
+     * @return The canvas to draw to, clipped to {@link #lockedRect()}, or null if it can't be drawn.
+     */
+    @Nullable
+    Canvas drawBegin(@Nullable Rect aDirty) {
         mSurfaceCanvas = null;
+        mLockedRect.setEmpty();
         if (!sRenderActive) {
             return null;
         }
@@ -83,18 +103,39 @@ public class UISurfaceTextureRenderer {
             try {
                 if (sUseHardwareAcceleration && mIsHardwareAccelerationEnabled) {
                     mSurfaceCanvas = mSurface.lockHardwareCanvas();
+                    mLockedRect.set(0, 0, mTextureWidth, mTextureHeight);
                 } else {
-                    mSurfaceCanvas = mSurface.lockCanvas(null);
+                    if (aDirty != null && !mFullRedraw) {
+                        mLockedRect.set(aDirty);
+                    }
+                    if (!mLockedRect.intersect(0, 0, mTextureWidth, mTextureHeight)) {
+                        mLockedRect.set(0, 0, mTextureWidth, mTextureHeight);
+                    }
+                    // The surface may grow the rect if the previous buffer content can't be preserved.
+                    mSurfaceCanvas = mSurface.lockCanvas(mLockedRect);
+                    mSurfaceCanvas.clipRect(mLockedRect);
                 }
                 mSurfaceCanvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+                mFullRedraw = false;
             }
             catch (Exception e){
                 e.printStackTrace();
+                if (mSurfaceCanvas == null) {
+                    mLockedRect.setEmpty();
+                }
             }
         }
         return mSurfaceCanvas;
     }
 
+    /**
+     * Region of the surface locked by the last {@link #drawBegin(Rect)}, empty if it failed.
+     */
+    @NonNull
+    Rect lockedRect() {
+        return mLockedRect;
+    }
+
     void drawEnd() {
         if(mSurfaceCanvas != null) {
             mSurface.unlockCanvasAndPost(mSurfaceCanvas);
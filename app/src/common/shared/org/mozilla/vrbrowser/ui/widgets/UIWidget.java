@@ -10,16 +10,21 @@ import android.content.res.Configuration;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
+import android.graphics.drawable.Drawable;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.Surface;
 import android.view.View;
+import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.widget.FrameLayout;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.browser.SettingsStore;
@@ -36,6 +41,47 @@ public abstract class UIWidget extends FrameLayout implements Widget {
         void onDismiss();
     }
 
+    /**
+     * Surface drawing counters of a widget. Only updated on the UI thread.
+     */
+    public static class RenderStats {
+        private long mDraws;
+        private long mDrawNanos;
+        private long mCoalescedInvalidations;
+        private long mDirtyPixels;
+        private long mDrawnPixels;
+
+        public long getDraws() {
+            return mDraws;
+        }
+
+        public float getAverageDrawMs() {
+            return mDraws > 0 ? mDrawNanos / (mDraws * 1e6f) : 0.0f;
+        }
+
+        /**
+         * Descendant invalidations merged into a draw that was already scheduled for the next frame.
+         */
+        public long getCoalescedInvalidations() {
+            return mCoalescedInvalidations;
+        }
+
+        public long getDirtyPixels() {
+            return mDirtyPixels;
+        }
+
+        public long getDrawnPixels() {
+            return mDrawnPixels;
+        }
+
+        /**
+         * Ratio of surface pixels drawn to pixels invalidated, 1 when only the dirty regions were drawn.
+         */
+        public float getOverdrawRatio() {
+            return mDirtyPixels > 0 ? mDrawnPixels / (float) mDirtyPixels : 0.0f;
+        }
+    }
+
     protected UISurfaceTextureRenderer mRenderer;
     protected UISurfaceTextureRenderer mProxyRenderer;
     protected SurfaceTexture mTexture;
@@ -53,6 +99,14 @@ public abstract class UIWidget extends FrameLayout implements Widget {
     protected boolean mResizing = false;
     protected boolean mReleased = false;
     private Boolean mIsHardwareAccelerationEnabled;
+    // Region invalidated since the last draw, in view coordinates. Only accessed from the UI thread.
+    private final Rect mDirtyRect = new Rect();
+    private boolean mFullRedraw = true;
+    private boolean mDrawScheduled;
+    private final Rect mDrawRect = new Rect();
+    private final Rect mTextureDirtyRect = new Rect();
+    private final Rect mTmpRect = new Rect();
+    private final RenderStats mRenderStats = new RenderStats();
 
     public UIWidget(Context aContext) {
         super(aContext);
@@ -250,9 +304,20 @@ public abstract class UIWidget extends FrameLayout implements Widget {
             super.draw(aCanvas);
             return;
         }
-        draw(aCanvas, mRenderer);
-        if (mProxyRenderer != null && mWidgetPlacement.proxifyLayer) {
-            draw(aCanvas, mProxyRenderer);
+        if (!mResizing) {
+            // Nothing tracked as dirty means the view itself was invalidated, so it's fully redrawn.
+            Rect dirty = null;
+            if (!mFullRedraw && !mDirtyRect.isEmpty()) {
+                mDrawRect.set(mDirtyRect);
+                dirty = mDrawRect;
+            }
+            // Clear it before drawing so invalidations triggered while drawing go to the next frame.
+            mDirtyRect.setEmpty();
+            mFullRedraw = false;
+            draw(aCanvas, mRenderer, dirty);
+            if (mProxyRenderer != null && mWidgetPlacement.proxifyLayer) {
+                draw(aCanvas, mProxyRenderer, dirty);
+            }
         }
 
         if (mFirstDrawCallback != null) {
@@ -261,11 +326,26 @@ public abstract class UIWidget extends FrameLayout implements Widget {
         }
     }
 
-    private void draw(Canvas aCanvas, UISurfaceTextureRenderer aRenderer) {
-        if (mResizing) {
-            return;
+    private void draw(Canvas aCanvas, UISurfaceTextureRenderer aRenderer, @Nullable Rect aDirty) {
+        int width = aRenderer.width();
+        int height = aRenderer.height();
+        Rect textureDirty = null;
+        if (aDirty != null && getWidth() > 0) {
+            // Scale to texture coordinates, with an extra pixel for antialiased edges.
+            float scale = width / (float) getWidth();
+            mTextureDirtyRect.set(
+                    (int) Math.floor(aDirty.left * scale) - 1,
+                    (int) Math.floor(aDirty.top * scale) - 1,
+                    (int) Math.ceil(aDirty.right * scale) + 1,
+                    (int) Math.ceil(aDirty.bottom * scale) + 1);
+            if (!mTextureDirtyRect.intersect(0, 0, width, height)) {
+                return;
+            }
+            textureDirty = mTextureDirtyRect;
         }
-        Canvas textureCanvas = aRenderer.drawBegin();
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        Canvas textureCanvas = aRenderer.drawBegin(textureDirty);
         if(textureCanvas != null) {
             // set the proper scale
             float xScale = textureCanvas.getWidth() / (float)aCanvas.getWidth();
@@ -274,14 +354,162 @@ public abstract class UIWidget extends FrameLayout implements Widget {
             super.draw(textureCanvas);
         }
         aRenderer.drawEnd();
+
+        if (textureCanvas != null) {
+            Rect locked = aRenderer.lockedRect();
+            mRenderStats.mDraws++;
+            mRenderStats.mDrawNanos += SystemClock.elapsedRealtimeNanos() - start;
+            mRenderStats.mDirtyPixels += textureDirty != null ? (long) textureDirty.width() * textureDirty.height() : (long) width * height;
+            mRenderStats.mDrawnPixels += (long) locked.width() * locked.height();
+        }
+    }
+
+    @NonNull
+    public RenderStats getRenderStats() {
+        return mRenderStats;
+    }
+
+    /**
+     * Adds a region to redraw in the next frame, or the whole view if null. Any number of
+     * invalidations in a frame result in a single surface draw.
+     */
+    private void invalidateTexture(@Nullable Rect aDirty) {
+        if (aDirty == null) {
+            mFullRedraw = true;
+        } else {
+            mDirtyRect.union(aDirty);
+        }
+        if (mDrawScheduled) {
+            mRenderStats.mCoalescedInvalidations++;
+            return;
+        }
+        mDrawScheduled = true;
+        Choreographer.getInstance().postFrameCallback(mDrawFrameCallback);
+    }
+
+    private final Choreographer.FrameCallback mDrawFrameCallback = frameTimeNanos -> drawDirtyRegion();
+
+    private void drawDirtyRegion() {
+        mDrawScheduled = false;
+        // The region may have been drawn already if the parent redrew this view.
+        if (mRenderer != null && (mFullRedraw || !mDirtyRect.isEmpty())) {
+            super.invalidate();
+        }
+    }
+
+    /**
+     * Bounds of an invalidated descendant in this view coordinates, or null if its drawing
+     * can't be bound to them.
+     */
+    @Nullable
+    private Rect getDescendantBounds(@NonNull View aTarget) {
+        View view = aTarget;
+        while (view != this) {
+            // offsetDescendantRectToMyCoords ignores the view transforms.
+            if (!view.getMatrix().isIdentity()) {
+                return null;
+            }
+            ViewParent parent = view.getParent();
+            if (!(parent instanceof ViewGroup) || !((ViewGroup) parent).getClipChildren()) {
+                return null;
+            }
+            view = (View) parent;
+        }
+        mTmpRect.set(0, 0, aTarget.getWidth(), aTarget.getHeight());
+        offsetDescendantRectToMyCoords(aTarget, mTmpRect);
+        return mTmpRect;
+    }
+
+    @Override
+    public void invalidate() {
+        // Called by the View constructor before the fields are initialized.
+        if (mDirtyRect != null) {
+            mFullRedraw = true;
+        }
+        super.invalidate();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void invalidate(Rect aDirty) {
+        if (mDirtyRect != null && mRenderer != null) {
+            mTmpRect.set(aDirty);
+            mTmpRect.offset(-getScrollX(), -getScrollY());
+            mDirtyRect.union(mTmpRect);
+        }
+        super.invalidate(aDirty);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void invalidate(int aLeft, int aTop, int aRight, int aBottom) {
+        if (mDirtyRect != null && mRenderer != null) {
+            mTmpRect.set(aLeft, aTop, aRight, aBottom);
+            mTmpRect.offset(-getScrollX(), -getScrollY());
+            mDirtyRect.union(mTmpRect);
+        }
+        super.invalidate(aLeft, aTop, aRight, aBottom);
+    }
+
+    @Override
+    public void requestLayout() {
+        if (mDirtyRect != null) {
+            mFullRedraw = true;
+        }
+        super.requestLayout();
+    }
+
+    // The setters below invalidate the view through the hidden View.invalidate(boolean), which
+    // skips the overrides above, so they have to request the full redraw themselves.
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void setBackgroundDrawable(Drawable aBackground) {
+        mFullRedraw = true;
+        super.setBackgroundDrawable(aBackground);
+    }
+
+    @Override
+    public void setAlpha(float aAlpha) {
+        mFullRedraw = true;
+        super.setAlpha(aAlpha);
+    }
+
+    @Override
+    public void setVisibility(int aVisibility) {
+        mFullRedraw = true;
+        super.setVisibility(aVisibility);
+    }
+
+    @Override
+    public void setEnabled(boolean aEnabled) {
+        mFullRedraw = true;
+        super.setEnabled(aEnabled);
+    }
+
+    @Override
+    public void setSelected(boolean aSelected) {
+        mFullRedraw = true;
+        super.setSelected(aSelected);
+    }
+
+    @Override
+    public void setActivated(boolean aActivated) {
+        mFullRedraw = true;
+        super.setActivated(aActivated);
+    }
+
+    @Override
+    protected void onScrollChanged(int aLeft, int aTop, int aOldLeft, int aOldTop) {
+        mFullRedraw = true;
+        super.onScrollChanged(aLeft, aTop, aOldLeft, aOldTop);
     }
 
     @Override
     public void onDescendantInvalidated (View child, View target) {
         super.onDescendantInvalidated(child, target);
         if (mRenderer != null) {
-            // TODO: transform rect and use invalidate(dirty)
-            postInvalidate();
+            invalidateTexture(getDescendantBounds(target));
         }
     }
 
@@ -290,9 +518,9 @@ public abstract class UIWidget extends FrameLayout implements Widget {
     @Override
     public ViewParent invalidateChildInParent(int[] aLocation, Rect aDirty) {
         ViewParent parent =  super.invalidateChildInParent(aLocation, aDirty);
-        if (parent != null && mRenderer != null) {
-            // TODO: transform rect and use invalidate(dirty)
-            postInvalidate();
+        if (parent != null && mRenderer != null && !aDirty.isEmpty()) {
+            // The dirty rect has been transformed to this view coordinates by the super call.
+            invalidateTexture(aDirty);
         }
         return parent;
     }
@@ -39,4 +39,6 @@ public interface Widget {
     default void attachToWindow(@NonNull WindowWidget window) {}
     int getBorderWidth();
     default boolean supportsMultipleInputDevices() { return false; }
+    // Devices pressing the widget at the same time are sent as the pointers of a single gesture.
+    default boolean supportsMultiTouch() { return false; }
 }
@@ -0,0 +1,171 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.util.SparseArray;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+/**
+ * Batches the widget placement updates sent to the render thread so they are queued once per frame
+ * instead of once per update. Repeated updates of a widget in the same frame are collapsed into the
+ * latest one. Placements are copied into pooled objects, so moving and resizing widgets doesn't
+ * allocate once the pools have grown to the number of widgets updated in a frame.
+ */
+public class WidgetUpdateQueue {
+    private static final int INITIAL_BATCH_CAPACITY = 8;
+
+    public interface Dispatcher {
+        void queueRunnable(@NonNull Runnable aRunnable);
+
+        /**
+         * Called on the render thread for every updated widget.
+         * The placement is reused as soon as the call returns.
+         */
+        void updateWidget(int aHandle, @NonNull WidgetPlacement aPlacement);
+    }
+
+    private class Batch implements Runnable {
+        int count;
+        int[] handles = new int[INITIAL_BATCH_CAPACITY];
+        WidgetPlacement[] placements = new WidgetPlacement[INITIAL_BATCH_CAPACITY];
+
+        void add(int aHandle, @NonNull WidgetPlacement aPlacement) {
+            if (count == handles.length) {
+                handles = Arrays.copyOf(handles, count * 2);
+                placements = Arrays.copyOf(placements, count * 2);
+            }
+            handles[count] = aHandle;
+            if (placements[count] == null) {
+                placements[count] = aPlacement.clone();
+            } else {
+                placements[count].copyFrom(aPlacement);
+            }
+            count++;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < count; i++) {
+                mDispatcher.updateWidget(handles[i], placements[i]);
+            }
+            count = 0;
+            synchronized (mPool) {
+                mPool.push(this);
+            }
+        }
+    }
+
+    private final Dispatcher mDispatcher;
+    private final Choreographer mChoreographer;
+    // Batches ready to be filled, returned by the render thread once dispatched. Guarded by itself.
+    private final ArrayDeque<Batch> mPool = new ArrayDeque<>();
+    // Only used from the UI thread.
+    // Last placement copied for each widget handle, reused across frames.
+    private final SparseArray<WidgetPlacement> mPlacements = new SparseArray<>();
+    // Placements updated since the last flush.
+    private final SparseArray<WidgetPlacement> mPending = new SparseArray<>();
+    private boolean mFrameScheduled;
+    private long mTotalUpdates;
+    private long mTotalCollapsed;
+    private long mTotalBatches;
+
+    @UiThread
+    public WidgetUpdateQueue(@NonNull Dispatcher aDispatcher) {
+        mDispatcher = aDispatcher;
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Queues the current placement of the widget, it's sent to the render thread in the next frame.
+     */
+    @UiThread
+    public void updateWidget(@NonNull Widget aWidget) {
+        int handle = aWidget.getHandle();
+        WidgetPlacement placement = mPlacements.get(handle);
+        if (placement == null) {
+            placement = aWidget.getPlacement().clone();
+            mPlacements.put(handle, placement);
+        } else {
+            placement.copyFrom(aWidget.getPlacement());
+        }
+
+        mTotalUpdates++;
+        if (mPending.get(handle) != null) {
+            mTotalCollapsed++;
+        } else {
+            mPending.put(handle, placement);
+        }
+
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(mFrameCallback);
+        }
+    }
+
+    /**
+     * Drops any pending update of a widget that is being removed.
+     */
+    @UiThread
+    public void removeWidget(int aHandle) {
+        mPending.remove(aHandle);
+        mPlacements.remove(aHandle);
+    }
+
+    /**
+     * Queues the pending updates right away, so they reach the render thread before any runnable
+     * queued after this call.
+     */
+    @UiThread
+    public void flush() {
+        int count = mPending.size();
+        if (count == 0) {
+            return;
+        }
+
+        Batch batch;
+        synchronized (mPool) {
+            batch = mPool.poll();
+        }
+        if (batch == null) {
+            batch = new Batch();
+        }
+        for (int i = 0; i < count; i++) {
+            batch.add(mPending.keyAt(i), mPending.valueAt(i));
+        }
+        mPending.clear();
+        mTotalBatches++;
+        mDispatcher.queueRunnable(batch);
+    }
+
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> {
+        mFrameScheduled = false;
+        flush();
+    };
+
+    @UiThread
+    public long getTotalUpdates() {
+        return mTotalUpdates;
+    }
+
+    /**
+     * @return Number of updates replaced by a later update of the same widget before being sent.
+     */
+    @UiThread
+    public long getTotalCollapsed() {
+        return mTotalCollapsed;
+    }
+
+    @UiThread
+    public long getTotalBatches() {
+        return mTotalBatches;
+    }
+}
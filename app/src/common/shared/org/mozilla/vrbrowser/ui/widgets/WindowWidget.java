@@ -8,7 +8,6 @@ package org.mozilla.vrbrowser.ui.widgets;
 import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
 import android.graphics.Canvas;
@@ -17,7 +16,6 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.SurfaceTexture;
 import android.net.Uri;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.util.Pair;
 import android.view.Gravity;
@@ -69,9 +67,9 @@ import org.mozilla.vrbrowser.utils.UrlUtils;
 import org.mozilla.vrbrowser.utils.ViewUtils;
 
 import java.io.File;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
@@ -88,7 +86,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         GeckoSession.ContentDelegate, GeckoSession.NavigationDelegate, VideoAvailabilityListener,
         GeckoSession.HistoryDelegate, GeckoSession.ProgressDelegate, GeckoSession.SelectionActionDelegate,
         Session.WebXRStateChangedListener, Session.PopUpStateChangedListener,
-        Session.DrmStateChangedListener, Session.ExternalRequestDelegate, SharedPreferences.OnSharedPreferenceChangeListener {
+        Session.DrmStateChangedListener, Session.ExternalRequestDelegate, SettingsStore.OnSettingChangedListener {
 
     @IntDef(value = { SESSION_RELEASE_DISPLAY, SESSION_DO_NOT_RELEASE_DISPLAY})
     public @interface OldSessionDisplayAction {}
@@ -137,7 +135,6 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     private Executor mUIThreadExecutor;
     private WindowViewModel mViewModel;
     private CopyOnWriteArrayList<Runnable> mSetViewQueuedCalls;
-    private SharedPreferences mPrefs;
     private DownloadsManager mDownloadsManager;
 
     public interface WindowListener {
@@ -149,11 +146,10 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     }
 
     @Override
-    public void onSharedPreferenceChanged(@NonNull SharedPreferences sharedPreferences, String key) {
-        if (key.equals(getContext().getString(R.string.settings_key_drm_playback))) {
-            if (mViewModel.getIsDrmUsed().getValue().get() && getSession() != null) {
-                getSession().reload(GeckoSession.LOAD_FLAGS_BYPASS_CACHE);
-            }
+    public void onSettingChanged(@NonNull String aKey) {
+        // Only registered for the DRM playback setting
+        if (mViewModel.getIsDrmUsed().getValue().get() && getSession() != null) {
+            getSession().reload(GeckoSession.LOAD_FLAGS_BYPASS_CACHE);
         }
     }
 
@@ -174,8 +170,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     private void initialize(Context aContext) {
         mSetViewQueuedCalls = new CopyOnWriteArrayList<>();
 
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(getContext());
-        mPrefs.registerOnSharedPreferenceChangeListener(this);
+        SettingsStore.getInstance(getContext()).addOnSettingChangedListener(R.string.settings_key_drm_playback, this);
 
         mWidgetManager = (WidgetManagerDelegate) aContext;
         // TODO: Fix the compositor in Gecko to support correct border offset
@@ -642,6 +637,12 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         return mBorderWidth;
     }
 
+    @Override
+    public boolean supportsMultiTouch() {
+        // Allows pinch zooming the content with both controllers.
+        return true;
+    }
+
     public void setActiveWindow(boolean active) {
         mActive = active;
         if (active) {
@@ -957,7 +958,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
         cleanListeners(mSession);
         GeckoSession session = mSession.getGeckoSession();
 
-        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        SettingsStore.getInstance(getContext()).removeOnSettingChangedListener(R.string.settings_key_drm_playback, this);
 
         mSetViewQueuedCalls.clear();
         if (mSession != null) {
@@ -1418,9 +1419,10 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
                 },
                 (index, isChecked) -> {
                     // We remove the prefs listener before the first DRM update to avoid reloading the session
-                    mPrefs.unregisterOnSharedPreferenceChangeListener(this);
-                    SettingsStore.getInstance(getContext()).setDrmContentPlaybackEnabled(index == PromptDialogWidget.POSITIVE);
-                    mPrefs.registerOnSharedPreferenceChangeListener(this);
+                    SettingsStore settings = SettingsStore.getInstance(getContext());
+                    settings.removeOnSettingChangedListener(R.string.settings_key_drm_playback, this);
+                    settings.setDrmContentPlaybackEnabled(index == PromptDialogWidget.POSITIVE);
+                    settings.addOnSettingChangedListener(R.string.settings_key_drm_playback, this);
                     callback.run();
                 }
         );
@@ -1510,18 +1512,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
     };
 
     private void updateBookmarked() {
-        SessionStore.get().getBookmarkStore().isBookmarked(mViewModel.getUrl().getValue().toString()).thenAcceptAsync(bookmarked -> {
-            if (bookmarked) {
-                mViewModel.setIsBookmarked(true);
-
-            } else {
-                mViewModel.setIsBookmarked(false);
-            }
-        }, mUIThreadExecutor).exceptionally(throwable -> {
-            Log.d(LOGTAG, "Error checking bookmark: " + throwable.getLocalizedMessage());
-            throwable.printStackTrace();
-            return null;
-        });
+        mViewModel.setIsBookmarked(SessionStore.get().getBookmarkStore().isBookmarked(mViewModel.getUrl().getValue().toString()));
     }
 
     private void hideContextMenus() {
@@ -1800,10 +1791,7 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
             mViewModel.setIsBookmarked(false);
 
         } else {
-            SessionStore.get().getBookmarkStore().isBookmarked(url).thenAcceptAsync(aBoolean -> mViewModel.setIsBookmarked(aBoolean), mUIThreadExecutor).exceptionally(throwable -> {
-                throwable.printStackTrace();
-                return null;
-            });
+            mViewModel.setIsBookmarked(SessionStore.get().getBookmarkStore().isBookmarked(url));
         }
     }
 
@@ -1973,17 +1961,15 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
             return GeckoResult.fromValue(new boolean[]{});
         }
 
-        GeckoResult<boolean[]> result = new GeckoResult<>();
+        CompletableFuture<boolean[]> visited = SessionStore.get().getHistoryStore().getVisited(urls);
+        if (visited.isDone() && !visited.isCompletedExceptionally()) {
+            // None of the URLs could have been visited, no need to wait for Places.
+            return GeckoResult.fromValue(visited.join());
+        }
 
-        SessionStore.get().getHistoryStore().getVisited(Arrays.asList(urls)).thenAcceptAsync(list -> {
-            final boolean[] primitives = new boolean[list.size()];
-            int index = 0;
-            for (Boolean object : list) {
-                primitives[index++] = object;
-            }
-            result.complete(primitives);
+        GeckoResult<boolean[]> result = new GeckoResult<>();
 
-        }, mUIThreadExecutor).exceptionally(throwable -> {
+        visited.thenAcceptAsync(result::complete, mUIThreadExecutor).exceptionally(throwable -> {
             Log.d(LOGTAG, "Error getting history: " + throwable.getLocalizedMessage());
             throwable.printStackTrace();
             return null;
@@ -7,12 +7,10 @@ import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 
 import org.jetbrains.annotations.NotNull;
 import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.vrbrowser.AppExecutors;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserApplication;
 import org.mozilla.vrbrowser.browser.Accounts;
@@ -36,16 +34,11 @@ import org.mozilla.vrbrowser.utils.StringUtils;
 import org.mozilla.vrbrowser.utils.SystemUtils;
 import org.mozilla.vrbrowser.utils.UrlUtils;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import mozilla.components.concept.sync.AccountObserver;
@@ -72,7 +65,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     public static final int OPEN_IN_NEW_WINDOW = 2;
 
 
-    private static final String WINDOWS_SAVE_FILENAME = "windows_state.json";
+    // Number of saved tabs restored per UI loop iteration.
+    private static final int RESTORE_TABS_BATCH_SIZE = 10;
 
     private static final int TAB_ADDED_NOTIFICATION_ID = 0;
     private static final int TAB_SENT_NOTIFICATION_ID = 1;
@@ -140,6 +134,9 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     private PromptDialogWidget mNoInternetDialog;
     private boolean mCompositorPaused = false;
     private WindowsState mWindowsState;
+    private WindowsStateStore mStateStore;
+    private boolean mRestoringTabs;
+    private Executor mMainExecutor;
     private boolean mIsRestoreEnabled;
     private boolean mAfterRestore;
     private String mAddedTabUri;
@@ -199,58 +196,54 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         mDownloadsManager = mWidgetManager.getServicesProvider().getDownloadsManager();
 
         mIsRestoreEnabled = SettingsStore.getInstance(mContext).isRestoreTabsEnabled();
-        mWindowsState = restoreState();
+        AppExecutors executors = ((VRBrowserApplication)mContext.getApplicationContext()).getExecutors();
+        mMainExecutor = executors.mainThread();
+        mStateStore = new WindowsStateStore(mContext, executors.diskIO(), this::getStateSnapshot);
+        mWindowsState = mStateStore.load();
         restoreWindows();
     }
 
     public void saveState() {
-        File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
-        try (Writer writer = new FileWriter(file)) {
-            WindowsState state = new WindowsState();
-            state.privateMode = mPrivateMode;
-            state.focusedWindowPlacement = mFocusedWindow.isFullScreen() ?  mFocusedWindow.getWindowPlacementBeforeFullscreen() : mFocusedWindow.getWindowPlacement();
-            ArrayList<Session> sessions = SessionStore.get().getSortedSessions(false);
-            state.tabs = sessions.stream()
-                    .map(Session::getSessionState)
-                    .filter(sessionState -> HistoryStore.getBLOCK_LIST().stream().noneMatch(uri ->
-                        sessionState.mUri != null && sessionState.mUri.startsWith(uri)
-                    ))
-                    .collect(Collectors.toCollection(ArrayList::new));
-            for (WindowWidget window : mRegularWindows) {
-                if (window.getSession() != null) {
-                    WindowState windowState = new WindowState();
-                    windowState.load(window, state, state.tabs.indexOf(window.getSession().getSessionState()));
-                    state.regularWindowsState.add(windowState);
-                }
-            }
-            Gson gson = new GsonBuilder().setPrettyPrinting().create();
-            gson.toJson(state, writer);
-            writer.flush();
-
-            Log.d(LOGTAG, "Windows state saved");
-
-        } catch (IOException e) {
-            Log.e(LOGTAG, "Error saving windows state: " + e.getLocalizedMessage());
-            file.delete();
-        }
+        mStateStore.save();
     }
 
-    private WindowsState restoreState() {
-        WindowsState restored = null;
-
-        File file = new File(mContext.getFilesDir(), WINDOWS_SAVE_FILENAME);
-        try (Reader reader = new FileReader(file)) {
-            Gson gson = new GsonBuilder().create();
-            Type type = new TypeToken<WindowsState>() {}.getType();
-            restored = gson.fromJson(reader, type);
+    public void saveStateNow() {
+        mStateStore.saveNow();
+    }
 
-            Log.d(LOGTAG, "Windows state restored");
+    /**
+     * Saves the windows state and waits until it's on disk. Used right before the process exits.
+     */
+    public void flushState() {
+        mStateStore.flush();
+    }
 
-        } catch (Exception e) {
-            file.delete();
+    private WindowsStateStore.Snapshot getStateSnapshot() {
+        if (mFocusedWindow == null || mRestoringTabs) {
+            // Do not overwrite the saved tabs until all of them have been restored.
+            return null;
         }
+        WindowsStateStore.Snapshot snapshot = new WindowsStateStore.Snapshot();
+        WindowsState state = new WindowsState();
+        state.privateMode = mPrivateMode;
+        state.focusedWindowPlacement = mFocusedWindow.isFullScreen() ?  mFocusedWindow.getWindowPlacementBeforeFullscreen() : mFocusedWindow.getWindowPlacement();
+        ArrayList<Session> sessions = SessionStore.get().getSortedSessions(false);
+        snapshot.tabs = sessions.stream()
+                .map(Session::getSessionState)
+                .filter(sessionState -> !HistoryStore.isBlocked(sessionState.mUri))
+                .collect(Collectors.toCollection(ArrayList::new));
+        for (WindowWidget window : mRegularWindows) {
+            if (window.getSession() != null) {
+                WindowState windowState = new WindowState();
+                windowState.load(window, state, snapshot.tabs.indexOf(window.getSession().getSessionState()));
+                state.regularWindowsState.add(windowState);
+            }
+        }
+        // Tabs are stored separately by the WindowsStateStore.
+        state.tabs = null;
+        snapshot.state = state;
 
-        return restored;
+        return snapshot;
     }
 
     public void setDelegate(Delegate aDelegate) {
@@ -501,7 +494,7 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     public void onPause() {
         mIsPaused = true;
 
-        saveState();
+        saveStateNow();
     }
 
     public void onResume() {
@@ -519,6 +512,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     }
 
     public void onDestroy() {
+        // The process exits right after, so pending saves would be lost.
+        flushState();
         if (mTabsWidget != null && !mTabsWidget.isReleased()) {
             mTabsWidget.releaseWidget();
             mTabsWidget = null;
@@ -768,31 +763,37 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     }
 
     public void restoreSessions() {
+        CompletableFuture<ArrayList<SessionState>> loadedTabs = mStateStore.getLoadedTabs();
+        if (mIsRestoreEnabled && mWindowsState != null && !loadedTabs.isDone()) {
+            // The tabs are still being parsed, don't save the state until they are restored.
+            mRestoringTabs = true;
+            loadedTabs.thenAcceptAsync(this::restoreSessions, mMainExecutor);
+        } else {
+            restoreSessions(loadedTabs.join());
+        }
+    }
+
+    private void restoreSessions(@NonNull List<SessionState> aTabs) {
         if (mIsRestoreEnabled && mWindowsState != null) {
-            ArrayList<Session> restoredSessions = new ArrayList<>();
-            if (mWindowsState.tabs != null) {
-                mWindowsState.tabs.forEach(state -> {
-                    restoredSessions.add(SessionStore.get().createSuspendedSession(state));
-                    GleanMetricsService.Tabs.openedCounter(GleanMetricsService.Tabs.TabSource.PRE_EXISTING);
-                });
+            final List<SessionState> tabs = aTabs;
+            final Session[] restoredSessions = new Session[tabs.size()];
+
+            // Restore the focused window first so its active tab starts loading right away,
+            // the other windows and the rest of the tabs are restored progressively.
+            final ArrayList<WindowState> windowStates = new ArrayList<>(mWindowsState.regularWindowsState);
+            final WindowPlacement focusedPlacement = mWindowsState.focusedWindowPlacement;
+            windowStates.sort((w1, w2) -> Boolean.compare(w2.placement == focusedPlacement, w1.placement == focusedPlacement));
+            if (!windowStates.isEmpty()) {
+                restoreWindowSession(windowStates.remove(0), tabs, restoredSessions);
             }
 
-            for (WindowState windowState : mWindowsState.regularWindowsState) {
-                WindowWidget targetWindow = getWindowWithPlacement(windowState.placement);
-                if (targetWindow != null) {
-                    if (windowState.tabIndex >= 0 && windowState.tabIndex < restoredSessions.size()) {
-                        Session defaultSession = targetWindow.getSession();
-                        Session session = restoredSessions.get(windowState.tabIndex);
-                        targetWindow.setSession(session, WindowWidget.DEACTIVATE_CURRENT_SESSION);
-                        session.setActive(true);
-                        // Destroy the default blank session
-                        SessionStore.get().destroySession(defaultSession);
-
-                    } else {
-                        targetWindow.loadHome();
-                    }
+            mRestoringTabs = true;
+            mMainExecutor.execute(() -> {
+                for (WindowState windowState : windowStates) {
+                    restoreWindowSession(windowState, tabs, restoredSessions);
                 }
-            }
+                restoreTabs(tabs, restoredSessions, 0);
+            });
 
             if (mWindowsState.privateMode) {
                 enterPrivateMode();
@@ -815,6 +816,52 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         mAfterRestore = true;
     }
 
+    @Nullable
+    private Session restoreTab(@NonNull List<SessionState> aTabs, @NonNull Session[] aRestoredSessions, int aIndex) {
+        SessionState state = aTabs.get(aIndex);
+        if (aRestoredSessions[aIndex] == null && state != null) {
+            aRestoredSessions[aIndex] = SessionStore.get().createSuspendedSession(state);
+            GleanMetricsService.Tabs.openedCounter(GleanMetricsService.Tabs.TabSource.PRE_EXISTING);
+        }
+        return aRestoredSessions[aIndex];
+    }
+
+    private void restoreWindowSession(@NonNull WindowState aWindowState, @NonNull List<SessionState> aTabs, @NonNull Session[] aRestoredSessions) {
+        WindowWidget targetWindow = getWindowWithPlacement(aWindowState.placement);
+        if (targetWindow == null) {
+            return;
+        }
+        Session session = null;
+        if (aWindowState.tabIndex >= 0 && aWindowState.tabIndex < aTabs.size()) {
+            session = restoreTab(aTabs, aRestoredSessions, aWindowState.tabIndex);
+        }
+        if (session != null) {
+            Session defaultSession = targetWindow.getSession();
+            targetWindow.setSession(session, WindowWidget.DEACTIVATE_CURRENT_SESSION);
+            session.setActive(true);
+            // Destroy the default blank session
+            SessionStore.get().destroySession(defaultSession);
+
+        } else {
+            targetWindow.loadHome();
+        }
+    }
+
+    private void restoreTabs(@NonNull List<SessionState> aTabs, @NonNull Session[] aRestoredSessions, int aStart) {
+        int end = Math.min(aStart + RESTORE_TABS_BATCH_SIZE, aTabs.size());
+        for (int i = aStart; i < end; i++) {
+            restoreTab(aTabs, aRestoredSessions, i);
+        }
+        if (end < aTabs.size()) {
+            mMainExecutor.execute(() -> restoreTabs(aTabs, aRestoredSessions, end));
+        } else {
+            mRestoringTabs = false;
+            if (mTabsWidget != null && mTabsWidget.isVisible()) {
+                mTabsWidget.refreshTabs();
+            }
+        }
+    }
+
     private void removeWindow(@NonNull WindowWidget aWindow) {
         BitmapCache.getInstance(mContext).removeBitmap(aWindow.getSession().getId());
         mWidgetManager.removeWidget(aWindow);
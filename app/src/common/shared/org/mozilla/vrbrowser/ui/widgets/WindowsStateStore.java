@@ -0,0 +1,317 @@
+package org.mozilla.vrbrowser.ui.widgets;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.mozilla.vrbrowser.browser.engine.SessionState;
+import org.mozilla.vrbrowser.utils.SystemUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Persists the windows state on a background executor.
+ *
+ * The state is stored in a length-prefixed binary file: a small JSON header with the windows
+ * placement followed by a JSON blob and a history blob per tab. Tab blobs are cached between saves
+ * so only the sessions that changed since the last save are serialized again. The history blob is
+ * handed back to the SessionState unparsed on load, it is only parsed when the tab is restored.
+ * Only the header is read on the UI thread, the tabs are parsed on the background executor. Save
+ * requests are debounced and files are replaced atomically. The legacy JSON file is still read
+ * when no binary file exists.
+ */
+class WindowsStateStore {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(WindowsStateStore.class);
+
+    private static final String SAVE_FILENAME = "windows_state.bin";
+    private static final String LEGACY_SAVE_FILENAME = "windows_state.json";
+    private static final int MAGIC = 0x46525753; // FRWS
+    private static final int VERSION = 2;
+    private static final long DEBOUNCE_MS = 500;
+    private static final long FLUSH_TIMEOUT_MS = 2000;
+
+    static class Snapshot {
+        Windows.WindowsState state;
+        List<SessionState> tabs;
+    }
+
+    private static class TabEntry {
+        // Copy of the persisted fields that were serialized.
+        final SessionState state;
+        final byte[] data;
+        final byte[] history;
+
+        TabEntry(SessionState aState, byte[] aData, byte[] aHistory) {
+            state = aState;
+            data = aData;
+            history = aHistory;
+        }
+    }
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private Context mContext;
+    private Executor mIOExecutor;
+    private Supplier<Snapshot> mSnapshotProvider;
+    private Handler mHandler;
+    private Gson mGson;
+    // Serialized tabs by session id. Written on the IO executor, read on the UI thread to detect changes.
+    private ConcurrentHashMap<String, TabEntry> mTabEntries = new ConcurrentHashMap<>();
+    private Runnable mSaveRunnable = this::saveNow;
+    private CompletableFuture<ArrayList<SessionState>> mLoadedTabs = CompletableFuture.completedFuture(new ArrayList<>());
+
+    WindowsStateStore(@NonNull Context aContext, @NonNull Executor aIOExecutor, @NonNull Supplier<Snapshot> aSnapshotProvider) {
+        mContext = aContext;
+        mIOExecutor = aIOExecutor;
+        mSnapshotProvider = aSnapshotProvider;
+        mHandler = new Handler(Looper.getMainLooper());
+        mGson = new GsonBuilder().create();
+    }
+
+    /**
+     * Requests a save. Consecutive requests are coalesced into a single write.
+     */
+    void save() {
+        mHandler.removeCallbacks(mSaveRunnable);
+        mHandler.postDelayed(mSaveRunnable, DEBOUNCE_MS);
+    }
+
+    /**
+     * Saves the current state without waiting for the debounce delay. Must be called from the UI thread.
+     */
+    void saveNow() {
+        scheduleWrite();
+    }
+
+    /**
+     * Saves the current state and blocks until it, and any save queued before it, is on disk.
+     * Must be called from the UI thread, before the process gets killed.
+     */
+    void flush() {
+        try {
+            scheduleWrite().get(FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Log.e(LOGTAG, "Error flushing windows state: " + e.getLocalizedMessage());
+        }
+    }
+
+    @NonNull
+    private CompletableFuture<Void> scheduleWrite() {
+        mHandler.removeCallbacks(mSaveRunnable);
+        Snapshot snapshot = mSnapshotProvider.get();
+        if (snapshot == null) {
+            // Nothing new to save, but callers may still wait for the queued saves.
+            return CompletableFuture.runAsync(() -> {}, mIOExecutor);
+        }
+
+        // Only copy the sessions that changed, the rest is reused from the previous save.
+        final List<String> ids = new ArrayList<>(snapshot.tabs.size());
+        final List<SessionState> changed = new ArrayList<>();
+        for (SessionState tab : snapshot.tabs) {
+            ids.add(tab.mId);
+            TabEntry entry = mTabEntries.get(tab.mId);
+            if (entry == null || !entry.state.hasSamePersistedState(tab)) {
+                changed.add(tab.snapshot());
+            }
+        }
+        final String header = mGson.toJson(snapshot.state);
+
+        // The IO executor is serial, so this completes after every previously queued save.
+        return CompletableFuture.runAsync(() -> write(header, ids, changed), mIOExecutor);
+    }
+
+    private void write(@NonNull String aHeader, @NonNull List<String> aIds, @NonNull List<SessionState> aChanged) {
+        for (SessionState tab : aChanged) {
+            SessionState saved = tab.snapshot();
+            String history = tab.getGeckoSessionStateData();
+            tab.mSessionState = null;
+            tab.mSessionStateData = null;
+            byte[] data = mGson.toJson(tab).getBytes(StandardCharsets.UTF_8);
+            mTabEntries.put(tab.mId, new TabEntry(saved, data, history != null ? history.getBytes(StandardCharsets.UTF_8) : EMPTY));
+        }
+        Set<String> current = new HashSet<>(aIds);
+        mTabEntries.keySet().retainAll(current);
+
+        AtomicFile file = new AtomicFile(new File(mContext.getFilesDir(), SAVE_FILENAME));
+        FileOutputStream stream = null;
+        try {
+            stream = file.startWrite();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeBlob(out, aHeader.getBytes(StandardCharsets.UTF_8));
+            out.writeInt(aIds.size());
+            for (String id : aIds) {
+                TabEntry entry = mTabEntries.get(id);
+                writeBlob(out, entry != null ? entry.data : EMPTY);
+                writeBlob(out, entry != null ? entry.history : EMPTY);
+            }
+            out.flush();
+            file.finishWrite(stream);
+
+            new File(mContext.getFilesDir(), LEGACY_SAVE_FILENAME).delete();
+
+            Log.d(LOGTAG, "Windows state saved, " + aChanged.size() + " of " + aIds.size() + " tabs serialized");
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Error saving windows state: " + e.getLocalizedMessage());
+            if (stream != null) {
+                file.failWrite(stream);
+            }
+        }
+    }
+
+    private static void writeBlob(@NonNull DataOutputStream aStream, @NonNull byte[] aData) throws IOException {
+        aStream.writeInt(aData.length);
+        aStream.write(aData);
+    }
+
+    private static byte[] readBlob(@NonNull DataInputStream aStream) throws IOException {
+        byte[] data = new byte[aStream.readInt()];
+        aStream.readFully(data);
+        return data;
+    }
+
+    /**
+     * Reads the windows placement from the saved state. The tabs are parsed afterwards on the IO
+     * executor, use {@link #getLoadedTabs()} to get them.
+     */
+    @Nullable
+    Windows.WindowsState load() {
+        File file = new File(mContext.getFilesDir(), SAVE_FILENAME);
+        // AtomicFile keeps a backup file while a write is in progress.
+        if (file.exists() || new File(file.getPath() + ".bak").exists()) {
+            return loadBinary(file);
+        }
+        return loadLegacy(new File(mContext.getFilesDir(), LEGACY_SAVE_FILENAME));
+    }
+
+    /**
+     * @return The tabs of the state returned by {@link #load()}. Entries that can not be restored
+     * are null so the tab indexes stored in the windows state stay valid.
+     */
+    @NonNull
+    CompletableFuture<ArrayList<SessionState>> getLoadedTabs() {
+        return mLoadedTabs;
+    }
+
+    @Nullable
+    private Windows.WindowsState loadBinary(@NonNull File aFile) {
+        AtomicFile file = new AtomicFile(aFile);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown windows state format");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unknown windows state version: " + version);
+            }
+            Windows.WindowsState restored = mGson.fromJson(new String(readBlob(in), StandardCharsets.UTF_8), Windows.WindowsState.class);
+            restored.tabs = null;
+
+            // The header is small, the tabs are streamed from the same file on the IO executor.
+            // Saves are queued on the same executor so they can't overwrite the file before it's read.
+            final DataInputStream tabsStream = in;
+            mLoadedTabs = CompletableFuture.supplyAsync(() -> loadTabs(file, tabsStream), mIOExecutor);
+
+            Log.d(LOGTAG, "Windows state restored");
+            return restored;
+
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Error restoring windows state: " + e.getLocalizedMessage());
+            closeQuietly(in);
+            file.delete();
+            return null;
+        }
+    }
+
+    @NonNull
+    private ArrayList<SessionState> loadTabs(@NonNull AtomicFile aFile, @NonNull DataInputStream aStream) {
+        ArrayList<SessionState> tabs = new ArrayList<>();
+        try (DataInputStream in = aStream) {
+            int count = in.readInt();
+            tabs.ensureCapacity(count);
+            for (int i = 0; i < count; i++) {
+                byte[] data = readBlob(in);
+                byte[] history = readBlob(in);
+                SessionState tab = data.length > 0 ? mGson.fromJson(new String(data, StandardCharsets.UTF_8), SessionState.class) : null;
+                // Keep the indexes used by the windows state even when a tab can not be restored.
+                tabs.add(tab);
+                if (tab != null) {
+                    tab.mSessionStateData = history.length > 0 ? new String(history, StandardCharsets.UTF_8) : null;
+                    mTabEntries.put(tab.mId, new TabEntry(tab.snapshot(), data, history));
+                }
+            }
+
+            Log.d(LOGTAG, "Windows state tabs restored");
+
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Error restoring windows state tabs: " + e.getLocalizedMessage());
+            tabs.clear();
+            mTabEntries.clear();
+            aFile.delete();
+        }
+        return tabs;
+    }
+
+    private static void closeQuietly(@Nullable DataInputStream aStream) {
+        if (aStream != null) {
+            try {
+                aStream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Nullable
+    private Windows.WindowsState loadLegacy(@NonNull File aFile) {
+        Windows.WindowsState restored = null;
+        try (Reader reader = new FileReader(aFile)) {
+            restored = mGson.fromJson(reader, Windows.WindowsState.class);
+            // One time migration, the legacy file stores the tabs inline so they are already parsed.
+            if (restored != null && restored.tabs != null) {
+                mLoadedTabs = CompletableFuture.completedFuture(restored.tabs);
+                restored.tabs = null;
+            }
+
+            Log.d(LOGTAG, "Windows state restored from legacy file");
+
+        } catch (Exception e) {
+            aFile.delete();
+        }
+
+        return restored;
+    }
+}
@@ -2,8 +2,8 @@ package org.mozilla.vrbrowser.utils;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.SurfaceTexture;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.LruCache;
 import android.view.Surface;
@@ -15,19 +15,57 @@ import com.jakewharton.disklrucache.DiskLruCache;
 
 import org.mozilla.vrbrowser.VRBrowserApplication;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.WeakHashMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class BitmapCache {
     private Context mContext;
     private LruCache<String, Bitmap> mMemoryCache;
-    private DiskLruCache mDiskCache;
+    private final File mDiskCacheDir;
+    private volatile DiskLruCache mDiskCache;
+    private final CompletableFuture<Void> mDiskCacheReady = new CompletableFuture<>();
     private Executor mIOExecutor;
     private Executor mMainThreadExecutor;
-    private final Object mLock = new Object();
+    // Disk operations on the same key are serialized, different keys can run in parallel.
+    private static final int LOCK_STRIPES = 16;
+    private final Object[] mLocks = new Object[LOCK_STRIPES];
+    // Latest snapshot waiting to be written for each key. A newer capture replaces a pending one.
+    private final ConcurrentHashMap<String, Bitmap> mPendingWrites = new ConcurrentHashMap<>();
+    // Disk reads in progress, so several requests of the same key share a single decode. Guarded by itself.
+    private final HashMap<String, PendingRead> mPendingReads = new HashMap<>();
+    private Set<String> mPrefetchKeys = Collections.emptySet();
     private static final int DISK_CACHE_SIZE = 1024 * 1024 * 100; // 100MB
+    // Rough size of a 500px wide tab snapshot, used until real entries have been measured.
+    private static final int DEFAULT_ENTRY_SIZE_KB = 550;
+    // Room kept for non tab entries (environment thumbnails, prompt icons...).
+    private static final int EXTRA_ENTRIES = 8;
+    // Number of grid pages kept in memory around the visible one.
+    private static final int PREFETCH_PAGES = 2;
+    // Max width or height of the captured tab thumbnails.
+    public static final int THUMBNAIL_MAX_SIZE = 500;
+    private static final int CAPTURE_POOL_SIZE = 4;
+    private final ArrayDeque<Bitmap> mCapturePool = new ArrayDeque<>();
+    private final Set<Bitmap> mCaptureBitmaps = Collections.newSetFromMap(new WeakHashMap<>());
+    private CompletableFuture<Void> mCaptureQueue = CompletableFuture.completedFuture(null);
+    private int mMaxMemoryCacheSize;
+    private SnapshotCodec mCodec = new SnapshotCodec.WebP(80);
+    private final Stats mStats = new Stats();
     private static final String LOGTAG = SystemUtils.createLogtag(BitmapCache.class);
     private SurfaceTexture mCaptureSurfaceTexture;
     private Surface mCaptureSurface;
@@ -38,9 +76,17 @@ public class BitmapCache {
     }
 
     public BitmapCache(@NonNull Context aContext, @NonNull Executor aIOExecutor, @NonNull Executor aMainThreadExecutor) {
+        this(aContext, aIOExecutor, aMainThreadExecutor, new File(aContext.getCacheDir(), "snapshots"));
+    }
+
+    BitmapCache(@NonNull Context aContext, @NonNull Executor aIOExecutor, @NonNull Executor aMainThreadExecutor, @NonNull File aDiskCacheDir) {
         mContext = aContext;
+        mDiskCacheDir = aDiskCacheDir;
         mIOExecutor = aIOExecutor;
         mMainThreadExecutor = aMainThreadExecutor;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            mLocks[i] = new Object();
+        }
     }
 
     public void onCreate() {
@@ -52,7 +98,8 @@ public class BitmapCache {
         // Get  available VM memory in KB.
         final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
         // Use 1/8th of the available memory for this memory cache.
-        final int cacheSize = maxMemory / 8;
+        mMaxMemoryCacheSize = maxMemory / 8;
+        final int cacheSize = mMaxMemoryCacheSize;
 
         mMemoryCache = new LruCache<String, Bitmap>(cacheSize) {
             @Override
@@ -60,30 +107,87 @@ public class BitmapCache {
                 // Use KB as the size of the item
                 return bitmap.getByteCount() / 1024;
             }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                // Evicted bitmaps might still be displayed, but a replaced tab snapshot is not
+                // referenced anymore once the BitmapChangedListeners have been notified.
+                // Release it once any disk write using it has finished.
+                if (!evicted && newValue != null && newValue != oldValue) {
+                    runIO(key, () -> {
+                        if (mPendingWrites.get(key) != oldValue) {
+                            releaseCaptureBitmap(oldValue);
+                        }
+                    });
+                }
+            }
         };
     }
 
     void initDiskCache() {
-        String path = mContext.getCacheDir() + File.separator + "snapshots";
         mIOExecutor.execute(() -> {
             try {
-                mDiskCache = DiskLruCache.open(new File(path), 1, 1, DISK_CACHE_SIZE);
+                mDiskCache = DiskLruCache.open(mDiskCacheDir, 1, 1, DISK_CACHE_SIZE);
             }
             catch (Exception ex) {
                 Log.e(LOGTAG, "Failed to initialize DiskLruCache:" + ex.getMessage());
             }
+            mDiskCacheReady.complete(null);
         });
     }
 
+    /**
+     * Sets the codec used to write new snapshots to disk. Entries written with a different codec
+     * can still be read.
+     */
+    public void setCodec(@NonNull SnapshotCodec aCodec) {
+        mCodec = aCodec;
+    }
+
+    /**
+     * Resizes the memory tier so it holds the visible tabs plus a couple of grid pages around them,
+     * instead of a fixed fraction of the heap. The size is never allowed to grow over 1/8th of the
+     * available memory.
+     * @param aTabCount Total number of tabs that may be displayed.
+     * @param aVisibleTabs Number of tabs visible at once in the tabs grid.
+     */
+    public void updateMemoryBudget(int aTabCount, int aVisibleTabs) {
+        int entries = Math.min(aTabCount, aVisibleTabs * (1 + PREFETCH_PAGES)) + EXTRA_ENTRIES;
+        int budget = Math.min(entries * mStats.getAverageEntrySizeKB(DEFAULT_ENTRY_SIZE_KB), mMaxMemoryCacheSize);
+        if (budget != mMemoryCache.maxSize()) {
+            mMemoryCache.resize(budget);
+        }
+    }
+
+    public @NonNull Stats getStats() {
+        return mStats;
+    }
+
     public void addBitmap(@NonNull String aKey, @NonNull Bitmap aBitmap) {
+        if (mPendingWrites.put(aKey, aBitmap) != null) {
+            mStats.mSupersededWrites.incrementAndGet();
+        }
         mMemoryCache.put(aKey, aBitmap);
-        runIO(() -> {
+        mStats.mEntrySizeBytes.addAndGet(aBitmap.getByteCount());
+        mStats.mEntrySizeSamples.incrementAndGet();
+        final SnapshotCodec codec = mCodec;
+        runIO(aKey, () -> {
+            // Write the latest snapshot for this key, if a previous task already wrote it there is nothing to do.
+            Bitmap bitmap = mPendingWrites.remove(aKey);
+            if (bitmap == null) {
+                return;
+            }
             DiskLruCache.Editor editor = null;
             try {
                 editor = mDiskCache.edit(aKey);
                 if (editor != null) {
-                    aBitmap.compress(Bitmap.CompressFormat.PNG, 80, editor.newOutputStream(0));
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    try (OutputStream out = new BufferedOutputStream(editor.newOutputStream(0))) {
+                        codec.encode(bitmap, out);
+                    }
                     editor.commit();
+                    mStats.mEncodes.incrementAndGet();
+                    mStats.mEncodeNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - start);
                 }
             }
             catch (Exception ex) {
@@ -101,43 +205,121 @@ public class BitmapCache {
     }
 
     public @NonNull CompletableFuture<Bitmap> getBitmap(@NonNull String aKey) {
+        return getBitmap(aKey, 0, 0);
+    }
+
+    /**
+     * Gets a bitmap, decoding it from disk at a reduced size if it's larger than needed.
+     * The decoded bitmap is kept in the memory cache, so only use a reduced size for keys that are
+     * always displayed at that size. Cancelling the returned future skips the disk read if no one
+     * else is waiting for it.
+     * @param aWidth Width the bitmap is displayed at, or 0 if it doesn't matter.
+     * @param aHeight Height the bitmap is displayed at, or 0 if it doesn't matter.
+     */
+    public @NonNull CompletableFuture<Bitmap> getBitmap(@NonNull String aKey, int aWidth, int aHeight) {
         Bitmap cached = mMemoryCache.get(aKey);
         if (cached != null) {
+            mStats.mMemoryHits.incrementAndGet();
             return CompletableFuture.completedFuture(cached);
-        } else {
-            CompletableFuture<Bitmap> result = new CompletableFuture<>();
-            runIO(() -> {
-                try (DiskLruCache.Snapshot snapshot = mDiskCache.get(aKey)){
-                    if (snapshot != null) {
-                        Bitmap bitmap = BitmapFactory.decodeStream(snapshot.getInputStream(0));
-                        if (bitmap != null) {
-                            mMainThreadExecutor.execute(() -> {
-                                if (mMemoryCache.get(aKey) == null) {
-                                    // Do not update cache if it already contains a value
-                                    // A tab could have saved a new image while we were loading the cached disk image.
-                                    mMemoryCache.put(aKey, bitmap);
-                                }
-                                result.complete(bitmap);
-                            });
-
-                            return;
-                        }
-                    }
+        }
+        Bitmap pending = mPendingWrites.get(aKey);
+        if (pending != null) {
+            mStats.mMemoryHits.incrementAndGet();
+            return CompletableFuture.completedFuture(pending);
+        }
+
+        CompletableFuture<Bitmap> result = new CompletableFuture<>();
+        synchronized (mPendingReads) {
+            PendingRead read = mPendingReads.get(aKey);
+            if (read == null) {
+                read = new PendingRead();
+                mPendingReads.put(aKey, read);
+                readBitmap(aKey, read, aWidth, aHeight);
+            }
+            read.callers.add(result);
+        }
+        return result;
+    }
+
+    /**
+     * Loads the bitmaps that are about to be displayed into the memory cache. Replaces the previous
+     * set of keys, so prefetches of keys that are not in the new set and haven't started yet are
+     * dropped. Pass an empty set to cancel them all.
+     */
+    public void prefetch(@NonNull Collection<String> aKeys, int aWidth, int aHeight) {
+        Set<String> keys = Collections.unmodifiableSet(new HashSet<>(aKeys));
+        synchronized (mPendingReads) {
+            mPrefetchKeys = keys;
+            for (String key : keys) {
+                if (mMemoryCache.get(key) != null || mPendingWrites.containsKey(key) || mPendingReads.containsKey(key)) {
+                    continue;
+                }
+                PendingRead read = new PendingRead();
+                mPendingReads.put(key, read);
+                readBitmap(key, read, aWidth, aHeight);
+            }
+        }
+    }
+
+    private static class PendingRead {
+        final ArrayList<CompletableFuture<Bitmap>> callers = new ArrayList<>();
+    }
+
+    private void readBitmap(@NonNull String aKey, @NonNull PendingRead aRead, int aWidth, int aHeight) {
+        // Reads do not take the key lock, DiskLruCache only exposes committed entries.
+        runIO(() -> {
+            synchronized (mPendingReads) {
+                boolean wanted = mPrefetchKeys.contains(aKey);
+                for (CompletableFuture<Bitmap> caller : aRead.callers) {
+                    wanted |= !caller.isDone();
                 }
-                catch (Exception ex) {
-                    Log.e(LOGTAG, "Failed to get Bitmap from DiskLruCache:" + ex.getMessage());
+                if (!wanted) {
+                    // Scrolled out of view before its turn came.
+                    mPendingReads.remove(aKey);
+                    mStats.mCancelledReads.incrementAndGet();
+                    return;
                 }
+            }
 
-                mMainThreadExecutor.execute(() -> result.complete(null));
+            Bitmap bitmap = null;
+            long start = SystemClock.elapsedRealtimeNanos();
+            try (DiskLruCache.Snapshot snapshot = mDiskCache.get(aKey)){
+                if (snapshot != null) {
+                    bitmap = SnapshotCodec.decodeAny(snapshot.getInputStream(0), aWidth, aHeight);
+                }
+            }
+            catch (Exception ex) {
+                Log.e(LOGTAG, "Failed to get Bitmap from DiskLruCache:" + ex.getMessage());
+            }
 
+            if (bitmap != null) {
+                mStats.mDiskHits.incrementAndGet();
+                mStats.mDecodeNanos.addAndGet(SystemClock.elapsedRealtimeNanos() - start);
+            } else {
+                mStats.mMisses.incrementAndGet();
+            }
+
+            final Bitmap result = bitmap;
+            mMainThreadExecutor.execute(() -> {
+                if (result != null && mMemoryCache.get(aKey) == null) {
+                    // Do not update cache if it already contains a value
+                    // A tab could have saved a new image while we were loading the cached disk image.
+                    mMemoryCache.put(aKey, result);
+                }
+                synchronized (mPendingReads) {
+                    mPendingReads.remove(aKey);
+                }
+                for (CompletableFuture<Bitmap> caller : aRead.callers) {
+                    caller.complete(result);
+                }
             });
-            return result;
-        }
+        });
     }
 
     public void removeBitmap(@NonNull String aKey) {
         mMemoryCache.remove(aKey);
-        runIO(() -> {
+        mPendingWrites.remove(aKey);
+        runIO(aKey, () -> {
             try {
                 mDiskCache.remove(aKey);
             } catch (Exception ex) {
@@ -150,48 +332,94 @@ public class BitmapCache {
         return mMemoryCache.get(aKey) != null;
     }
 
-    private void runIO(Runnable aRunnable) {
-        mIOExecutor.execute(() -> {
+    private void runIO(@NonNull Runnable aRunnable) {
+        mDiskCacheReady.thenRunAsync(() -> {
             if (mDiskCache != null) {
-                synchronized (mLock) {
-                    aRunnable.run();
-                }
+                aRunnable.run();
+            }
+        }, mIOExecutor);
+    }
+
+    private void runIO(@NonNull String aKey, @NonNull Runnable aRunnable) {
+        runIO(() -> {
+            synchronized (mLocks[(aKey.hashCode() & Integer.MAX_VALUE) % LOCK_STRIPES]) {
+                aRunnable.run();
             }
         });
     }
 
-    public CompletableFuture<Bitmap> scaleBitmap(Bitmap aBitmap, int aMaxWidth, int aMaxHeight) {
-        int w = aBitmap.getWidth();
-        int h = aBitmap.getHeight();
-        if (w <= aMaxWidth && h <= aMaxHeight) {
-            return CompletableFuture.completedFuture(aBitmap);
+    /**
+     * Computes the size of the thumbnail captured for a display, keeping its aspect ratio.
+     * @return Array with the thumbnail width and height.
+     */
+    public static @NonNull int[] getThumbnailSize(int aDisplayWidth, int aDisplayHeight) {
+        if (aDisplayWidth <= THUMBNAIL_MAX_SIZE && aDisplayHeight <= THUMBNAIL_MAX_SIZE) {
+            return new int[]{ Math.max(aDisplayWidth, 1), Math.max(aDisplayHeight, 1) };
         }
+        float aspect = (float)aDisplayWidth / (float)aDisplayHeight;
+        if (aDisplayWidth >= aDisplayHeight) {
+            return new int[]{ THUMBNAIL_MAX_SIZE, Math.max((int)(THUMBNAIL_MAX_SIZE / aspect), 1) };
+        } else {
+            return new int[]{ Math.max((int)(THUMBNAIL_MAX_SIZE * aspect), 1), THUMBNAIL_MAX_SIZE };
+        }
+    }
 
-        float aspect = (float)w / (float)h;
+    /**
+     * Returns a mutable bitmap to be used as a capture target. Bitmaps previously replaced in the
+     * cache are reused when they are large enough, so consecutive captures do not allocate.
+     * The bitmap must be either added to the cache or given back with {@link #releaseCaptureBitmap(Bitmap)}.
+     */
+    public @NonNull Bitmap acquireCaptureBitmap(int aWidth, int aHeight) {
+        Bitmap bitmap = null;
+        synchronized (mCapturePool) {
+            Iterator<Bitmap> it = mCapturePool.iterator();
+            while (it.hasNext()) {
+                Bitmap pooled = it.next();
+                if (pooled.getAllocationByteCount() >= aWidth * aHeight * 4) {
+                    it.remove();
+                    bitmap = pooled;
+                    break;
+                }
+            }
+        }
 
-        if (w / aMaxWidth > h / aMaxHeight) {
-            w = aMaxWidth;
-            h = (int) (w / aspect);
+        if (bitmap != null) {
+            if (bitmap.getWidth() != aWidth || bitmap.getHeight() != aHeight) {
+                bitmap.reconfigure(aWidth, aHeight, Bitmap.Config.ARGB_8888);
+            }
+            mStats.mPoolHits.incrementAndGet();
         } else {
-            h = aMaxHeight;
-            w = (int)(h * aspect);
+            bitmap = Bitmap.createBitmap(aWidth, aHeight, Bitmap.Config.ARGB_8888);
+            mStats.mPoolMisses.incrementAndGet();
+        }
+        synchronized (mCaptureBitmaps) {
+            mCaptureBitmaps.add(bitmap);
         }
 
-        final int scaledW = w;
-        final int scaleH = h;
-        CompletableFuture<Bitmap> result = new CompletableFuture<>();
+        return bitmap;
+    }
 
-        runIO(() -> {
-            Bitmap scaled = Bitmap.createScaledBitmap(aBitmap, scaledW, scaleH, true);
-            if (scaled != null && scaled != aBitmap) {
-                aBitmap.recycle();
-                mMainThreadExecutor.execute(() -> result.complete(scaled));
-            } else {
-                mMainThreadExecutor.execute(() -> result.complete(aBitmap));
+    public void releaseCaptureBitmap(@NonNull Bitmap aBitmap) {
+        synchronized (mCaptureBitmaps) {
+            if (!mCaptureBitmaps.contains(aBitmap)) {
+                // Only recycle bitmaps that were created by the pool, other bitmaps may still be in use.
+                return;
             }
-        });
+        }
+        synchronized (mCapturePool) {
+            if (mCapturePool.size() < CAPTURE_POOL_SIZE && aBitmap.isMutable() && !aBitmap.isRecycled()) {
+                mCapturePool.add(aBitmap);
+            }
+        }
+    }
 
-        return result;
+    /**
+     * Runs the capture after the previous background captures have finished, so several sessions
+     * can be captured in a row using the single shared capture surface.
+     */
+    public @NonNull CompletableFuture<Void> scheduleCapture(@NonNull Supplier<CompletableFuture<Void>> aCapture) {
+        mCaptureQueue = mCaptureQueue.handle((aVoid, throwable) -> null).thenCompose(aVoid -> aCapture.get());
+        return mCaptureQueue;
     }
 
     public void setCaptureSurface(SurfaceTexture aSurfaceTexture) {
@@ -216,6 +444,7 @@ public class BitmapCache {
         if (mDiskCache != null) {
             runIO(() -> {
                 try {
+                    // Pending operations on other threads fail gracefully once the cache is closed.
                     mDiskCache.close();
                 } catch (IOException ex) {
                     Log.e(LOGTAG, "Failed to close DiskLruCache:" + ex.getMessage());
@@ -223,6 +452,9 @@ public class BitmapCache {
                 mDiskCache = null;
             });
         }
+        synchronized (mCapturePool) {
+            mCapturePool.clear();
+        }
         if (mCaptureSurface != null) {
             mCaptureSurface.release();
             mCaptureSurface = null;
@@ -232,4 +464,97 @@ public class BitmapCache {
             mCaptureSurfaceTexture = null;
         }
     }
+
+    /**
+     * Hit, miss and latency counters of the cache. All the values are cumulative since the cache was
+     * created or {@link #reset()} was called.
+     */
+    public static class Stats {
+        private final AtomicLong mMemoryHits = new AtomicLong();
+        private final AtomicLong mDiskHits = new AtomicLong();
+        private final AtomicLong mMisses = new AtomicLong();
+        private final AtomicLong mCancelledReads = new AtomicLong();
+        private final AtomicLong mDecodeNanos = new AtomicLong();
+        private final AtomicLong mEncodes = new AtomicLong();
+        private final AtomicLong mEncodeNanos = new AtomicLong();
+        private final AtomicLong mEntrySizeBytes = new AtomicLong();
+        private final AtomicLong mEntrySizeSamples = new AtomicLong();
+        private final AtomicLong mSupersededWrites = new AtomicLong();
+        private final AtomicLong mPoolHits = new AtomicLong();
+        private final AtomicLong mPoolMisses = new AtomicLong();
+
+        public long getMemoryHits() {
+            return mMemoryHits.get();
+        }
+
+        public long getDiskHits() {
+            return mDiskHits.get();
+        }
+
+        public long getMisses() {
+            return mMisses.get();
+        }
+
+        public long getCancelledReads() {
+            return mCancelledReads.get();
+        }
+
+        public float getAverageDecodeMs() {
+            long hits = mDiskHits.get();
+            return hits > 0 ? mDecodeNanos.get() / (hits * 1e6f) : 0.0f;
+        }
+
+        public long getEncodes() {
+            return mEncodes.get();
+        }
+
+        public float getAverageEncodeMs() {
+            long encodes = mEncodes.get();
+            return encodes > 0 ? mEncodeNanos.get() / (encodes * 1e6f) : 0.0f;
+        }
+
+        public long getSupersededWrites() {
+            return mSupersededWrites.get();
+        }
+
+        public long getPoolHits() {
+            return mPoolHits.get();
+        }
+
+        public long getPoolMisses() {
+            return mPoolMisses.get();
+        }
+
+        int getAverageEntrySizeKB(int aDefault) {
+            long samples = mEntrySizeSamples.get();
+            return samples > 0 ? Math.max(1, (int) (mEntrySizeBytes.get() / samples / 1024)) : aDefault;
+        }
+
+        public void reset() {
+            mMemoryHits.set(0);
+            mDiskHits.set(0);
+            mMisses.set(0);
+            mCancelledReads.set(0);
+            mDecodeNanos.set(0);
+            mEncodes.set(0);
+            mEncodeNanos.set(0);
+            mSupersededWrites.set(0);
+            mPoolHits.set(0);
+            mPoolMisses.set(0);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "memoryHits=" + getMemoryHits() +
+                    " diskHits=" + getDiskHits() +
+                    " misses=" + getMisses() +
+                    " cancelledReads=" + getCancelledReads() +
+                    " decodeMs=" + getAverageDecodeMs() +
+                    " encodeMs=" + getAverageEncodeMs() +
+                    " supersededWrites=" + getSupersededWrites() +
+                    " poolHits=" + getPoolHits() +
+                    " poolMisses=" + getPoolMisses();
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package org.mozilla.vrbrowser.utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Probabilistic set of strings. {@link #mightContain(String)} never returns false for a string that
+ * was added, but may return true for one that wasn't, so positives have to be confirmed elsewhere.
+ * Strings can't be removed; the filter has to be rebuilt instead.
+ */
+public class BloomFilter {
+    // About 1% false positives when the filter holds its expected number of entries.
+    private static final int BITS_PER_ENTRY = 10;
+    private static final int HASH_COUNT = 7;
+
+    private final long[] mBits;
+    private final int mBitCount;
+    private final int mExpectedEntries;
+    private int mEntries;
+
+    /**
+     * @param aExpectedEntries Number of entries the filter is sized for. More can be added, at
+     *                         the cost of a higher false positive rate.
+     */
+    public BloomFilter(int aExpectedEntries) {
+        mExpectedEntries = Math.max(aExpectedEntries, 1);
+        mBits = new long[(int) (((long) mExpectedEntries * BITS_PER_ENTRY + 63) / 64)];
+        mBitCount = mBits.length * 64;
+    }
+
+    public synchronized void add(@NonNull String aValue) {
+        long hash1 = hash(aValue, 0xcbf29ce484222325L);
+        long hash2 = hash(aValue, 0x84222325cbf29ce4L) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = (int) Long.remainderUnsigned(hash1 + i * hash2, mBitCount);
+            mBits[bit >>> 6] |= 1L << bit;
+        }
+        mEntries++;
+    }
+
+    public synchronized boolean mightContain(@NonNull String aValue) {
+        long hash1 = hash(aValue, 0xcbf29ce484222325L);
+        long hash2 = hash(aValue, 0x84222325cbf29ce4L) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = (int) Long.remainderUnsigned(hash1 + i * hash2, mBitCount);
+            if ((mBits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True if more entries than expected have been added, so false positives are getting
+     * noticeably more frequent.
+     */
+    public synchronized boolean isSaturated() {
+        return mEntries > mExpectedEntries;
+    }
+
+    public synchronized int size() {
+        return mEntries;
+    }
+
+    // FNV-1a over the UTF-16 chars, followed by a final mix so nearby strings spread over the bits.
+    private static long hash(@NonNull String aValue, long aSeed) {
+        long hash = aSeed;
+        for (int i = 0; i < aValue.length(); i++) {
+            hash ^= aValue.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,77 @@
+package org.mozilla.vrbrowser.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+
+/**
+ * Matches strings against a fixed set of prefixes. The prefixes are compiled into a trie, so a
+ * lookup only walks the characters shared with the candidate prefixes instead of testing every
+ * prefix with {@link String#startsWith(String)}.
+ */
+public class PrefixMatcher {
+
+    private static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        boolean terminal;
+
+        @Nullable
+        Node get(char aKey) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == aKey) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        @NonNull
+        Node getOrAdd(char aKey) {
+            Node child = get(aKey);
+            if (child == null) {
+                int size = keys.length;
+                char[] newKeys = new char[size + 1];
+                Node[] newChildren = new Node[size + 1];
+                System.arraycopy(keys, 0, newKeys, 0, size);
+                System.arraycopy(children, 0, newChildren, 0, size);
+                child = new Node();
+                newKeys[size] = aKey;
+                newChildren[size] = child;
+                keys = newKeys;
+                children = newChildren;
+            }
+            return child;
+        }
+    }
+
+    private final Node mRoot = new Node();
+
+    public PrefixMatcher(@NonNull Collection<String> aPrefixes) {
+        for (String prefix : aPrefixes) {
+            Node node = mRoot;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.getOrAdd(prefix.charAt(i));
+            }
+            node.terminal = true;
+        }
+    }
+
+    /**
+     * @return true if the text starts with any of the prefixes.
+     */
+    public boolean matches(@Nullable String aText) {
+        if (aText == null) {
+            return false;
+        }
+        Node node = mRoot;
+        for (int i = 0; !node.terminal && i < aText.length(); i++) {
+            node = node.get(aText.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+        return node.terminal;
+    }
+}
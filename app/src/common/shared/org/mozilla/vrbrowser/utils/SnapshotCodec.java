@@ -0,0 +1,244 @@
+package org.mozilla.vrbrowser.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes and decodes the tab snapshots stored in the {@link BitmapCache} disk tier.
+ */
+public interface SnapshotCodec {
+
+    void encode(@NonNull Bitmap aBitmap, @NonNull OutputStream aStream) throws IOException;
+
+    @Nullable
+    Bitmap decode(@NonNull InputStream aStream) throws IOException;
+
+    /**
+     * Decodes any snapshot written by one of the codecs in this file. Raw snapshots are detected by
+     * their header, everything else (WebP and the PNG files written by older versions) is handed to
+     * {@link BitmapFactory}.
+     */
+    @Nullable
+    static Bitmap decodeAny(@NonNull InputStream aStream) throws IOException {
+        return decodeAny(aStream, 0, 0);
+    }
+
+    /**
+     * Same as {@link #decodeAny(InputStream)}, but subsamples the snapshot by the largest power of
+     * two that keeps it at least as large as the requested size.
+     * @param aMinWidth Minimum width of the decoded bitmap, or 0 if it doesn't matter.
+     * @param aMinHeight Minimum height of the decoded bitmap, or 0 if it doesn't matter.
+     */
+    @Nullable
+    static Bitmap decodeAny(@NonNull InputStream aStream, int aMinWidth, int aMinHeight) throws IOException {
+        BufferedInputStream stream = new BufferedInputStream(aStream);
+        stream.mark(Raw.MAGIC.length);
+        byte[] header = new byte[Raw.MAGIC.length];
+        int read = stream.read(header);
+        stream.reset();
+        if (read == Raw.MAGIC.length && Raw.hasMagic(header)) {
+            Bitmap bitmap = new Raw(Bitmap.Config.ARGB_8888, false).decode(stream);
+            if (bitmap == null) {
+                return null;
+            }
+            int sampleSize = getSampleSize(bitmap.getWidth(), bitmap.getHeight(), aMinWidth, aMinHeight);
+            if (sampleSize == 1) {
+                return bitmap;
+            }
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    bitmap.getWidth() / sampleSize, bitmap.getHeight() / sampleSize, true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+            }
+            return scaled;
+        }
+
+        if (aMinWidth <= 0 && aMinHeight <= 0) {
+            return BitmapFactory.decodeStream(stream);
+        }
+
+        // Read the bounds first to pick the sample size, then decode from the start again.
+        stream.mark(Integer.MAX_VALUE);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeStream(stream, null, options);
+        stream.reset();
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, aMinWidth, aMinHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeStream(stream, null, options);
+    }
+
+    static int getSampleSize(int aWidth, int aHeight, int aMinWidth, int aMinHeight) {
+        int sampleSize = 1;
+        if (aWidth <= 0 || aHeight <= 0 || (aMinWidth <= 0 && aMinHeight <= 0)) {
+            return sampleSize;
+        }
+        int minWidth = Math.max(aMinWidth, 1);
+        int minHeight = Math.max(aMinHeight, 1);
+        while ((aWidth / (sampleSize * 2)) >= minWidth && (aHeight / (sampleSize * 2)) >= minHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Lossy WebP. Much smaller and faster to encode than PNG for page snapshots.
+     */
+    class WebP implements SnapshotCodec {
+        private final int mQuality;
+
+        public WebP(int aQuality) {
+            mQuality = aQuality;
+        }
+
+        /**
+         * WEBP is deprecated since API 30, where it no longer says whether the quality is lossy
+         * or lossless. It is only used on older versions, where it always encodes lossy.
+         */
+        @SuppressWarnings("deprecation")
+        @NonNull
+        static Bitmap.CompressFormat getFormat() {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                return Bitmap.CompressFormat.WEBP_LOSSY;
+            }
+            return Bitmap.CompressFormat.WEBP;
+        }
+
+        @Override
+        public void encode(@NonNull Bitmap aBitmap, @NonNull OutputStream aStream) throws IOException {
+            if (!aBitmap.compress(getFormat(), mQuality, aStream)) {
+                throw new IOException("WebP compression failed");
+            }
+        }
+
+        @Nullable
+        @Override
+        public Bitmap decode(@NonNull InputStream aStream) {
+            return BitmapFactory.decodeStream(aStream);
+        }
+    }
+
+    /**
+     * Raw pixel dump (ARGB_8888 or RGB_565) with a small header. Encoding is a memory copy, optionally
+     * followed by a fastest-level deflate pass, so it is the cheapest option when CPU matters more
+     * than disk space.
+     */
+    class Raw implements SnapshotCodec {
+        static final byte[] MAGIC = { 'F', 'R', 'R', 'B' };
+        private static final int FLAG_COMPRESSED = 1;
+
+        private final Bitmap.Config mConfig;
+        private final boolean mCompressed;
+
+        public Raw(@NonNull Bitmap.Config aConfig, boolean aCompressed) {
+            if (aConfig != Bitmap.Config.ARGB_8888 && aConfig != Bitmap.Config.RGB_565) {
+                throw new IllegalArgumentException("Unsupported raw snapshot config: " + aConfig);
+            }
+            mConfig = aConfig;
+            mCompressed = aCompressed;
+        }
+
+        static boolean hasMagic(@NonNull byte[] aHeader) {
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (aHeader[i] != MAGIC[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void encode(@NonNull Bitmap aBitmap, @NonNull OutputStream aStream) throws IOException {
+            Bitmap source = aBitmap;
+            if (aBitmap.getConfig() != mConfig) {
+                source = aBitmap.copy(mConfig, false);
+                if (source == null) {
+                    throw new IOException("Failed to convert snapshot to " + mConfig);
+                }
+            }
+
+            try {
+                ByteBuffer pixels = ByteBuffer.allocate(source.getByteCount());
+                source.copyPixelsToBuffer(pixels);
+
+                DataOutputStream header = new DataOutputStream(aStream);
+                header.write(MAGIC);
+                header.writeByte(mCompressed ? FLAG_COMPRESSED : 0);
+                header.writeByte(mConfig == Bitmap.Config.RGB_565 ? 1 : 0);
+                header.writeInt(source.getWidth());
+                header.writeInt(source.getHeight());
+                header.flush();
+
+                if (mCompressed) {
+                    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                    try {
+                        DeflaterOutputStream out = new DeflaterOutputStream(aStream, deflater);
+                        out.write(pixels.array(), 0, pixels.position());
+                        out.finish();
+                    } finally {
+                        deflater.end();
+                    }
+                } else {
+                    aStream.write(pixels.array(), 0, pixels.position());
+                }
+                aStream.flush();
+
+            } finally {
+                if (source != aBitmap) {
+                    source.recycle();
+                }
+            }
+        }
+
+        @Nullable
+        @Override
+        public Bitmap decode(@NonNull InputStream aStream) throws IOException {
+            DataInputStream in = new DataInputStream(aStream);
+            byte[] header = new byte[MAGIC.length];
+            in.readFully(header);
+            if (!hasMagic(header)) {
+                return null;
+            }
+            boolean compressed = (in.readByte() & FLAG_COMPRESSED) != 0;
+            Bitmap.Config config = in.readByte() == 1 ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+
+            Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+            byte[] pixels = new byte[bitmap.getByteCount()];
+            if (compressed) {
+                // InflaterInputStream only ends inflaters it creates itself.
+                Inflater inflater = new Inflater();
+                try {
+                    new DataInputStream(new InflaterInputStream(in, inflater)).readFully(pixels);
+                } finally {
+                    inflater.end();
+                }
+            } else {
+                in.readFully(pixels);
+            }
+            bitmap.copyPixelsFromBuffer(ByteBuffer.wrap(pixels));
+
+            return bitmap;
+        }
+    }
+}
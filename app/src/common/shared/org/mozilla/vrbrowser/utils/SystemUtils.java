@@ -16,6 +16,7 @@ import org.mozilla.vrbrowser.BuildConfig;
 import org.mozilla.vrbrowser.R;
 import org.mozilla.vrbrowser.VRBrowserActivity;
 import org.mozilla.vrbrowser.VRBrowserApplication;
+import org.mozilla.vrbrowser.browser.SettingsStore;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -51,6 +52,8 @@ public class SystemUtils {
         AlarmManager mgr = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
         mgr.set(AlarmManager.RTC, System.currentTimeMillis() + delay, mPendingIntent);
 
+        // Settings are written asynchronously, make sure they are on disk before exiting.
+        SettingsStore.getInstance(context).flush();
         System.exit(0);
     }
 
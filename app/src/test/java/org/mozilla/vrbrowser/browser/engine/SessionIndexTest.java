@@ -0,0 +1,187 @@
+package org.mozilla.vrbrowser.browser.engine;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mozilla.geckoview.GeckoSession;
+import org.mozilla.vrbrowser.TestApplication;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = TestApplication.class)
+public class SessionIndexTest {
+
+    private static class FakeSession {
+        String mId;
+        GeckoSession mGeckoSession;
+        boolean mPrivate;
+        String mUri;
+        long mLastUse;
+
+        FakeSession(String aId, String aUri, long aLastUse) {
+            mId = aId;
+            mUri = aUri;
+            mLastUse = aLastUse;
+        }
+    }
+
+    private static final SessionIndex.Accessor<FakeSession> ACCESSOR = new SessionIndex.Accessor<FakeSession>() {
+        @NonNull
+        @Override
+        public String getId(@NonNull FakeSession aSession) {
+            return aSession.mId;
+        }
+
+        @Nullable
+        @Override
+        public GeckoSession getGeckoSession(@NonNull FakeSession aSession) {
+            return aSession.mGeckoSession;
+        }
+
+        @NonNull
+        @Override
+        public String getCurrentUri(@NonNull FakeSession aSession) {
+            return aSession.mUri;
+        }
+
+        @Override
+        public long getLastUse(@NonNull FakeSession aSession) {
+            return aSession.mLastUse;
+        }
+
+        @Override
+        public boolean isPrivateMode(@NonNull FakeSession aSession) {
+            return aSession.mPrivate;
+        }
+    };
+
+    private SessionIndex<FakeSession> mIndex;
+    private FakeSession mFirst;
+    private FakeSession mSecond;
+    private FakeSession mThird;
+
+    @Before
+    public void setup() {
+        mIndex = new SessionIndex<>(ACCESSOR);
+        mFirst = new FakeSession("first", "https://www.example.com/a", 10);
+        mSecond = new FakeSession("second", "https://www.mozilla.org/", 30);
+        mThird = new FakeSession("third", "https://www.example.com/b", 20);
+        mIndex.add(mFirst);
+        mIndex.add(mSecond);
+        mIndex.add(mThird);
+    }
+
+    @Test
+    public void testLookupById() {
+        assertSame(mFirst, mIndex.getById("first"));
+        assertSame(mSecond, mIndex.getById("second"));
+        assertNull(mIndex.getById("unknown"));
+        assertNull(mIndex.getById(null));
+    }
+
+    @Test
+    public void testLookupByGeckoSession() {
+        GeckoSession geckoSession = new GeckoSession();
+        mSecond.mGeckoSession = geckoSession;
+        mIndex.update(mSecond);
+        assertSame(mSecond, mIndex.getByGeckoSession(geckoSession));
+        assertNull(mIndex.getByGeckoSession(new GeckoSession()));
+
+        // Suspending the session removes it from the lookup.
+        mSecond.mGeckoSession = null;
+        mIndex.update(mSecond);
+        assertNull(mIndex.getByGeckoSession(geckoSession));
+    }
+
+    @Test
+    public void testLookupByHostKeepsInsertionOrder() {
+        assertEquals(Arrays.asList(mFirst, mThird), mIndex.getByHost("www.example.com", false));
+        assertEquals(Collections.singletonList(mSecond), mIndex.getByHost("www.mozilla.org", false));
+        assertEquals(Collections.emptyList(), mIndex.getByHost("www.example.com", true));
+
+        // Moving back to a host keeps the session at its insertion position.
+        mFirst.mUri = "https://www.mozilla.org/";
+        mIndex.update(mFirst);
+        assertEquals(Collections.singletonList(mThird), mIndex.getByHost("www.example.com", false));
+        assertEquals(Arrays.asList(mFirst, mSecond), mIndex.getByHost("www.mozilla.org", false));
+    }
+
+    @Test
+    public void testLookupByHostFiltersPrivateSessions() {
+        FakeSession privateSession = new FakeSession("private", "https://www.example.com/c", 40);
+        privateSession.mPrivate = true;
+        mIndex.add(privateSession);
+        assertEquals(Arrays.asList(mFirst, mThird), mIndex.getByHost("www.example.com", false));
+        assertEquals(Collections.singletonList(privateSession), mIndex.getByHost("www.example.com", true));
+    }
+
+    @Test
+    public void testRemove() {
+        GeckoSession geckoSession = new GeckoSession();
+        mFirst.mGeckoSession = geckoSession;
+        mIndex.update(mFirst);
+
+        mIndex.remove(mFirst);
+        assertNull(mIndex.getById("first"));
+        assertNull(mIndex.getByGeckoSession(geckoSession));
+        assertEquals(Collections.singletonList(mThird), mIndex.getByHost("www.example.com", false));
+        assertEquals(Arrays.asList(mSecond, mThird), mIndex.getSortedByLastUse(false));
+
+        // Removing twice is a no-op.
+        mIndex.remove(mFirst);
+        assertEquals(Arrays.asList(mSecond, mThird), mIndex.getSortedByLastUse(false));
+    }
+
+    @Test
+    public void testAddTwiceUpdates() {
+        mFirst.mLastUse = 50;
+        mIndex.add(mFirst);
+        assertEquals(Arrays.asList(mFirst, mSecond, mThird), mIndex.getSortedByLastUse(false));
+    }
+
+    @Test
+    public void testSortedByLastUse() {
+        assertEquals(Arrays.asList(mSecond, mThird, mFirst), mIndex.getSortedByLastUse(false));
+        assertEquals(Collections.emptyList(), mIndex.getSortedByLastUse(true));
+
+        mFirst.mLastUse = 40;
+        mIndex.update(mFirst);
+        assertEquals(Arrays.asList(mFirst, mSecond, mThird), mIndex.getSortedByLastUse(false));
+    }
+
+    @Test
+    public void testSortedByLastUseResolvesTiesByInsertionOrder() {
+        mFirst.mLastUse = 30;
+        mIndex.update(mFirst);
+        mThird.mLastUse = 30;
+        mIndex.update(mThird);
+        assertEquals(Arrays.asList(mFirst, mSecond, mThird), mIndex.getSortedByLastUse(false));
+    }
+
+    @Test
+    public void testIdChange() {
+        mFirst.mId = "renamed";
+        mIndex.update(mFirst);
+        assertNull(mIndex.getById("first"));
+        assertSame(mFirst, mIndex.getById("renamed"));
+    }
+
+    @Test
+    public void testClear() {
+        mIndex.clear();
+        assertNull(mIndex.getById("first"));
+        assertEquals(Collections.emptyList(), mIndex.getByHost("www.example.com", false));
+        assertEquals(Collections.emptyList(), mIndex.getSortedByLastUse(false));
+    }
+}
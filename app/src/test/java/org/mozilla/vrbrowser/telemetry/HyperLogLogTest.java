@@ -0,0 +1,64 @@
+package org.mozilla.vrbrowser.telemetry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HyperLogLogTest {
+
+    private static void assertWithin(long aExpected, long aEstimate, double aError) {
+        double error = Math.abs(aEstimate - aExpected) / (double) aExpected;
+        assertTrue("Estimated " + aEstimate + " for " + aExpected, error <= aError);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0, new HyperLogLog(12).estimate());
+    }
+
+    @Test
+    public void testSmallCardinality() {
+        HyperLogLog counter = new HyperLogLog(12);
+        for (int i = 0; i < 100; i++) {
+            counter.add("site" + i + ".example.com");
+        }
+        assertWithin(100, counter.estimate(), 0.03);
+    }
+
+    @Test
+    public void testLargeCardinality() {
+        HyperLogLog counter = new HyperLogLog(12);
+        for (int i = 0; i < 100000; i++) {
+            counter.add("site" + i + ".example.com");
+        }
+        // Three times the standard error of 1.6%.
+        assertWithin(100000, counter.estimate(), 0.05);
+    }
+
+    @Test
+    public void testDuplicatesAreNotCounted() {
+        HyperLogLog counter = new HyperLogLog(12);
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 1000; i++) {
+                counter.add("site" + i + ".example.com");
+            }
+        }
+        assertWithin(1000, counter.estimate(), 0.05);
+    }
+
+    @Test
+    public void testClear() {
+        HyperLogLog counter = new HyperLogLog(10);
+        for (int i = 0; i < 1000; i++) {
+            counter.add("site" + i);
+        }
+        counter.clear();
+        assertEquals(0, counter.estimate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPrecisionOutOfRange() {
+        new HyperLogLog(20);
+    }
+}
@@ -0,0 +1,92 @@
+package org.mozilla.vrbrowser.telemetry;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricTimersTest {
+
+    @Test
+    public void testStartStop() {
+        MetricTimers<String> timers = new MetricTimers<>(4);
+        assertTrue(timers.start("a", 100));
+        assertEquals(1, timers.size());
+        assertEquals(50, timers.stop("a", 150));
+        assertEquals(0, timers.size());
+        assertEquals(-1, timers.stop("a", 200));
+    }
+
+    @Test
+    public void testRestartKeepsOneSlot() {
+        MetricTimers<String> timers = new MetricTimers<>(4);
+        timers.start("a", 100);
+        timers.start("a", 120);
+        assertEquals(1, timers.size());
+        assertEquals(30, timers.stop("a", 150));
+    }
+
+    @Test
+    public void testBounded() {
+        MetricTimers<Integer> timers = new MetricTimers<>(3);
+        for (int i = 0; i < 10; i++) {
+            timers.start(i, i);
+        }
+        assertEquals(3, timers.size());
+        assertEquals(7, timers.getDropped());
+        assertEquals(-1, timers.stop(5, 10));
+
+        // Running timers can still be restarted while it's full.
+        assertTrue(timers.start(0, 5));
+        assertEquals(5, timers.stop(0, 10));
+        assertTrue(timers.start(5, 10));
+        assertFalse(timers.start(6, 10));
+    }
+
+    @Test
+    public void testClear() {
+        MetricTimers<Integer> timers = new MetricTimers<>(3);
+        timers.start(1, 0);
+        timers.start(2, 0);
+        timers.clear();
+        assertEquals(0, timers.size());
+        assertEquals(-1, timers.stop(1, 10));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(timers.start(i, 0));
+        }
+    }
+
+    @Test
+    public void testConcurrentStartsStayBounded() throws InterruptedException {
+        final int capacity = 50;
+        final int threads = 4;
+        final int startsPerThread = 1000;
+        MetricTimers<String> timers = new MetricTimers<>(capacity);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < startsPerThread; i++) {
+                    String key = thread + ":" + i;
+                    timers.start(key, i);
+                    if (i % 2 == 0) {
+                        timers.stop(key, i + 1);
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        assertTrue(timers.size() <= capacity);
+        timers.clear();
+        assertEquals(0, timers.size());
+    }
+}
@@ -0,0 +1,144 @@
+package org.mozilla.vrbrowser.telemetry;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleBatcherTest {
+
+    // Runs the drain tasks only when asked, like a delayed executor.
+    private static class QueueExecutor implements Executor {
+        final ArrayList<Runnable> mTasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable aCommand) {
+            mTasks.add(aCommand);
+        }
+
+        void runAll() {
+            while (!mTasks.isEmpty()) {
+                mTasks.remove(0).run();
+            }
+        }
+    }
+
+    private static class RecordingSink implements SampleBatcher.Sink<Integer> {
+        final ArrayList<List<Integer>> mBatches = new ArrayList<>();
+
+        @Override
+        public void onBatch(List<Integer> aBatch) {
+            mBatches.add(new ArrayList<>(aBatch));
+        }
+
+        List<Integer> all() {
+            ArrayList<Integer> all = new ArrayList<>();
+            mBatches.forEach(all::addAll);
+            return all;
+        }
+    }
+
+    @Test
+    public void testDrainsInBatches() {
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSink sink = new RecordingSink();
+        SampleBatcher<Integer> batcher = new SampleBatcher<>(64, 10, executor, sink);
+
+        for (int i = 0; i < 25; i++) {
+            assertTrue(batcher.record(i));
+        }
+        // A single drain is scheduled for all the samples.
+        assertEquals(1, executor.mTasks.size());
+        executor.runAll();
+
+        assertEquals(3, sink.mBatches.size());
+        assertEquals(10, sink.mBatches.get(0).size());
+        assertEquals(10, sink.mBatches.get(1).size());
+        assertEquals(5, sink.mBatches.get(2).size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals(Integer.valueOf(i), sink.all().get(i));
+        }
+    }
+
+    @Test
+    public void testSchedulesAgainAfterDrain() {
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSink sink = new RecordingSink();
+        SampleBatcher<Integer> batcher = new SampleBatcher<>(64, 10, executor, sink);
+
+        batcher.record(1);
+        executor.runAll();
+        assertTrue(executor.mTasks.isEmpty());
+
+        batcher.record(2);
+        assertEquals(1, executor.mTasks.size());
+        executor.runAll();
+        assertEquals(2, sink.mBatches.size());
+    }
+
+    @Test
+    public void testDropsWhenFull() {
+        QueueExecutor executor = new QueueExecutor();
+        RecordingSink sink = new RecordingSink();
+        SampleBatcher<Integer> batcher = new SampleBatcher<>(16, 4, executor, sink);
+
+        for (int i = 0; i < 16; i++) {
+            assertTrue(batcher.record(i));
+        }
+        assertFalse(batcher.record(16));
+        assertEquals(1, batcher.getDropped());
+
+        executor.runAll();
+        assertEquals(16, sink.all().size());
+        // There is room again once drained.
+        assertTrue(batcher.record(17));
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int threads = 4;
+        final int samplesPerThread = 10000;
+        RecordingSink sink = new RecordingSink();
+        ExecutorService drainExecutor = Executors.newSingleThreadExecutor();
+        SampleBatcher<Integer> batcher = new SampleBatcher<>(threads * samplesPerThread, 256, drainExecutor, sink);
+
+        ExecutorService producers = Executors.newFixedThreadPool(threads);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            producers.execute(() -> {
+                for (int i = 0; i < samplesPerThread; i++) {
+                    batcher.record(thread * samplesPerThread + i);
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        producers.shutdown();
+        drainExecutor.execute(batcher::drain);
+        drainExecutor.shutdown();
+        assertTrue(drainExecutor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, batcher.getDropped());
+        List<Integer> all = sink.all();
+        assertEquals(threads * samplesPerThread, all.size());
+        // Every producer's samples are drained in the order it recorded them.
+        int[] last = new int[threads];
+        Arrays.fill(last, -1);
+        for (int sample : all) {
+            int thread = sample / samplesPerThread;
+            assertTrue(sample > last[thread]);
+            last[thread] = sample;
+        }
+    }
+}